@@ -0,0 +1,93 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.benchmarks;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the dispatch of a received {@code SEND} frame by the destinations: fan-out to all the subscribers for a
+ * topic, round-robin for a queue. The subscribers are {@link InMemoryConnection}s, so the frames are encoded but not
+ * written to a socket.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DestinationDispatchBenchmark {
+
+  @Param({"1", "10", "100"})
+  public int subscribers;
+
+  @Param({"256"})
+  public int bodySize;
+
+  private Vertx vertx;
+
+  private Destination topic;
+  private Destination queue;
+
+  private InMemoryConnection publisher;
+  private Frame topicFrame;
+  private Frame queueFrame;
+
+  @Setup
+  public void setup() {
+    vertx = Vertx.vertx();
+    topic = Destination.topic(vertx, "/topic/prices");
+    queue = Destination.queue(vertx, "/queue/orders");
+    for (int i = 0; i < subscribers; i++) {
+      topic.subscribe(new InMemoryConnection(), SampleFrames.subscribe("/topic/prices", "sub-" + i, "auto"));
+      queue.subscribe(new InMemoryConnection(), SampleFrames.subscribe("/queue/orders", "sub-" + i, "client"));
+    }
+    publisher = new InMemoryConnection();
+    topicFrame = SampleFrames.received(SampleFrames.send("/topic/prices", bodySize));
+    queueFrame = SampleFrames.received(SampleFrames.send("/queue/orders", bodySize));
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public Destination topicFanOut() {
+    return topic.dispatch(publisher, topicFrame);
+  }
+
+  @Benchmark
+  public Destination queueRoundRobin() {
+    return queue.dispatch(publisher, queueFrame);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.benchmarks;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.bridge.PermittedOptions;
+import io.vertx.ext.stomp.BridgeOptions;
+import io.vertx.ext.stomp.impl.EventBusBridge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the checks of the permitted addresses of the {@link EventBusBridge}, done for each frame sent to or
+ * received from the event bus. The bridge is configured with exact addresses, regular expressions and a structure
+ * match, as a typical application would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBusBridgeBenchmark {
+
+  /**
+   * An exact address, an address matching a regular expression, an address matching a structure, and an address
+   * not permitted.
+   */
+  @Param({"service.orders.9", "prices.EUR", "audit", "unknown.address"})
+  public String address;
+
+  private Vertx vertx;
+  private EventBusBridge bridge;
+  private Buffer payload;
+
+  @Setup
+  public void setup() {
+    vertx = Vertx.vertx();
+    List<PermittedOptions> inbound = new ArrayList<>();
+    List<PermittedOptions> outbound = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      inbound.add(new PermittedOptions().setAddress("service.orders." + i));
+      outbound.add(new PermittedOptions().setAddress("service.events." + i));
+    }
+    inbound.add(new PermittedOptions().setAddressRegex("commands\\..+"));
+    outbound.add(new PermittedOptions().setAddressRegex("prices\\.[A-Z]{3}"));
+    outbound.add(new PermittedOptions().setAddress("audit").setMatch(new JsonObject().put("level", "info")));
+    bridge = new EventBusBridge(vertx, new BridgeOptions()
+        .setInboundPermitteds(inbound)
+        .setOutboundPermitteds(outbound));
+    payload = new JsonObject().put("level", "info").put("message", "order created").toBuffer();
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public boolean matches() {
+    return bridge.matches(address);
+  }
+
+  @Benchmark
+  public boolean matchesWithPayload() {
+    return bridge.matches(address, payload);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.benchmarks;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.core.Vertx;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.StompServerConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Measures {@link Frame#toBuffer()}, for a frame created by the application (the headers are strings) and for a
+ * {@code MESSAGE} frame built from a received {@code SEND} frame (the headers not read are copied as received).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameEncodingBenchmark {
+
+  @Param({"0", "128", "4096"})
+  public int bodySize;
+
+  private Vertx vertx;
+
+  private Frame created;
+  private Frame message;
+
+  @Setup
+  public void setup() {
+    vertx = Vertx.vertx();
+    created = SampleFrames.send("/topic/orders", bodySize);
+
+    // Let a topic build the MESSAGE frame, as it would for a subscriber.
+    AtomicReference<Frame> written = new AtomicReference<>();
+    StompServerConnection subscriber = new InMemoryConnection() {
+      @Override
+      public StompServerConnection write(Frame frame) {
+        written.set(frame);
+        return this;
+      }
+    };
+    Destination topic = Destination.topic(vertx, "/topic/orders");
+    topic.subscribe(subscriber, SampleFrames.subscribe("/topic/orders", "sub-0", "client"));
+    topic.dispatch(new InMemoryConnection(), SampleFrames.received(created));
+    message = written.get();
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public Buffer encodeCreatedFrame() {
+    return created.toBuffer();
+  }
+
+  @Benchmark
+  public Buffer encodeMessageFrame() {
+    return message.toBuffer(true);
+  }
+}
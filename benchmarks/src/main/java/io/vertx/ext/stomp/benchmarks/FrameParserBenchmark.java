@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.benchmarks;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.impl.FrameParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the parsing of the content of socket reads by the {@link FrameParser}. Each read contains several
+ * pipelined frames, and is split in chunks of the given size, as a read from the network would be.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameParserBenchmark {
+
+  @Param({"send", "ack", "mixed"})
+  public String mix;
+
+  @Param({"128", "2048"})
+  public int bodySize;
+
+  @Param({"1024", "65536"})
+  public int chunkSize;
+
+  private List<Buffer> chunks;
+
+  private FrameParser parser;
+  private FrameParser readingParser;
+  private FrameParser batchParser;
+
+  private Blackhole blackhole;
+
+  @Setup
+  public void setup() {
+    Buffer content = SampleFrames.pipeline(mix, 32, bodySize);
+    chunks = new ArrayList<>();
+    for (int i = 0; i < content.length(); i += chunkSize) {
+      chunks.add(content.slice(i, Math.min(content.length(), i + chunkSize)));
+    }
+    parser = new FrameParser().handler(frame -> blackhole.consume(frame));
+    readingParser = new FrameParser().handler(frame -> {
+      // The destination and the content type are read by the server and by most applications.
+      blackhole.consume(frame.getDestination());
+      blackhole.consume(frame.getHeader(Frame.CONTENT_TYPE));
+    });
+    batchParser = new FrameParser().batchHandler(frames -> blackhole.consume(frames));
+  }
+
+  private void feed(FrameParser parser, Blackhole blackhole) {
+    this.blackhole = blackhole;
+    for (Buffer chunk : chunks) {
+      parser.handle(chunk);
+    }
+  }
+
+  @Benchmark
+  public void parse(Blackhole blackhole) {
+    feed(parser, blackhole);
+  }
+
+  @Benchmark
+  public void parseAndReadHeaders(Blackhole blackhole) {
+    feed(readingParser, blackhole);
+  }
+
+  @Benchmark
+  public void parseAsBatch(Blackhole blackhole) {
+    feed(batchParser, blackhole);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.ext.stomp.impl.HeaderCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link HeaderCodec} with its previous implementation ({@link LegacyHeaderCodec}), for header values
+ * without characters to escape (the common case) and with characters to escape.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderCodecBenchmark {
+
+  @Param({"/queue/prices.EUR", "a:b\\c\nd"})
+  public String value;
+
+  private String encoded;
+  private ByteBuf encodedBytes;
+  private ByteBuf target;
+
+  @Setup
+  public void setup() {
+    encoded = HeaderCodec.encode(value, false);
+    encodedBytes = Unpooled.copiedBuffer(encoded, StandardCharsets.UTF_8);
+    target = Unpooled.buffer(256);
+  }
+
+  @Benchmark
+  public String legacyEncode() {
+    return LegacyHeaderCodec.encode(value, false);
+  }
+
+  @Benchmark
+  public String encode() {
+    return HeaderCodec.encode(value, false);
+  }
+
+  @Benchmark
+  public ByteBuf legacyEncodeToBytes() {
+    target.clear();
+    return target.writeBytes(LegacyHeaderCodec.encode(value, false).getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Benchmark
+  public ByteBuf encodeToBytes() {
+    target.clear();
+    HeaderCodec.encode(value, false, target);
+    return target;
+  }
+
+  @Benchmark
+  public String legacyDecode() {
+    return LegacyHeaderCodec.decode(encoded, false);
+  }
+
+  @Benchmark
+  public String decode() {
+    return HeaderCodec.decode(encoded, false);
+  }
+
+  @Benchmark
+  public String legacyDecodeFromBytes() {
+    return LegacyHeaderCodec.decode(encodedBytes.toString(StandardCharsets.UTF_8), false);
+  }
+
+  @Benchmark
+  public String decodeFromBytes() {
+    return HeaderCodec.decode(encodedBytes, encodedBytes.readerIndex(), encodedBytes.writerIndex(), false);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.benchmarks;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServer;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.StompServerHandler;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link StompServerConnection} without socket. The written frames are encoded as they would be on a real
+ * connection, and the number of written bytes is recorded. It can be written concurrently by several threads.
+ */
+public class InMemoryConnection implements StompServerConnection {
+
+  private final String session = UUID.randomUUID().toString();
+
+  private final LongAdder written = new LongAdder();
+
+  /**
+   * @return the number of bytes written on this connection
+   */
+  public long written() {
+    return written.sum();
+  }
+
+  @Override
+  public StompServerConnection write(Frame frame) {
+    return write(frame.toBuffer());
+  }
+
+  @Override
+  public StompServerConnection write(Buffer buffer) {
+    written.add(buffer.length());
+    return this;
+  }
+
+  @Override
+  public StompServer server() {
+    return null;
+  }
+
+  @Override
+  public StompServerHandler handler() {
+    return null;
+  }
+
+  @Override
+  public String session() {
+    return session;
+  }
+
+  @Override
+  public void close() {
+    // Nothing to close.
+  }
+
+  @Override
+  public void ping() {
+    // No heartbeat.
+  }
+
+  @Override
+  public void onServerActivity() {
+    // No heartbeat.
+  }
+
+  @Override
+  public void configureHeartbeat(long ping, long pong, Handler<StompServerConnection> pingHandler) {
+    // No heartbeat.
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.benchmarks;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.MessageStore;
+import io.vertx.ext.stomp.utils.Headers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to reload the pending messages of a journal ({@link MessageStore#journal(Vertx, String)}) after a
+ * restart: opening the store (reading the indexes and checking the records), listing the pending messages of a
+ * destination, and reading them.
+ * <p/>
+ * The journal is written once per trial, with a third of the messages acknowledged. Writing 10M messages takes a
+ * while, and about 1.5 GB of disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JournalRecoveryBenchmark {
+
+  @Param({"10000000"})
+  public int messages;
+
+  private Vertx vertx;
+  private String directory;
+
+  @Setup
+  public void setup() throws IOException {
+    vertx = Vertx.vertx();
+    directory = Files.createTempDirectory("stomp-journal-benchmark").toString();
+    MessageStore store = MessageStore.journal(vertx, directory);
+    Buffer body = Buffer.buffer(new byte[64]);
+    for (int i = 0; i < messages; i++) {
+      Frame frame = new Frame(Frame.Command.SEND,
+          Headers.create(Frame.DESTINATION, "/queue", MessageStore.PERSISTENT, "true"), body);
+      long id = store.append("/queue", frame);
+      if (i % 3 == 0) {
+        store.acknowledge(id);
+      }
+    }
+    store.close();
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.fileSystem().deleteRecursiveBlocking(directory, true);
+    vertx.close();
+  }
+
+  @Benchmark
+  public long[] recover() throws IOException {
+    MessageStore store = MessageStore.journal(vertx, directory);
+    try {
+      return store.pending("/queue");
+    } finally {
+      store.close();
+    }
+  }
+
+  @Benchmark
+  public int recoverAndRead() throws IOException {
+    MessageStore store = MessageStore.journal(vertx, directory);
+    try {
+      int size = 0;
+      for (long id : store.pending("/queue")) {
+        size += store.read(id).getBody().length();
+      }
+      return size;
+    } finally {
+      store.close();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.benchmarks;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.impl.FrameParser;
+import io.vertx.ext.stomp.utils.Headers;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Builds the frames used by the benchmarks. The frames look like the frames sent by the usual STOMP clients: a few
+ * headers (destination, content type and length, correlation id...), and a body.
+ */
+public class SampleFrames {
+
+  private SampleFrames() {
+    // Avoid direct instantiation.
+  }
+
+  /**
+   * Creates a body of the given size.
+   *
+   * @param size the size in bytes
+   * @return the body
+   */
+  public static Buffer body(int size) {
+    Buffer buffer = Buffer.buffer(size);
+    for (int i = 0; i < size; i++) {
+      buffer.appendByte((byte) ('a' + i % 26));
+    }
+    return buffer;
+  }
+
+  /**
+   * Creates a {@code SEND} frame.
+   *
+   * @param destination the destination
+   * @param bodySize    the size of the body
+   * @return the frame
+   */
+  public static Frame send(String destination, int bodySize) {
+    Buffer body = body(bodySize);
+    return new Frame(Frame.Command.SEND, Headers.create(
+        Frame.DESTINATION, destination,
+        Frame.CONTENT_TYPE, "application/json;charset=utf-8",
+        Frame.CONTENT_LENGTH, Integer.toString(body.length()),
+        "correlation-id", "7c4f6a52-1b8e-4bde-9a55-0c1bb3bdc2f1",
+        "priority", "4"), body);
+  }
+
+  /**
+   * Creates a {@code SUBSCRIBE} frame.
+   *
+   * @param destination the destination
+   * @param id          the subscription id
+   * @param ack         the acknowledgment mode
+   * @return the frame
+   */
+  public static Frame subscribe(String destination, String id, String ack) {
+    return new Frame(Frame.Command.SUBSCRIBE, Headers.create(
+        Frame.DESTINATION, destination,
+        Frame.ID, id,
+        Frame.ACK, ack), null);
+  }
+
+  /**
+   * Creates a {@code ACK} frame.
+   *
+   * @param id the acknowledged message id
+   * @return the frame
+   */
+  public static Frame ack(String id) {
+    return new Frame(Frame.Command.ACK, Headers.create(Frame.ID, id), null);
+  }
+
+  /**
+   * Creates the content of a socket read containing several pipelined frames.
+   *
+   * @param mix      the frame mix: {@code send} (only {@code SEND} frames), {@code ack} (only {@code ACK} frames) or
+   *                 {@code mixed} (publishers and consumers on the same connection)
+   * @param frames   the number of frames
+   * @param bodySize the size of the {@code SEND} bodies
+   * @return the bytes
+   */
+  public static Buffer pipeline(String mix, int frames, int bodySize) {
+    Buffer buffer = Buffer.buffer();
+    for (int i = 0; i < frames; i++) {
+      Frame frame;
+      switch (mix) {
+        case "send":
+          frame = send("/queue/orders", bodySize);
+          break;
+        case "ack":
+          frame = ack("message-" + i);
+          break;
+        case "mixed":
+          if (i % 4 == 3) {
+            frame = ack("message-" + i);
+          } else if (i % 8 == 0) {
+            frame = subscribe("/topic/prices." + i, "sub-" + i, "client-individual");
+          } else {
+            frame = send("/topic/prices." + (i % 8), bodySize);
+          }
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown frame mix: " + mix);
+      }
+      buffer.appendBuffer(frame.toBuffer());
+    }
+    return buffer;
+  }
+
+  /**
+   * Parses the given frame, as received by the server.
+   *
+   * @param frame the frame
+   * @return the parsed frame
+   */
+  public static Frame received(Frame frame) {
+    AtomicReference<Frame> result = new AtomicReference<>();
+    new FrameParser().handler(result::set).handle(frame.toBuffer());
+    return result.get();
+  }
+}
@@ -56,6 +56,12 @@ public class StompClientOptionsConverter {
     if (json.getValue("port") instanceof Number) {
       obj.setPort(((Number)json.getValue("port")).intValue());
     }
+    if (json.getValue("publishTimeout") instanceof Number) {
+      obj.setPublishTimeout(((Number)json.getValue("publishTimeout")).longValue());
+    }
+    if (json.getValue("publishWindowSize") instanceof Number) {
+      obj.setPublishWindowSize(((Number)json.getValue("publishWindowSize")).intValue());
+    }
     if (json.getValue("trailingLine") instanceof Boolean) {
       obj.setTrailingLine((Boolean)json.getValue("trailingLine"));
     }
@@ -65,6 +71,12 @@ public class StompClientOptionsConverter {
     if (json.getValue("virtualHost") instanceof String) {
       obj.setVirtualHost((String)json.getValue("virtualHost"));
     }
+    if (json.getValue("writeBatchMaxBytes") instanceof Number) {
+      obj.setWriteBatchMaxBytes(((Number)json.getValue("writeBatchMaxBytes")).intValue());
+    }
+    if (json.getValue("writeBatchMaxDelay") instanceof Number) {
+      obj.setWriteBatchMaxDelay(((Number)json.getValue("writeBatchMaxDelay")).longValue());
+    }
   }
 
   public static void toJson(StompClientOptions obj, JsonObject json) {
@@ -88,10 +100,14 @@ public class StompClientOptionsConverter {
       json.put("passcode", obj.getPasscode());
     }
     json.put("port", obj.getPort());
+    json.put("publishTimeout", obj.getPublishTimeout());
+    json.put("publishWindowSize", obj.getPublishWindowSize());
     json.put("trailingLine", obj.isTrailingLine());
     json.put("useStompFrame", obj.isUseStompFrame());
     if (obj.getVirtualHost() != null) {
       json.put("virtualHost", obj.getVirtualHost());
     }
+    json.put("writeBatchMaxBytes", obj.getWriteBatchMaxBytes());
+    json.put("writeBatchMaxDelay", obj.getWriteBatchMaxDelay());
   }
 }
\ No newline at end of file
@@ -27,6 +27,12 @@ import io.vertx.core.json.JsonArray;
 public class StompServerOptionsConverter {
 
   public static void fromJson(JsonObject json, StompServerOptions obj) {
+    if (json.getValue("ackTimeout") instanceof Number) {
+      obj.setAckTimeout(((Number)json.getValue("ackTimeout")).longValue());
+    }
+    if (json.getValue("destinationMemoryLimit") instanceof Number) {
+      obj.setDestinationMemoryLimit(((Number)json.getValue("destinationMemoryLimit")).longValue());
+    }
     if (json.getValue("heartbeat") instanceof JsonObject) {
       obj.setHeartbeat(((JsonObject)json.getValue("heartbeat")).copy());
     }
@@ -45,12 +51,33 @@ public class StompServerOptionsConverter {
     if (json.getValue("maxSubscriptionsByClient") instanceof Number) {
       obj.setMaxSubscriptionsByClient(((Number)json.getValue("maxSubscriptionsByClient")).intValue());
     }
+    if (json.getValue("memoryLimit") instanceof Number) {
+      obj.setMemoryLimit(((Number)json.getValue("memoryLimit")).longValue());
+    }
+    if (json.getValue("memoryLowWaterMark") instanceof Number) {
+      obj.setMemoryLowWaterMark(((Number)json.getValue("memoryLowWaterMark")).intValue());
+    }
+    if (json.getValue("outboundHighWaterMark") instanceof Number) {
+      obj.setOutboundHighWaterMark(((Number)json.getValue("outboundHighWaterMark")).intValue());
+    }
+    if (json.getValue("queueBacklogDirectory") instanceof String) {
+      obj.setQueueBacklogDirectory((String)json.getValue("queueBacklogDirectory"));
+    }
+    if (json.getValue("queueBacklogSize") instanceof Number) {
+      obj.setQueueBacklogSize(((Number)json.getValue("queueBacklogSize")).longValue());
+    }
     if (json.getValue("secured") instanceof Boolean) {
       obj.setSecured((Boolean)json.getValue("secured"));
     }
     if (json.getValue("sendErrorOnNoSubscriptions") instanceof Boolean) {
       obj.setSendErrorOnNoSubscriptions((Boolean)json.getValue("sendErrorOnNoSubscriptions"));
     }
+    if (json.getValue("slowConsumerPolicy") instanceof String) {
+      obj.setSlowConsumerPolicy(io.vertx.ext.stomp.SlowConsumerPolicy.valueOf((String)json.getValue("slowConsumerPolicy")));
+    }
+    if (json.getValue("streamedBodyThreshold") instanceof Number) {
+      obj.setStreamedBodyThreshold(((Number)json.getValue("streamedBodyThreshold")).intValue());
+    }
     if (json.getValue("supportedVersions") instanceof JsonArray) {
       java.util.ArrayList<java.lang.String> list = new java.util.ArrayList<>();
       json.getJsonArray("supportedVersions").forEach( item -> {
@@ -74,9 +101,14 @@ public class StompServerOptionsConverter {
     if (json.getValue("websocketPath") instanceof String) {
       obj.setWebsocketPath((String)json.getValue("websocketPath"));
     }
+    if (json.getValue("writeCoalescingThreshold") instanceof Number) {
+      obj.setWriteCoalescingThreshold(((Number)json.getValue("writeCoalescingThreshold")).intValue());
+    }
   }
 
   public static void toJson(StompServerOptions obj, JsonObject json) {
+    json.put("ackTimeout", obj.getAckTimeout());
+    json.put("destinationMemoryLimit", obj.getDestinationMemoryLimit());
     if (obj.getHeartbeat() != null) {
       json.put("heartbeat", obj.getHeartbeat());
     }
@@ -85,8 +117,19 @@ public class StompServerOptionsConverter {
     json.put("maxHeaderLength", obj.getMaxHeaderLength());
     json.put("maxHeaders", obj.getMaxHeaders());
     json.put("maxSubscriptionsByClient", obj.getMaxSubscriptionsByClient());
+    json.put("memoryLimit", obj.getMemoryLimit());
+    json.put("memoryLowWaterMark", obj.getMemoryLowWaterMark());
+    json.put("outboundHighWaterMark", obj.getOutboundHighWaterMark());
+    if (obj.getQueueBacklogDirectory() != null) {
+      json.put("queueBacklogDirectory", obj.getQueueBacklogDirectory());
+    }
+    json.put("queueBacklogSize", obj.getQueueBacklogSize());
     json.put("secured", obj.isSecured());
     json.put("sendErrorOnNoSubscriptions", obj.isSendErrorOnNoSubscriptions());
+    if (obj.getSlowConsumerPolicy() != null) {
+      json.put("slowConsumerPolicy", obj.getSlowConsumerPolicy().name());
+    }
+    json.put("streamedBodyThreshold", obj.getStreamedBodyThreshold());
     if (obj.getSupportedVersions() != null) {
       JsonArray array = new JsonArray();
       obj.getSupportedVersions().forEach(item -> array.add(item));
@@ -99,5 +142,6 @@ public class StompServerOptionsConverter {
     if (obj.getWebsocketPath() != null) {
       json.put("websocketPath", obj.getWebsocketPath());
     }
+    json.put("writeCoalescingThreshold", obj.getWriteCoalescingThreshold());
   }
 }
\ No newline at end of file
@@ -253,5 +253,29 @@ public class StompClientExamples {
         });
   }
 
+  public void example15(Vertx vertx) {
+    StompClient client = StompClient.create(vertx, new StompClientOptions().setPublishWindowSize(100))
+        .connect(ar -> {
+          if (ar.succeeded()) {
+            StompClientConnection connection = ar.result();
+
+            connection.publish("/queue", Buffer.buffer("Hello")).setHandler(receipt -> {
+              if (receipt.succeeded()) {
+                System.out.println("Message processed by the server");
+              } else {
+                System.out.println("Message not confirmed: " + receipt.cause().getMessage());
+              }
+            });
+            if (connection.publishWindowFull()) {
+              connection.publishDrainHandler(v -> {
+                // Resume the publication
+              });
+            }
+          } else {
+            System.out.println("Failed to connect to the STOMP server: " + ar.cause().toString());
+          }
+        });
+  }
+
 
 }
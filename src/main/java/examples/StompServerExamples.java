@@ -149,6 +149,19 @@ public class StompServerExamples {
         .listen();
   }
 
+  public void example19(Vertx vertx) {
+    StompServer server = StompServer.create(vertx)
+        .handler(StompServerHandler.create(vertx)
+            .destinationFactory((v, name) -> {
+              if (name.startsWith("/topic/")) {
+                return Destination.wildcardTopic(vertx, "/topic/");
+              } else {
+                return Destination.queue(vertx, name);
+              }
+            }))
+        .listen();
+  }
+
   public void example13(Vertx vertx) {
     StompServer server = StompServer.create(vertx)
         .handler(StompServerHandler.create(vertx)
@@ -16,7 +16,11 @@
 
 package io.vertx.ext.stomp;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.ext.stomp.impl.ProducerFlowControl;
 import io.vertx.ext.stomp.impl.Transaction;
 import io.vertx.ext.stomp.impl.Transactions;
 import io.vertx.ext.stomp.utils.Headers;
@@ -29,7 +33,8 @@ import java.util.UUID;
 /**
  * STOMP compliant actions executed when receiving a {@code COMMIT} frame. All frames that are part of the
  * transactions are processed ({@code ACK/NACK} and {@code SEND} frames). If the {@code COMMIT} frame defines a {@code
- * receipt}, the {@code RECEIPT} frame is sent once all frames have been replayed.
+ * receipt}, the {@code RECEIPT} frame is sent once all frames have been replayed, and the {@code persistent:true}
+ * frames have been stored. If a frame cannot be stored, an {@code ERROR} frame is sent instead.
  * <p/>
  * This handler is thread safe.
  *
@@ -59,14 +64,34 @@ public class DefaultCommitHandler implements Handler<ServerFrame> {
       return;
     }
 
-    replay(connection, transaction.getFrames());
+    replay(connection, transaction.getFrames(), ar -> {
+      if (ar.succeeded()) {
+        Frames.handleReceipt(frame, connection);
+      } else {
+        connection.write(Frames.createErrorFrame("Message not stored",
+            Headers.create(Frame.TRANSACTION, txId),
+            "Transaction commit failed - " + ar.cause().getMessage()));
+      }
+    });
     transaction.clear();
     Transactions.instance().unregisterTransaction(connection, txId);
-
-    Frames.handleReceipt(frame, connection);
   }
 
-  private void replay(StompServerConnection connection, List<Frame> frames) {
+  /**
+   * Replays the given frames.
+   *
+   * @param connection the connection
+   * @param frames     the frames
+   * @param handler    called once all the frames have been replayed and the {@code persistent:true} frames stored,
+   *                   failed if a frame cannot be stored
+   */
+  private void replay(StompServerConnection connection, List<Frame> frames, Handler<AsyncResult<Void>> handler) {
+    if (frames.isEmpty()) {
+      handler.handle(Future.succeededFuture());
+      return;
+    }
+    // Completed once the message is durable, one per persistent frame.
+    List<Future> stored = new ArrayList<>();
     // To avoid blocking the event loop for too long, we replay the transaction chunk by chunk.
     Iterator<Frame> iterator = frames.iterator();
     while (iterator.hasNext()) {
@@ -74,20 +99,38 @@ public class DefaultCommitHandler implements Handler<ServerFrame> {
       while (iterator.hasNext() && chunk.size() < connection.server().options().getTransactionChunkSize()) {
         chunk.add(iterator.next());
       }
-      connection.server().vertx().runOnContext(v -> replayChunk(connection, chunk));
+      boolean last = !iterator.hasNext();
+      connection.server().vertx().runOnContext(v -> {
+        replayChunk(connection, chunk, stored);
+        if (last) {
+          // The chunks are replayed in order, all the frames have been dispatched.
+          CompositeFuture.all(stored).setHandler(ar -> handler.handle(ar.succeeded() ?
+              Future.succeededFuture() : Future.failedFuture(ar.cause())));
+        }
+      });
     }
   }
 
-  private void replayChunk(StompServerConnection connection, List<Frame> frames) {
+  private void replayChunk(StompServerConnection connection, List<Frame> frames, List<Future> stored) {
     final List<Destination> destinations = connection.handler().getDestinations();
     for (Frame frame : frames) {
       switch (frame.getCommand()) {
         case SEND:
           // We are sure that the destination is set, as the check is made before enqueuing the frame.
           String destination = frame.getHeader(Frame.DESTINATION);
-          Destination dest = connection.handler().getDestination(destination);
-          if (dest != null) {
-            dest.dispatch(connection, frame);
+          boolean persistent = "true".equals(frame.getHeader(MessageStore.PERSISTENT));
+          Destination dest = DefaultSendHandler.getDestination(connection, destination, persistent);
+          if (dest == null && persistent) {
+            stored.add(Future.failedFuture("no destination can store the message sent to " + destination));
+          } else if (dest != null) {
+            if (persistent) {
+              Future<Void> future = Future.future();
+              stored.add(future);
+              dest.dispatch(connection, frame, future.completer());
+            } else {
+              dest.dispatch(connection, frame);
+            }
+            ProducerFlowControl.throttleProducer(connection, dest);
           }
           break;
         case ACK:
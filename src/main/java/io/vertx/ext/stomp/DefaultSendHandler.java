@@ -17,10 +17,19 @@
 package io.vertx.ext.stomp;
 
 import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.stomp.impl.BodyStream;
+import io.vertx.ext.stomp.impl.DefaultStompHandler;
+import io.vertx.ext.stomp.impl.ProducerFlowControl;
+import io.vertx.ext.stomp.impl.Queue;
+import io.vertx.ext.stomp.impl.ServerFrameImpl;
 import io.vertx.ext.stomp.impl.Transaction;
 import io.vertx.ext.stomp.impl.Transactions;
 import io.vertx.ext.stomp.utils.Headers;
 
+import java.util.function.Predicate;
+
 /**
  * STOMP compliant actions executed when receiving a {@code SEND} sf.frame().
  * <p/>
@@ -33,6 +42,22 @@ import io.vertx.ext.stomp.utils.Headers;
  * If the {@code SEND} frame requires an acknowledgment, the {@code message-id} is added to the list of messages
  * waiting for acknowledgment.
  * <p/>
+ * If the body of the {@code SEND} frame is streamed, the destination receives the body stream, and the {@code RECEIPT}
+ * frame is sent once the whole body has been dispatched. Frames sent in a transaction are read entirely first.
+ * <p/>
+ * The {@code RECEIPT} frame of the frames having the {@code persistent:true} header is sent once the destination has
+ * stored the message (see {@link MessageStore}).
+ * <p/>
+ * When the backlog of the queues is enabled, or when the frame has the {@code persistent:true} header, the destination
+ * is created if it does not exist yet, so the message is kept until a subscriber subscribes. It is only created if the
+ * {@link DestinationFactory} creates a queue, with a {@link MessageStore} for a {@code persistent:true} frame. The
+ * other destinations (such as topics) would not keep the message, and would stay registered. A
+ * {@code persistent:true} frame for which no destination exists or can be created is rejected with an {@code ERROR}
+ * frame.
+ * <p/>
+ * Once the frame has been dispatched, the server stops reading from the connection if the destination keeps too many
+ * messages in memory (see {@link StompServerOptions#setDestinationMemoryLimit(long)}).
+ * <p/>
  * This handler is thread safe.
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
@@ -54,6 +79,20 @@ public class DefaultSendHandler implements Handler<ServerFrame> {
     // Handle transaction
     String txId = sf.frame().getHeader(Frame.TRANSACTION);
     if (txId != null) {
+      if (sf.bodyStream() != null) {
+        // The transaction keeps the frame until the commit, so read the whole body.
+        BodyStream.collect(sf.bodyStream(), ar -> {
+          if (ar.succeeded()) {
+            handle(new ServerFrameImpl(sf.frame().setBody(ar.result()), sf.connection()));
+          } else {
+            sf.connection().write(Frames.createErrorFrame(
+                "Message not added to transaction",
+                Headers.create(Frame.DESTINATION, destination, Frame.TRANSACTION, txId),
+                "Message delivery failed - the body cannot be read - " + ar.cause().getMessage()));
+          }
+        });
+        return;
+      }
       Transaction transaction = Transactions.instance().getTransaction(sf.connection(), txId);
       if (transaction == null) {
         // No transaction.
@@ -82,7 +121,15 @@ public class DefaultSendHandler implements Handler<ServerFrame> {
       }
     }
 
-    final Destination dest = sf.connection().handler().getDestination(destination);
+    final boolean persistent = "true".equals(sf.frame().getHeader(MessageStore.PERSISTENT));
+    final Destination dest = getDestination(sf.connection(), destination, persistent);
+    if (dest == null && persistent) {
+      sf.connection().write(Frames.createErrorFrame(
+          "Message not stored",
+          Headers.create(Frame.DESTINATION, destination),
+          "Message delivery failed - no destination can store the message"));
+      return;
+    }
     if (dest == null && sf.connection().server().options().isSendErrorOnNoSubscriptions()) {
       Frame errorFrame = Frames.createErrorFrame(
           "No subscriptions",
@@ -93,14 +140,89 @@ public class DefaultSendHandler implements Handler<ServerFrame> {
       return;
     }
 
+    ReadStream<Buffer> body = sf.bodyStream();
+    if (body != null) {
+      if (dest == null) {
+        // No destination, skip the body.
+        body.endHandler(v -> Frames.handleReceipt(sf.frame(), sf.connection())).handler(chunk -> {
+        });
+      } else {
+        dest.dispatch(sf.connection(), sf.frame(), body, ar -> {
+          // On failure, the error is managed by the destination.
+          if (ar.succeeded()) {
+            Frames.handleReceipt(sf.frame(), sf.connection());
+          }
+        });
+        ProducerFlowControl.throttleProducer(sf.connection(), dest);
+      }
+      return;
+    }
+
+    if (persistent) {
+      // The receipt is sent once the message has been stored.
+      dest.dispatch(sf.connection(), sf.frame(), ar -> {
+        if (ar.succeeded()) {
+          Frames.handleReceipt(sf.frame(), sf.connection());
+        } else {
+          sf.connection().write(Frames.createErrorFrame(
+              "Message not stored",
+              Headers.create(Frame.DESTINATION, destination),
+              "Message delivery failed - " + ar.cause().getMessage()));
+        }
+      });
+      ProducerFlowControl.throttleProducer(sf.connection(), dest);
+      return;
+    }
+
     if (dest != null) {
       if (dest.dispatch(sf.connection(), sf.frame()) == null) {
         // Error managed by the destination.
         return;
       }
+      ProducerFlowControl.throttleProducer(sf.connection(), dest);
     }
 
     Frames.handleReceipt(sf.frame(), sf.connection());
   }
 
+  /**
+   * Gets the destination of a {@code SEND} frame. It is created when the queues keep the messages sent without
+   * subscriptions (see {@link StompServerOptions#setQueueBacklogSize(long)}) and the destination created by the
+   * {@link DestinationFactory} is a queue, or when the frame must be stored and the created destination is a queue
+   * storing it.
+   *
+   * @param connection  the connection
+   * @param destination the destination address
+   * @param persistent  whether or not the frame has the {@code persistent:true} header
+   * @return the destination, {@code null} if none
+   */
+  static Destination getDestination(StompServerConnection connection, String destination, boolean persistent) {
+    StompServerOptions options = connection.server().options();
+    if (persistent) {
+      return getOrCreateDestination(connection, destination,
+          created -> created instanceof Queue && ((Queue) created).storesMessages());
+    }
+    if (options.getQueueBacklogSize() >= 0) {
+      return getOrCreateDestination(connection, destination, created -> created instanceof Queue);
+    }
+    return connection.handler().getDestination(destination);
+  }
+
+  /**
+   * Gets the destination, or creates it if the created destination is accepted by the given filter. The destinations
+   * are not created when the handler of the server is not the default one.
+   *
+   * @param connection  the connection
+   * @param destination the destination address
+   * @param filter      checks the created destination
+   * @return the destination, {@code null} if none
+   */
+  private static Destination getOrCreateDestination(StompServerConnection connection, String destination,
+                                                    Predicate<Destination> filter) {
+    StompServerHandler handler = connection.handler();
+    if (handler instanceof DefaultStompHandler) {
+      return ((DefaultStompHandler) handler).getOrCreateDestination(destination, filter);
+    }
+    return handler.getDestination(destination);
+  }
 }
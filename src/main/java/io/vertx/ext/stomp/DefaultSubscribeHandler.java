@@ -17,10 +17,9 @@
 package io.vertx.ext.stomp;
 
 import io.vertx.core.Handler;
+import io.vertx.ext.stomp.impl.ConnectionSubscriptions;
 import io.vertx.ext.stomp.utils.Headers;
 
-import java.util.List;
-
 /**
  * STOMP compliant actions executed when receiving a {@code SUBSCRIBE} frame.
  * <p/>
@@ -50,25 +49,21 @@ public class DefaultSubscribeHandler implements Handler<ServerFrame> {
     }
 
     // Ensure that the subscription id is unique
-    int count = 0;
-    for (Destination dest : connection.handler().getDestinations()) {
-      List<String> ids = dest.getSubscriptions(connection);
-      count += ids.size();
-      if (ids.contains(id)) {
-        connection.write(Frames.createErrorFrame(
-            "Invalid subscription",
-            Headers.create(frame.getHeaders()), "'id'" +
-                " already used by this connection."));
-        connection.close();
-        return;
-      }
-      if (count + 1 > connection.server().options().getMaxSubscriptionsByClient()) {
-        connection.write(Frames.createErrorFrame(
-            "Invalid subscription",
-            Headers.create(frame.getHeaders()), "Too many subscriptions"));
-        connection.close();
-        return;
-      }
+    ConnectionSubscriptions subscriptions = ConnectionSubscriptions.of(connection);
+    if (subscriptions.contains(id)) {
+      connection.write(Frames.createErrorFrame(
+          "Invalid subscription",
+          Headers.create(frame.getHeaders()), "'id'" +
+              " already used by this connection."));
+      connection.close();
+      return;
+    }
+    if (subscriptions.size() + 1 > connection.server().options().getMaxSubscriptionsByClient()) {
+      connection.write(Frames.createErrorFrame(
+          "Invalid subscription",
+          Headers.create(frame.getHeaders()), "Too many subscriptions"));
+      connection.close();
+      return;
     }
 
     final Destination dest = connection.handler().getOrCreateDestination(destination);
@@ -81,6 +76,7 @@ public class DefaultSubscribeHandler implements Handler<ServerFrame> {
         connection.close();
         return;
       }
+      subscriptions.add(id, dest);
     } else {
       connection.write(Frames.createErrorFrame(
           "Invalid subscription",
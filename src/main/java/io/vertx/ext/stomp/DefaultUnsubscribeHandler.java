@@ -17,10 +17,9 @@
 package io.vertx.ext.stomp;
 
 import io.vertx.core.Handler;
+import io.vertx.ext.stomp.impl.ConnectionSubscriptions;
 import io.vertx.ext.stomp.utils.Headers;
 
-import java.util.List;
-
 /**
  * STOMP compliant actions executed when receiving a {@code UNSUBSCRIBE} frame.
  * <p/>
@@ -45,12 +44,17 @@ public class DefaultUnsubscribeHandler implements Handler<ServerFrame> {
       return;
     }
 
-    List<Destination> destinations = connection.handler().getDestinations();
     boolean handled = false;
-    for (Destination destination : destinations) {
-      if (destination.unsubscribe(connection, frame)) {
-        handled = true;
-        break;
+    Destination subscribed = ConnectionSubscriptions.of(connection).remove(id);
+    if (subscribed != null) {
+      handled = subscribed.unsubscribe(connection, frame);
+    } else {
+      // Not subscribed using the default subscribe handler.
+      for (Destination destination : connection.handler().getDestinations()) {
+        if (destination.unsubscribe(connection, frame)) {
+          handled = true;
+          break;
+        }
       }
     }
 
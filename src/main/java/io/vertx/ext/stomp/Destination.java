@@ -17,13 +17,20 @@
 package io.vertx.ext.stomp;
 
 import io.vertx.codegen.annotations.Fluent;
+import io.vertx.codegen.annotations.GenIgnore;
 import io.vertx.codegen.annotations.VertxGen;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.shareddata.Shareable;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.stomp.impl.BodyStream;
 import io.vertx.ext.stomp.impl.EventBusBridge;
 import io.vertx.ext.stomp.impl.Queue;
 import io.vertx.ext.stomp.impl.Topic;
+import io.vertx.ext.stomp.impl.WildcardTopic;
 
 import java.util.List;
 
@@ -47,10 +54,41 @@ public interface Destination extends Shareable {
     return new Queue(vertx, destination);
   }
 
+  /**
+   * Creates a queue keeping the messages sent with the {@code persistent:true} header in the given store, until they
+   * are consumed. The messages stored for the destination and not consumed yet (such as the messages recovered when
+   * the store has been opened) are delivered first.
+   *
+   * @param vertx       the vert.x instance
+   * @param destination the destination
+   * @param store       the store, shared by the queues
+   * @return the destination
+   */
+  @GenIgnore
+  static Destination queue(Vertx vertx, String destination, MessageStore store) {
+    return new Queue(vertx, destination, store);
+  }
+
   static Destination bridge(Vertx vertx, BridgeOptions options) {
     return new EventBusBridge(vertx, options);
   }
 
+  /**
+   * Creates a topic handling all the destinations starting with the given prefix. Destination names are split in
+   * segments separated by {@code .}, and subscriptions can use the {@code *} (exactly one segment) and {@code #}
+   * (zero or more segments) wildcards, such as in {@code /topic/prices.EUR.*}.
+   * <p/>
+   * The {@link DestinationFactory} can return the same topic for all the destinations starting with the prefix, it is
+   * created only once.
+   *
+   * @param vertx  the vert.x instance
+   * @param prefix the prefix of the destinations handled by the topic
+   * @return the destination
+   */
+  static Destination wildcardTopic(Vertx vertx, String prefix) {
+    return new WildcardTopic(vertx, prefix);
+  }
+
   /**
    * @return the destination address.
    */
@@ -66,6 +104,49 @@ public interface Destination extends Shareable {
   @Fluent
   Destination dispatch(StompServerConnection connection, Frame frame);
 
+  /**
+   * Dispatches the given frame, and notifies the given handler once the frame has been handled. The
+   * {@link io.vertx.ext.stomp.DefaultSendHandler} uses it for the {@code persistent:true} frames, and sends the
+   * {@code RECEIPT} frame once the handler is notified. By default, the frame is dispatched using
+   * {@link #dispatch(StompServerConnection, Frame)}, and the handler is notified immediately. Implementations
+   * storing the messages override this method to notify the handler once the message is durable.
+   *
+   * @param connection        the connection
+   * @param frame             the frame
+   * @param completionHandler called once the frame has been handled, failed if the dispatch has failed
+   * @return the current instance of {@link Destination}
+   */
+  @Fluent
+  default Destination dispatch(StompServerConnection connection, Frame frame,
+                               Handler<AsyncResult<Void>> completionHandler) {
+    if (dispatch(connection, frame) == null) {
+      completionHandler.handle(Future.failedFuture("The frame has not been dispatched"));
+    } else {
+      completionHandler.handle(Future.succeededFuture());
+    }
+    return this;
+  }
+
+  /**
+   * Dispatches the given frame, whose body is streamed (see
+   * {@link StompServerOptions#setStreamedBodyThreshold(int)}). By default, the body is read entirely, and the frame
+   * is dispatched using {@link #dispatch(StompServerConnection, Frame)}. Implementations can override this method to
+   * relay the body as it is received.
+   *
+   * @param connection        the connection
+   * @param frame             the frame, without body
+   * @param body              the body
+   * @param completionHandler called once the frame has been dispatched, failed if the dispatch has failed (the error
+   *                          being managed by the destination)
+   * @return the current instance of {@link Destination}
+   */
+  @Fluent
+  default Destination dispatch(StompServerConnection connection, Frame frame, ReadStream<Buffer> body,
+                               Handler<AsyncResult<Void>> completionHandler) {
+    BodyStream.collectAndDispatch(this, connection, frame, body, completionHandler);
+    return this;
+  }
+
   /**
    * Handles a subscription request to the current {@link Destination}.
    *
@@ -20,10 +20,10 @@ import io.vertx.codegen.annotations.DataObject;
 import io.vertx.codegen.annotations.GenIgnore;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.stomp.impl.FrameEncoder;
 import io.vertx.ext.stomp.impl.FrameException;
 import io.vertx.ext.stomp.impl.FrameParser;
-import io.vertx.ext.stomp.impl.HeaderCodec;
-import io.vertx.ext.stomp.utils.Headers;
+import io.vertx.ext.stomp.impl.LazyHeaders;
 
 import java.util.Arrays;
 import java.util.List;
@@ -72,6 +72,12 @@ public class Frame {
   public static final String TRANSACTION = "transaction";
   public static final String MESSAGE = "message";
 
+  /**
+   * Header of the {@code SUBSCRIBE} frames limiting the number of messages sent to the subscription and not
+   * acknowledged yet. It is not part of the STOMP specification, and is only supported by the queues.
+   */
+  public static final String PREFETCH_COUNT = "prefetch-count";
+
   /**
    * Header used when a frame using an unknown command is received. The created {@link Frame} object uses
    * the {@link Command#UNKNOWN} command and gives the original command in this header.
@@ -220,7 +226,7 @@ public class Frame {
    */
   public Frame() {
     // Default constructor.
-    headers = new Headers();
+    headers = new LazyHeaders();
   }
 
   /**
@@ -448,11 +454,7 @@ public class Frame {
    * header encoding).
    */
   public Buffer toBuffer(boolean trailingLine) {
-    Buffer buffer = toBuffer();
-    if (trailingLine) {
-      buffer.appendString("\n");
-    }
-    return buffer;
+    return FrameEncoder.encode(this, trailingLine);
   }
 
   /**
@@ -462,22 +464,7 @@ public class Frame {
    * header encoding).
    */
   public Buffer toBuffer() {
-    Buffer buffer = Buffer.buffer(command.name() + "\n");
-    for (Map.Entry<String, String> entry : headers.entrySet()) {
-      buffer.appendString(encode(entry.getKey()) + ":" + encode(entry.getValue()) + "\n");
-    }
-    buffer.appendString("\n");
-    if (body != null) {
-      buffer.appendBuffer(body);
-    }
-    buffer.appendString(FrameParser.NULL);
-    return buffer;
-  }
-
-  private String encode(String header) {
-    // By spec, frame headers need to be encoded. CONNECT and CONNECTED frames do not encode \r \n \c but still
-    // require the encoding of \\.
-    return HeaderCodec.encode(header, command == Command.CONNECT || command == Command.CONNECTED);
+    return FrameEncoder.encode(this, false);
   }
 
   public String toString() {
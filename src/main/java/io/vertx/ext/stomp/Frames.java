@@ -43,6 +43,15 @@ public interface Frames {
     public Buffer toBuffer() {
       return Buffer.buffer(FrameParser.EOL);
     }
+
+    @Override
+    public Buffer toBuffer(boolean trailingLine) {
+      Buffer buffer = toBuffer();
+      if (trailingLine) {
+        buffer.appendString(FrameParser.EOL);
+      }
+      return buffer;
+    }
   };
 
   static Frame createErrorFrame(String message, Map<String, String> headers, String body) {
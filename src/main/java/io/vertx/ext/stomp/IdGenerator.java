@@ -0,0 +1,73 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp;
+
+import io.vertx.ext.stomp.impl.CounterIdGenerator;
+
+import java.util.UUID;
+
+/**
+ * SPI generating the ids of the messages, of the sessions and of the receipts. It is configured with
+ * {@link StompServerOptions#setIdGenerator(IdGenerator)} and {@link StompClientOptions#setIdGenerator(IdGenerator)}.
+ * <p/>
+ * The ids must be unique, but do not need to be unguessable. The default generator ({@link #counter()}) does not
+ * contend between threads, but its ids are predictable. Use {@link #uuid()} if the ids must not be guessed.
+ * <p/>
+ * Implementations <strong>must</strong> be thread-safe.
+ */
+@FunctionalInterface
+public interface IdGenerator {
+
+  /**
+   * Gets the generator of short ASCII ids made of a node prefix, an index identifying the calling thread (an event
+   * loop most of the time), and a counter incremented by this thread. The node prefix is picked randomly once per
+   * JVM.
+   *
+   * @return the generator, shared by the JVM
+   */
+  static IdGenerator counter() {
+    return CounterIdGenerator.DEFAULT;
+  }
+
+  /**
+   * Creates a generator of short ASCII ids made of the given node prefix, an index identifying the calling thread,
+   * and a counter incremented by this thread. Ids are unique across the nodes using distinct prefixes.
+   *
+   * @param node the node prefix
+   * @return the generator
+   */
+  static IdGenerator counter(String node) {
+    return new CounterIdGenerator(node);
+  }
+
+  /**
+   * Gets the generator of random UUIDs. The ids are unguessable, but the generation goes through a shared
+   * {@link java.security.SecureRandom}.
+   *
+   * @return the generator
+   */
+  static IdGenerator uuid() {
+    return () -> UUID.randomUUID().toString();
+  }
+
+  /**
+   * Generates an id.
+   *
+   * @return the id
+   */
+  String next();
+}
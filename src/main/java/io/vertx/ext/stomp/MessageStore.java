@@ -0,0 +1,115 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.stomp.impl.JournalMessageStore;
+
+import java.io.IOException;
+
+/**
+ * SPI letting the {@link Destination} implementations keep their messages across restarts. The {@link Destination}
+ * created by {@link Destination#queue(Vertx, String, MessageStore)} stores the {@code SEND} frames having the
+ * {@code persistent:true} header, and removes them once they have been consumed.
+ * <p/>
+ * The messages are identified by a positive id assigned by the store, increasing with the appends.
+ * <p/>
+ * Implementations <strong>must</strong> be thread-safe.
+ */
+public interface MessageStore {
+
+  /**
+   * Header set to {@code true} on the {@code SEND} frames that must be stored.
+   */
+  String PERSISTENT = "persistent";
+
+  /**
+   * Opens (or creates) an append-only journal of memory-mapped segment files in the given directory. The messages
+   * not consumed before the previous shutdown are recovered. This method blocks, and must not be called from an
+   * event loop.
+   *
+   * @param vertx     the vert.x instance, used to sync the journal without blocking the event loops
+   * @param directory the directory
+   * @return the store
+   * @throws IOException if the journal cannot be opened
+   */
+  static MessageStore journal(Vertx vertx, String directory) throws IOException {
+    return new JournalMessageStore(vertx, directory, JournalMessageStore.DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Same as {@link #journal(Vertx, String)}, with the size of the segment files.
+   *
+   * @param vertx       the vert.x instance
+   * @param directory   the directory
+   * @param segmentSize the size of the segment files in bytes, a message cannot be larger
+   * @return the store
+   * @throws IOException if the journal cannot be opened
+   */
+  static MessageStore journal(Vertx vertx, String directory, int segmentSize) throws IOException {
+    return new JournalMessageStore(vertx, directory, segmentSize);
+  }
+
+  /**
+   * Stores a message. The message may not be durable before the completion of a {@link #sync(Handler)} call.
+   *
+   * @param destination the destination of the message
+   * @param frame       the frame
+   * @return the id of the message
+   */
+  long append(String destination, Frame frame);
+
+  /**
+   * Makes the messages appended so far durable. The calls made while a sync is in progress are grouped, and
+   * completed by the next one.
+   *
+   * @param handler called once the messages are durable
+   */
+  void sync(Handler<AsyncResult<Void>> handler);
+
+  /**
+   * Removes a message, once it has been consumed.
+   *
+   * @param id the id of the message
+   */
+  void acknowledge(long id);
+
+  /**
+   * Gets the ids of the messages stored for the given destination and not acknowledged yet, including the messages
+   * recovered when the store has been opened.
+   *
+   * @param destination the destination
+   * @return the ids, in the order the messages have been appended
+   */
+  long[] pending(String destination);
+
+  /**
+   * Reads a stored message.
+   *
+   * @param id the id of the message
+   * @return the frame, {@code null} if the message does not exist, or has been acknowledged
+   */
+  Frame read(long id);
+
+  /**
+   * Closes the store. The pending messages are kept.
+   */
+  void close();
+}
@@ -17,6 +17,8 @@
 package io.vertx.ext.stomp;
 
 import io.vertx.codegen.annotations.VertxGen;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
 
 /**
  * Structure passed to server handler when receiving a frame. It provides a reference on the received {@link Frame}
@@ -37,4 +39,15 @@ public interface ServerFrame {
    */
   StompServerConnection connection();
 
+  /**
+   * Gets the body of the frame when it is streamed (see {@link StompServerOptions#setStreamedBodyThreshold(int)}). In
+   * this case, the body of {@link #frame()} is {@code null}, and the stream must be consumed, as the reception is
+   * paused until the body is read.
+   *
+   * @return the body stream, {@code null} if the body is not streamed
+   */
+  default ReadStream<Buffer> bodyStream() {
+    return null;
+  }
+
 }
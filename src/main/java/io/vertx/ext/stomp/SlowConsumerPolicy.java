@@ -0,0 +1,53 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp;
+
+import io.vertx.codegen.annotations.VertxGen;
+
+/**
+ * The actions taken by the server when the frames waiting to be written on a connection exceed the high-water mark
+ * (see {@link StompServerOptions#setOutboundHighWaterMark(int)}).
+ */
+@VertxGen
+public enum SlowConsumerPolicy {
+
+  /**
+   * The frames are kept, but the server stops reading from the connection that has sent the message, until the
+   * frames waiting to be written go back under the high-water mark. Only the frames written while the server handles
+   * a frame received from a connection can pause it: the frames written by timers, by the event bus bridge, or when a
+   * transaction is committed are kept without pausing any connection.
+   */
+  PAUSE_PRODUCER,
+
+  /**
+   * The oldest {@code MESSAGE} frames waiting to be written are dropped. The other frames ({@code RECEIPT},
+   * {@code ERROR}...) are never dropped.
+   */
+  DROP_OLDEST,
+
+  /**
+   * The {@code MESSAGE} frames that would exceed the high-water mark are dropped. The other frames ({@code RECEIPT},
+   * {@code ERROR}...) are never dropped.
+   */
+  DROP_NEWEST,
+
+  /**
+   * An {@code ERROR} frame is sent, and the connection is closed.
+   */
+  DISCONNECT
+}
@@ -18,6 +18,7 @@ package io.vertx.ext.stomp;
 
 import io.vertx.codegen.annotations.Fluent;
 import io.vertx.codegen.annotations.VertxGen;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
 
@@ -145,6 +146,63 @@ public interface StompClientConnection {
   @Fluent
   StompClientConnection send(String destination, Map<String, String> headers, Buffer body, Handler<Frame> receiptHandler);
 
+  /**
+   * Publishes a {@code SEND} frame to the given destination, requesting a receipt. Several frames can be published
+   * without waiting for their receipts, up to the {@link StompClientOptions#setPublishWindowSize(int)}. Once this
+   * window is full, the frames are kept by the client, and written when receipts are received (see
+   * {@link #publishWindowFull()}).
+   *
+   * @param destination the destination, must not be {@code null}
+   * @param body        the body, may be {@code null}
+   * @return a future completed with the sent frame when the {@code RECEIPT} frame associated with the sent frame has
+   * been received, or failed if the receipt has not been received in time (see
+   * {@link StompClientOptions#setPublishTimeout(long)}) or if the connection is closed before
+   */
+  Future<Frame> publish(String destination, Buffer body);
+
+  /**
+   * Publishes a {@code SEND} frame to the given destination, requesting a receipt. See
+   * {@link #publish(String, Buffer)}.
+   *
+   * @param destination the destination, must not be {@code null}
+   * @param headers     the header. The {@code destination} header is replaced by the value given to the {@code
+   *                    destination} parameter
+   * @param body        the body, may be {@code null}
+   * @return a future completed with the sent frame when the {@code RECEIPT} frame associated with the sent frame has
+   * been received, or failed if the receipt has not been received in time or if the connection is closed before
+   */
+  Future<Frame> publish(String destination, Map<String, String> headers, Buffer body);
+
+  /**
+   * Publishes the given frame, requesting a receipt. See {@link #publish(String, Buffer)}. If the frame already has a
+   * {@code receipt} header, such as a frame published again after a failure, its value is used, and the publication
+   * fails if another publication with the same receipt id is waiting for its receipt.
+   *
+   * @param frame the frame
+   * @return a future completed with the sent frame when the {@code RECEIPT} frame associated with the sent frame has
+   * been received, or failed if the receipt has not been received in time or if the connection is closed before
+   */
+  Future<Frame> publish(Frame frame);
+
+  /**
+   * Checks whether the frames published and waiting for their receipt fill the
+   * {@link StompClientOptions#setPublishWindowSize(int)}. The frames published meanwhile are kept by the client until
+   * receipts are received, so the publisher should wait for the {@link #publishDrainHandler(Handler)} to be called.
+   *
+   * @return {@code true} if the window is full
+   */
+  boolean publishWindowFull();
+
+  /**
+   * Sets a handler called when the window of the published frames is no more full (the frames waiting for their
+   * receipt fill at most half of the window).
+   *
+   * @param handler the handler
+   * @return the current {@link StompClientConnection}
+   */
+  @Fluent
+  StompClientConnection publishDrainHandler(Handler<Void> handler);
+
   /**
    * Subscribes to the given destination. This destination is used as subscription id.
    *
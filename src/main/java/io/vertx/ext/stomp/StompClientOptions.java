@@ -17,12 +17,14 @@
 package io.vertx.ext.stomp;
 
 import io.vertx.codegen.annotations.DataObject;
+import io.vertx.codegen.annotations.GenIgnore;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.NetClientOptions;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Options used to configure a STOMP client. As a STOMP client wraps a Net client, you can also configure the
@@ -33,6 +35,11 @@ import java.util.List;
 @DataObject(generateConverter = true)
 public class StompClientOptions extends NetClientOptions implements StompOptions {
 
+  public static final int DEFAULT_WRITE_BATCH_MAX_BYTES = -1;
+  public static final long DEFAULT_WRITE_BATCH_MAX_DELAY = 0;
+
+  public static final int DEFAULT_PUBLISH_WINDOW_SIZE = 1000;
+  public static final long DEFAULT_PUBLISH_TIMEOUT = 30000;
 
   private List<String> acceptedVersions;
   private int port = DEFAULT_STOMP_PORT;
@@ -45,6 +52,11 @@ public class StompClientOptions extends NetClientOptions implements StompOptions
   private JsonObject heartbeat = DEFAULT_STOMP_HEARTBEAT;
   private String virtualHost;
   private boolean trailingLine = DEFAULT_TRAILING_LINE;
+  private IdGenerator idGenerator = IdGenerator.counter();
+  private int writeBatchMaxBytes = DEFAULT_WRITE_BATCH_MAX_BYTES;
+  private long writeBatchMaxDelay = DEFAULT_WRITE_BATCH_MAX_DELAY;
+  private int publishWindowSize = DEFAULT_PUBLISH_WINDOW_SIZE;
+  private long publishTimeout = DEFAULT_PUBLISH_TIMEOUT;
 
   /**
    * Default constructor.
@@ -72,6 +84,11 @@ public class StompClientOptions extends NetClientOptions implements StompOptions
     this.heartbeat = other.heartbeat;
     this.virtualHost = other.virtualHost;
     this.trailingLine = other.trailingLine;
+    this.idGenerator = other.idGenerator;
+    this.writeBatchMaxBytes = other.writeBatchMaxBytes;
+    this.writeBatchMaxDelay = other.writeBatchMaxDelay;
+    this.publishWindowSize = other.publishWindowSize;
+    this.publishTimeout = other.publishTimeout;
   }
 
   /**
@@ -334,4 +351,119 @@ public class StompClientOptions extends NetClientOptions implements StompOptions
     this.trailingLine = trailingLine;
     return this;
   }
+
+  /**
+   * @return the generator of the ids of the receipts
+   */
+  @GenIgnore
+  public IdGenerator getIdGenerator() {
+    return idGenerator;
+  }
+
+  /**
+   * Sets the generator of the ids of the receipts. The default generator ({@link IdGenerator#counter()}) produces
+   * short ids from per-thread counters, without contention, but the ids are predictable. Use
+   * {@link IdGenerator#uuid()} for unguessable ids. This option is not serialized to JSON.
+   *
+   * @param idGenerator the generator, must not be {@code null}
+   * @return the current {@link StompClientOptions}
+   */
+  @GenIgnore
+  public StompClientOptions setIdGenerator(IdGenerator idGenerator) {
+    this.idGenerator = Objects.requireNonNull(idGenerator);
+    return this;
+  }
+
+  /**
+   * Gets the number of bytes written with a single socket write when the frames sent by the connections are batched.
+   *
+   * @return the number of bytes, {@code -1} if the frames are not batched
+   */
+  public int getWriteBatchMaxBytes() {
+    return writeBatchMaxBytes;
+  }
+
+  /**
+   * Enables the batching of the frames sent by the connections, and sets the number of bytes written with a single
+   * socket write. The frames are then encoded by the sending thread and queued without locking, and the queue is
+   * drained on the context of the connection, with a socket write per batch of frames. A batch is written
+   * immediately once it reaches this size. Disabled ({@code -1}) by default: each frame is then written to the
+   * socket by the sending thread.
+   *
+   * @param writeBatchMaxBytes the number of bytes, a negative value disables the batching.
+   * @return the current {@link StompClientOptions}
+   */
+  public StompClientOptions setWriteBatchMaxBytes(int writeBatchMaxBytes) {
+    this.writeBatchMaxBytes = writeBatchMaxBytes;
+    return this;
+  }
+
+  /**
+   * Gets the time the frames sent by the connections wait to be batched with the next ones.
+   *
+   * @return the delay in milliseconds
+   */
+  public long getWriteBatchMaxDelay() {
+    return writeBatchMaxDelay;
+  }
+
+  /**
+   * Sets the time the frames sent by the connections wait to be batched with the next ones, when the batching is
+   * enabled (see {@link #setWriteBatchMaxBytes(int)}). With {@code 0}, the default, the frames are written as soon as
+   * the context of the connection drains the queue, so the frames sent meanwhile are batched without delaying them.
+   *
+   * @param writeBatchMaxDelay the delay in milliseconds
+   * @return the current {@link StompClientOptions}
+   */
+  public StompClientOptions setWriteBatchMaxDelay(long writeBatchMaxDelay) {
+    this.writeBatchMaxDelay = writeBatchMaxDelay;
+    return this;
+  }
+
+  /**
+   * Gets the number of frames published with {@link StompClientConnection#publish(Frame)} that can wait for their
+   * receipt.
+   *
+   * @return the number of frames
+   */
+  public int getPublishWindowSize() {
+    return publishWindowSize;
+  }
+
+  /**
+   * Sets the number of frames published with {@link StompClientConnection#publish(Frame)} that can wait for their
+   * receipt. Once this window is full, the published frames are kept by the client, and written when receipts are
+   * received. 1000 by default.
+   *
+   * @param publishWindowSize the number of frames, must be positive
+   * @return the current {@link StompClientOptions}
+   */
+  public StompClientOptions setPublishWindowSize(int publishWindowSize) {
+    this.publishWindowSize = publishWindowSize;
+    return this;
+  }
+
+  /**
+   * Gets the time after which a frame published with {@link StompClientConnection#publish(Frame)} is considered as
+   * failed if its receipt has not been received.
+   *
+   * @return the timeout in milliseconds, {@code -1} if none
+   */
+  public long getPublishTimeout() {
+    return publishTimeout;
+  }
+
+  /**
+   * Sets the time after which a frame published with {@link StompClientConnection#publish(Frame)} is considered as
+   * failed if its receipt has not been received, including the time spent waiting for the window to have room. The
+   * future returned when publishing the frame is then failed, and its place in the window is released. 30 seconds
+   * by default.
+   *
+   * @param publishTimeout the timeout in milliseconds, a negative value disables the timeout
+   * @return the current {@link StompClientOptions}
+   */
+  public StompClientOptions setPublishTimeout(long publishTimeout) {
+    this.publishTimeout = publishTimeout;
+    return this;
+  }
 }
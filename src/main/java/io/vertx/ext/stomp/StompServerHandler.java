@@ -17,6 +17,7 @@
 package io.vertx.ext.stomp;
 
 import io.vertx.codegen.annotations.Fluent;
+import io.vertx.codegen.annotations.GenIgnore;
 import io.vertx.codegen.annotations.VertxGen;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
@@ -24,6 +25,7 @@ import io.vertx.core.Vertx;
 import io.vertx.ext.auth.AuthProvider;
 import io.vertx.ext.auth.User;
 import io.vertx.ext.stomp.impl.DefaultStompHandler;
+import io.vertx.ext.stomp.impl.ServerFrameImpl;
 
 import java.util.List;
 
@@ -48,6 +50,21 @@ public interface StompServerHandler extends Handler<ServerFrame> {
     return new DefaultStompHandler(vertx);
   }
 
+  /**
+   * Handles the frames received in a single read from the given connection. By default, each frame is passed to
+   * {@link #handle(Object)}. Implementations can override this method to share the work between the frames of the
+   * batch.
+   *
+   * @param connection the connection
+   * @param frames     the frames, in the reception order
+   */
+  @GenIgnore
+  default void handle(StompServerConnection connection, List<Frame> frames) {
+    for (Frame frame : frames) {
+      handle(new ServerFrameImpl(frame, connection));
+    }
+  }
+
   /**
    * Configures a handler that get notified when a STOMP frame is received by the server.
    * This handler can be used for logging, debugging or ad-hoc behavior.
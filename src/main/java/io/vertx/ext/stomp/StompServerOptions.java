@@ -17,12 +17,14 @@
 package io.vertx.ext.stomp;
 
 import io.vertx.codegen.annotations.DataObject;
+import io.vertx.codegen.annotations.GenIgnore;
 import io.vertx.core.Handler;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.NetServerOptions;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * STOMP Server options. You can also configure the Net Server used by the STOMP server from these options.
@@ -43,6 +45,19 @@ public class StompServerOptions extends NetServerOptions implements StompOptions
 
   public static final String DEFAULT_WEBSOCKET_PATH = "/stomp";
 
+  public static final int DEFAULT_STREAMED_BODY_THRESHOLD = -1;
+
+  public static final int DEFAULT_OUTBOUND_HIGH_WATER_MARK = -1;
+  public static final SlowConsumerPolicy DEFAULT_SLOW_CONSUMER_POLICY = SlowConsumerPolicy.PAUSE_PRODUCER;
+
+  public static final long DEFAULT_DESTINATION_MEMORY_LIMIT = -1;
+  public static final long DEFAULT_MEMORY_LIMIT = -1;
+  public static final int DEFAULT_MEMORY_LOW_WATER_MARK = 70;
+
+  public static final long DEFAULT_QUEUE_BACKLOG_SIZE = -1;
+
+  public static final int DEFAULT_WRITE_COALESCING_THRESHOLD = -1;
+
 
   private int maxHeaderLength = DEFAULT_MAX_HEADER_LENGTH;
   private int maxHeaders = DEFAULT_MAX_HEADERS;
@@ -61,6 +76,16 @@ public class StompServerOptions extends NetServerOptions implements StompOptions
   private JsonObject heartbeat = DEFAULT_STOMP_HEARTBEAT;
   private int transactionChunkSize = DEFAULT_TRANSACTION_CHUNK_SIZE;
   private int maxSubscriptionsByClient = DEFAULT_MAX_SUBSCRIPTIONS_BY_CLIENT;
+  private int streamedBodyThreshold = DEFAULT_STREAMED_BODY_THRESHOLD;
+  private int outboundHighWaterMark = DEFAULT_OUTBOUND_HIGH_WATER_MARK;
+  private SlowConsumerPolicy slowConsumerPolicy = DEFAULT_SLOW_CONSUMER_POLICY;
+  private long destinationMemoryLimit = DEFAULT_DESTINATION_MEMORY_LIMIT;
+  private long memoryLimit = DEFAULT_MEMORY_LIMIT;
+  private int memoryLowWaterMark = DEFAULT_MEMORY_LOW_WATER_MARK;
+  private long queueBacklogSize = DEFAULT_QUEUE_BACKLOG_SIZE;
+  private String queueBacklogDirectory;
+  private IdGenerator idGenerator = IdGenerator.counter();
+  private int writeCoalescingThreshold = DEFAULT_WRITE_COALESCING_THRESHOLD;
 
   private boolean websocketBridge = false;
   private String websocketPath = DEFAULT_WEBSOCKET_PATH;
@@ -96,6 +121,16 @@ public class StompServerOptions extends NetServerOptions implements StompOptions
     this.maxFrameInTransaction = other.maxFrameInTransaction;
     this.transactionChunkSize = other.transactionChunkSize;
     this.maxSubscriptionsByClient = other.maxSubscriptionsByClient;
+    this.streamedBodyThreshold = other.streamedBodyThreshold;
+    this.outboundHighWaterMark = other.outboundHighWaterMark;
+    this.slowConsumerPolicy = other.slowConsumerPolicy;
+    this.destinationMemoryLimit = other.destinationMemoryLimit;
+    this.memoryLimit = other.memoryLimit;
+    this.memoryLowWaterMark = other.memoryLowWaterMark;
+    this.queueBacklogSize = other.queueBacklogSize;
+    this.queueBacklogDirectory = other.queueBacklogDirectory;
+    this.idGenerator = other.idGenerator;
+    this.writeCoalescingThreshold = other.writeCoalescingThreshold;
 
     this.websocketBridge = other.websocketBridge;
     this.websocketPath = other.websocketPath;
@@ -250,6 +285,29 @@ public class StompServerOptions extends NetServerOptions implements StompOptions
     return this;
   }
 
+  /**
+   * Gets the time in milliseconds given to a client to acknowledge a message received from a queue in the
+   * {@code client} or {@code client-individual} mode.
+   *
+   * @return the ack timeout in milliseconds, {@code 0} or less if disabled
+   */
+  public long getAckTimeout() {
+    return ackTimeout;
+  }
+
+  /**
+   * Sets the time in milliseconds given to a client to acknowledge a message received from a queue in the
+   * {@code client} or {@code client-individual} mode. Once this time has elapsed, the message is considered as not
+   * acknowledged, and is redelivered to another subscriber of the queue. 10 seconds by default.
+   *
+   * @param ackTimeout the ack timeout in milliseconds, {@code 0} or less disables the timeout.
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setAckTimeout(long ackTimeout) {
+    this.ackTimeout = ackTimeout;
+    return this;
+  }
+
   /**
    * Gets the time factor, i.e. a multiplier applied to time constraints as a window error. 1 by default.
    *
@@ -471,4 +529,229 @@ public class StompServerOptions extends NetServerOptions implements StompOptions
     this.trailingLine = trailingLine;
     return this;
   }
+
+  /**
+   * Gets the body length above which the body of the received {@code SEND} frames is streamed to the destination
+   * instead of being accumulated. Disabled ({@code -1}) by default.
+   *
+   * @return the threshold in bytes, {@code -1} if disabled
+   */
+  public int getStreamedBodyThreshold() {
+    return streamedBodyThreshold;
+  }
+
+  /**
+   * Sets the body length above which the body of the received {@code SEND} frames is streamed to the destination
+   * instead of being accumulated. It only applies to frames declaring their body length (the {@code content-length}
+   * header). The body is then relayed chunk by chunk to the subscribers, and the reception is paused while the
+   * subscribers cannot keep up. Disabled ({@code -1}) by default.
+   *
+   * @param streamedBodyThreshold the threshold in bytes, a negative value disables the streaming.
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setStreamedBodyThreshold(int streamedBodyThreshold) {
+    this.streamedBodyThreshold = streamedBodyThreshold;
+    return this;
+  }
+
+  /**
+   * Gets the number of bytes that can be kept for a connection whose write queue is full, before applying the
+   * {@link #getSlowConsumerPolicy()}.
+   *
+   * @return the high-water mark in bytes, {@code -1} if disabled
+   */
+  public int getOutboundHighWaterMark() {
+    return outboundHighWaterMark;
+  }
+
+  /**
+   * Sets the number of bytes that can be kept for a connection whose write queue is full (a slow consumer), before
+   * applying the {@link #setSlowConsumerPolicy(SlowConsumerPolicy)}. Disabled ({@code -1}) by default: the frames
+   * are then written to the connection whatever the size of its write queue.
+   *
+   * @param outboundHighWaterMark the high-water mark in bytes, a negative value disables the limit.
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setOutboundHighWaterMark(int outboundHighWaterMark) {
+    this.outboundHighWaterMark = outboundHighWaterMark;
+    return this;
+  }
+
+  /**
+   * @return the action taken when the frames waiting to be written on a connection exceed the high-water mark
+   */
+  public SlowConsumerPolicy getSlowConsumerPolicy() {
+    return slowConsumerPolicy;
+  }
+
+  /**
+   * Sets the action taken when the frames waiting to be written on a connection exceed the
+   * {@link #setOutboundHighWaterMark(int)}. The producers are paused by default. The dropping policies only drop
+   * {@code MESSAGE} frames, see {@link SlowConsumerPolicy} for the limits of each policy.
+   *
+   * @param slowConsumerPolicy the policy
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+    this.slowConsumerPolicy = slowConsumerPolicy;
+    return this;
+  }
+
+  /**
+   * Gets the number of bytes a destination can keep in memory before the producers sending frames to this
+   * destination are paused.
+   *
+   * @return the limit in bytes, {@code -1} if disabled
+   */
+  public long getDestinationMemoryLimit() {
+    return destinationMemoryLimit;
+  }
+
+  /**
+   * Sets the number of bytes a destination can keep in memory (such as the messages a queue holds until a subscriber
+   * is ready to receive them) before the server stops reading from the connections sending frames to this
+   * destination. The reading is resumed once the destination usage falls below the
+   * {@link #setMemoryLowWaterMark(int)}. Disabled ({@code -1}) by default.
+   *
+   * @param destinationMemoryLimit the limit in bytes, a negative value disables the limit.
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setDestinationMemoryLimit(long destinationMemoryLimit) {
+    this.destinationMemoryLimit = destinationMemoryLimit;
+    return this;
+  }
+
+  /**
+   * Gets the number of bytes all the destinations can keep in memory before the producers are paused.
+   *
+   * @return the limit in bytes, {@code -1} if disabled
+   */
+  public long getMemoryLimit() {
+    return memoryLimit;
+  }
+
+  /**
+   * Sets the number of bytes all the destinations can keep in memory before the server stops reading from the
+   * connections sending frames. The reading is resumed once the total usage falls below the
+   * {@link #setMemoryLowWaterMark(int)}. Disabled ({@code -1}) by default.
+   *
+   * @param memoryLimit the limit in bytes, a negative value disables the limit.
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setMemoryLimit(long memoryLimit) {
+    this.memoryLimit = memoryLimit;
+    return this;
+  }
+
+  /**
+   * @return the percentage of the memory limits below which the paused producers are resumed
+   */
+  public int getMemoryLowWaterMark() {
+    return memoryLowWaterMark;
+  }
+
+  /**
+   * Sets the percentage of the {@link #setDestinationMemoryLimit(long)} and {@link #setMemoryLimit(long)} below which
+   * the paused producers are resumed. 70 by default.
+   *
+   * @param memoryLowWaterMark the percentage, between 0 and 100
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setMemoryLowWaterMark(int memoryLowWaterMark) {
+    this.memoryLowWaterMark = memoryLowWaterMark;
+    return this;
+  }
+
+  /**
+   * Gets the number of bytes a queue keeps in memory for the messages waiting for a subscriber.
+   *
+   * @return the size in bytes, {@code -1} if the backlog is disabled
+   */
+  public long getQueueBacklogSize() {
+    return queueBacklogSize;
+  }
+
+  /**
+   * Enables the backlog of the queues, and sets the number of bytes a queue keeps in memory for the messages waiting
+   * for a subscriber. With the backlog, the messages sent to a queue without subscriptions are kept, and delivered
+   * once a subscriber subscribes, instead of being discarded. The queues are then created when a message is sent to
+   * them, and stay registered without subscriptions. The other destinations, such as topics, are not created by the
+   * messages. The messages exceeding the size are spilled to the {@link #setQueueBacklogDirectory(String)} if set,
+   * and discarded otherwise. Disabled ({@code -1}) by default.
+   *
+   * @param queueBacklogSize the size in bytes, a negative value disables the backlog.
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setQueueBacklogSize(long queueBacklogSize) {
+    this.queueBacklogSize = queueBacklogSize;
+    return this;
+  }
+
+  /**
+   * @return the directory in which the queues spill the messages exceeding their backlog size, {@code null} if none
+   */
+  public String getQueueBacklogDirectory() {
+    return queueBacklogDirectory;
+  }
+
+  /**
+   * Sets the directory in which the queues spill the messages exceeding the {@link #setQueueBacklogSize(long)}. The
+   * messages are appended to a segment file per queue, deleted once all its messages have been delivered. If not set,
+   * the messages exceeding the size are discarded.
+   *
+   * @param queueBacklogDirectory the directory, created if it does not exist
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setQueueBacklogDirectory(String queueBacklogDirectory) {
+    this.queueBacklogDirectory = queueBacklogDirectory;
+    return this;
+  }
+
+  /**
+   * @return the generator of the ids of the messages and of the sessions
+   */
+  @GenIgnore
+  public IdGenerator getIdGenerator() {
+    return idGenerator;
+  }
+
+  /**
+   * Sets the generator of the ids of the messages and of the sessions. The default generator
+   * ({@link IdGenerator#counter()}) produces short ids from per-thread counters, without contention, but the ids are
+   * predictable. Use {@link IdGenerator#uuid()} for unguessable ids. This option is not serialized to JSON.
+   *
+   * @param idGenerator the generator, must not be {@code null}
+   * @return the current {@link StompServerOptions}
+   */
+  @GenIgnore
+  public StompServerOptions setIdGenerator(IdGenerator idGenerator) {
+    this.idGenerator = Objects.requireNonNull(idGenerator);
+    return this;
+  }
+
+  /**
+   * Gets the number of bytes gathered by a connection coalescing its writes, before they are written without waiting
+   * for the end of the event loop turn.
+   *
+   * @return the threshold in bytes, {@code -1} if the writes are not coalesced
+   */
+  public int getWriteCoalescingThreshold() {
+    return writeCoalescingThreshold;
+  }
+
+  /**
+   * Enables the coalescing of the writes of the TCP connections, and sets the number of bytes gathered before they are
+   * written immediately. The frames written to a connection during an event loop turn (outside of the handling of
+   * the frames received in a single read, which are already gathered) are then written with a single socket write at
+   * the end of the turn, or once the threshold is reached. It reduces the number of system calls when many small
+   * frames are written to the same connection, at the cost of a slightly higher latency. Disabled ({@code -1}) by
+   * default.
+   *
+   * @param writeCoalescingThreshold the threshold in bytes, a negative value disables the coalescing.
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setWriteCoalescingThreshold(int writeCoalescingThreshold) {
+    this.writeCoalescingThreshold = writeCoalescingThreshold;
+    return this;
+  }
 }
@@ -0,0 +1,155 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An on-disk segment file storing the messages a {@link Queue} cannot keep in memory (see
+ * {@link io.vertx.ext.stomp.StompServerOptions#setQueueBacklogDirectory(String)}). The messages are appended
+ * sequentially, and read back in the same order. The file is deleted once closed.
+ * <p/>
+ * Each record is made of its length, the id of the frame in the {@link io.vertx.ext.stomp.MessageStore} (or
+ * {@code -1}), and the frame (see {@link FrameRecords}).
+ * <p/>
+ * This class is not thread-safe, {@link Queue} only uses it from its spilling task, running on a worker thread.
+ */
+class BacklogSegment implements Closeable {
+
+  private final Path path;
+  private final FileChannel channel;
+  private final ByteBuffer length = ByteBuffer.allocate(4);
+
+  private long writePosition;
+  private long readPosition;
+  private int count;
+
+  private BacklogSegment(Path path, FileChannel channel) {
+    this.path = path;
+    this.channel = channel;
+  }
+
+  /**
+   * Creates a segment file in the given directory.
+   *
+   * @param directory the directory, created if it does not exist
+   * @return the segment
+   * @throws IOException if the file cannot be created
+   */
+  static BacklogSegment create(String directory) throws IOException {
+    Path dir = Files.createDirectories(Paths.get(directory));
+    Path path = Files.createTempFile(dir, "stomp-queue-", ".segment");
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.DELETE_ON_CLOSE);
+    return new BacklogSegment(path, channel);
+  }
+
+  /**
+   * @return the path of the file
+   */
+  Path path() {
+    return path;
+  }
+
+  /**
+   * @return whether or not all the appended messages have been read
+   */
+  boolean isEmpty() {
+    return count == 0;
+  }
+
+  /**
+   * @return the number of messages not read yet
+   */
+  int size() {
+    return count;
+  }
+
+  /**
+   * Appends the given frame at the end of the file.
+   *
+   * @param frame the frame
+   * @throws IOException if the frame cannot be written
+   */
+  void append(Frame frame) throws IOException {
+    Buffer record = Buffer.buffer(256);
+    // The length is set once the record is encoded.
+    record.appendInt(0);
+    // The id of the stored frames is kept, so they can be removed from the store once delivered.
+    record.appendLong(frame instanceof StoredFrame ? ((StoredFrame) frame).storeId() : -1);
+    FrameRecords.append(record, frame);
+    record.setInt(0, record.length() - 4);
+
+    ByteBuffer content = record.getByteBuf().nioBuffer();
+    while (content.hasRemaining()) {
+      writePosition += channel.write(content, writePosition);
+    }
+    count++;
+  }
+
+  /**
+   * Reads the oldest message not read yet.
+   *
+   * @return the frame, {@code null} if all the messages have been read
+   * @throws IOException if the frame cannot be read
+   */
+  Frame poll() throws IOException {
+    if (count == 0) {
+      return null;
+    }
+    length.clear();
+    read(length, readPosition);
+    ByteBuffer content = ByteBuffer.allocate(length.getInt(0));
+    read(content, readPosition + 4);
+    readPosition += 4 + content.capacity();
+    count--;
+
+    Buffer record = Buffer.buffer(content.array());
+    return FrameRecords.read(record, new int[]{8}, record.getLong(0));
+  }
+
+  private void read(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new EOFException("Unexpected end of the segment file " + path);
+      }
+    }
+  }
+
+  /**
+   * Closes and deletes the file.
+   *
+   * @throws IOException if the file cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Relays a streamed body to a set of subscribers, chunk by chunk. The {@code MESSAGE} frames are written in several
+ * parts on the TCP connections. The connections that cannot receive a frame in several parts (web sockets,
+ * connections already receiving another frame in several parts) receive the message once the whole body has been
+ * received.
+ * <p/>
+ * The body stream is paused while the write queue of a subscriber is full, so the reception of the body follows the
+ * pace of the slowest subscriber.
+ */
+class BodyRelay {
+
+  private BodyRelay() {
+    // Avoid direct instantiation.
+  }
+
+  /**
+   * Relays the body. Must be called from the event loop of the connection receiving the body.
+   *
+   * @param connections       the subscribers
+   * @param messages          the {@code MESSAGE} frames (without body) to write to the subscribers, in the same order
+   * @param body              the body
+   * @param completionHandler called once the message has been written to all subscribers
+   */
+  static void relay(List<StompServerConnection> connections, List<Frame> messages, ReadStream<Buffer> body,
+                    Handler<AsyncResult<Void>> completionHandler) {
+    List<StompServerTCPConnectionImpl.StreamedFrameWriter> writers = new ArrayList<>(connections.size());
+    List<StompServerConnection> delayedConnections = new ArrayList<>();
+    List<Frame> delayedMessages = new ArrayList<>();
+    for (int i = 0; i < connections.size(); i++) {
+      StompServerConnection connection = connections.get(i);
+      StompServerTCPConnectionImpl.StreamedFrameWriter writer = null;
+      if (connection instanceof StompServerTCPConnectionImpl) {
+        writer = ((StompServerTCPConnectionImpl) connection).writeStreamed(messages.get(i));
+      }
+      if (writer != null) {
+        writers.add(writer);
+      } else {
+        delayedConnections.add(connection);
+        delayedMessages.add(messages.get(i));
+      }
+    }
+
+    Buffer content = delayedConnections.isEmpty() ? null : Buffer.buffer();
+    Context context = Vertx.currentContext();
+
+    body.exceptionHandler(cause -> {
+      // The frames cannot be terminated.
+      writers.forEach(StompServerTCPConnectionImpl.StreamedFrameWriter::abort);
+      completionHandler.handle(Future.failedFuture(cause));
+    });
+    body.endHandler(v -> {
+      writers.forEach(StompServerTCPConnectionImpl.StreamedFrameWriter::end);
+      for (int i = 0; i < delayedConnections.size(); i++) {
+        delayedConnections.get(i).write(delayedMessages.get(i).setBody(content));
+      }
+      completionHandler.handle(Future.succeededFuture());
+    });
+    body.handler(chunk -> {
+      List<StompServerTCPConnectionImpl.StreamedFrameWriter> full = null;
+      for (StompServerTCPConnectionImpl.StreamedFrameWriter writer : writers) {
+        writer.write(chunk);
+        if (writer.writeQueueFull()) {
+          if (full == null) {
+            full = new ArrayList<>();
+          }
+          full.add(writer);
+        }
+      }
+      if (content != null) {
+        content.appendBuffer(chunk);
+      }
+      if (full != null) {
+        body.pause();
+        AtomicInteger remaining = new AtomicInteger(full.size());
+        for (StompServerTCPConnectionImpl.StreamedFrameWriter writer : full) {
+          writer.whenWritable(x -> {
+            if (remaining.decrementAndGet() == 0) {
+              // The body stream is confined to the event loop of the publisher.
+              if (context != null) {
+                context.runOnContext(y -> body.resume());
+              } else {
+                body.resume();
+              }
+            }
+          });
+        }
+      }
+    });
+  }
+}
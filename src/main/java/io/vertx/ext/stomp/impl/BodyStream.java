@@ -0,0 +1,205 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+
+/**
+ * The body of a received frame, streamed as it is received instead of being accumulated (see
+ * {@link io.vertx.ext.stomp.StompServerOptions#setStreamedBodyThreshold(int)}).
+ * <p/>
+ * Pausing this stream pauses the source (the socket) the body is read from. The chunks already received when the
+ * stream is paused are kept until the stream is resumed, so at most the content of a single socket read is kept in
+ * memory.
+ * <p/>
+ * This class is <strong>NOT</strong> thread-safe, it must be used from the event loop of the connection.
+ */
+public class BodyStream implements ReadStream<Buffer> {
+
+  private final Frame frame;
+  private final ReadStream<?> source;
+  private final ArrayDeque<Buffer> pending = new ArrayDeque<>();
+
+  private Handler<Buffer> handler;
+  private Handler<Void> endHandler;
+  private Handler<Throwable> exceptionHandler;
+
+  private boolean paused;
+  private boolean sourcePaused;
+  private boolean ended;
+  private boolean completed;
+
+  /**
+   * Creates a new instance of {@link BodyStream}.
+   *
+   * @param frame  the frame (without body)
+   * @param source the stream the body is read from, paused while this stream is paused, may be {@code null}
+   */
+  public BodyStream(Frame frame, ReadStream<?> source) {
+    Objects.requireNonNull(frame);
+    this.frame = frame;
+    this.source = source;
+  }
+
+  /**
+   * @return the frame, its body is {@code null}
+   */
+  public Frame frame() {
+    return frame;
+  }
+
+  @Override
+  public BodyStream exceptionHandler(Handler<Throwable> handler) {
+    this.exceptionHandler = handler;
+    return this;
+  }
+
+  @Override
+  public BodyStream handler(Handler<Buffer> handler) {
+    this.handler = handler;
+    drain();
+    return this;
+  }
+
+  @Override
+  public BodyStream pause() {
+    paused = true;
+    return this;
+  }
+
+  @Override
+  public BodyStream resume() {
+    paused = false;
+    drain();
+    return this;
+  }
+
+  @Override
+  public BodyStream endHandler(Handler<Void> endHandler) {
+    this.endHandler = endHandler;
+    drain();
+    return this;
+  }
+
+  /**
+   * Pushes a chunk of the body.
+   *
+   * @param chunk the chunk
+   */
+  void write(Buffer chunk) {
+    if (completed) {
+      return;
+    }
+    if (!paused && handler != null && pending.isEmpty()) {
+      handler.handle(chunk);
+    } else {
+      pending.add(chunk);
+      if (source != null && !sourcePaused) {
+        sourcePaused = true;
+        source.pause();
+      }
+    }
+  }
+
+  /**
+   * Notifies the end of the body. The end handler is called once all the pending chunks have been delivered.
+   */
+  void end() {
+    ended = true;
+    drain();
+  }
+
+  /**
+   * Notifies that the end of the body will never be received (the connection has been closed).
+   *
+   * @param cause the cause
+   */
+  void fail(Throwable cause) {
+    if (completed) {
+      return;
+    }
+    completed = true;
+    pending.clear();
+    if (exceptionHandler != null) {
+      exceptionHandler.handle(cause);
+    }
+  }
+
+  private void drain() {
+    while (!paused && handler != null && !pending.isEmpty() && !completed) {
+      handler.handle(pending.poll());
+    }
+    if (!pending.isEmpty() || paused || completed) {
+      return;
+    }
+    if (sourcePaused) {
+      sourcePaused = false;
+      source.resume();
+    }
+    if (ended && endHandler != null) {
+      completed = true;
+      endHandler.handle(null);
+    }
+  }
+
+  /**
+   * Reads the whole given stream.
+   *
+   * @param stream  the stream
+   * @param handler called with the content of the stream once the end of the stream has been reached
+   */
+  public static void collect(ReadStream<Buffer> stream, Handler<AsyncResult<Buffer>> handler) {
+    Buffer content = Buffer.buffer();
+    stream
+        .exceptionHandler(cause -> handler.handle(Future.failedFuture(cause)))
+        .endHandler(v -> handler.handle(Future.succeededFuture(content)))
+        .handler(content::appendBuffer);
+  }
+
+  /**
+   * Reads the whole given body, and dispatches the frame with this body.
+   *
+   * @param destination       the destination
+   * @param connection        the connection
+   * @param frame             the frame, without body
+   * @param body              the body
+   * @param completionHandler called once the frame has been dispatched, failed if the dispatch has failed
+   */
+  public static void collectAndDispatch(Destination destination, StompServerConnection connection, Frame frame,
+                                        ReadStream<Buffer> body, Handler<AsyncResult<Void>> completionHandler) {
+    collect(body, ar -> {
+      if (ar.failed()) {
+        completionHandler.handle(Future.failedFuture(ar.cause()));
+      } else if (destination.dispatch(connection, frame.setBody(ar.result())) == null) {
+        // Error managed by the destination.
+        completionHandler.handle(Future.failedFuture("Message delivery failed"));
+      } else {
+        completionHandler.handle(Future.succeededFuture());
+      }
+    });
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A trie indexed by bytes, used to match well-known tokens (commands, header names...) directly in the received
+ * bytes. A successful match returns the value associated with the token, so the same instance is shared by all the
+ * frames and no {@link String} is created.
+ * <p/>
+ * The trie is built once, and is immutable afterwards. This class is thread-safe.
+ *
+ * @param <T> the type of value associated with the tokens
+ */
+public class ByteTrie<T> {
+
+  private final Node<T> root = new Node<>();
+
+  private ByteTrie() {
+    // Use the builder.
+  }
+
+  /**
+   * Looks for the token stored between {@code start} (inclusive) and {@code end} (exclusive) in the given bytes.
+   *
+   * @param bytes the bytes
+   * @param start the index of the first byte of the token
+   * @param end   the index following the last byte of the token
+   * @return the value associated with the token, {@code null} if the token is unknown
+   */
+  public T get(ByteBuf bytes, int start, int end) {
+    Node<T> node = root;
+    for (int i = start; i < end && node != null; i++) {
+      node = node.child(bytes.getByte(i));
+    }
+    return node == null ? null : node.value;
+  }
+
+  /**
+   * Creates a {@link ByteTrie} from the given tokens. The tokens are encoded in UTF-8.
+   *
+   * @param tokens the tokens
+   * @return the trie, mapping each token to itself
+   */
+  public static ByteTrie<String> of(String... tokens) {
+    ByteTrie<String> trie = new ByteTrie<>();
+    for (String token : tokens) {
+      trie.put(token, token);
+    }
+    return trie;
+  }
+
+  /**
+   * Creates a {@link ByteTrie} from the given enum constants, using their names as tokens.
+   *
+   * @param values the constants
+   * @return the trie, mapping each name to the constant
+   */
+  @SafeVarargs
+  public static <E extends Enum<E>> ByteTrie<E> of(E... values) {
+    ByteTrie<E> trie = new ByteTrie<>();
+    for (E value : values) {
+      trie.put(value.name(), value);
+    }
+    return trie;
+  }
+
+  private void put(String token, T value) {
+    Node<T> node = root;
+    for (byte b : token.getBytes(StandardCharsets.UTF_8)) {
+      node = node.getOrCreateChild(b);
+    }
+    node.value = value;
+  }
+
+  private static class Node<T> {
+    private byte[] keys = new byte[0];
+    private Node<T>[] children = newArray(0);
+    private T value;
+
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T>[] newArray(int size) {
+      return (Node<T>[]) new Node[size];
+    }
+
+    private Node<T> child(byte b) {
+      // The number of children is small, a linear scan is faster than a lookup.
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] == b) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    private Node<T> getOrCreateChild(byte b) {
+      Node<T> child = child(b);
+      if (child == null) {
+        child = new Node<>();
+        keys = Arrays.copyOf(keys, keys.length + 1);
+        children = Arrays.copyOf(children, children.length + 1);
+        keys[keys.length - 1] = b;
+        children[children.length - 1] = child;
+      }
+      return child;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.StompServerConnection;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The subscriptions of a connection, indexed by subscription id. It lets the {@code SUBSCRIBE} and
+ * {@code UNSUBSCRIBE} frames be checked without going through the subscriptions of all the destinations, and the
+ * closing of a connection only visit the destinations the connection has subscribed to.
+ * <p/>
+ * The index is maintained by the default {@code SUBSCRIBE} and {@code UNSUBSCRIBE} handlers. This class is
+ * thread-safe.
+ */
+public class ConnectionSubscriptions {
+
+  /**
+   * The subscriptions of the connections not implemented by this module.
+   */
+  private static final Map<StompServerConnection, ConnectionSubscriptions> OTHERS =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  private final ConcurrentMap<String, Destination> subscriptions = new ConcurrentHashMap<>();
+
+  /**
+   * Gets the subscriptions of the given connection.
+   *
+   * @param connection the connection
+   * @return the subscriptions
+   */
+  public static ConnectionSubscriptions of(StompServerConnection connection) {
+    if (connection instanceof StompServerTCPConnectionImpl) {
+      return ((StompServerTCPConnectionImpl) connection).subscriptions();
+    }
+    return OTHERS.computeIfAbsent(connection, c -> new ConnectionSubscriptions());
+  }
+
+  /**
+   * Records a subscription.
+   *
+   * @param id          the subscription id
+   * @param destination the destination
+   * @return {@code true} if the subscription has been recorded, {@code false} if the id is already used
+   */
+  public boolean add(String id, Destination destination) {
+    return subscriptions.putIfAbsent(id, destination) == null;
+  }
+
+  /**
+   * @param id the subscription id
+   * @return whether or not the connection has a subscription with the given id
+   */
+  public boolean contains(String id) {
+    return subscriptions.containsKey(id);
+  }
+
+  /**
+   * Removes a subscription.
+   *
+   * @param id the subscription id
+   * @return the destination of the subscription, {@code null} if the connection has no subscription with this id
+   */
+  public Destination remove(String id) {
+    return subscriptions.remove(id);
+  }
+
+  /**
+   * @return the number of subscriptions
+   */
+  public int size() {
+    return subscriptions.size();
+  }
+
+  /**
+   * @return the destinations the connection has subscribed to, each destination is listed once
+   */
+  public Collection<Destination> destinations() {
+    return new LinkedHashSet<>(subscriptions.values());
+  }
+
+  /**
+   * Forgets all the subscriptions, once the connection is closed.
+   *
+   * @param connection the connection
+   */
+  public static void clear(StompServerConnection connection) {
+    if (connection instanceof StompServerTCPConnectionImpl) {
+      ((StompServerTCPConnectionImpl) connection).subscriptions().subscriptions.clear();
+    } else {
+      OTHERS.remove(connection);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.ext.stomp.IdGenerator;
+
+import java.security.SecureRandom;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates ids made of a node prefix, an index assigned to each calling thread, and a counter per thread, encoded
+ * in base 36: {@code node-thread-counter}. The threads (the event loops most of the time) do not share any state
+ * once their counter has been created, so the generation does not contend.
+ */
+public class CounterIdGenerator implements IdGenerator {
+
+  /**
+   * The generator shared by the JVM, with a random node prefix.
+   */
+  public static final CounterIdGenerator DEFAULT = new CounterIdGenerator(randomNode());
+
+  private final String node;
+  private final AtomicInteger threads = new AtomicInteger();
+  private final ThreadLocal<Counter> counters = ThreadLocal.withInitial(this::newCounter);
+
+  public CounterIdGenerator(String node) {
+    this.node = Objects.requireNonNull(node);
+  }
+
+  private static String randomNode() {
+    // At most 8 base 36 digits (36^8 values), enough to make collisions between nodes unlikely.
+    long value = new SecureRandom().nextLong() & Long.MAX_VALUE;
+    return Long.toString(value % 2821109907456L, 36);
+  }
+
+  private Counter newCounter() {
+    return new Counter(node + "-" + Integer.toString(threads.getAndIncrement(), 36) + "-");
+  }
+
+  @Override
+  public String next() {
+    Counter counter = counters.get();
+    return counter.prefix + Long.toString(counter.value++, 36);
+  }
+
+  /**
+   * The counter of a thread.
+   */
+  private static class Counter {
+    final String prefix;
+    long value;
+
+    Counter(String prefix) {
+      this.prefix = prefix;
+    }
+  }
+}
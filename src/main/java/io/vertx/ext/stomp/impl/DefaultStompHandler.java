@@ -24,7 +24,6 @@ import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import io.vertx.core.shareddata.LocalMap;
 import io.vertx.core.shareddata.Lock;
 import io.vertx.ext.auth.AuthProvider;
 import io.vertx.ext.auth.User;
@@ -48,9 +47,10 @@ import io.vertx.ext.stomp.StompServer;
 import io.vertx.ext.stomp.StompServerConnection;
 import io.vertx.ext.stomp.StompServerHandler;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * A plug-able implementation of {@link StompServerHandler}. The default behavior is compliant with the STOMP
@@ -59,7 +59,8 @@ import java.util.concurrent.ConcurrentHashMap;
  * By default {@code ACK/NACK} are managed as a dead messages. Not acknowledges messages are dropped from the list
  * and a warning is printed in the log.
  * <p/>
- * This class is thread safe.
+ * This class is thread safe. The handlers are stored in an immutable snapshot published through a {@code volatile}
+ * field, so the frames received by the different connections are dispatched without contending on a lock.
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
@@ -69,50 +70,17 @@ public class DefaultStompHandler implements StompServerHandler {
   private final Vertx vertx;
   private final Context context;
 
-  private Handler<ServerFrame> connectHandler = new DefaultConnectHandler();
-
-  private Handler<ServerFrame> stompHandler;
-
-  private Handler<ServerFrame> sendHandler = new DefaultSendHandler();
-
-  private Handler<ServerFrame> subscribeHandler = new DefaultSubscribeHandler();
-
-  private Handler<ServerFrame> unsubscribeHandler = new DefaultUnsubscribeHandler();
-
-  private Handler<StompServerConnection> closeHandler;
-
-  private Handler<ServerFrame> commitHandler = new DefaultCommitHandler();
-  private Handler<ServerFrame> abortHandler = new DefaultAbortHandler();
-  private Handler<ServerFrame> beginHandler = new DefaultBeginHandler();
-
-  private Handler<ServerFrame> ackHandler = new DefaultAckHandler();
-
-  private Handler<ServerFrame> nackHandler = new DefaultNackHandler();
-
-  private Handler<ServerFrame> disconnectHandler = (sf -> {
-    StompServerConnection connection = sf.connection();
-    Frames.handleReceipt(sf.frame(), connection);
-    connection.close();
-  });
-
-  private AuthProvider authProvider;
-
-  private Handler<StompServerConnection> pingHandler = StompServerConnection::ping;
-
-  private Handler<Acknowledgement> onAckHandler = (acknowledgement) -> LOGGER.info("Acknowledge messages - " +
-      acknowledgement.frames());
-  private Handler<Acknowledgement> onNackHandler = (acknowledgement) ->
-      LOGGER.warn("Messages not acknowledge - " + acknowledgement.frames());
-
-  private final LocalMap<Destination, String> destinations;
+  private final DestinationRegistry destinations;
 
   // user is mutable and built from other modules so there's no guarantees
   // about thread safety so use w/ care..
   private final ConcurrentHashMap<String, User> users;
 
-  private DestinationFactory factory = Destination::topic;
-
-  private Handler<ServerFrame> receivedFrameHandler;
+  /**
+   * The configured handlers. The frames are dispatched without locking, using the snapshot read when the dispatch
+   * starts. The setters publish a modified copy.
+   */
+  private volatile Handlers handlers = new Handlers();
 
   /**
    * Creates a new instance of {@link DefaultStompHandler}.
@@ -122,147 +90,185 @@ public class DefaultStompHandler implements StompServerHandler {
   public DefaultStompHandler(Vertx vertx) {
     this.vertx = vertx;
     this.context = Vertx.currentContext();
-    this.destinations = vertx.sharedData().getLocalMap("stomp.destinations");
+    this.destinations = DestinationRegistry.instance(vertx);
     this.users = new ConcurrentHashMap<>();
   }
 
   @Override
-  public synchronized void onClose(StompServerConnection connection) {
+  public void onClose(StompServerConnection connection) {
     // Default behavior.
-    getDestinations().stream().forEach((d) -> d.unsubscribeConnection(connection));
+    Handlers h = handlers;
+    if (h.subscribe instanceof DefaultSubscribeHandler) {
+      // Only visit the destinations the connection has subscribed to.
+      ConnectionSubscriptions.of(connection).destinations().forEach(d -> d.unsubscribeConnection(connection));
+    } else {
+      getDestinations().forEach(d -> d.unsubscribeConnection(connection));
+    }
+    ConnectionSubscriptions.clear(connection);
     Transactions.instance().unregisterTransactionsFromConnection(connection);
 
     // Remove user, if exists
     this.users.remove(connection.session());
 
+    Handler<StompServerConnection> closeHandler = handlers.close;
     if (closeHandler != null) {
       closeHandler.handle(connection);
     }
   }
 
   @Override
-  public synchronized StompServerHandler receivedFrameHandler(Handler<ServerFrame> handler) {
-    this.receivedFrameHandler = handler;
-    return this;
+  public StompServerHandler receivedFrameHandler(Handler<ServerFrame> handler) {
+    return update(h -> h.received = handler);
   }
 
   @Override
-  public synchronized StompServerHandler connectHandler(Handler<ServerFrame> handler) {
-    this.connectHandler = handler;
-    return this;
+  public StompServerHandler connectHandler(Handler<ServerFrame> handler) {
+    return update(h -> h.connect = handler);
   }
 
   @Override
-  public synchronized StompServerHandler stompHandler(Handler<ServerFrame> handler) {
-    this.stompHandler = handler;
-    return this;
+  public StompServerHandler stompHandler(Handler<ServerFrame> handler) {
+    return update(h -> h.stomp = handler);
   }
 
   @Override
-  public synchronized StompServerHandler subscribeHandler(Handler<ServerFrame> handler) {
-    this.subscribeHandler = handler;
-    return this;
+  public StompServerHandler subscribeHandler(Handler<ServerFrame> handler) {
+    return update(h -> h.subscribe = handler);
   }
 
   @Override
-  public synchronized StompServerHandler unsubscribeHandler(Handler<ServerFrame> handler) {
-    this.unsubscribeHandler = handler;
-    return this;
+  public StompServerHandler unsubscribeHandler(Handler<ServerFrame> handler) {
+    return update(h -> h.unsubscribe = handler);
   }
 
   @Override
-  public synchronized StompServerHandler sendHandler(Handler<ServerFrame> handler) {
-    this.sendHandler = handler;
-    return this;
+  public StompServerHandler sendHandler(Handler<ServerFrame> handler) {
+    return update(h -> h.send = handler);
   }
 
   @Override
-  public synchronized StompServerHandler closeHandler(Handler<StompServerConnection> handler) {
-    this.closeHandler = handler;
-    return this;
+  public StompServerHandler closeHandler(Handler<StompServerConnection> handler) {
+    return update(h -> h.close = handler);
   }
 
   @Override
-  public synchronized StompServerHandler commitHandler(Handler<ServerFrame> handler) {
-    this.commitHandler = handler;
-    return this;
+  public StompServerHandler commitHandler(Handler<ServerFrame> handler) {
+    return update(h -> h.commit = handler);
   }
 
   @Override
-  public synchronized StompServerHandler abortHandler(Handler<ServerFrame> handler) {
-    this.abortHandler = handler;
-    return this;
+  public StompServerHandler abortHandler(Handler<ServerFrame> handler) {
+    return update(h -> h.abort = handler);
   }
 
   @Override
-  public synchronized StompServerHandler beginHandler(Handler<ServerFrame> handler) {
-    this.beginHandler = handler;
-    return this;
+  public StompServerHandler beginHandler(Handler<ServerFrame> handler) {
+    return update(h -> h.begin = handler);
   }
 
   @Override
-  public synchronized StompServerHandler disconnectHandler(Handler<ServerFrame> handler) {
-    this.disconnectHandler = handler;
-    return this;
+  public StompServerHandler disconnectHandler(Handler<ServerFrame> handler) {
+    return update(h -> h.disconnect = handler);
   }
 
   @Override
-  public synchronized StompServerHandler ackHandler(Handler<ServerFrame> handler) {
-    this.ackHandler = handler;
-    return this;
+  public StompServerHandler ackHandler(Handler<ServerFrame> handler) {
+    return update(h -> h.ack = handler);
   }
 
   @Override
-  public synchronized StompServerHandler nackHandler(Handler<ServerFrame> handler) {
-    this.nackHandler = handler;
-    return this;
+  public StompServerHandler nackHandler(Handler<ServerFrame> handler) {
+    return update(h -> h.nack = handler);
   }
 
   @Override
   public void handle(ServerFrame serverFrame) {
-    Frame frame = serverFrame.frame();
-    StompServerConnection connection = serverFrame.connection();
+    serverFrame.connection().onServerActivity();
+
+    Handlers h = handlers;
+    // Handled as a batch of one frame, so the slow consumers can pause the connection (see FrameBatch#source()).
+    FrameBatch batch = FrameBatch.begin(serverFrame.connection());
+    try {
+      if (h.received != null) {
+        h.received.handle(serverFrame);
+      }
+      dispatch(h, serverFrame);
+    } finally {
+      if (batch != null) {
+        batch.end();
+      }
+    }
+  }
+
+  /**
+   * Handles the frames received in a single read from the given connection. The handlers are read and the client
+   * activity recorded once for the batch. The frames written by the frame handlers are flushed at the end of the batch
+   * (see {@link FrameBatch}).
+   *
+   * @param connection the connection
+   * @param frames     the frames, in the reception order
+   */
+  @Override
+  public void handle(StompServerConnection connection, List<Frame> frames) {
     connection.onServerActivity();
 
-    synchronized (this) {
-      if (receivedFrameHandler != null) {
-        receivedFrameHandler.handle(serverFrame);
+    Handlers h = handlers;
+    FrameBatch batch = FrameBatch.begin(connection);
+    try {
+      for (Frame frame : frames) {
+        ServerFrame serverFrame = new ServerFrameImpl(frame, connection);
+        if (h.received != null) {
+          h.received.handle(serverFrame);
+        }
+        dispatch(h, serverFrame);
+      }
+    } finally {
+      if (batch != null) {
+        batch.end();
       }
     }
+  }
 
-    switch (frame.getCommand()) {
+  private void dispatch(Handlers h, ServerFrame serverFrame) {
+    switch (serverFrame.frame().getCommand()) {
       case CONNECT:
-        handleConnect(frame, connection);
+        handleConnect(h, serverFrame);
         break;
       case STOMP:
-        handleStomp(frame, connection);
+        if (h.stomp == null) {
+          // Per spec, STOMP frame must be handled as CONNECT
+          handleConnect(h, serverFrame);
+        } else {
+          h.stomp.handle(serverFrame);
+        }
         break;
       case SEND:
-        handleSend(frame, connection);
+        // The received server frame is passed as is, as it may hold the body stream.
+        call(h.send, serverFrame);
         break;
       case SUBSCRIBE:
-        handleSubscribe(frame, connection);
+        call(h.subscribe, serverFrame);
         break;
       case UNSUBSCRIBE:
-        handleUnsubscribe(frame, connection);
+        call(h.unsubscribe, serverFrame);
         break;
       case BEGIN:
-        handleBegin(frame, connection);
+        call(h.begin, serverFrame);
         break;
       case ABORT:
-        handleAbort(frame, connection);
+        call(h.abort, serverFrame);
         break;
       case COMMIT:
-        handleCommit(frame, connection);
+        call(h.commit, serverFrame);
         break;
       case ACK:
-        handleAck(frame, connection);
+        call(h.ack, serverFrame);
         break;
       case NACK:
-        handleNack(frame, connection);
+        call(h.nack, serverFrame);
         break;
       case DISCONNECT:
-        handleDisconnect(frame, connection);
+        call(h.disconnect, serverFrame);
         break;
       case PING:
         // We received a ping frame, we do nothing.
@@ -273,96 +279,15 @@ public class DefaultStompHandler implements StompServerHandler {
     }
   }
 
-  private void handleAck(Frame frame, StompServerConnection connection) {
-    Handler<ServerFrame> handler;
-    synchronized (this) {
-      handler = ackHandler;
-    }
-    if (handler != null) {
-      handler.handle(new ServerFrameImpl(frame, connection));
-    }
-  }
-
-  private void handleNack(Frame frame, StompServerConnection connection) {
-    Handler<ServerFrame> handler;
-    synchronized (this) {
-      handler = nackHandler;
-    }
-    if (handler != null) {
-      handler.handle(new ServerFrameImpl(frame, connection));
-    }
-  }
-
-  private void handleBegin(Frame frame, StompServerConnection connection) {
-    Handler<ServerFrame> handler;
-    synchronized (this) {
-      handler = beginHandler;
-    }
-    if (handler != null) {
-      handler.handle(new ServerFrameImpl(frame, connection));
-    }
-  }
-
-  private void handleAbort(Frame frame, StompServerConnection connection) {
-    Handler<ServerFrame> handler;
-    synchronized (this) {
-      handler = abortHandler;
-    }
-    if (handler != null) {
-      handler.handle(new ServerFrameImpl(frame, connection));
-    }
-  }
-
-  private void handleCommit(Frame frame, StompServerConnection connection) {
-    Handler<ServerFrame> handler;
-    synchronized (this) {
-      handler = commitHandler;
-    }
-    if (handler != null) {
-      handler.handle(new ServerFrameImpl(frame, connection));
-    }
-  }
-
-  private void handleSubscribe(Frame frame, StompServerConnection connection) {
-    Handler<ServerFrame> handler;
-    synchronized (this) {
-      handler = subscribeHandler;
-    }
-    if (handler != null) {
-      handler.handle(new ServerFrameImpl(frame, connection));
-    }
-  }
-
-  private void handleUnsubscribe(Frame frame, StompServerConnection connection) {
-    Handler<ServerFrame> handler;
-    synchronized (this) {
-      handler = unsubscribeHandler;
-    }
-    if (handler != null) {
-      handler.handle(new ServerFrameImpl(frame, connection));
-    }
-  }
-
-  private void handleSend(Frame frame, StompServerConnection connection) {
-    Handler<ServerFrame> handler;
-    synchronized (this) {
-      handler = sendHandler;
-    }
-
+  private static void call(Handler<ServerFrame> handler, ServerFrame serverFrame) {
     if (handler != null) {
-      handler.handle(new ServerFrameImpl(frame, connection));
+      handler.handle(serverFrame);
     }
   }
 
-  private void handleConnect(Frame frame, StompServerConnection connection) {
-
-    Handler<ServerFrame> handler;
-    Handler<StompServerConnection> pingH;
-    synchronized (this) {
-      handler = connectHandler;
-      pingH = pingHandler;
-    }
-
+  private void handleConnect(Handlers h, ServerFrame serverFrame) {
+    Frame frame = serverFrame.frame();
+    StompServerConnection connection = serverFrame.connection();
 
     // Compute heartbeat, and register pinger and ponger
     long ping = Frame.Heartbeat.computePingPeriod(
@@ -372,52 +297,22 @@ public class DefaultStompHandler implements StompServerHandler {
         Frame.Heartbeat.parse(frame.getHeader(Frame.HEARTBEAT)),
         Frame.Heartbeat.create(connection.server().options().getHeartbeat()));
 
-    connection.configureHeartbeat(ping, pong, pingH);
+    connection.configureHeartbeat(ping, pong, h.ping);
 
     // Then, handle the frame.
-    if (handler != null) {
-      handler.handle(new ServerFrameImpl(frame, connection));
-    }
-  }
-
-  private void handleDisconnect(Frame frame, StompServerConnection connection) {
-    Handler<ServerFrame> handler;
-    synchronized (this) {
-      handler = disconnectHandler;
-    }
-    if (handler != null) {
-      handler.handle(new ServerFrameImpl(frame, connection));
-    }
-  }
-
-  private void handleStomp(Frame frame, StompServerConnection connection) {
-    Handler<ServerFrame> handler;
-    synchronized (this) {
-      handler = stompHandler;
-    }
-    if (handler == null) {
-      // Per spec, STOMP frame must be handled as CONNECT
-      handleConnect(frame, connection);
-      return;
-    }
-    handler.handle(new ServerFrameImpl(frame, connection));
+    call(h.connect, serverFrame);
   }
 
   @Override
-  public synchronized StompServerHandler authProvider(AuthProvider handler) {
-    this.authProvider = handler;
-    return this;
+  public StompServerHandler authProvider(AuthProvider handler) {
+    return update(h -> h.authProvider = handler);
   }
 
   @Override
   public StompServerHandler onAuthenticationRequest(StompServerConnection connection,
                                                     String login, String passcode,
                                                     Handler<AsyncResult<Boolean>> handler) {
-    final AuthProvider auth;
-    synchronized (this) {
-      // Stack contention.
-      auth = authProvider;
-    }
+    final AuthProvider auth = handlers.authProvider;
 
     final StompServer server = connection.server();
     if (!server.options().isSecured()) {
@@ -460,7 +355,7 @@ public class DefaultStompHandler implements StompServerHandler {
   
   @Override
   public List<Destination> getDestinations() {
-    return new ArrayList<>(destinations.keySet());
+    return destinations.list();
   }
 
   /**
@@ -470,36 +365,29 @@ public class DefaultStompHandler implements StompServerHandler {
    * @return the {@link Destination}, {@code null} if not found.
    */
   public Destination getDestination(String destination) {
-    for (Destination d : destinations.keySet()) {
-      if (d.matches(destination)) {
-        return d;
-      }
-    }
-    return null;
+    return destinations.get(destination);
   }
 
   public Destination getOrCreateDestination(String destination) {
-    DestinationFactory destinationFactory;
-    synchronized (this) {
-      destinationFactory = this.factory;
-    }
-    synchronized (vertx) {
-      Destination d = getDestination(destination);
-      if (d == null) {
-        d = destinationFactory.create(vertx, destination);
-        if (d != null) {
-          // We use the local map as a set, the value is irrelevant.
-          destinations.put(d, "");
-        }
-      }
-      return d;
-    }
+    return getOrCreateDestination(destination, created -> true);
+  }
+
+  /**
+   * Gets the destination with the given name, or creates it using the {@link DestinationFactory}. The created
+   * destination is only registered if accepted by the given filter, so the destinations that would never be removed
+   * (such as a topic without subscriptions) are not created.
+   *
+   * @param destination the destination
+   * @param filter      checks the created destination
+   * @return the {@link Destination} instance, {@code null} if none has been created
+   */
+  public Destination getOrCreateDestination(String destination, Predicate<Destination> filter) {
+    return destinations.getOrCreate(vertx, destination, handlers.factory, filter);
   }
 
   @Override
-  public synchronized StompServerHandler destinationFactory(DestinationFactory factory) {
-    this.factory = factory;
-    return this;
+  public StompServerHandler destinationFactory(DestinationFactory factory) {
+    return update(h -> h.factory = factory);
   }
 
   /**
@@ -510,17 +398,14 @@ public class DefaultStompHandler implements StompServerHandler {
    * @see Vertx#eventBus()
    */
   @Override
-  public synchronized StompServerHandler bridge(BridgeOptions options) {
-    destinations.put(Destination.bridge(vertx, options), "");
+  public StompServerHandler bridge(BridgeOptions options) {
+    destinations.add(Destination.bridge(vertx, options));
     return this;
   }
 
   @Override
   public StompServerHandler onAck(StompServerConnection connection, Frame subscription, List<Frame> messages) {
-    Handler<Acknowledgement> handler;
-    synchronized (this) {
-      handler = onAckHandler;
-    }
+    Handler<Acknowledgement> handler = handlers.onAck;
     if (handler != null) {
       handler.handle(new AcknowledgementImpl(subscription, messages));
     }
@@ -529,10 +414,7 @@ public class DefaultStompHandler implements StompServerHandler {
 
   @Override
   public StompServerHandler onNack(StompServerConnection connection, Frame subscribe, List<Frame> messages) {
-    Handler<Acknowledgement> handler;
-    synchronized (this) {
-      handler = onNackHandler;
-    }
+    Handler<Acknowledgement> handler = handlers.onNack;
     if (handler != null) {
       handler.handle(new AcknowledgementImpl(subscribe, messages));
     }
@@ -540,15 +422,13 @@ public class DefaultStompHandler implements StompServerHandler {
   }
 
   @Override
-  public synchronized StompServerHandler onAckHandler(Handler<Acknowledgement> handler) {
-    this.onAckHandler = handler;
-    return this;
+  public StompServerHandler onAckHandler(Handler<Acknowledgement> handler) {
+    return update(h -> h.onAck = handler);
   }
 
   @Override
-  public synchronized StompServerHandler onNackHandler(Handler<Acknowledgement> handler) {
-    this.onNackHandler = handler;
-    return this;
+  public StompServerHandler onNackHandler(Handler<Acknowledgement> handler) {
+    return update(h -> h.onNack = handler);
   }
 
   /**
@@ -562,9 +442,59 @@ public class DefaultStompHandler implements StompServerHandler {
    * @return the current {@link StompServerHandler}
    */
   @Override
-  public synchronized StompServerHandler pingHandler(Handler<StompServerConnection> handler) {
-    this.pingHandler = handler;
+  public StompServerHandler pingHandler(Handler<StompServerConnection> handler) {
+    return update(h -> h.ping = handler);
+  }
+
+
+  /**
+   * Publishes a modified copy of the handlers. The setters are serialized, so concurrent updates are not lost.
+   *
+   * @param modification the modification to apply on the copy
+   * @return the current {@link StompServerHandler}
+   */
+  private synchronized StompServerHandler update(Consumer<Handlers> modification) {
+    Handlers copy = handlers.copy();
+    modification.accept(copy);
+    handlers = copy;
     return this;
   }
 
+  /**
+   * The handlers configured on a {@link DefaultStompHandler}. An instance is never modified once published.
+   */
+  private static final class Handlers implements Cloneable {
+    private Handler<ServerFrame> received;
+    private Handler<ServerFrame> connect = new DefaultConnectHandler();
+    private Handler<ServerFrame> stomp;
+    private Handler<ServerFrame> send = new DefaultSendHandler();
+    private Handler<ServerFrame> subscribe = new DefaultSubscribeHandler();
+    private Handler<ServerFrame> unsubscribe = new DefaultUnsubscribeHandler();
+    private Handler<StompServerConnection> close;
+    private Handler<ServerFrame> commit = new DefaultCommitHandler();
+    private Handler<ServerFrame> abort = new DefaultAbortHandler();
+    private Handler<ServerFrame> begin = new DefaultBeginHandler();
+    private Handler<ServerFrame> ack = new DefaultAckHandler();
+    private Handler<ServerFrame> nack = new DefaultNackHandler();
+    private Handler<ServerFrame> disconnect = (sf -> {
+      StompServerConnection connection = sf.connection();
+      Frames.handleReceipt(sf.frame(), connection);
+      connection.close();
+    });
+    private AuthProvider authProvider;
+    private Handler<StompServerConnection> ping = StompServerConnection::ping;
+    private Handler<Acknowledgement> onAck = (acknowledgement) -> LOGGER.info("Acknowledge messages - " +
+        acknowledgement.frames());
+    private Handler<Acknowledgement> onNack = (acknowledgement) ->
+        LOGGER.warn("Messages not acknowledge - " + acknowledgement.frames());
+    private DestinationFactory factory = Destination::topic;
+
+    private Handlers copy() {
+      try {
+        return (Handlers) clone();
+      } catch (CloneNotSupportedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
 }
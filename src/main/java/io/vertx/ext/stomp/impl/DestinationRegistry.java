@@ -0,0 +1,191 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.DestinationFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * Stores the destinations of the STOMP servers sharing a Vert.x instance.
+ * <p/>
+ * The destinations matching a single address (the {@link Topic} and {@link Queue} created by the default
+ * {@link DestinationFactory}) are indexed by address. The other destinations (the {@link EventBusBridge}, the
+ * custom destinations) may match several addresses, and are kept in a separate list, checked when no destination is
+ * registered for the exact address.
+ * <p/>
+ * This class is thread-safe, destinations are looked up without locking.
+ */
+public class DestinationRegistry implements Shareable {
+
+  private static final String MAP_NAME = "stomp.destinations";
+
+  private final ConcurrentMap<String, Destination> exact = new ConcurrentHashMap<>();
+
+  private final List<Destination> patterns = new CopyOnWriteArrayList<>();
+
+  /**
+   * Gets the registry shared by the STOMP servers of the given Vert.x instance.
+   *
+   * @param vertx the vert.x instance
+   * @return the registry
+   */
+  public static DestinationRegistry instance(Vertx vertx) {
+    LocalMap<String, DestinationRegistry> map = vertx.sharedData().getLocalMap(MAP_NAME);
+    DestinationRegistry registry = map.get(MAP_NAME);
+    if (registry == null) {
+      DestinationRegistry created = new DestinationRegistry();
+      registry = map.putIfAbsent(MAP_NAME, created);
+      if (registry == null) {
+        registry = created;
+      }
+    }
+    return registry;
+  }
+
+  /**
+   * Checks whether the given destination only matches the address it has been created for, and so can be indexed
+   * by address. Subclasses of {@link Topic} and {@link Queue} may override {@link Destination#matches(String)}, and
+   * are not indexed.
+   *
+   * @param destination the destination
+   * @return {@code true} if the destination can be indexed by address, {@code false} otherwise
+   */
+  private static boolean isExact(Destination destination) {
+    Class<?> clazz = destination.getClass();
+    return (clazz == Topic.class || clazz == Queue.class) && destination.destination() != null;
+  }
+
+  /**
+   * Gets the destination matching the given address.
+   *
+   * @param address the address
+   * @return the destination, {@code null} if none
+   */
+  public Destination get(String address) {
+    Destination destination = exact.get(address);
+    if (destination != null) {
+      return destination;
+    }
+    return getMatching(address);
+  }
+
+  private Destination getMatching(String address) {
+    for (Destination destination : patterns) {
+      if (destination.matches(address)) {
+        return destination;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the destination matching the given address, or creates it using the given factory. Only one destination is
+   * created for an address, even if several connections send to (or subscribe to) the address concurrently.
+   *
+   * @param vertx   the vert.x instance, passed to the factory
+   * @param address the address
+   * @param factory the factory
+   * @return the destination, {@code null} if the factory has rejected the creation
+   */
+  public Destination getOrCreate(Vertx vertx, String address, DestinationFactory factory) {
+    return getOrCreate(vertx, address, factory, created -> true);
+  }
+
+  /**
+   * Gets the destination matching the given address, or creates it using the given factory. The created destination
+   * is only registered if accepted by the given filter.
+   *
+   * @param vertx   the vert.x instance, passed to the factory
+   * @param address the address
+   * @param factory the factory
+   * @param filter  checks the created destination, the existing destinations are not checked
+   * @return the destination, {@code null} if the factory has rejected the creation, or if the filter has rejected the
+   * created destination
+   */
+  public Destination getOrCreate(Vertx vertx, String address, DestinationFactory factory,
+                                 Predicate<Destination> filter) {
+    Destination destination = get(address);
+    if (destination != null) {
+      return destination;
+    }
+    // The factory is called outside of the index, so a slow factory does not block the other addresses. When several
+    // destinations are created concurrently for the address, the first one registered is kept, the others are
+    // discarded.
+    Destination created = factory.create(vertx, address);
+    if (created == null || !filter.test(created)) {
+      return null;
+    }
+    if (isExact(created) && address.equals(created.destination())) {
+      Destination registered = exact.putIfAbsent(address, created);
+      return registered != null ? registered : created;
+    }
+    synchronized (patterns) {
+      Destination registered = get(address);
+      if (registered != null) {
+        return registered;
+      }
+      patterns.add(created);
+    }
+    return created;
+  }
+
+  /**
+   * Registers a destination.
+   *
+   * @param destination the destination
+   */
+  public void add(Destination destination) {
+    if (isExact(destination)) {
+      exact.put(destination.destination(), destination);
+    } else {
+      patterns.add(destination);
+    }
+  }
+
+  /**
+   * Unregisters a destination.
+   *
+   * @param destination the destination
+   * @return {@code true} if the destination was registered, {@code false} otherwise
+   */
+  public boolean remove(Destination destination) {
+    if (isExact(destination) && exact.remove(destination.destination(), destination)) {
+      return true;
+    }
+    return patterns.remove(destination);
+  }
+
+  /**
+   * @return a copy of the list of the registered destinations
+   */
+  public List<Destination> list() {
+    List<Destination> list = new ArrayList<>(exact.size() + patterns.size());
+    list.addAll(exact.values());
+    list.addAll(patterns);
+    return list;
+  }
+}
@@ -25,6 +25,7 @@ import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.bridge.PermittedOptions;
 import io.vertx.ext.stomp.*;
 import io.vertx.ext.stomp.utils.Headers;
@@ -153,19 +154,18 @@ public class EventBusBridge extends Topic {
   }
 
   private Frame transform(Message<Object> msg, Subscription subscription) {
-    String messageId = UUID.randomUUID().toString();
+    String messageId = nextId(subscription.connection);
 
     Frame frame = new Frame();
     frame.setCommand(Frame.Command.MESSAGE);
 
-    final Headers headers = Headers.create(frame.getHeaders())
-        // Destination already set in the input headers.
-        .add(Frame.SUBSCRIPTION, subscription.id)
-        .add(Frame.MESSAGE_ID, messageId)
-        .add(Frame.DESTINATION, msg.address());
+    final Map<String, String> headers = frame.getHeaders();
+    headers.put(Frame.SUBSCRIPTION, subscription.id);
+    headers.put(Frame.MESSAGE_ID, messageId);
+    headers.put(Frame.DESTINATION, msg.address());
     if (!"auto".equals(subscription.ackMode)) {
       // We reuse the message Id as ack Id
-      headers.add(Frame.ACK, messageId);
+      headers.put(Frame.ACK, messageId);
     }
 
     // Specific headers.
@@ -178,7 +178,6 @@ public class EventBusBridge extends Topic {
       headers.putIfAbsent(entry.getKey(), entry.getValue());
     }
 
-    frame.setHeaders(headers);
     Object body = msg.body();
     if (body != null) {
       if (body instanceof String) {
@@ -199,6 +198,24 @@ public class EventBusBridge extends Topic {
     return frame;
   }
 
+  /**
+   * Dispatches the given frame once its body has been received entirely, as the event bus messages are sent with the
+   * whole body.
+   *
+   * @param connection        the connection
+   * @param frame             the frame, without body
+   * @param body              the body
+   * @param completionHandler called once the frame has been dispatched
+   * @return the current instance of {@link Destination}
+   */
+  @Override
+  public Destination dispatch(StompServerConnection connection, Frame frame, ReadStream<Buffer> body,
+                              Handler<AsyncResult<Void>> completionHandler) {
+    // Do not use the relay of the topics.
+    BodyStream.collectAndDispatch(this, connection, frame, body, completionHandler);
+    return this;
+  }
+
   /**
    * Dispatches the given frame.
    *
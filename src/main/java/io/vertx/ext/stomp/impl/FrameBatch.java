@@ -0,0 +1,155 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.StompServerConnection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state shared by the frames received in a single read from a connection, and handled as a batch (see
+ * {@link io.vertx.ext.stomp.StompServerHandler#handle(io.vertx.ext.stomp.StompServerConnection, List)}).
+ * <p/>
+ * While a batch is handled, the buffers written to the TCP connections are gathered, to be flushed once per
+ * connection at the end of the batch. The destinations are not cached by the batch, as they can be removed by the
+ * other connections while it is handled.
+ * <p/>
+ * A batch is bound to the thread handling it (the event loop of the connection), and so is not thread-safe.
+ */
+public class FrameBatch {
+
+  private static final ThreadLocal<FrameBatch> CURRENT = new ThreadLocal<>();
+
+  private final Map<StompServerTCPConnectionImpl, Writes> writes = new HashMap<>();
+
+  private final StompServerConnection source;
+
+  private FrameBatch(StompServerConnection source) {
+    // Use begin.
+    this.source = source;
+  }
+
+  /**
+   * Starts a batch on the current thread.
+   *
+   * @param source the connection the frames of the batch have been received from
+   * @return the batch, {@code null} if a batch is already in progress on the current thread (the frames are then
+   * handled as part of this batch)
+   */
+  public static FrameBatch begin(StompServerConnection source) {
+    if (CURRENT.get() != null) {
+      return null;
+    }
+    FrameBatch batch = new FrameBatch(source);
+    CURRENT.set(batch);
+    return batch;
+  }
+
+  /**
+   * @return the batch in progress on the current thread, {@code null} if none
+   */
+  public static FrameBatch current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * @return the connection the frames of the batch have been received from
+   */
+  StompServerConnection source() {
+    return source;
+  }
+
+  /**
+   * Gathers the given buffer if a batch is in progress on the current thread.
+   *
+   * @param connection the connection
+   * @param buffer     the buffer to write
+   * @param message    whether or not the buffer contains a {@code MESSAGE} frame
+   * @return {@code true} if the buffer has been gathered, {@code false} if it must be written immediately
+   */
+  static boolean gather(StompServerTCPConnectionImpl connection, Buffer buffer, boolean message) {
+    FrameBatch batch = CURRENT.get();
+    if (batch == null) {
+      return false;
+    }
+    Writes gathered = batch.writes.computeIfAbsent(connection, c -> new Writes());
+    gathered.buffers.add(buffer);
+    gathered.messages &= message;
+    return true;
+  }
+
+  /**
+   * Writes immediately the buffers gathered for the given connection by the batch in progress on the current
+   * thread, if any. It must be called before closing the connection.
+   *
+   * @param connection the connection
+   */
+  static void flush(StompServerTCPConnectionImpl connection) {
+    FrameBatch batch = CURRENT.get();
+    if (batch != null) {
+      Writes gathered = batch.writes.remove(connection);
+      if (gathered != null) {
+        gathered.write(connection);
+      }
+    }
+  }
+
+  /**
+   * Ends the batch, and writes the gathered buffers, with a single write per connection.
+   */
+  public void end() {
+    CURRENT.remove();
+    writes.forEach((connection, gathered) -> gathered.write(connection));
+    writes.clear();
+  }
+
+  /**
+   * Merges the given buffers, without copying them.
+   *
+   * @param buffers the buffers, must not be empty
+   * @return the merged buffer
+   */
+  static Buffer merge(List<Buffer> buffers) {
+    if (buffers.size() == 1) {
+      return buffers.get(0);
+    }
+    // The buffers are not copied, but wrapped in a composite buffer.
+    ByteBuf[] content = new ByteBuf[buffers.size()];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = buffers.get(i).getByteBuf();
+    }
+    return Buffer.buffer(Unpooled.wrappedBuffer(content));
+  }
+
+  /**
+   * The buffers gathered for a connection, and whether they all contain {@code MESSAGE} frames.
+   */
+  private static class Writes {
+    private final List<Buffer> buffers = new ArrayList<>();
+    private boolean messages = true;
+
+    private void write(StompServerTCPConnectionImpl connection) {
+      connection.writeGathered(merge(buffers), buffers.size(), messages);
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+
+import java.util.Map;
+
+/**
+ * Class responsible for the encoding of the STOMP frames. The size of the encoded frame is computed first, so the
+ * frame is written in a single pass in a buffer allocated with the exact size. Header names and values are written
+ * directly as UTF-8 bytes, and are only escaped when they contain characters to escape.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class FrameEncoder {
+
+  private static final byte LINE_FEED = '\n';
+  private static final byte COLON = ':';
+  private static final byte NULL = 0;
+
+  private FrameEncoder() {
+    // Avoid direct instantiation.
+  }
+
+  /**
+   * Encodes the given frame, as required by the STOMP specification (including header encoding).
+   *
+   * @param frame        the frame
+   * @param trailingLine whether or not an empty line is appended after the frame
+   * @return the buffer containing the frame
+   */
+  public static Buffer encode(Frame frame, boolean trailingLine) {
+    return encode(frame, frame.getBody(), true, trailingLine);
+  }
+
+  /**
+   * Encodes the command and the headers of the given frame, followed by the empty line starting the body. The body
+   * and the {@code NULL} octet terminating the frame are written separately.
+   *
+   * @param frame the frame
+   * @return the buffer containing the beginning of the frame
+   */
+  public static Buffer encodeHead(Frame frame) {
+    return encode(frame, null, false, false);
+  }
+
+  private static Buffer encode(Frame frame, Buffer body, boolean terminated, boolean trailingLine) {
+    Frame.Command command = frame.getCommand();
+    boolean connectOrConnectedFrame = command == Frame.Command.CONNECT || command == Frame.Command.CONNECTED;
+    Map<String, String> headers = frame.getHeaders();
+
+    // Command names are ASCII.
+    int size = command.name().length() + 1;
+    if (headers instanceof LazyHeaders) {
+      size += ((LazyHeaders) headers).encodedLength(connectOrConnectedFrame);
+    } else {
+      for (Map.Entry<String, String> entry : headers.entrySet()) {
+        size += encodedLength(entry.getKey(), entry.getValue(), connectOrConnectedFrame);
+      }
+    }
+    size += 1 + (body == null ? 0 : body.length()) + (terminated ? 1 : 0) + (trailingLine ? 1 : 0);
+
+    ByteBuf buffer = Unpooled.buffer(size);
+    ByteBufUtil.writeAscii(buffer, command.name());
+    buffer.writeByte(LINE_FEED);
+    if (headers instanceof LazyHeaders) {
+      ((LazyHeaders) headers).writeTo(buffer, connectOrConnectedFrame);
+    } else {
+      for (Map.Entry<String, String> entry : headers.entrySet()) {
+        writeHeader(buffer, entry.getKey(), entry.getValue(), connectOrConnectedFrame);
+      }
+    }
+    buffer.writeByte(LINE_FEED);
+    if (body != null) {
+      buffer.writeBytes(body.getByteBuf());
+    }
+    if (terminated) {
+      buffer.writeByte(NULL);
+    }
+    if (trailingLine) {
+      buffer.writeByte(LINE_FEED);
+    }
+    return Buffer.buffer(buffer);
+  }
+
+  /**
+   * Encodes the part of a {@code MESSAGE} frame following the headers specific to a delivery: the given headers, the
+   * empty line, the body and the {@code NULL} octet terminating the frame. The trailing line, if any, is written
+   * separately.
+   *
+   * @param headers the headers shared by all deliveries of the message
+   * @param body    the body, may be {@code null}
+   * @return the buffer
+   */
+  static ByteBuf encodeMessageTail(Map<String, String> headers, Buffer body) {
+    int size = 0;
+    if (headers instanceof LazyHeaders) {
+      size += ((LazyHeaders) headers).encodedLength(false);
+    } else {
+      for (Map.Entry<String, String> entry : headers.entrySet()) {
+        size += encodedLength(entry.getKey(), entry.getValue(), false);
+      }
+    }
+    size += 1 + (body == null ? 0 : body.length()) + 1;
+
+    ByteBuf buffer = Unpooled.buffer(size);
+    if (headers instanceof LazyHeaders) {
+      ((LazyHeaders) headers).writeTo(buffer, false);
+    } else {
+      for (Map.Entry<String, String> entry : headers.entrySet()) {
+        writeHeader(buffer, entry.getKey(), entry.getValue(), false);
+      }
+    }
+    buffer.writeByte(LINE_FEED);
+    if (body != null) {
+      buffer.writeBytes(body.getByteBuf());
+    }
+    buffer.writeByte(NULL);
+    return buffer;
+  }
+
+  /**
+   * Encodes the {@code MESSAGE} command line, followed by the headers specific to a delivery.
+   *
+   * @param subscription the subscription id
+   * @param messageId    the message id
+   * @param ack          the ack id, {@code null} if the subscription does not acknowledge the messages
+   * @return the buffer
+   */
+  static ByteBuf encodeMessageHead(String subscription, String messageId, String ack) {
+    String command = Frame.Command.MESSAGE.name();
+    int size = command.length() + 1
+        + encodedLength(Frame.SUBSCRIPTION, subscription, false)
+        + encodedLength(Frame.MESSAGE_ID, messageId, false)
+        + (ack == null ? 0 : encodedLength(Frame.ACK, ack, false));
+
+    ByteBuf buffer = Unpooled.buffer(size);
+    ByteBufUtil.writeAscii(buffer, command);
+    buffer.writeByte(LINE_FEED);
+    writeHeader(buffer, Frame.SUBSCRIPTION, subscription, false);
+    writeHeader(buffer, Frame.MESSAGE_ID, messageId, false);
+    if (ack != null) {
+      writeHeader(buffer, Frame.ACK, ack, false);
+    }
+    return buffer;
+  }
+
+  /**
+   * Computes the size of the {@code name:value\n} header line.
+   *
+   * @param name                    the header name
+   * @param value                   the header value (not encoded)
+   * @param connectOrConnectedFrame whether or not the header belongs to a {@code CONNECT} or {@code CONNECTED} frame
+   * @return the number of bytes
+   */
+  static int encodedLength(String name, String value, boolean connectOrConnectedFrame) {
+    return HeaderCodec.encodedLength(name, connectOrConnectedFrame) + 1
+        + HeaderCodec.encodedLength(value, connectOrConnectedFrame) + 1;
+  }
+
+  /**
+   * Writes the {@code name:} beginning of a header line.
+   */
+  static void writeHeaderName(ByteBuf buffer, String name, boolean connectOrConnectedFrame) {
+    HeaderCodec.encode(name, connectOrConnectedFrame, buffer);
+    buffer.writeByte(COLON);
+  }
+
+  /**
+   * Writes the {@code name:value\n} header line.
+   */
+  static void writeHeader(ByteBuf buffer, String name, String value, boolean connectOrConnectedFrame) {
+    writeHeaderName(buffer, name, connectOrConnectedFrame);
+    HeaderCodec.encode(value, connectOrConnectedFrame, buffer);
+    buffer.writeByte(LINE_FEED);
+  }
+}
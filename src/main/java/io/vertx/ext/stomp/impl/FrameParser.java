@@ -16,19 +16,38 @@
 
 package io.vertx.ext.stomp.impl;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
-import io.vertx.core.parsetools.RecordParser;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.stomp.Frame;
 import io.vertx.ext.stomp.Frames;
-import io.vertx.ext.stomp.StompOptions;
 import io.vertx.ext.stomp.StompServerOptions;
 
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
  * A STOMP frame parser compliant with the specification (including header decoding).
+ * <p/>
+ * The parser scans the received bytes once. Command and header lines are located directly in the underlying
+ * {@link ByteBuf}, and the header limits ({@code maxHeaders}, {@code maxHeaderLength}) are checked before any
+ * {@link String} is created. When the body of a frame is contained in a single received buffer, the frame body is a
+ * slice of this buffer (no copy). Bodies spanning several buffers are accumulated, unless the body of a {@code SEND}
+ * frame is larger than the configured threshold (see {@link StompServerOptions#setStreamedBodyThreshold(int)}): the
+ * frame is then emitted as soon as its headers are read, with a {@link BodyStream} receiving the body as it arrives.
+ * Header values are kept encoded, and only decoded when read (see {@link LazyHeaders}). As the body and the encoded
+ * header values are slices of the received buffer, the frames kept once handled are detached from it with
+ * {@link #detach(Frame)}.
+ * <p/>
+ * When a batch handler is set, the frames contained in a received buffer are passed to this handler at once, at the
+ * end of the buffer.
+ * <p/>
+ * This class is <strong>NOT</strong> thread-safe. A parser is confined to the connection it parses, and so is only
+ * used from the event loop of this connection.
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
@@ -44,23 +63,82 @@ public class FrameParser implements Handler<Buffer> {
 
   public static final String COMMA = ",";
 
+  private static final byte NULL_BYTE = 0;
+  private static final byte LINE_FEED_BYTE = '\n';
+  private static final byte CARRIAGE_RETURN_BYTE = '\r';
+  private static final byte COLON_BYTE = ':';
+
+  /**
+   * The commands defined by the STOMP specification (1.0 to 1.2). {@code PING} and {@code UNKNOWN} are not
+   * commands that can be received.
+   */
+  private static final ByteTrie<Frame.Command> COMMANDS = ByteTrie.of(
+      Frame.Command.CONNECT, Frame.Command.CONNECTED, Frame.Command.STOMP,
+      Frame.Command.SEND, Frame.Command.SUBSCRIBE, Frame.Command.UNSUBSCRIBE, Frame.Command.ACK, Frame.Command.NACK,
+      Frame.Command.BEGIN, Frame.Command.COMMIT, Frame.Command.ABORT, Frame.Command.DISCONNECT,
+      Frame.Command.MESSAGE, Frame.Command.RECEIPT, Frame.Command.ERROR);
+
+  /**
+   * The header names declared in {@link Frame}. When a received header name is one of them, the constant is used as
+   * key, so no {@link String} is created, and header lookups compare identical instances.
+   */
+  private static final ByteTrie<String> HEADER_NAMES = ByteTrie.of(
+      Frame.CONTENT_LENGTH, Frame.CONTENT_TYPE, Frame.HOST, Frame.VERSION, Frame.ACCEPT_VERSION, Frame.SESSION,
+      Frame.SERVER, Frame.LOGIN, Frame.PASSCODE, Frame.HEARTBEAT, Frame.DESTINATION, Frame.RECEIPT, Frame.RECEIPT_ID,
+      Frame.ACK, Frame.ID, Frame.SUBSCRIPTION, Frame.MESSAGE_ID, Frame.TRANSACTION, Frame.MESSAGE,
+      Frame.STOMP_FRAME_COMMAND);
+
+  /**
+   * Initial capacity of the buffer accumulating a body spanning several received buffers.
+   */
+  private static final int INITIAL_BODY_CAPACITY = 8192;
+
   private final StompServerOptions options;
 
   private Frame.Command command;
-  private HashMap<String, String> headers = new HashMap<>();
+  private LazyHeaders headers = new LazyHeaders();
   private Handler<Frame> handler;
   private int bodyLength = 0;
 
+  /**
+   * The expected body length given by the {@code content-length} header, {@code -1} if the body is terminated by
+   * the {@code NULL} octet.
+   */
+  private int contentLength = -1;
+
+  /**
+   * The beginning of a command or header line received in a previous buffer, {@code null} if none.
+   */
+  private Buffer line;
+
+  /**
+   * The beginning of a body received in previous buffers, {@code null} if none.
+   */
+  private Buffer body;
+
   private Handler<FrameException> errorHandler;
 
+  private Handler<List<Frame>> batchHandler;
+
+  /**
+   * The frames parsed from the current buffer, not yet passed to the batch handler, {@code null} if none.
+   */
+  private List<Frame> batch;
+
+  private ReadStream<?> source;
+  private Handler<BodyStream> bodyStreamHandler;
+
+  /**
+   * The stream receiving the body of the current frame, {@code null} if the body is not streamed.
+   */
+  private BodyStream bodyStream;
+
   enum State {
     COMMAND,
     HEADERS,
     BODY
   }
 
-  private final RecordParser frameParser = RecordParser.newDelimited(EOL, this::handleLine);
-
   private State current = State.COMMAND;
 
   public FrameParser(StompServerOptions options) {
@@ -71,154 +149,392 @@ public class FrameParser implements Handler<Buffer> {
     this(new StompServerOptions());
   }
 
-  public synchronized FrameParser handler(Handler<Frame> handler) {
+  /**
+   * Copies the parts of the given frame that are slices of a received buffer (the body and the header values not
+   * decoded yet), so the frame kept once handled, for instance by a destination holding it, does not keep the whole
+   * received buffer alive. The parts already copied are not copied again.
+   *
+   * @param frame the frame
+   * @return the frame
+   */
+  public static Frame detach(Frame frame) {
+    Buffer body = frame.getBody();
+    if (body != null && isSlice(body.getByteBuf())) {
+      frame.setBody(Buffer.buffer(Unpooled.copiedBuffer(body.getByteBuf())));
+    }
+    if (frame.getHeaders() instanceof LazyHeaders) {
+      ((LazyHeaders) frame.getHeaders()).detach();
+    }
+    return frame;
+  }
+
+  /**
+   * @return whether or not the given buffer shares its memory with other bytes (the rest of a received buffer)
+   */
+  static boolean isSlice(ByteBuf bytes) {
+    return !bytes.hasArray() || bytes.arrayOffset() + bytes.readerIndex() != 0
+        || bytes.array().length != bytes.readableBytes();
+  }
+
+  public FrameParser handler(Handler<Frame> handler) {
     Objects.requireNonNull(handler);
     this.handler = handler;
     return this;
   }
 
-  public synchronized FrameParser errorHandler(Handler<FrameException> handler) {
+  public FrameParser errorHandler(Handler<FrameException> handler) {
     this.errorHandler = handler;
     return this;
   }
 
-  private void handleLine(Buffer buffer) {
+  /**
+   * Sets the handler receiving the frames parsed from each received buffer, at once. When set, the frames are not
+   * passed to the frame handler.
+   *
+   * @param handler the handler
+   * @return the current {@link FrameParser}
+   */
+  public FrameParser batchHandler(Handler<List<Frame>> handler) {
+    Objects.requireNonNull(handler);
+    this.batchHandler = handler;
+    return this;
+  }
+
+  /**
+   * Enables the streaming of the large frame bodies. The frames whose body is streamed are passed to the given handler
+   * instead of the frame handler.
+   *
+   * @param source  the stream feeding this parser, paused while a body stream is paused
+   * @param handler the handler receiving the frames with a streamed body
+   * @return the current {@link FrameParser}
+   */
+  public FrameParser bodyStreamHandler(ReadStream<?> source, Handler<BodyStream> handler) {
+    this.source = source;
+    this.bodyStreamHandler = handler;
+    return this;
+  }
+
+  /**
+   * Notifies the parser that nothing more will be received. If the body of a frame was being streamed, the body stream
+   * fails.
+   */
+  public void close() {
+    if (bodyStream != null) {
+      BodyStream stream = bodyStream;
+      reset();
+      stream.fail(new FrameException("Connection closed before the end of the frame body"));
+    }
+  }
+
+  /**
+   * Something has happened, so handle it.
+   *
+   * @param event the event to handle
+   */
+  @Override
+  public void handle(Buffer event) {
+    ByteBuf bytes = event.getByteBuf();
+    int length = event.length();
+    int position = 0;
+    while (position < length) {
+      if (current == State.BODY) {
+        position = handleBody(event, bytes, position, length);
+      } else {
+        position = handleLine(event, bytes, position, length);
+      }
+      if (position < 0) {
+        // An error has been reported, the rest of the buffer is dropped.
+        return;
+      }
+    }
+    flushBatch();
+  }
+
+  private void deliver(Frame frame) {
+    if (batchHandler == null) {
+      handler.handle(frame);
+      return;
+    }
+    if (batch == null) {
+      batch = new ArrayList<>();
+    }
+    batch.add(frame);
+  }
+
+  /**
+   * Passes the frames parsed so far to the batch handler. It must be called before delivering anything else (errors,
+   * body streams) to keep the reception order.
+   */
+  private void flushBatch() {
+    if (batch != null) {
+      List<Frame> frames = batch;
+      batch = null;
+      batchHandler.handle(frames);
+    }
+  }
+
+  /**
+   * Reads the next command or header line.
+   *
+   * @return the position of the first byte following the line, {@code -1} if an error has been reported.
+   */
+  private int handleLine(Buffer event, ByteBuf bytes, int position, int length) {
+    int eol = bytes.indexOf(position, length, LINE_FEED_BYTE);
+    if (eol == -1) {
+      // Incomplete line, keep the beginning until we receive the end of the line.
+      if (line == null) {
+        line = Buffer.buffer(length - position);
+      }
+      line.appendBuffer(event, position, length - position);
+      if (line.length() > 2L * options.getMaxHeaderLength() + 2) {
+        reportOrThrow("Header length exceeded");
+        return -1;
+      }
+      return length;
+    }
+
+    boolean handled;
+    if (line == null) {
+      handled = handleLine(bytes, position, eol);
+    } else {
+      Buffer complete = line.appendBuffer(event, position, eol - position);
+      line = null;
+      handled = handleLine(complete.getByteBuf(), 0, complete.length());
+    }
+    return handled ? eol + 1 : -1;
+  }
+
+  /**
+   * Handles a complete line, excluding the line feed.
+   *
+   * @return {@code false} if an error has been reported, {@code true} otherwise.
+   */
+  private boolean handleLine(ByteBuf bytes, int start, int end) {
     switch (current) {
       case COMMAND:
-        if (isEmpty(buffer)) {
+        // We try to find the right verb, here we can trim the line (would remove the optional \r, and the NULL
+        // octet terminating a frame using the content-length header).
+        while (start < end && isTrimmable(bytes.getByte(start))) {
+          start++;
+        }
+        while (end > start && isTrimmable(bytes.getByte(end - 1))) {
+          end--;
+        }
+
+        if (start == end) {
           // ping frame.
           reset();
-          handler.handle(Frames.ping());
-          break;
+          deliver(Frames.ping());
+          return true;
         }
 
         // It's the verb line.
-        // We try to find the right verb, here we can trim the line (would remove the optional \r).
         // Commands and Header are encoded in UTF-8 (spec)
-        String commandLine = buffer.toString(StompOptions.UTF_8).trim();
-        try {
-          command = Frame.Command.valueOf(commandLine);
-        } catch (IllegalArgumentException e) {
+        command = COMMANDS.get(bytes, start, end);
+        if (command == null) {
           // Not a valid command, use UNKNOWN, and write the given command as header.
           command = Frame.Command.UNKNOWN;
-          headers.put(Frame.STOMP_FRAME_COMMAND, commandLine);
+          headers.put(Frame.STOMP_FRAME_COMMAND, bytes.toString(start, end - start, StandardCharsets.UTF_8));
         }
         // Only one verb line, so next state
         current = State.HEADERS;
-        break;
+        return true;
       case HEADERS:
-        if (isEmpty(buffer)) {
+        if (end > start && bytes.getByte(end - 1) == CARRIAGE_RETURN_BYTE) {
+          end--;
+        }
+
+        if (start == end || end - start == 1 && bytes.getByte(start) == NULL_BYTE) {
           // End of headers.
-          current = State.BODY;
-          String length = headers.get(Frame.CONTENT_LENGTH);
-          if (length != null) {
-            int contentLength = Integer.valueOf(length);
-            frameParser.fixedSizeMode(contentLength);
-          } else {
-            frameParser.delimitedMode(NULL);
-          }
-          break;
-        } else {
-          // Commands and Header are encoded in UTF-8 (spec)
-
-          // Split should work here, if all server would have implemented the header encoding correctly. It's not
-          // the case (ActiveMQ, looking at you right now), so, using subString instead.
-
-          String line = buffer.toString(StompOptions.UTF_8);
-          int index = line.indexOf(COLON);
-          if (index == -1) {
-            reportOrThrow("Invalid header line : '" + buffer.toString() + "'");
-            return;
-          }
-
-          String header = line.substring(0, index);
-          String value = line.substring(index + 1);
-
-          if (hasExceededNumberOfHeaders()) {
-            reportOrThrow("Number of headers exceeded");
-            return;
-          }
-
-          if (hasExceededHeaderLength(header, value)) {
-            reportOrThrow("Header length exceeded");
-            return;
-          }
-
-          // By spec (repeated headers) - Put the header only if not already set.
-          headers.putIfAbsent(header, decode(strip(value)));
-          break;
+          return endOfHeaders();
         }
-      case BODY:
-        if (bodyLength == 0) {
-          // Must accumulate and check before creating the frame
-          bodyLength = buffer.length();
-          if (hasExceededBodySize()) {
-            reportOrThrow("Body size exceeded");
-            return;
-          }
+
+        // Split should work here, if all server would have implemented the header encoding correctly. It's not
+        // the case (ActiveMQ, looking at you right now), so, only the first colon is considered.
+        int colon = bytes.indexOf(start, end, COLON_BYTE);
+        if (colon == -1) {
+          reportOrThrow("Invalid header line : '" + bytes.toString(start, end - start, StandardCharsets.UTF_8) + "'");
+          return false;
         }
 
-        try {
-          Frame frame = new Frame(command, headers, buffer);
-          reset();
-          handler.handle(frame);
-        } catch (FrameException e) {
-          reportOrThrow("Malformed frame received");
+        if (hasExceededNumberOfHeaders()) {
+          reportOrThrow("Number of headers exceeded");
+          return false;
+        }
+
+        if (hasExceededHeaderLength(colon - start, end - colon - 1)) {
+          reportOrThrow("Header length exceeded");
+          return false;
+        }
+
+        // Commands and Header are encoded in UTF-8 (spec)
+        String header = HEADER_NAMES.get(bytes, start, colon);
+        if (header == null) {
+          header = bytes.toString(start, colon - start, StandardCharsets.UTF_8);
         }
+
+        // By spec all frames except CONNECT and CONNECTED escape any carriage return, line feed or colon
+        // found in the resulting UTF-8 encoded headers. The value is only decoded when read, but illegal escape
+        // sequences are reported now.
+        boolean escaped = HeaderCodec.hasEscapeSequences(bytes, colon + 1, end);
+
+        // By spec (repeated headers) - Put the header only if not already set.
+        headers.putEncodedIfAbsent(header, bytes.slice(colon + 1, end - colon - 1), escaped,
+            command == Frame.Command.CONNECT || command == Frame.Command.CONNECTED);
+        return true;
+      default:
+        throw new IllegalStateException("Not reading a line");
     }
   }
 
-  private void reset() {
-    command = null;
-    bodyLength = 0;
-    headers = new HashMap<>();
-    current = State.COMMAND;
-    frameParser.delimitedMode(EOL);
-  }
+  private boolean endOfHeaders() {
+    String length = headers.get(Frame.CONTENT_LENGTH);
+    if (length == null) {
+      // The body ends with the NULL octet.
+      current = State.BODY;
+      return true;
+    }
 
-  private boolean hasExceededHeaderLength(String header, String value) {
-    return value.length() > options.getMaxHeaderLength()
-        || header.length() > options.getMaxHeaderLength();
+    int size;
+    try {
+      size = Integer.parseInt(length);
+    } catch (NumberFormatException e) {
+      size = -1;
+    }
+    if (size < 0) {
+      reportOrThrow("Invalid content-length : '" + length + "'");
+      return false;
+    }
+    if (size >= options.getMaxBodyLength()) {
+      reportOrThrow("Body size exceeded");
+      return false;
+    }
+    if (size == 0) {
+      return emit(Buffer.buffer());
+    }
+    contentLength = size;
+    current = State.BODY;
+    if (isStreamed(size)) {
+      Frame frame;
+      try {
+        frame = new Frame(command, headers, null);
+      } catch (FrameException e) {
+        reportOrThrow("Malformed frame received");
+        return false;
+      }
+      bodyStream = new BodyStream(frame, source);
+      flushBatch();
+      bodyStreamHandler.handle(bodyStream);
+    }
+    return true;
   }
 
-  private boolean hasExceededNumberOfHeaders() {
-    return headers.size() + 1 > options.getMaxHeaders();
+  private boolean isStreamed(int size) {
+    return bodyStreamHandler != null && command == Frame.Command.SEND
+        && options.getStreamedBodyThreshold() >= 0 && size > options.getStreamedBodyThreshold();
   }
 
-  private String decode(String value) {
-    // By spec all frames except CONNECT and CONNECTED escape any carriage return, line feed or colon
-    // found in the resulting UTF-8 encoded headers
-    // Escape must be always escaped, STOMP frames are not part of the exception
-    return HeaderCodec.decode(value, command == Frame.Command.CONNECT || command == Frame.Command.CONNECTED);
+  /**
+   * Reads the body, or the part of the body contained in the given buffer.
+   *
+   * @return the position of the first byte following the body, {@code -1} if an error has been reported.
+   */
+  private int handleBody(Buffer event, ByteBuf bytes, int position, int length) {
+    int end;
+    int next;
+    boolean complete;
+    if (contentLength >= 0) {
+      end = position + Math.min(length - position, contentLength - bodyLength);
+      complete = bodyLength + end - position == contentLength;
+      // The trailing NULL octet is skipped with the next command line.
+      next = end;
+    } else {
+      end = bytes.indexOf(position, length, NULL_BYTE);
+      complete = end != -1;
+      if (!complete) {
+        end = length;
+      }
+      next = end + 1;
+    }
+
+    bodyLength += end - position;
+    if (bodyStream != null) {
+      // The content-length has already been checked against the max body length.
+      if (end > position) {
+        bodyStream.write(event.slice(position, end));
+      }
+      if (!complete) {
+        return length;
+      }
+      BodyStream stream = bodyStream;
+      reset();
+      stream.end();
+      return next;
+    }
+    if (hasExceededBodySize()) {
+      reportOrThrow("Body size exceeded");
+      return -1;
+    }
+
+    if (!complete) {
+      // Must accumulate before creating the frame
+      if (body == null) {
+        body = Buffer.buffer(contentLength >= 0 ? Math.min(contentLength, INITIAL_BODY_CAPACITY)
+            : INITIAL_BODY_CAPACITY);
+      }
+      body.appendBuffer(event, position, end - position);
+      return length;
+    }
+
+    Buffer payload;
+    if (body == null) {
+      // The whole body has been received in this buffer, no copy.
+      payload = event.slice(position, end);
+    } else {
+      payload = body.appendBuffer(event, position, end - position);
+    }
+    return emit(payload) ? next : -1;
   }
 
-  private String strip(String s) {
-    if (s.endsWith(CARRIAGE_RETURN)) {
-      return s.substring(0, s.length() - 1);
+  private boolean emit(Buffer payload) {
+    Frame frame;
+    try {
+      frame = new Frame(command, headers, payload);
+    } catch (FrameException e) {
+      reportOrThrow("Malformed frame received");
+      return false;
     }
-    return s;
+    reset();
+    deliver(frame);
+    return true;
+  }
+
+  private void reset() {
+    command = null;
+    bodyLength = 0;
+    contentLength = -1;
+    headers = new LazyHeaders();
+    line = null;
+    body = null;
+    bodyStream = null;
+    current = State.COMMAND;
   }
 
-  private boolean isEmpty(Buffer buffer) {
-    return buffer.toString().length() == 0 || buffer.toString().equals(CARRIAGE_RETURN)
-        || buffer.length() == 1 && buffer.getByte(0) == 0;
+  private boolean hasExceededHeaderLength(int headerLength, int valueLength) {
+    return valueLength > options.getMaxHeaderLength()
+        || headerLength > options.getMaxHeaderLength();
+  }
+
+  private boolean hasExceededNumberOfHeaders() {
+    return headers.size() + 1 > options.getMaxHeaders();
   }
 
   /**
-   * Something has happened, so handle it.
-   *
-   * @param event the event to handle
+   * Checks whether the given byte is removed when trimming the command line. It follows {@link String#trim()}, so
+   * all ASCII control characters and the space are trimmed.
    */
-  @Override
-  public synchronized void handle(Buffer event) {
-    if (current == State.BODY) {
-      bodyLength += event.length();
-      if (hasExceededBodySize()) {
-        reportOrThrow("Body size exceeded");
-        return;
-      }
-    }
-    frameParser.handle(event);
+  private static boolean isTrimmable(byte b) {
+    return b >= 0 && b <= ' ';
   }
 
   private boolean hasExceededBodySize() {
@@ -227,13 +543,13 @@ public class FrameParser implements Handler<Buffer> {
 
   /**
    * Invokes the error handler or throw an exception if no error handler.
-   * Must be called when holding the monitor lock.
    *
    * @param error the error
    */
   private void reportOrThrow(String error) {
     FrameException exception = new FrameException(error);
     reset();
+    flushBatch();
     if (errorHandler != null) {
       errorHandler.handle(exception);
     } else {
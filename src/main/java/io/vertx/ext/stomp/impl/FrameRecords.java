@@ -0,0 +1,97 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.utils.Headers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Binary encoding of the frames written to disk ({@link BacklogSegment}, {@link JournalMessageStore}). A record is
+ * made of the command, the headers and the body of the frame, each string and the body being prefixed by their
+ * length.
+ */
+final class FrameRecords {
+
+  private FrameRecords() {
+    // Avoid direct instantiation.
+  }
+
+  /**
+   * Appends the record of the given frame to the given buffer.
+   *
+   * @param buffer the buffer
+   * @param frame  the frame
+   */
+  static void append(Buffer buffer, Frame frame) {
+    appendString(buffer, frame.getCommand().name());
+    Map<String, String> headers = frame.getHeaders();
+    buffer.appendInt(headers.size());
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      appendString(buffer, header.getKey());
+      appendString(buffer, header.getValue());
+    }
+    Buffer body = frame.getBody();
+    if (body == null) {
+      buffer.appendInt(-1);
+    } else {
+      buffer.appendInt(body.length()).appendBuffer(body);
+    }
+  }
+
+  /**
+   * Reads the frame whose record starts at the given position.
+   *
+   * @param buffer   the buffer
+   * @param position the position of the record, updated to the end of the record
+   * @param storeId  the id of the frame in a {@link io.vertx.ext.stomp.MessageStore}, {@code -1} if not stored
+   * @return the frame, a {@link StoredFrame} if the id is set
+   */
+  static Frame read(Buffer buffer, int[] position, long storeId) {
+    Frame.Command command = Frame.Command.valueOf(readString(buffer, position));
+    int size = buffer.getInt(position[0]);
+    position[0] += 4;
+    Headers headers = Headers.create();
+    for (int i = 0; i < size; i++) {
+      headers.put(readString(buffer, position), readString(buffer, position));
+    }
+    int bodyLength = buffer.getInt(position[0]);
+    position[0] += 4;
+    Buffer body = null;
+    if (bodyLength >= 0) {
+      body = buffer.getBuffer(position[0], position[0] + bodyLength);
+      position[0] += bodyLength;
+    }
+    return storeId < 0 ? new Frame(command, headers, body) : new StoredFrame(command, headers, body, storeId);
+  }
+
+  static void appendString(Buffer buffer, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    buffer.appendInt(bytes.length).appendBytes(bytes);
+  }
+
+  static String readString(Buffer buffer, int[] position) {
+    int length = buffer.getInt(position[0]);
+    String value = buffer.getString(position[0] + 4, position[0] + 4 + length, "UTF-8");
+    position[0] += 4 + length;
+    return value;
+  }
+}
@@ -16,6 +16,11 @@
 
 package io.vertx.ext.stomp.impl;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.charset.StandardCharsets;
+
 /**
  * Class responsible for the encoding and decoding of the STOMP frame headers.
  * This class is thread-safe.
@@ -29,14 +34,28 @@ public class HeaderCodec {
   private static final String LINE_FEED_ESCAPE = String.valueOf(new char[]{(char) 92, (char) 110});
   private static final String CARRIAGE_RETURN_ESCAPE = String.valueOf(new char[]{(char) 92, (char) 114});
 
+  private static final byte ESCAPE_BYTE = 92;
+
   private HeaderCodec() {
     //Avoid direct instantiation.
   }
 
+  /**
+   * Encodes the given header name or value.
+   *
+   * @param header                  the String to encode
+   * @param connectOrConnectedFrame whether or not the header belongs to a {@code CONNECT} or {@code CONNECTED} frame
+   * @return the encoded String, {@code header} itself if it does not contain any character to escape
+   */
   public static String encode(String header, boolean connectOrConnectedFrame) {
-    StringBuilder builder = new StringBuilder();
+    int first = indexOfCharacterToEscape(header, connectOrConnectedFrame);
+    if (first == -1) {
+      return header;
+    }
 
-    for (int i = 0; i < header.length(); i++) {
+    StringBuilder builder = new StringBuilder(header.length() + 8);
+    builder.append(header, 0, first);
+    for (int i = first; i < header.length(); i++) {
       char value = header.charAt(i);
       switch (value) {
         case FrameParser.ESCAPE:
@@ -71,10 +90,95 @@ public class HeaderCodec {
     return builder.toString();
   }
 
+  /**
+   * Encodes the given header name or value, and writes it in UTF-8 into the given buffer. It is equivalent to
+   * writing the UTF-8 bytes of {@link #encode(String, boolean)}, without creating the intermediate {@link String}.
+   *
+   * @param header                  the String to encode
+   * @param connectOrConnectedFrame whether or not the header belongs to a {@code CONNECT} or {@code CONNECTED} frame
+   * @param target                  the buffer
+   */
+  public static void encode(String header, boolean connectOrConnectedFrame, ByteBuf target) {
+    int first = indexOfCharacterToEscape(header, connectOrConnectedFrame);
+    if (first == -1) {
+      ByteBufUtil.writeUtf8(target, header);
+      return;
+    }
+
+    for (int i = 0; i < header.length(); i++) {
+      char c = header.charAt(i);
+      if (c < 0x80) {
+        if (i >= first && mustBeEscaped(c, connectOrConnectedFrame)) {
+          target.writeByte(ESCAPE_BYTE);
+          target.writeByte(escapeCode(c));
+        } else {
+          target.writeByte(c);
+        }
+      } else if (c < 0x800) {
+        target.writeByte(0xc0 | (c >> 6));
+        target.writeByte(0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < header.length()
+          && Character.isLowSurrogate(header.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, header.charAt(++i));
+        target.writeByte(0xf0 | (codePoint >> 18));
+        target.writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+        target.writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+        target.writeByte(0x80 | (codePoint & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        // Malformed, as String.getBytes.
+        target.writeByte('?');
+      } else {
+        target.writeByte(0xe0 | (c >> 12));
+        target.writeByte(0x80 | ((c >> 6) & 0x3f));
+        target.writeByte(0x80 | (c & 0x3f));
+      }
+    }
+  }
+
+  /**
+   * Computes the number of bytes written by {@link #encode(String, boolean, ByteBuf)}.
+   *
+   * @param header                  the String to encode
+   * @param connectOrConnectedFrame whether or not the header belongs to a {@code CONNECT} or {@code CONNECTED} frame
+   * @return the number of bytes
+   */
+  public static int encodedLength(String header, boolean connectOrConnectedFrame) {
+    int length = 0;
+    for (int i = 0; i < header.length(); i++) {
+      char c = header.charAt(i);
+      if (c < 0x80) {
+        length += mustBeEscaped(c, connectOrConnectedFrame) ? 2 : 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < header.length()
+          && Character.isLowSurrogate(header.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length += 1;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Decodes the given header name or value.
+   *
+   * @param header                  the String to decode
+   * @param connectOrConnectedFrame whether or not the header belongs to a {@code CONNECT} or {@code CONNECTED} frame
+   * @return the decoded String, {@code header} itself if it does not contain any escape sequence
+   */
   public static String decode(String header, boolean connectOrConnectedFrame) {
-    StringBuilder builder = new StringBuilder();
+    int first = header.indexOf(FrameParser.ESCAPE);
+    if (first == -1) {
+      return header;
+    }
 
-    int i = 0;
+    StringBuilder builder = new StringBuilder(header.length());
+    builder.append(header, 0, first);
+    int i = first;
     while (i < header.length()) {
       char value = header.charAt(i);
       if (value == 92 && i + 1 < header.length()) {
@@ -121,4 +225,132 @@ public class HeaderCodec {
     }
     return builder.toString();
   }
+
+  /**
+   * Decodes the UTF-8 encoded header name or value stored between {@code start} (inclusive) and {@code end}
+   * (exclusive) in the given buffer. It is equivalent to {@link #decode(String, boolean)} on the String built from
+   * these bytes, but the escape sequences are decoded on the bytes, so only the resulting {@link String} is created.
+   *
+   * @param source                  the buffer
+   * @param start                   the index of the first byte
+   * @param end                     the index following the last byte
+   * @param connectOrConnectedFrame whether or not the header belongs to a {@code CONNECT} or {@code CONNECTED} frame
+   * @return the decoded String
+   */
+  public static String decode(ByteBuf source, int start, int end, boolean connectOrConnectedFrame) {
+    int first = source.indexOf(start, end, ESCAPE_BYTE);
+    if (first == -1) {
+      return source.toString(start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // Escape sequences are ASCII, and UTF-8 multi-bytes sequences never contain ASCII bytes, so the decoding can be
+    // made on the bytes.
+    byte[] decoded = new byte[end - start];
+    int length = first - start;
+    source.getBytes(start, decoded, 0, length);
+    int i = first;
+    while (i < end) {
+      byte value = source.getByte(i);
+      if (value == ESCAPE_BYTE && i + 1 < end) {
+        byte next = source.getByte(i + 1);
+        switch (next) {
+          case 114:
+          case 110:
+          case 99:
+            if (connectOrConnectedFrame) {
+              decoded[length++] = value;
+            } else {
+              decoded[length++] = unescape(next);
+              i++;
+            }
+            break;
+          case 92:
+            // Always decoded.
+            decoded[length++] = ESCAPE_BYTE;
+            i++;
+            break;
+          default:
+            // By spec, all other escape must be treated as a fatal protocol error.
+            throw new FrameException("Incorrect header value " +
+                "- the header uses an illegal escaped character '" + (char) next + "' (" + next + ")");
+        }
+      } else {
+        decoded[length++] = value;
+      }
+      i++;
+    }
+    return new String(decoded, 0, length, StandardCharsets.UTF_8);
+  }
+
+  private static int indexOfCharacterToEscape(String header, boolean connectOrConnectedFrame) {
+    for (int i = 0; i < header.length(); i++) {
+      if (mustBeEscaped(header.charAt(i), connectOrConnectedFrame)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean mustBeEscaped(char c, boolean connectOrConnectedFrame) {
+    // CONNECT and CONNECTED frames do not encode \r \n \c but still require the encoding of \\.
+    return c == FrameParser.ESCAPE
+        || !connectOrConnectedFrame && (c == FrameParser.LINE_FEED || c == '\r' || c == ':');
+  }
+
+  private static byte escapeCode(char c) {
+    switch (c) {
+      case '\r':
+        return 114;
+      case FrameParser.LINE_FEED:
+        return 110;
+      case ':':
+        return 99;
+      default:
+        return 92;
+    }
+  }
+
+  private static byte unescape(byte code) {
+    switch (code) {
+      case 114:
+        return '\r';
+      case 110:
+        return '\n';
+      default:
+        return ':';
+    }
+  }
+
+  /**
+   * Checks whether the encoded header value stored between {@code start} (inclusive) and {@code end} (exclusive) in
+   * the given bytes contains escape sequences, without decoding it. An illegal escape sequence is reported as
+   * {@link #decode(String, boolean)} would.
+   *
+   * @param bytes the bytes
+   * @param start the index of the first byte of the value
+   * @param end   the index following the last byte of the value
+   * @return {@code true} if the value must be decoded, {@code false} if the value is the same once decoded
+   */
+  public static boolean hasEscapeSequences(ByteBuf bytes, int start, int end) {
+    int index = bytes.indexOf(start, end, ESCAPE_BYTE);
+    if (index == -1) {
+      return false;
+    }
+    while (index != -1 && index + 1 < end) {
+      byte next = bytes.getByte(index + 1);
+      switch (next) {
+        case 114:
+        case 110:
+        case 99:
+        case 92:
+          break;
+        default:
+          // By spec, all other escape must be treated as a fatal protocol error.
+          throw new FrameException("Incorrect header value " +
+              "- the header uses an illegal escaped character '" + (char) next + "' (" + next + ")");
+      }
+      index = bytes.indexOf(index + 2, end, ESCAPE_BYTE);
+    }
+    return true;
+  }
 }
@@ -0,0 +1,609 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.impl;
+
+import io.netty.util.internal.PlatformDependent;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.MessageStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link MessageStore} writing the messages in an append-only journal of memory-mapped segment files.
+ * <p/>
+ * Each segment is made of two files, named after the id of its first message:
+ * <ul>
+ * <li>the journal ({@code .journal}), containing the records: the length of the payload, its CRC32 checksum, and
+ * the payload (the message id, the destination and the frame, see {@link FrameRecords}),</li>
+ * <li>the index ({@code .index}), containing an entry per record: the message id, the position and the length of the
+ * record, the hash of the destination, and whether the message has been acknowledged.</li>
+ * </ul>
+ * The ids of the messages of a segment are consecutive, so a message is found from its id without searching. The
+ * index is mapped for the records actually written, and grown as records are appended. When the store is opened, only
+ * the index entries and the records not acknowledged are read (the checksum being verified). A segment is deleted,
+ * and its files unmapped, once all its messages have been acknowledged.
+ * <p/>
+ * The ids of the messages of each destination are also kept in memory, so the messages pending for a destination
+ * are listed without reading the other ones. The acknowledged ids are removed from these lists lazily.
+ * <p/>
+ * The messages and the acknowledgments are written in the mapped files, and made durable by {@link #sync(Handler)},
+ * which forces the modified segments to disk from a worker thread. The syncs requested while a sync is in progress
+ * are grouped, and completed by the next one (group commit).
+ * <p/>
+ * This class is thread-safe.
+ */
+public class JournalMessageStore implements MessageStore {
+
+  private static final Logger log = LoggerFactory.getLogger(JournalMessageStore.class);
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final String JOURNAL_SUFFIX = ".journal";
+  private static final String INDEX_SUFFIX = ".index";
+
+  /**
+   * The size of an index entry: id (8), position (4), length (4), destination hash (4), acknowledged flag (1).
+   */
+  static final int INDEX_ENTRY_SIZE = 21;
+  private static final int ACKNOWLEDGED = 20;
+  /**
+   * The size of the smallest record, used to bound the number of records of a segment.
+   */
+  private static final int MIN_RECORD_SIZE = 32;
+  /**
+   * The number of entries of the index of a new segment, doubled each time the index is full.
+   */
+  private static final int INITIAL_INDEX_ENTRIES = 1024;
+  /**
+   * The initial capacity of the lists of ids of the destinations.
+   */
+  private static final int INITIAL_DESTINATION_IDS = 16;
+
+  private final Vertx vertx;
+  private final Path directory;
+  private final int segmentSize;
+  private final int maxEntries;
+
+  /**
+   * The segments by id of their first message. Guarded by the lock of the store, as the other fields below.
+   */
+  private final TreeMap<Long, Segment> segments = new TreeMap<>();
+  private Segment current;
+  private long nextId = 1;
+  private final Set<Segment> dirty = new LinkedHashSet<>();
+  private final Map<String, DestinationIds> destinations = new HashMap<>();
+  private final CRC32 crc = new CRC32();
+  private boolean closed;
+
+  /**
+   * The handlers waiting for the next sync. Guarded by its own lock.
+   */
+  private final Object syncLock = new Object();
+  private List<Handler<AsyncResult<Void>>> waiting = new ArrayList<>();
+  private boolean syncing;
+
+  /**
+   * Opens the journal stored in the given directory, created if it does not exist.
+   *
+   * @param vertx       the vert.x instance
+   * @param directory   the directory
+   * @param segmentSize the size of the segment files
+   * @throws IOException if the journal cannot be opened
+   */
+  public JournalMessageStore(Vertx vertx, String directory, int segmentSize) throws IOException {
+    this.vertx = vertx;
+    this.directory = Files.createDirectories(Paths.get(directory));
+    this.segmentSize = segmentSize;
+    this.maxEntries = Math.max(1, segmentSize / MIN_RECORD_SIZE);
+    recover();
+  }
+
+  private void recover() throws IOException {
+    List<Path> journals = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + JOURNAL_SUFFIX)) {
+      stream.forEach(journals::add);
+    }
+    // The names are the zero-padded id of the first message.
+    journals.sort(null);
+    for (int i = 0; i < journals.size(); i++) {
+      String name = journals.get(i).getFileName().toString();
+      Segment segment = new Segment(Long.parseLong(name.substring(0, name.length() - JOURNAL_SUFFIX.length())));
+      segment.load();
+      nextId = Math.max(nextId, segment.firstId + segment.entries);
+      if (segment.pending == 0 && i < journals.size() - 1) {
+        segment.delete();
+      } else {
+        segments.put(segment.firstId, segment);
+        current = segment;
+      }
+    }
+  }
+
+  @Override
+  public synchronized long append(String destination, Frame frame) {
+    if (closed) {
+      throw new IllegalStateException("The message store is closed");
+    }
+    long id = nextId;
+    Buffer payload = Buffer.buffer(256);
+    payload.appendLong(id);
+    FrameRecords.appendString(payload, destination);
+    FrameRecords.append(payload, frame);
+    int length = 8 + payload.length();
+    if (length > segmentSize) {
+      throw new IllegalArgumentException("The message is larger than the segments of the journal (" + segmentSize
+          + " bytes)");
+    }
+    if (current == null || current.position + length > segmentSize || current.entries >= maxEntries) {
+      roll();
+    }
+    Segment segment = current;
+    if (segment.entries == segment.capacity) {
+      try {
+        segment.growIndex();
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot grow the index of the segment " + segment.firstId + " of the journal in "
+            + directory, e);
+      }
+    }
+    ByteBuffer content = payload.getByteBuf().nioBuffer();
+    crc.reset();
+    crc.update(content.duplicate());
+
+    ByteBuffer journal = segment.journal.duplicate();
+    journal.position(segment.position);
+    journal.putInt(payload.length()).putInt((int) crc.getValue()).put(content);
+
+    int entry = segment.entries * INDEX_ENTRY_SIZE;
+    segment.index.putInt(entry + 8, segment.position);
+    segment.index.putInt(entry + 12, length);
+    segment.index.putInt(entry + 16, destination.hashCode());
+    segment.index.put(entry + ACKNOWLEDGED, (byte) 0);
+    // Written last, a zero id marking the end of the index.
+    segment.index.putLong(entry, id);
+
+    segment.position += length;
+    segment.entries++;
+    segment.pending++;
+    dirty.add(segment);
+    nextId++;
+
+    DestinationIds ids = destinations.computeIfAbsent(destination, d -> new DestinationIds());
+    ids.add(id);
+    if (ids.size >= ids.compactAt) {
+      compact(destination, ids);
+    }
+    return id;
+  }
+
+  private void roll() {
+    Segment previous = current;
+    try {
+      current = new Segment(nextId);
+      current.create();
+    } catch (IOException e) {
+      current = previous;
+      throw new IllegalStateException("Cannot create a segment of the journal in " + directory, e);
+    }
+    segments.put(current.firstId, current);
+    if (previous != null && previous.pending == 0) {
+      remove(previous);
+    }
+  }
+
+  @Override
+  public void sync(Handler<AsyncResult<Void>> handler) {
+    boolean start;
+    synchronized (syncLock) {
+      waiting.add(handler);
+      start = !syncing;
+      syncing = true;
+    }
+    if (start) {
+      flush();
+    }
+  }
+
+  /**
+   * Forces the modified segments to disk from a worker thread, and completes the handlers waiting at the time of the
+   * call. The handlers added meanwhile are completed by a next flush.
+   */
+  private void flush() {
+    List<Handler<AsyncResult<Void>>> handlers;
+    synchronized (syncLock) {
+      handlers = waiting;
+      waiting = new ArrayList<>();
+    }
+    List<Segment> modified;
+    synchronized (this) {
+      modified = new ArrayList<>(dirty);
+      dirty.clear();
+      // Not unmapped while being forced.
+      modified.forEach(segment -> segment.forcing++);
+    }
+    vertx.<Void>executeBlocking(future -> {
+      try {
+        modified.forEach(Segment::force);
+      } finally {
+        synchronized (this) {
+          modified.forEach(Segment::forced);
+        }
+      }
+      future.complete();
+    }, false, ar -> {
+      handlers.forEach(handler -> handler.handle(ar));
+      boolean again;
+      synchronized (syncLock) {
+        again = !waiting.isEmpty();
+        syncing = again;
+      }
+      if (again) {
+        flush();
+      }
+    });
+  }
+
+  @Override
+  public synchronized void acknowledge(long id) {
+    Segment segment = segment(id);
+    if (segment == null) {
+      return;
+    }
+    int entry = (int) (id - segment.firstId) * INDEX_ENTRY_SIZE;
+    if (segment.index.get(entry + ACKNOWLEDGED) != 0) {
+      return;
+    }
+    segment.index.put(entry + ACKNOWLEDGED, (byte) 1);
+    segment.pending--;
+    if (segment.pending == 0 && segment != current) {
+      remove(segment);
+    } else {
+      dirty.add(segment);
+    }
+  }
+
+  private void remove(Segment segment) {
+    segments.remove(segment.firstId);
+    dirty.remove(segment);
+    try {
+      segment.delete();
+    } catch (IOException e) {
+      log.warn("Cannot delete the segment " + segment.firstId + " of the journal in " + directory, e);
+    }
+  }
+
+  /**
+   * Gets the segment containing the given message.
+   *
+   * @param id the message id
+   * @return the segment, {@code null} if the message does not exist, or belongs to a deleted segment
+   */
+  private Segment segment(long id) {
+    Map.Entry<Long, Segment> entry = segments.floorEntry(id);
+    if (entry == null || id >= entry.getKey() + entry.getValue().entries) {
+      return null;
+    }
+    return entry.getValue();
+  }
+
+  /**
+   * Checks whether the given message is stored and not acknowledged.
+   *
+   * @param id the message id
+   * @return {@code true} if the message is pending
+   */
+  private boolean isPending(long id) {
+    Segment segment = segment(id);
+    return segment != null && segment.index.get((int) (id - segment.firstId) * INDEX_ENTRY_SIZE + ACKNOWLEDGED) == 0;
+  }
+
+  /**
+   * Removes the acknowledged ids from the given list, and the list itself if it is empty.
+   *
+   * @param destination the destination
+   * @param ids         the ids of the messages of the destination
+   */
+  private void compact(String destination, DestinationIds ids) {
+    int size = 0;
+    for (int i = 0; i < ids.size; i++) {
+      if (isPending(ids.ids[i])) {
+        ids.ids[size++] = ids.ids[i];
+      }
+    }
+    ids.size = size;
+    // Compacted again once doubled, so the cost of the compactions is spread over the appends.
+    ids.compactAt = Math.max(INITIAL_DESTINATION_IDS, size * 2);
+    if (size == 0) {
+      destinations.remove(destination);
+    }
+  }
+
+  @Override
+  public synchronized long[] pending(String destination) {
+    DestinationIds ids = destinations.get(destination);
+    if (ids == null) {
+      return new long[0];
+    }
+    compact(destination, ids);
+    return Arrays.copyOf(ids.ids, ids.size);
+  }
+
+  @Override
+  public synchronized Frame read(long id) {
+    Segment segment = segment(id);
+    if (segment == null) {
+      return null;
+    }
+    int entry = (int) (id - segment.firstId) * INDEX_ENTRY_SIZE;
+    if (segment.index.get(entry + ACKNOWLEDGED) != 0) {
+      return null;
+    }
+    Buffer payload = segment.payload(segment.index.getInt(entry + 8));
+    if (payload == null) {
+      log.error("The message " + id + " of the journal in " + directory + " is corrupted");
+      return null;
+    }
+    int[] position = {8};
+    // Skips the destination.
+    FrameRecords.readString(payload, position);
+    return FrameRecords.read(payload, position, -1);
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (Segment segment : segments.values()) {
+      segment.force();
+      segment.close();
+    }
+    segments.clear();
+    dirty.clear();
+    destinations.clear();
+    current = null;
+  }
+
+  /**
+   * Unmaps the given buffer, instead of waiting for the garbage collector to do it. The buffer must not be used
+   * afterwards.
+   *
+   * @param buffer the buffer
+   */
+  private static void unmap(MappedByteBuffer buffer) {
+    PlatformDependent.freeDirectBuffer(buffer);
+  }
+
+  /**
+   * The ids of the messages of a destination, in increasing order. Guarded by the lock of the store.
+   */
+  private static class DestinationIds {
+    private long[] ids = new long[INITIAL_DESTINATION_IDS];
+    private int size;
+    private int compactAt = INITIAL_DESTINATION_IDS;
+
+    private void add(long id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+  }
+
+  /**
+   * A segment of the journal: the journal file and its index file, both mapped in memory. The mapped buffers are
+   * guarded by the lock of the store, but are forced to disk without holding it: they are not unmapped while being
+   * forced.
+   */
+  private class Segment {
+    private final long firstId;
+    private final Path journalPath;
+    private final Path indexPath;
+    private FileChannel journalChannel;
+    private FileChannel indexChannel;
+    private MappedByteBuffer journal;
+    private MappedByteBuffer index;
+    /**
+     * The number of entries of the mapped index.
+     */
+    private int capacity;
+
+    /**
+     * The number of flushes forcing the segment to disk, the mapped buffers to unmap once they are done, and whether
+     * the segment has been closed.
+     */
+    private int forcing;
+    private final List<MappedByteBuffer> retired = new ArrayList<>();
+    private boolean released;
+
+    /**
+     * The position of the next record, the number of records, and the number of records not acknowledged yet.
+     */
+    private int position;
+    private int entries;
+    private int pending;
+
+    private Segment(long firstId) {
+      this.firstId = firstId;
+      String name = String.format("%020d", firstId);
+      this.journalPath = directory.resolve(name + JOURNAL_SUFFIX);
+      this.indexPath = directory.resolve(name + INDEX_SUFFIX);
+    }
+
+    private void create() throws IOException {
+      journalChannel = FileChannel.open(journalPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      map(Math.min(INITIAL_INDEX_ENTRIES, maxEntries));
+    }
+
+    private void map(int entries) throws IOException {
+      journal = journalChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+      index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) entries * INDEX_ENTRY_SIZE);
+      capacity = entries;
+    }
+
+    /**
+     * Doubles the number of entries of the index, extending the index file.
+     */
+    private void growIndex() throws IOException {
+      MappedByteBuffer previous = index;
+      int entries = (int) Math.min((long) capacity * 2, maxEntries);
+      index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) entries * INDEX_ENTRY_SIZE);
+      capacity = entries;
+      if (forcing > 0) {
+        retired.add(previous);
+      } else {
+        unmap(previous);
+      }
+    }
+
+    /**
+     * Reads the index of an existing segment, and checks the records not acknowledged. The index stops at the first
+     * entry that has not been completely written. The corrupted records are considered as acknowledged.
+     */
+    private void load() throws IOException {
+      journalChannel = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      map((int) Math.max(Math.min(INITIAL_INDEX_ENTRIES, maxEntries), indexChannel.size() / INDEX_ENTRY_SIZE));
+      for (int i = 0; i < capacity; i++) {
+        int entry = i * INDEX_ENTRY_SIZE;
+        long id = index.getLong(entry);
+        int recordPosition = index.getInt(entry + 8);
+        int length = index.getInt(entry + 12);
+        if (id != firstId + i || recordPosition < 0 || length < 8 || recordPosition + length > segmentSize) {
+          break;
+        }
+        entries = i + 1;
+        position = recordPosition + length;
+        if (index.get(entry + ACKNOWLEDGED) == 0) {
+          if (payload(recordPosition) == null) {
+            log.warn("The message " + id + " of the journal in " + directory + " is corrupted, it is skipped");
+            index.put(entry + ACKNOWLEDGED, (byte) 1);
+          } else {
+            pending++;
+            // Not compacted while recovering, the segment not being registered yet.
+            destinations.computeIfAbsent(destination(recordPosition), d -> new DestinationIds()).add(id);
+          }
+        }
+      }
+    }
+
+    /**
+     * Reads the payload of the record at the given position, and verifies its checksum.
+     *
+     * @param recordPosition the position of the record
+     * @return the payload, {@code null} if the checksum does not match
+     */
+    private Buffer payload(int recordPosition) {
+      int length = journal.getInt(recordPosition);
+      if (length < 0 || recordPosition + 8 + length > segmentSize) {
+        return null;
+      }
+      byte[] bytes = new byte[length];
+      ByteBuffer content = journal.duplicate();
+      content.position(recordPosition + 8);
+      content.get(bytes);
+      crc.reset();
+      crc.update(bytes, 0, length);
+      if ((int) crc.getValue() != journal.getInt(recordPosition + 4)) {
+        return null;
+      }
+      return Buffer.buffer(bytes);
+    }
+
+    /**
+     * Reads the destination of the record at the given position, whose checksum has been verified.
+     */
+    private String destination(int recordPosition) {
+      // The payload starts with the message id, followed by the destination.
+      int start = recordPosition + 8 + 8;
+      byte[] bytes = new byte[journal.getInt(start)];
+      ByteBuffer content = journal.duplicate();
+      content.position(start + 4);
+      content.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void force() {
+      journal.force();
+      index.force();
+    }
+
+    /**
+     * Called once the segment has been forced by a flush, with the lock of the store held.
+     */
+    private void forced() {
+      if (--forcing == 0) {
+        retired.forEach(JournalMessageStore::unmap);
+        retired.clear();
+        if (released) {
+          unmap(journal);
+          unmap(index);
+        }
+      }
+    }
+
+    private void close() {
+      try {
+        journalChannel.close();
+        indexChannel.close();
+      } catch (IOException e) {
+        log.warn("Cannot close the segment " + firstId + " of the journal in " + directory, e);
+      }
+      released = true;
+      if (forcing == 0) {
+        unmap(journal);
+        unmap(index);
+      }
+    }
+
+    private void delete() throws IOException {
+      close();
+      Files.deleteIfExists(journalPath);
+      Files.deleteIfExists(indexPath);
+    }
+  }
+}
@@ -0,0 +1,442 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A {@link Map} storing the headers of a frame. The header values of received frames are kept as received
+ * (encoded), and are only decoded the first time they are read. Most frame handlers only read a couple of headers, so
+ * the others are never decoded.
+ * <p/>
+ * When a frame is forwarded (for instance the {@code SEND} frame transformed into {@code MESSAGE} frames), copying
+ * the headers with {@link #LazyHeaders(Map)} keeps the values still encoded, and {@link FrameEncoder} writes them
+ * without any decoding / encoding round trip.
+ * <p/>
+ * Frames generally have less than 10 headers, so the headers are stored in flat arrays, in insertion order, and
+ * looked up sequentially. An index is only built when the number of headers exceeds {@link #HASH_THRESHOLD}.
+ * <p/>
+ * This class is <strong>NOT</strong> thread-safe, as {@link io.vertx.ext.stomp.Frame}.
+ */
+public class LazyHeaders extends AbstractMap<String, String> {
+
+  /**
+   * The number of headers above which the headers are indexed by name.
+   */
+  static final int HASH_THRESHOLD = 16;
+
+  private static final int DEFAULT_CAPACITY = 8;
+
+  private String[] names;
+
+  /**
+   * The values, either {@link String} (decoded) or {@link Encoded}.
+   */
+  private Object[] values;
+
+  private int size;
+
+  /**
+   * The position of the headers, only set when there are more than {@link #HASH_THRESHOLD} headers.
+   */
+  private HashMap<String, Integer> index;
+
+  private EntrySet entrySet;
+
+  public LazyHeaders() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  private LazyHeaders(int capacity) {
+    names = new String[capacity];
+    values = new Object[capacity];
+  }
+
+  /**
+   * Creates a new instance of {@link LazyHeaders} containing the headers of the given {@link Map}. If {@code other}
+   * is a {@link LazyHeaders}, the values not decoded yet are copied without being decoded.
+   *
+   * @param other the headers to copy
+   */
+  public LazyHeaders(Map<String, String> other) {
+    // Leave room for the headers added when a frame is forwarded (subscription, message-id, ack).
+    this(other.size() + 4);
+    putAll(other);
+  }
+
+  /**
+   * Adds a header as received, if not already set. The value is decoded on its first read.
+   *
+   * @param name                    the header name
+   * @param raw                     the encoded value, the content must not be modified afterwards
+   * @param escaped                 whether or not the value contains escape sequences
+   * @param connectOrConnectedFrame whether or not the value has been encoded using the {@code CONNECT} and
+   *                                {@code CONNECTED} frames rules
+   */
+  public void putEncodedIfAbsent(String name, ByteBuf raw, boolean escaped, boolean connectOrConnectedFrame) {
+    if (indexOf(name) < 0) {
+      append(name, new Encoded(raw, escaped, connectOrConnectedFrame));
+    }
+  }
+
+  /**
+   * Copies the encoded values that are slices of a received buffer, so they do not keep this buffer alive (see
+   * {@link FrameParser#detach(io.vertx.ext.stomp.Frame)}). The values stay encoded.
+   */
+  void detach() {
+    for (int i = 0; i < size; i++) {
+      Object value = values[i];
+      if (value instanceof Encoded && FrameParser.isSlice(((Encoded) value).raw)) {
+        values[i] = ((Encoded) value).copy();
+      }
+    }
+  }
+
+  /**
+   * Computes the size of the header lines ({@code name:value\n}), as written by
+   * {@link #writeTo(ByteBuf, boolean)}.
+   *
+   * @param connectOrConnectedFrame whether or not the headers belong to a {@code CONNECT} or {@code CONNECTED} frame
+   * @return the number of bytes
+   */
+  int encodedLength(boolean connectOrConnectedFrame) {
+    int length = 0;
+    for (int i = 0; i < size; i++) {
+      Object value = values[i];
+      if (isWrittenAsReceived(value, connectOrConnectedFrame)) {
+        length += HeaderCodec.encodedLength(names[i], connectOrConnectedFrame) + 1
+            + ((Encoded) value).raw.readableBytes() + 1;
+      } else {
+        length += FrameEncoder.encodedLength(names[i], decode(value), connectOrConnectedFrame);
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Writes the headers to the given buffer, as required by the STOMP specification ({@code name:value\n}). Values
+   * not modified since their reception are written as received, if they have been encoded with the same rules.
+   *
+   * @param buffer                  the buffer
+   * @param connectOrConnectedFrame whether or not the headers belong to a {@code CONNECT} or {@code CONNECTED} frame
+   */
+  void writeTo(ByteBuf buffer, boolean connectOrConnectedFrame) {
+    for (int i = 0; i < size; i++) {
+      Object value = values[i];
+      if (isWrittenAsReceived(value, connectOrConnectedFrame)) {
+        FrameEncoder.writeHeaderName(buffer, names[i], connectOrConnectedFrame);
+        ByteBuf raw = ((Encoded) value).raw;
+        buffer.writeBytes(raw, raw.readerIndex(), raw.readableBytes());
+        buffer.writeByte('\n');
+      } else {
+        FrameEncoder.writeHeader(buffer, names[i], decode(value), connectOrConnectedFrame);
+      }
+    }
+  }
+
+  private static boolean isWrittenAsReceived(Object value, boolean connectOrConnectedFrame) {
+    return value instanceof Encoded && ((Encoded) value).connectOrConnectedFrame == connectOrConnectedFrame;
+  }
+
+  private int indexOf(Object name) {
+    if (index != null) {
+      Integer position = index.get(name);
+      return position == null ? -1 : position;
+    }
+    if (name == null) {
+      return -1;
+    }
+    for (int i = 0; i < size; i++) {
+      // Well-known header names are shared constants, so the identity check usually matches.
+      String candidate = names[i];
+      if (candidate == name || candidate.equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void append(String name, Object value) {
+    if (size == names.length) {
+      int capacity = Math.max(DEFAULT_CAPACITY, size * 2);
+      names = Arrays.copyOf(names, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    names[size] = name;
+    values[size] = value;
+    size++;
+    if (index != null) {
+      index.put(name, size - 1);
+    } else if (size > HASH_THRESHOLD) {
+      buildIndex();
+    }
+  }
+
+  private void buildIndex() {
+    index = new HashMap<>();
+    for (int i = 0; i < size; i++) {
+      index.put(names[i], i);
+    }
+  }
+
+  private Object removeAt(int position) {
+    Object old = values[position];
+    int moved = size - position - 1;
+    if (moved > 0) {
+      System.arraycopy(names, position + 1, names, position, moved);
+      System.arraycopy(values, position + 1, values, position, moved);
+    }
+    size--;
+    names[size] = null;
+    values[size] = null;
+    if (index != null) {
+      if (size > HASH_THRESHOLD) {
+        buildIndex();
+      } else {
+        index = null;
+      }
+    }
+    return old;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  public String get(Object key) {
+    int position = indexOf(key);
+    return position < 0 ? null : decode(values[position]);
+  }
+
+  @Override
+  public String put(String key, String value) {
+    Objects.requireNonNull(key, "The header name must be set");
+    int position = indexOf(key);
+    if (position < 0) {
+      append(key, value);
+      return null;
+    }
+    Object old = values[position];
+    values[position] = value;
+    return decode(old);
+  }
+
+  @Override
+  public String remove(Object key) {
+    int position = indexOf(key);
+    return position < 0 ? null : decode(removeAt(position));
+  }
+
+  @Override
+  public void putAll(Map<? extends String, ? extends String> other) {
+    if (other instanceof LazyHeaders) {
+      LazyHeaders headers = (LazyHeaders) other;
+      if (size == 0 && names.length >= headers.size) {
+        // Encoded values are immutable and can be shared.
+        System.arraycopy(headers.names, 0, names, 0, headers.size);
+        System.arraycopy(headers.values, 0, values, 0, headers.size);
+        size = headers.size;
+        if (headers.index != null) {
+          index = new HashMap<>(headers.index);
+        }
+        return;
+      }
+      for (int i = 0; i < headers.size; i++) {
+        int position = indexOf(headers.names[i]);
+        if (position < 0) {
+          append(headers.names[i], headers.values[i]);
+        } else {
+          values[position] = headers.values[i];
+        }
+      }
+    } else {
+      super.putAll(other);
+    }
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(names, 0, size, null);
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+    index = null;
+  }
+
+  @Override
+  public Set<Map.Entry<String, String>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new EntrySet();
+    }
+    return entrySet;
+  }
+
+  private static String decode(Object value) {
+    if (value instanceof Encoded) {
+      return ((Encoded) value).decode();
+    }
+    return (String) value;
+  }
+
+  /**
+   * A header value as received.
+   */
+  private static class Encoded {
+    private final ByteBuf raw;
+    private final boolean escaped;
+    private final boolean connectOrConnectedFrame;
+    private String decoded;
+
+    private Encoded(ByteBuf raw, boolean escaped, boolean connectOrConnectedFrame) {
+      this.raw = raw;
+      this.escaped = escaped;
+      this.connectOrConnectedFrame = connectOrConnectedFrame;
+    }
+
+    private Encoded copy() {
+      Encoded copy = new Encoded(Unpooled.copiedBuffer(raw), escaped, connectOrConnectedFrame);
+      copy.decoded = decoded;
+      return copy;
+    }
+
+    private String decode() {
+      // Racy but idempotent, Strings are immutable.
+      String value = decoded;
+      if (value == null) {
+        if (escaped) {
+          value = HeaderCodec.decode(raw, raw.readerIndex(), raw.writerIndex(), connectOrConnectedFrame);
+        } else {
+          value = raw.toString(raw.readerIndex(), raw.readableBytes(), StandardCharsets.UTF_8);
+        }
+        decoded = value;
+      }
+      return value;
+    }
+  }
+
+  private class EntrySet extends AbstractSet<Map.Entry<String, String>> {
+
+    @Override
+    public Iterator<Map.Entry<String, String>> iterator() {
+      return new Iterator<Map.Entry<String, String>>() {
+        private int next;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+          return next < size;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+          if (next >= size) {
+            throw new NoSuchElementException();
+          }
+          last = next++;
+          return new Entry(last);
+        }
+
+        @Override
+        public void remove() {
+          if (last < 0) {
+            throw new IllegalStateException();
+          }
+          removeAt(last);
+          next = last;
+          last = -1;
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      LazyHeaders.this.clear();
+    }
+  }
+
+  private class Entry implements Map.Entry<String, String> {
+    private final int position;
+
+    private Entry(int position) {
+      this.position = position;
+    }
+
+    @Override
+    public String getKey() {
+      return names[position];
+    }
+
+    @Override
+    public String getValue() {
+      return decode(values[position]);
+    }
+
+    @Override
+    public String setValue(String value) {
+      Object old = values[position];
+      values[position] = value;
+      return decode(old);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+      return Objects.equals(getKey(), other.getKey()) && Objects.equals(getValue(), other.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * The buffers waiting to be written on a connection whose write queue is full. The size of this buffer is compared to
+ * the high-water mark of the connection (see
+ * {@link io.vertx.ext.stomp.StompServerOptions#setOutboundHighWaterMark(int)}), and the buffer records the frames
+ * dropped because of this mark, and the time spent over it.
+ * <p/>
+ * This class is <strong>NOT</strong> thread-safe, the connection guards it with its monitor lock. The counters can be
+ * read from any thread.
+ */
+class OutboundBuffer {
+
+  /**
+   * A buffer, the number of frames it contains, and whether they are all {@code MESSAGE} frames, the only ones that
+   * can be dropped.
+   */
+  static class Entry {
+    final Buffer buffer;
+    final int frames;
+    final boolean messages;
+
+    Entry(Buffer buffer, int frames, boolean messages) {
+      this.buffer = buffer;
+      this.frames = frames;
+      this.messages = messages;
+    }
+  }
+
+  private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+  private final int highWaterMark;
+  private long bytes;
+
+  private volatile long droppedFrames;
+  private volatile long overMarkSince = -1;
+  private volatile long timeOverMark;
+
+  /**
+   * Creates a new instance of {@link OutboundBuffer}.
+   *
+   * @param highWaterMark the high-water mark in bytes
+   */
+  OutboundBuffer(int highWaterMark) {
+    this.highWaterMark = highWaterMark;
+  }
+
+  boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /**
+   * @return the number of bytes waiting to be written
+   */
+  long bytes() {
+    return bytes;
+  }
+
+  /**
+   * @param length a number of bytes to add
+   * @return whether or not adding the given number of bytes would exceed the high-water mark
+   */
+  boolean exceeds(int length) {
+    return bytes + length > highWaterMark;
+  }
+
+  void add(Entry entry) {
+    entries.add(entry);
+    bytes += entry.buffer.length();
+  }
+
+  /**
+   * @return the oldest entry, {@code null} if empty
+   */
+  Entry poll() {
+    Entry entry = entries.poll();
+    if (entry != null) {
+      bytes -= entry.buffer.length();
+    }
+    return entry;
+  }
+
+  /**
+   * Drops the oldest buffers containing {@code MESSAGE} frames only, until the high-water mark is no more exceeded.
+   * The newest buffer, and the buffers containing other frames, are always kept.
+   */
+  void dropOldest() {
+    Iterator<Entry> iterator = entries.iterator();
+    int remaining = entries.size();
+    while (bytes > highWaterMark && remaining-- > 1) {
+      Entry entry = iterator.next();
+      if (entry.messages) {
+        iterator.remove();
+        bytes -= entry.buffer.length();
+        dropped(entry.frames);
+      }
+    }
+  }
+
+  /**
+   * Records frames dropped because of the high-water mark.
+   *
+   * @param frames the number of frames
+   */
+  void dropped(int frames) {
+    droppedFrames += frames;
+  }
+
+  /**
+   * Records that the high-water mark has been reached.
+   */
+  void overMark() {
+    if (overMarkSince < 0) {
+      overMarkSince = System.nanoTime();
+    }
+  }
+
+  /**
+   * Records that the buffer is back under the high-water mark, if it is.
+   *
+   * @return {@code true} if the buffer was over the high-water mark
+   */
+  boolean underMark() {
+    long since = overMarkSince;
+    if (since < 0 || bytes > highWaterMark) {
+      return false;
+    }
+    timeOverMark += System.nanoTime() - since;
+    overMarkSince = -1;
+    return true;
+  }
+
+  /**
+   * @return the number of frames dropped because of the high-water mark
+   */
+  long droppedFrames() {
+    return droppedFrames;
+  }
+
+  /**
+   * @return the time spent over the high-water mark in nanoseconds, including the current period if any
+   */
+  long timeOverMark() {
+    long since = overMarkSince;
+    return timeOverMark + (since < 0 ? 0 : System.nanoTime() - since);
+  }
+}
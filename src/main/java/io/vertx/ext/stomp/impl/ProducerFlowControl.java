@@ -0,0 +1,270 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.StompServer;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.StompServerOptions;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory-based flow control of the producers. The destinations keeping messages in memory (such as the messages a
+ * {@link Queue} holds until a subscriber is ready) charge their size to a per-destination and a global budget (see
+ * {@link StompServerOptions#setDestinationMemoryLimit(long)} and {@link StompServerOptions#setMemoryLimit(long)}).
+ * <p/>
+ * When a budget is exceeded, the server stops reading from the connections sending frames to the destination. The
+ * reading is resumed once the usage falls below the low-water mark (see
+ * {@link StompServerOptions#setMemoryLowWaterMark(int)}). The connections subscribed to the destination are not
+ * paused, as the acknowledgments they send free the memory. The paused connections are forgotten when they are closed
+ * (see {@link #closed(StompServerConnection)}).
+ * <p/>
+ * This class is thread-safe.
+ */
+public class ProducerFlowControl {
+
+  private final long destinationLimit;
+  private final long destinationLowWaterMark;
+  private final long globalLimit;
+  private final long globalLowWaterMark;
+
+  /**
+   * The usage of the destinations, removed once no message is kept and no producer is paused. The usages are only
+   * modified while holding the lock of the map entry ({@code compute} methods).
+   */
+  private final ConcurrentHashMap<String, Usage> destinations = new ConcurrentHashMap<>();
+
+  private final AtomicLong global = new AtomicLong();
+  /**
+   * The producers paused because of the global budget. Guarded by its own lock.
+   */
+  private final Set<StompServerTCPConnectionImpl> pausedByGlobal = new LinkedHashSet<>();
+
+  /**
+   * Creates a new instance of {@link ProducerFlowControl}.
+   *
+   * @param options the server options
+   */
+  public ProducerFlowControl(StompServerOptions options) {
+    this.destinationLimit = options.getDestinationMemoryLimit();
+    this.globalLimit = options.getMemoryLimit();
+    this.destinationLowWaterMark = lowWaterMark(destinationLimit, options.getMemoryLowWaterMark());
+    this.globalLowWaterMark = lowWaterMark(globalLimit, options.getMemoryLowWaterMark());
+  }
+
+  private static long lowWaterMark(long limit, int percentage) {
+    return limit * Math.max(0, Math.min(percentage, 100)) / 100;
+  }
+
+  /**
+   * Gets the flow control of the server of the given connection.
+   *
+   * @param connection the connection
+   * @return the flow control, {@code null} if the server has no memory limit
+   */
+  public static ProducerFlowControl of(StompServerConnection connection) {
+    StompServer server = connection.server();
+    if (server instanceof StompServerImpl) {
+      return ((StompServerImpl) server).flowControl();
+    }
+    return null;
+  }
+
+  /**
+   * Pauses the given producer if the destination it has sent a frame to is over budget, when the server of the
+   * producer limits the memory.
+   *
+   * @param producer    the connection having sent a frame
+   * @param destination the destination the frame has been dispatched to
+   */
+  public static void throttleProducer(StompServerConnection producer, Destination destination) {
+    ProducerFlowControl flowControl = of(producer);
+    if (flowControl != null) {
+      flowControl.throttle(producer, destination);
+    }
+  }
+
+  /**
+   * @return whether or not at least one of the budgets is limited
+   */
+  static boolean enabled(StompServerOptions options) {
+    return options.getDestinationMemoryLimit() >= 0 || options.getMemoryLimit() >= 0;
+  }
+
+  /**
+   * Charges the given number of bytes kept in memory by the given destination.
+   *
+   * @param destination the destination address
+   * @param bytes       the number of bytes
+   */
+  public void acquire(String destination, long bytes) {
+    destinations.compute(destination, (name, usage) -> {
+      if (usage == null) {
+        usage = new Usage();
+      }
+      usage.bytes += bytes;
+      return usage;
+    });
+    global.addAndGet(bytes);
+  }
+
+  /**
+   * Releases the given number of bytes previously charged by the given destination, and resumes the producers once
+   * the usage falls below the low-water mark.
+   *
+   * @param destination the destination address
+   * @param bytes       the number of bytes
+   */
+  public void release(String destination, long bytes) {
+    List<StompServerTCPConnectionImpl> resumed = new ArrayList<>();
+    destinations.computeIfPresent(destination, (name, usage) -> {
+      usage.bytes -= bytes;
+      if (usage.paused != null && (destinationLimit < 0 || usage.bytes <= destinationLowWaterMark)) {
+        resumed.addAll(usage.paused);
+        usage.paused = null;
+      }
+      return usage.bytes <= 0 && usage.paused == null ? null : usage;
+    });
+    long remaining = global.addAndGet(-bytes);
+    if (globalLimit < 0 || remaining <= globalLowWaterMark) {
+      synchronized (pausedByGlobal) {
+        resumed.addAll(pausedByGlobal);
+        pausedByGlobal.clear();
+      }
+    }
+    resumed.forEach(StompServerTCPConnectionImpl::resumeReading);
+  }
+
+  /**
+   * Pauses the given producer if the budget of the given destination, or the global budget, is exceeded. It is
+   * called once a frame sent by the producer has been dispatched.
+   * <p/>
+   * The producer is not paused if it is subscribed to the destination: it would stop reading the acknowledgments
+   * releasing the messages kept by the destination, and would never be resumed.
+   *
+   * @param producer    the connection having sent a frame to the destination
+   * @param destination the destination
+   */
+  public void throttle(StompServerConnection producer, Destination destination) {
+    if (!(producer instanceof StompServerTCPConnectionImpl)) {
+      return;
+    }
+    StompServerTCPConnectionImpl connection = (StompServerTCPConnectionImpl) producer;
+    String address = destination.destination();
+    boolean overDestinationLimit = destinationLimit >= 0 && usage(address) > destinationLimit;
+    boolean overGlobalLimit = globalLimit >= 0 && global.get() > globalLimit;
+    if ((!overDestinationLimit && !overGlobalLimit) || !destination.getSubscriptions(producer).isEmpty()) {
+      return;
+    }
+    if (overDestinationLimit) {
+      // The producer is paused while holding the lock of the usage, so a concurrent release resumes it.
+      destinations.computeIfPresent(address, (name, usage) -> {
+        if (usage.bytes > destinationLimit) {
+          if (usage.paused == null) {
+            usage.paused = new LinkedHashSet<>();
+          }
+          if (usage.paused.add(connection)) {
+            connection.pauseReading();
+          }
+        }
+        return usage;
+      });
+    }
+    if (overGlobalLimit) {
+      synchronized (pausedByGlobal) {
+        // Checked again while holding the lock, as the producers are released while holding it.
+        if (global.get() > globalLimit && pausedByGlobal.add(connection)) {
+          connection.pauseReading();
+        }
+      }
+    }
+  }
+
+  /**
+   * Forgets the given connection, as it is closed. It is not resumed when the usage of the destinations falls below
+   * the low-water mark.
+   *
+   * @param connection the connection
+   */
+  public void closed(StompServerConnection connection) {
+    for (String destination : destinations.keySet()) {
+      destinations.computeIfPresent(destination, (name, usage) -> {
+        if (usage.paused != null && usage.paused.remove(connection) && usage.paused.isEmpty()) {
+          usage.paused = null;
+        }
+        return usage.bytes <= 0 && usage.paused == null ? null : usage;
+      });
+    }
+    synchronized (pausedByGlobal) {
+      pausedByGlobal.remove(connection);
+    }
+  }
+
+  /**
+   * Gets the number of bytes kept in memory by the given destination.
+   *
+   * @param destination the destination address
+   * @return the number of bytes
+   */
+  public long usage(String destination) {
+    Usage usage = destination == null ? null : destinations.get(destination);
+    return usage == null ? 0 : usage.bytes;
+  }
+
+  /**
+   * @return the number of bytes kept in memory by all the destinations
+   */
+  public long usage() {
+    return global.get();
+  }
+
+  /**
+   * @return the number of producers paused by the budget of a destination or by the global budget
+   */
+  public int pausedProducers() {
+    Set<StompServerTCPConnectionImpl> paused = new HashSet<>();
+    for (String destination : destinations.keySet()) {
+      // Read while holding the lock of the usage, as the set is not thread-safe.
+      destinations.computeIfPresent(destination, (name, usage) -> {
+        if (usage.paused != null) {
+          paused.addAll(usage.paused);
+        }
+        return usage;
+      });
+    }
+    synchronized (pausedByGlobal) {
+      paused.addAll(pausedByGlobal);
+    }
+    return paused.size();
+  }
+
+  /**
+   * The usage of a destination. Only modified while holding the lock of its entry in the map.
+   */
+  private static class Usage {
+    private volatile long bytes;
+    private volatile Set<StompServerTCPConnectionImpl> paused;
+  }
+}
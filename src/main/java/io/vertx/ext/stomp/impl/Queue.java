@@ -14,36 +14,175 @@
  *  You may elect to redistribute this code under either of these licenses.
  */
 
+
 package io.vertx.ext.stomp.impl;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.stomp.Destination;
 import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.MessageStore;
+import io.vertx.ext.stomp.StompServer;
 import io.vertx.ext.stomp.StompServerConnection;
-import io.vertx.ext.stomp.utils.Headers;
+import io.vertx.ext.stomp.StompServerHandler;
+import io.vertx.ext.stomp.StompServerOptions;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
  * Implementation of {@link Destination} dispatching messages to a single subscriber. It dispatches
  * the messages using a round-robin strategy.
+ * <p/>
+ * For the subscriptions in the {@code client} and {@code client-individual} modes, the messages are kept until they
+ * are acknowledged. The messages that are not acknowledged (because of a {@code NACK} frame, the end of the
+ * subscription, or the expiration of the {@link io.vertx.ext.stomp.StompServerOptions#getAckTimeout()}) are
+ * redelivered to another subscriber. After a {@code NACK} or the expiration of the timeout, they are redelivered to
+ * the same subscriber when it is the only one.
+ * <p/>
+ * The messages are only dispatched to the subscribers ready to receive them: their write queue is not full, and, when
+ * they have set the {@link Frame#PREFETCH_COUNT} header in the {@code client} and {@code client-individual} modes,
+ * the number of messages they have not acknowledged yet is lower than this count. When no subscriber is ready, the
+ * messages are held until a subscriber acknowledges messages or has its write queue drained.
+ * <p/>
+ * When the backlog is enabled (see {@link io.vertx.ext.stomp.StompServerOptions#setQueueBacklogSize(long)}), the
+ * messages are also held while the queue has no subscriptions, and delivered to the first subscriber. The held
+ * messages exceeding the backlog size are spilled to a {@link BacklogSegment} file.
+ * <p/>
+ * A queue created with a {@link MessageStore} stores the messages having the {@code persistent:true} header, and
+ * removes them from the store once they have been consumed: written to a subscription in the {@code auto} mode, or
+ * acknowledged. The stored messages found when the queue is created are delivered first. They are looked up on a
+ * worker thread, the messages dispatched meanwhile being held. Such a queue stays registered without subscriptions,
+ * and holds the stored messages until a subscriber subscribes, even if the backlog is disabled.
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
 public class Queue implements Destination {
 
+  private static final Logger log = LoggerFactory.getLogger(Queue.class);
+
+  private static final Subscription[] EMPTY = new Subscription[0];
+
+  /**
+   * The maximum number of held messages written at once, the readiness of the subscribers being checked between the
+   * batches.
+   */
+  private static final int DELIVERY_BATCH_SIZE = 16;
+
+  /**
+   * The maximum number of spilled messages read back at once.
+   */
+  private static final int UNSPILL_BATCH_SIZE = 64;
+
   private final String destination;
 
-  private final List<Subscription> subscriptions = new ArrayList<>();
+  /**
+   * The subscriptions. The array is never modified, but replaced by a copy on subscription and un-subscription, so the
+   * dispatch reads a snapshot without locking.
+   */
+  private volatile Subscription[] subscriptions = EMPTY;
   private final Vertx vertx;
-  private int lastUsedSubscriptions = -1;
+  private final AtomicInteger nextSubscription = new AtomicInteger();
+
+  /**
+   * The messages waiting for a subscriber ready to receive them, in the order they have been received. Guarded by
+   * its own lock. Their size is charged to the {@link ProducerFlowControl} of the server, if any.
+   */
+  private final ArrayDeque<Held> held = new ArrayDeque<>();
+  private volatile boolean holding;
+  private final AtomicInteger delivering = new AtomicInteger();
+  /**
+   * The size of the held messages. Guarded by the lock of the held messages.
+   */
+  private long heldBytes;
+
+  /**
+   * The messages exceeding the backlog size are spilled to a file by a worker task, so the event loops do not wait
+   * for the disk. The messages waiting to be written, the number of spilled messages not read back yet (including the
+   * ones waiting to be written), whether the task is running, and whether it must read messages back are guarded by
+   * the lock of the held messages. The file, {@code null} if none, is only used by the task.
+   */
+  private final ArrayDeque<Frame> toSpill = new ArrayDeque<>();
+  private int spilled;
+  private boolean spilling;
+  private boolean unspillRequested;
+  private String spillDirectory;
+  private BacklogSegment segment;
+
+  /**
+   * The store of the {@code persistent:true} messages, {@code null} if none, and the ids of the stored messages
+   * found when the queue has been created, delivered before the held messages. Guarded by the lock of the held
+   * messages. While the stored messages are being looked up, nothing is delivered, and the lowest id appended by the
+   * queue is kept, as the lookup may return the messages appended meanwhile.
+   */
+  private final MessageStore store;
+  private long[] recovered;
+  private int recoveredIndex;
+  private volatile boolean recovering;
+  private long appendedWhileRecovering = Long.MAX_VALUE;
 
   public Queue(Vertx vertx, String destination) {
+    this(vertx, destination, null);
+  }
+
+  /**
+   * Creates a queue storing the {@code persistent:true} messages in the given store.
+   *
+   * @param vertx       the vert.x instance
+   * @param destination the destination
+   * @param store       the store, {@code null} if the messages are not stored
+   */
+  public Queue(Vertx vertx, String destination, MessageStore store) {
     this.destination = destination;
     this.vertx = vertx;
+    this.store = store;
+    if (store != null) {
+      recovering = true;
+      holding = true;
+      // The store may have to read its index, so it is not done on the event loop creating the queue.
+      vertx.<long[]>executeBlocking(future -> future.complete(store.pending(destination)), false, this::recovered);
+    }
+  }
+
+  /**
+   * Called once the stored messages have been looked up.
+   *
+   * @param ar the ids of the stored messages
+   */
+  private void recovered(AsyncResult<long[]> ar) {
+    synchronized (held) {
+      recovering = false;
+      if (ar.failed()) {
+        log.error("Cannot read the messages stored for the queue " + destination, ar.cause());
+      } else {
+        // The ids are sorted, the ones appended since the creation of the queue are already held.
+        long[] ids = ar.result();
+        int count = 0;
+        while (count < ids.length && ids[count] < appendedWhileRecovering) {
+          count++;
+        }
+        if (count > 0) {
+          recovered = Arrays.copyOf(ids, count);
+        }
+      }
+      holding = !held.isEmpty() || spilled > 0 || recovered != null;
+    }
+    deliverHeld();
   }
 
   /**
@@ -62,34 +201,494 @@ public class Queue implements Destination {
    * @return the current instance of {@link Destination}
    */
   @Override
-  public synchronized Destination dispatch(StompServerConnection connection, Frame frame) {
-    if (subscriptions.isEmpty()) {
-      lastUsedSubscriptions = -1;
+  public Destination dispatch(StompServerConnection connection, Frame frame) {
+    // Messages already held are delivered first.
+    if (holding || !deliver(frame, null)) {
+      hold(frame, connection);
+    }
+    return this;
+  }
+
+  /**
+   * Dispatches the given frame, storing it first if it has the {@code persistent:true} header and the queue has a
+   * store. The handler is notified once the store has made the message durable.
+   *
+   * @param connection        the connection
+   * @param frame             the frame ({@code SEND} frame)
+   * @param completionHandler called once the message is durable
+   * @return the current instance of {@link Destination}
+   */
+  @Override
+  public Destination dispatch(StompServerConnection connection, Frame frame,
+                              Handler<AsyncResult<Void>> completionHandler) {
+    if (store == null || !"true".equals(frame.getHeader(MessageStore.PERSISTENT))) {
+      dispatch(connection, frame);
+      completionHandler.handle(Future.succeededFuture());
+      return this;
+    }
+    long id;
+    try {
+      id = append(frame);
+    } catch (RuntimeException e) {
+      completionHandler.handle(Future.failedFuture(e));
       return this;
     }
-    Subscription subscription = getNextSubscription();
-    String messageId = UUID.randomUUID().toString();
-    Frame message = transform(frame, subscription, messageId);
+    dispatch(connection, new StoredFrame(frame.getCommand(), frame.getHeaders(), frame.getBody(), id));
+    store.sync(completionHandler);
+    return this;
+  }
+
+  /**
+   * Appends the given frame to the store. While the stored messages are being looked up, the id is recorded, so the
+   * message is not recovered a second time.
+   *
+   * @param frame the frame
+   * @return the id of the message
+   */
+  private long append(Frame frame) {
+    if (!recovering) {
+      return store.append(destination, frame);
+    }
+    synchronized (held) {
+      long id = store.append(destination, frame);
+      if (recovering) {
+        appendedWhileRecovering = Math.min(appendedWhileRecovering, id);
+      }
+      return id;
+    }
+  }
+
+  /**
+   * Removes the given message from the store, once it has been consumed.
+   *
+   * @param frame the message
+   */
+  private void consumed(Frame frame) {
+    if (store != null && frame instanceof StoredFrame) {
+      store.acknowledge(((StoredFrame) frame).storeId());
+    }
+  }
+
+  /**
+   * Writes the given message to the subscription. In the {@code auto} mode, the message is consumed once written.
+   *
+   * @param subscription the subscription
+   * @param message      the message
+   */
+  private void send(Subscription subscription, Frame message) {
     subscription.connection.write(message);
+    if (subscription.pending == null) {
+      consumed(message);
+    }
+  }
+
+  /**
+   * Delivers the given frame to a subscriber ready to receive it.
+   *
+   * @param frame    the frame, a {@code SEND} frame, or a {@code MESSAGE} frame to redeliver
+   * @param excluded a subscription that must not be selected, may be {@code null}
+   * @return {@code true} if the frame has been delivered, {@code false} if no subscriber is ready
+   */
+  private boolean deliver(Frame frame, Subscription excluded) {
+    Delivery delivery = select(frame, excluded);
+    if (delivery == null) {
+      return false;
+    }
+    send(delivery.subscription, delivery.message);
+    return true;
+  }
+
+  /**
+   * Selects a subscriber ready to receive the given frame, and records the message sent to it. The message must then
+   * be written with {@link #send(Subscription, Frame)}.
+   *
+   * @param frame    the frame, a {@code SEND} frame, or a {@code MESSAGE} frame to redeliver
+   * @param excluded a subscription that must not be selected, may be {@code null}
+   * @return the delivery, {@code null} if no subscriber is ready
+   */
+  private Delivery select(Frame frame, Subscription excluded) {
+    while (true) {
+      Subscription subscription = getNextSubscription(excluded, true);
+      if (subscription == null) {
+        return null;
+      }
+      String messageId = Topic.nextId(subscription.connection);
+      Frame message = transform(frame, subscription, messageId);
+      // The subscription may have been closed or have received other messages since its selection, another one is
+      // then selected.
+      if (subscription.track(messageId, message)) {
+        return new Delivery(subscription, message);
+      }
+    }
+  }
+
+  /**
+   * Holds the given frame until a subscriber is ready to receive it. The frame is discarded if there are no
+   * subscribers, unless the backlog is enabled (see {@link StompServerOptions#setQueueBacklogSize(long)}) or the frame
+   * is stored. With the backlog, the frames exceeding the backlog size are spilled to disk by a worker thread.
+   *
+   * @param frame      the frame
+   * @param connection the connection having sent the frame, or the subscriber it is redelivered from
+   */
+  private void hold(Frame frame, StompServerConnection connection) {
+    StompServerOptions options = options(connection);
+    long backlogSize = options != null ? options.getQueueBacklogSize() : -1;
+    ProducerFlowControl flowControl = ProducerFlowControl.of(connection);
+    boolean startSpilling = false;
+    // Held for an unknown time, so detached from the received buffer.
+    FrameParser.detach(frame);
+    synchronized (held) {
+      if (subscriptions.length == 0 && backlogSize < 0 && !(frame instanceof StoredFrame)) {
+        return;
+      }
+      Held message = new Held(frame, flowControl);
+      // Once messages are spilled, the next ones are spilled too, to keep the order.
+      if (backlogSize >= 0 && (spilled > 0 || heldBytes + message.size > backlogSize)) {
+        if (options.getQueueBacklogDirectory() == null) {
+          return;
+        }
+        spillDirectory = options.getQueueBacklogDirectory();
+        toSpill.add(frame);
+        spilled++;
+        startSpilling = !spilling;
+        spilling = true;
+      } else {
+        // Charged before being visible, so it cannot be released before.
+        message.acquire();
+        held.add(message);
+        heldBytes += message.size;
+      }
+      holding = true;
+    }
+    if (startSpilling) {
+      spill();
+    } else {
+      // A subscriber may have become ready meanwhile.
+      deliverHeld();
+    }
+  }
+
+  /**
+   * Starts the worker task appending the messages to spill to the segment file, and reading the spilled messages back
+   * when requested. Only one task runs at a time, so the segment file is not used concurrently.
+   */
+  private void spill() {
+    vertx.<Void>executeBlocking(future -> {
+      runSpilling();
+      future.complete();
+    }, false, ar -> {
+      if (ar.failed()) {
+        log.error("The spilling of the messages of the queue " + destination + " has failed", ar.cause());
+      }
+    });
+  }
+
+  /**
+   * Writes and reads the spilled messages until there is nothing left to do. Called from a worker thread. The
+   * messages read back are delivered from the event loop.
+   */
+  private void runSpilling() {
+    while (true) {
+      List<Frame> frames;
+      boolean read;
+      String directory;
+      synchronized (held) {
+        if (toSpill.isEmpty() && !unspillRequested) {
+          spilling = false;
+          return;
+        }
+        frames = new ArrayList<>(toSpill);
+        toSpill.clear();
+        read = unspillRequested;
+        unspillRequested = false;
+        directory = spillDirectory;
+      }
+      int lost = append(frames, directory);
+      List<Frame> unspilled = new ArrayList<>();
+      if (read) {
+        lost += unspill(unspilled);
+      }
+      synchronized (held) {
+        spilled -= lost + unspilled.size();
+        for (Frame frame : unspilled) {
+          // Not charged to the flow control, the producers do not wait for the spilled messages.
+          Held message = new Held(frame, null);
+          held.add(message);
+          heldBytes += message.size;
+        }
+        holding = recovering || !held.isEmpty() || spilled > 0 || recovered != null;
+      }
+      if (read) {
+        vertx.runOnContext(v -> deliverHeld());
+      }
+    }
+  }
+
+  /**
+   * Appends the given frames to the segment file. Called from the spilling task.
+   *
+   * @param frames    the frames
+   * @param directory the directory of the segment file
+   * @return the number of frames that have been discarded, as they cannot be written
+   */
+  private int append(List<Frame> frames, String directory) {
+    for (int i = 0; i < frames.size(); i++) {
+      try {
+        if (segment == null) {
+          segment = BacklogSegment.create(directory);
+        }
+        segment.append(frames.get(i));
+      } catch (IOException e) {
+        log.error("Cannot spill the messages of the queue " + destination + " to disk, they are discarded", e);
+        return frames.size() - i;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Reads the oldest spilled messages. Called from the spilling task.
+   *
+   * @param frames the list receiving the messages
+   * @return the number of messages that have been discarded, as they cannot be read
+   */
+  private int unspill(List<Frame> frames) {
+    if (segment == null) {
+      return 0;
+    }
+    int lost = 0;
+    try {
+      Frame frame;
+      while (frames.size() < UNSPILL_BATCH_SIZE && (frame = segment.poll()) != null) {
+        frames.add(frame);
+      }
+    } catch (IOException e) {
+      log.error("Cannot read the messages spilled by the queue " + destination + ", they are discarded", e);
+      lost = segment.size();
+      closeSegment();
+      return lost;
+    }
+    if (segment.isEmpty()) {
+      closeSegment();
+    }
+    return lost;
+  }
+
+  /**
+   * Reads the next recovered message from the store, and adds it at the head of the held messages. Must be called
+   * while holding the lock of the held messages.
+   *
+   * @return the message, {@code null} if all the recovered messages have been read
+   */
+  private Held unrecover() {
+    while (recovered != null) {
+      long id = recovered[recoveredIndex++];
+      if (recoveredIndex == recovered.length) {
+        recovered = null;
+      }
+      // Consumed meanwhile, or corrupted.
+      Frame frame = store.read(id);
+      if (frame != null) {
+        Held message = new Held(new StoredFrame(frame.getCommand(), frame.getHeaders(), frame.getBody(), id), null);
+        message.recovered = true;
+        held.addFirst(message);
+        heldBytes += message.size;
+        return message;
+      }
+    }
+    return null;
+  }
+
+  private void closeSegment() {
+    try {
+      segment.close();
+    } catch (IOException e) {
+      log.warn("Cannot delete the segment file " + segment.path(), e);
+    }
+    segment = null;
+  }
+
+  private static StompServerOptions options(StompServerConnection connection) {
+    StompServer server = connection.server();
+    return server != null ? server.options() : null;
+  }
+
+  private static boolean isBacklogEnabled(StompServerConnection connection) {
+    StompServerOptions options = options(connection);
+    return options != null && options.getQueueBacklogSize() >= 0;
+  }
+
+  /**
+   * @return whether or not the queue stores the messages having the {@code persistent:true} header
+   */
+  public boolean storesMessages() {
+    return store != null;
+  }
+
+  /**
+   * Checks whether or not the queue keeps messages while it has no subscriptions, and so must stay registered.
+   *
+   * @param connection the connection
+   * @return {@code true} if the queue has a store or the backlog is enabled
+   */
+  private boolean keepsMessages(StompServerConnection connection) {
+    return store != null || isBacklogEnabled(connection);
+  }
+
+  /**
+   * Delivers the held messages to the subscribers ready to receive them. When some messages cannot be delivered,
+   * waits for the write queue of the subscribers to be drained.
+   * <p/>
+   * Only one thread delivers the held messages at a time, the calls made meanwhile make it check the held messages
+   * again. So the messages are written in order, without holding the lock of the held messages.
+   */
+  private void deliverHeld() {
+    if (!holding || delivering.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    boolean startSpilling = false;
+    do {
+      startSpilling |= deliverHeldMessages();
+      missed = delivering.addAndGet(-missed);
+    } while (missed != 0);
+    if (startSpilling) {
+      spill();
+    }
+    if (holding) {
+      for (Subscription subscription : subscriptions) {
+        subscription.awaitWritable();
+      }
+    }
+  }
+
+  /**
+   * Delivers the held messages by batches: they are selected while holding the lock, and written once it is released,
+   * so the readiness of the subscribers is checked again for the next batch.
+   *
+   * @return whether or not the spilling task must be started to read the spilled messages back
+   */
+  private boolean deliverHeldMessages() {
+    List<Held> delivered = new ArrayList<>();
+    List<Delivery> deliveries = new ArrayList<>();
+    boolean startSpilling = false;
+    while (true) {
+      synchronized (held) {
+        // Delivered once the stored messages have been looked up, as they are older.
+        while (!recovering && deliveries.size() < DELIVERY_BATCH_SIZE) {
+          Held message = held.peek();
+          if (recovered != null && (message == null || !message.recovered)) {
+            // The recovered messages are older than the others.
+            Held next = unrecover();
+            if (next != null) {
+              message = next;
+            }
+          }
+          if (message == null) {
+            if (spilled > 0 && !unspillRequested) {
+              // Delivered once read back by the spilling task.
+              unspillRequested = true;
+              startSpilling = !spilling;
+              spilling = true;
+            }
+            break;
+          }
+          Delivery delivery = select(message.frame, null);
+          if (delivery == null) {
+            break;
+          }
+          deliveries.add(delivery);
+          delivered.add(held.poll());
+          heldBytes -= message.size;
+        }
+        holding = recovering || !held.isEmpty() || spilled > 0 || recovered != null;
+      }
+      if (deliveries.isEmpty()) {
+        return startSpilling;
+      }
+      deliveries.forEach(delivery -> send(delivery.subscription, delivery.message));
+      // Released without holding the lock, as it may resume the producers.
+      delivered.forEach(Held::release);
+      boolean full = deliveries.size() == DELIVERY_BATCH_SIZE;
+      deliveries.clear();
+      delivered.clear();
+      if (!full) {
+        return startSpilling;
+      }
+    }
+  }
+
+  /**
+   * Dispatches the given frame, relaying its body to the selected subscriber as it is received.
+   *
+   * @param connection        the connection
+   * @param frame             the frame ({@code SEND} frame), without body
+   * @param body              the body
+   * @param completionHandler called once the message has been written to the subscriber
+   * @return the current instance of {@link Destination}
+   */
+  @Override
+  public Destination dispatch(StompServerConnection connection, Frame frame, ReadStream<Buffer> body,
+                              Handler<AsyncResult<Void>> completionHandler) {
+    List<StompServerConnection> connections = new ArrayList<>(1);
+    List<Frame> messages = new ArrayList<>(1);
+    // The streamed messages are not tracked, as they cannot be redelivered, nor held, as the body is not kept.
+    Subscription subscription = getNextSubscription(null, true);
+    if (subscription == null) {
+      subscription = getNextSubscription(null, false);
+    }
+    if (subscription != null) {
+      connections.add(subscription.connection);
+      Frame message = transform(frame, subscription, Topic.nextId(subscription.connection));
+      // Not tracked, so no acknowledgment is expected.
+      message.getHeaders().remove(Frame.ACK);
+      messages.add(message);
+    }
+    BodyRelay.relay(connections, messages, body, completionHandler);
     return this;
   }
 
-  private Subscription getNextSubscription() {
-    lastUsedSubscriptions = lastUsedSubscriptions + 1;
-    if (lastUsedSubscriptions >= subscriptions.size()) {
-      lastUsedSubscriptions = 0;
+  /**
+   * Selects the next subscription in a round-robin way, without locking. Concurrent publishers select different
+   * subscriptions, as long as the subscriptions are not modified.
+   *
+   * @param excluded  a subscription that must not be selected, may be {@code null}
+   * @param readyOnly whether or not the subscriptions not ready to receive a message are skipped
+   * @return the subscription, {@code null} if none
+   */
+  private Subscription getNextSubscription(Subscription excluded, boolean readyOnly) {
+    Subscription[] current = subscriptions;
+    int length = current.length;
+    if (length == 0) {
+      return null;
+    }
+    // The counter may overflow, keep the index positive.
+    int start = nextSubscription.getAndIncrement() & Integer.MAX_VALUE;
+    for (int i = 0; i < length; i++) {
+      Subscription subscription = current[(start + i) % length];
+      if (subscription != excluded && (!readyOnly || subscription.ready())) {
+        return subscription;
+      }
     }
-    return subscriptions.get(lastUsedSubscriptions);
+    return null;
   }
 
   public static Frame transform(Frame frame, Subscription subscription, String messageId) {
-    final Headers headers = Headers.create(frame.getHeaders())
-        // Destination already set in the input headers.
-        .add(Frame.SUBSCRIPTION, subscription.id)
-        .add(Frame.MESSAGE_ID, messageId);
-    if (!subscription.ackMode.equals("auto")) {
+    // Headers not read since the reception of the frame are copied without being decoded.
+    final LazyHeaders headers = new LazyHeaders(frame.getHeaders());
+    // Destination already set in the input headers.
+    headers.put(Frame.SUBSCRIPTION, subscription.id);
+    headers.put(Frame.MESSAGE_ID, messageId);
+    if (subscription.pending != null) {
       // We reuse the message Id as ack Id
-      headers.add(Frame.ACK, messageId);
+      headers.put(Frame.ACK, messageId);
+    } else if (frame.getCommand() == Frame.Command.MESSAGE) {
+      // Redelivery of a message initially sent to a subscription requiring acknowledgments.
+      headers.remove(Frame.ACK);
+    }
+    if (frame instanceof StoredFrame) {
+      // The stored messages keep their id through their redeliveries.
+      return new StoredFrame(Frame.Command.MESSAGE, headers, frame.getBody(), ((StoredFrame) frame).storeId());
     }
     return new Frame(Frame.Command.MESSAGE,
         headers,
@@ -105,78 +704,195 @@ public class Queue implements Destination {
    * @return the current instance of {@link Destination}
    */
   @Override
-  public synchronized Destination subscribe(StompServerConnection connection, Frame frame) {
-    Subscription subscription = new Subscription(connection, frame);
-    subscriptions.add(subscription);
+  public Destination subscribe(StompServerConnection connection, Frame frame) {
+    synchronized (this) {
+      Subscription[] current = subscriptions;
+      Subscription[] copy = Arrays.copyOf(current, current.length + 1);
+      copy[current.length] = new Subscription(connection, frame);
+      subscriptions = copy;
+    }
+    deliverHeld();
     return this;
   }
 
   /**
-   * Handles a un-subscription request to the current {@link Destination}.
+   * Handles a un-subscription request to the current {@link Destination}. The messages not acknowledged by the
+   * subscription are redelivered to the other subscribers.
    *
    * @param connection the connection
    * @param frame      the {@code UNSUBSCRIBE} frame
    * @return {@code true} if the un-subscription has been handled, {@code false} otherwise.
    */
   @Override
-  public synchronized boolean unsubscribe(StompServerConnection connection, Frame frame) {
-    boolean r = false;
-    for (Subscription subscription : subscriptions) {
-      if (subscription.connection.equals(connection) && subscription.id.equals(frame.getId())) {
-        r = subscriptions.remove(subscription);
-        // Subscription id are unique for a connection.
-        break;
+  public boolean unsubscribe(StompServerConnection connection, Frame frame) {
+    Subscription removed = null;
+    synchronized (this) {
+      Subscription[] current = subscriptions;
+      for (int i = 0; i < current.length; i++) {
+        Subscription subscription = current[i];
+        if (subscription.connection.equals(connection) && subscription.id.equals(frame.getId())) {
+          Subscription[] copy = new Subscription[current.length - 1];
+          System.arraycopy(current, 0, copy, 0, i);
+          System.arraycopy(current, i + 1, copy, i, current.length - i - 1);
+          subscriptions = copy;
+          removed = subscription;
+          // Subscription id are unique for a connection.
+          break;
+        }
+      }
+      // With the backlog or a store, the queue keeps the messages sent without subscriptions, and so stays registered.
+      if (subscriptions.length == 0 && !keepsMessages(connection)) {
+        DestinationRegistry.instance(vertx).remove(this);
       }
     }
-    if (subscriptions.isEmpty()) {
-      vertx.sharedData().getLocalMap("stomp.destinations").remove(this);
+    discardHeldIfNoSubscriptions(connection);
+    if (removed != null) {
+      removed.close();
     }
-    return r;
+    return removed != null;
   }
 
   /**
-   * Removes all subscriptions of the given connection
+   * Removes all subscriptions of the given connection. The messages not acknowledged by these subscriptions are
+   * redelivered to the other subscribers.
    *
    * @param connection the connection
    * @return the current instance of {@link Destination}
    */
   @Override
-  public synchronized Destination unsubscribeConnection(StompServerConnection connection) {
-    new ArrayList<>(subscriptions)
-        .stream()
-        .filter(subscription -> subscription.connection.equals(connection))
-        .forEach(subscriptions::remove);
+  public Destination unsubscribeConnection(StompServerConnection connection) {
+    List<Subscription> removed;
+    synchronized (this) {
+      removed = Arrays.stream(subscriptions)
+          .filter(subscription -> subscription.connection.equals(connection))
+          .collect(Collectors.toList());
+      subscriptions = Arrays.stream(subscriptions)
+          .filter(subscription -> !subscription.connection.equals(connection))
+          .toArray(Subscription[]::new);
 
-    if (subscriptions.isEmpty()) {
-      vertx.sharedData().getLocalMap("stomp.destinations").remove(this);
+      // With the backlog or a store, the queue keeps the messages sent without subscriptions, and so stays registered.
+      if (subscriptions.length == 0 && !keepsMessages(connection)) {
+        DestinationRegistry.instance(vertx).remove(this);
+      }
     }
+    discardHeldIfNoSubscriptions(connection);
+    removed.forEach(Subscription::close);
     return this;
   }
 
+  private void discardHeldIfNoSubscriptions(StompServerConnection connection) {
+    if (isBacklogEnabled(connection)) {
+      return;
+    }
+    List<Held> discarded;
+    synchronized (held) {
+      if (subscriptions.length != 0) {
+        return;
+      }
+      // The stored messages are kept until a subscriber consumes them.
+      discarded = new ArrayList<>();
+      Iterator<Held> iterator = held.iterator();
+      while (iterator.hasNext()) {
+        Held message = iterator.next();
+        if (!(message.frame instanceof StoredFrame)) {
+          iterator.remove();
+          heldBytes -= message.size;
+          discarded.add(message);
+        }
+      }
+      holding = recovering || !held.isEmpty() || recovered != null;
+    }
+    discarded.forEach(Held::release);
+  }
+
   /**
-   * Handles a {@code ACK} frame.
+   * Handles a {@code ACK} frame. In the {@code client} mode, the acknowledgment is cumulative: the messages sent to
+   * the subscription before the acknowledged one are also acknowledged.
    *
    * @param connection the connection
    * @param frame      the {@code ACK} frame
    * @return {@code true} if the destination has handled the frame (meaning it has sent the message with id)
    */
   @Override
-  public synchronized boolean ack(StompServerConnection connection, Frame frame) {
+  public boolean ack(StompServerConnection connection, Frame frame) {
+    String messageId = frame.getId();
+    for (Subscription subscription : subscriptions) {
+      if (subscription.connection.equals(connection)) {
+        List<Frame> acknowledged = subscription.acknowledge(messageId);
+        if (acknowledged != null) {
+          StompServerHandler handler = connection.handler();
+          acknowledged.forEach(this::consumed);
+          if (handler != null) {
+            handler.onAck(connection, subscription.frame, acknowledged);
+          }
+          // The subscription may be ready to receive the held messages.
+          deliverHeld();
+          return true;
+        }
+      }
+    }
     return false;
   }
 
   /**
-   * Handles a {@code NACK} frame.
+   * Handles a {@code NACK} frame. The messages are redelivered to another subscriber, or to the same subscriber if
+   * there is no other subscriber. In the {@code client} mode, the messages sent to the subscription before the given
+   * one are also considered as not acknowledged.
    *
    * @param connection the connection
    * @param frame      the {@code NACK} frame
    * @return {@code true} if the destination has handled the frame (meaning it has sent the message with id)
    */
   @Override
-  public synchronized boolean nack(StompServerConnection connection, Frame frame) {
+  public boolean nack(StompServerConnection connection, Frame frame) {
+    String messageId = frame.getId();
+    for (Subscription subscription : subscriptions) {
+      if (subscription.connection.equals(connection)) {
+        List<Frame> rejected = subscription.acknowledge(messageId);
+        if (rejected != null) {
+          subscription.notAcknowledged(rejected, true);
+          return true;
+        }
+      }
+    }
     return false;
   }
 
+  /**
+   * Redelivers the given messages to the subscribers other than the given subscription.
+   *
+   * @param messages   the messages
+   * @param origin     the subscription that has not acknowledged the messages
+   * @param orElseSelf whether the messages are redelivered to the same subscription if there are no other
+   *                   subscription, instead of being discarded
+   */
+  private void redeliver(List<Frame> messages, Subscription origin, boolean orElseSelf) {
+    for (Frame frame : messages) {
+      if (deliver(frame, origin)) {
+        continue;
+      }
+      if (getNextSubscription(origin, false) != null) {
+        // The other subscribers are not ready.
+        hold(frame, origin.connection);
+      } else if (orElseSelf) {
+        String messageId = Topic.nextId(origin.connection);
+        Frame message = transform(frame, origin, messageId);
+        if (origin.track(messageId, message)) {
+          send(origin, message);
+        } else {
+          // The origin has been closed, or is not ready.
+          hold(frame, origin.connection);
+        }
+      } else if (subscriptions.length == 0) {
+        // The last subscription has ended, kept if the backlog is enabled.
+        hold(frame, origin.connection);
+      } else {
+        // Otherwise, discarded.
+        consumed(frame);
+      }
+    }
+  }
+
   /**
    * Gets all subscription ids for the given destination hold by the given client
    *
@@ -184,8 +900,8 @@ public class Queue implements Destination {
    * @return the list of subscription id, empty if none
    */
   @Override
-  public synchronized List<String> getSubscriptions(StompServerConnection connection) {
-    return subscriptions.stream()
+  public List<String> getSubscriptions(StompServerConnection connection) {
+    return Arrays.stream(subscriptions)
         .filter(subscription -> subscription.connection.equals(connection))
         .map(s -> s.id)
         .collect(Collectors.toList());
@@ -197,8 +913,8 @@ public class Queue implements Destination {
    * @return the number of subscriptions.
    */
   @Override
-  public synchronized int numberOfSubscriptions() {
-    return subscriptions.size();
+  public int numberOfSubscriptions() {
+    return subscriptions.length;
   }
 
   /**
@@ -212,15 +928,249 @@ public class Queue implements Destination {
     return this.destination.equals(address);
   }
 
+  /**
+   * A message waiting for a subscriber ready to receive it.
+   */
+  private class Held {
+    private final Frame frame;
+    private final ProducerFlowControl flowControl;
+    private final long size;
+    private boolean recovered;
+
+    private Held(Frame frame, ProducerFlowControl flowControl) {
+      this.frame = frame;
+      this.flowControl = flowControl;
+      this.size = frame.getBody() == null ? 0 : frame.getBody().length();
+    }
+
+    private void acquire() {
+      if (flowControl != null) {
+        flowControl.acquire(destination, size);
+      }
+    }
+
+    private void release() {
+      if (flowControl != null) {
+        flowControl.release(destination, size);
+      }
+    }
+  }
+
+  /**
+   * A message selected for a subscriber, written once the lock of the held messages is released.
+   */
+  private static class Delivery {
+    private final Subscription subscription;
+    private final Frame message;
+
+    private Delivery(Subscription subscription, Frame message) {
+      this.subscription = subscription;
+      this.message = message;
+    }
+  }
+
+  /**
+   * A message waiting for its acknowledgment.
+   */
+  private static class InFlight {
+    private final String id;
+    private final Frame message;
+    private final long deadline;
+
+    private InFlight(String id, Frame message, long deadline) {
+      this.id = id;
+      this.message = message;
+      this.deadline = deadline;
+    }
+  }
+
   private class Subscription {
     private final StompServerConnection connection;
     private final String id;
     private final String ackMode;
+    private final Frame frame;
+    private final long ackTimeout;
+    private final int prefetch;
+    private final StompServerTCPConnectionImpl tcp;
+    private final AtomicBoolean awaitingWritable = new AtomicBoolean();
+
+    /**
+     * The messages waiting for their acknowledgment, by message id, in the order they have been sent. It is
+     * {@code null} in the {@code auto} mode. Guarded by the lock of the subscription.
+     */
+    private final LinkedHashMap<String, InFlight> pending;
+    private volatile int inFlight;
+    private long timer = -1;
+    private boolean closed;
 
     private Subscription(StompServerConnection connection, Frame frame) {
       this.connection = connection;
       this.ackMode = frame.getAck() != null ? frame.getAck() : "auto";
       this.id = frame.getId();
+      this.frame = frame;
+      this.pending = ackMode.equals("auto") ? null : new LinkedHashMap<>();
+      StompServer server = connection.server();
+      this.ackTimeout = server != null && server.options() != null ? server.options().getAckTimeout() : 0;
+      this.prefetch = prefetch(frame);
+      this.tcp = connection instanceof StompServerTCPConnectionImpl ? (StompServerTCPConnectionImpl) connection : null;
+    }
+
+    private int prefetch(Frame frame) {
+      String value = frame.getHeader(Frame.PREFETCH_COUNT);
+      if (value == null || pending == null) {
+        // Not applicable in the auto mode, as there is no acknowledgment.
+        return 0;
+      }
+      try {
+        return Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        return 0;
+      }
+    }
+
+    /**
+     * @return whether or not the subscription can receive a message now. It only reflects the current state, and may
+     * have changed once the message is sent.
+     */
+    private boolean ready() {
+      return (prefetch <= 0 || inFlight < prefetch) && (tcp == null || !tcp.writeQueueFull());
+    }
+
+    /**
+     * Delivers the held messages once the write queue of the connection is drained, if it is full.
+     */
+    private void awaitWritable() {
+      if (tcp != null && tcp.writeQueueFull() && awaitingWritable.compareAndSet(false, true)) {
+        tcp.whenWritable(v -> {
+          awaitingWritable.set(false);
+          deliverHeld();
+        });
+      }
+    }
+
+    /**
+     * Records a message sent to the subscription.
+     *
+     * @param messageId the message id
+     * @param message   the message
+     * @return {@code false} if the subscription requires acknowledgments and has been closed or has reached its
+     * prefetch count, the message must then not be sent
+     */
+    private boolean track(String messageId, Frame message) {
+      if (pending == null) {
+        // Nothing to track in the auto mode.
+        return true;
+      }
+      // Kept until acknowledged, so detached from the received buffer.
+      FrameParser.detach(message);
+      synchronized (this) {
+        if (closed || prefetch > 0 && pending.size() >= prefetch) {
+          return false;
+        }
+        pending.put(messageId, new InFlight(messageId, message, System.currentTimeMillis() + ackTimeout));
+        inFlight = pending.size();
+        if (ackTimeout > 0 && timer == -1) {
+          timer = vertx.setTimer(ackTimeout, l -> expire());
+        }
+        return true;
+      }
+    }
+
+    /**
+     * Removes the messages acknowledged (or not acknowledged) by the given message id.
+     *
+     * @param messageId the message id
+     * @return the messages, {@code null} if the message is not waiting for an acknowledgment
+     */
+    private synchronized List<Frame> acknowledge(String messageId) {
+      if (pending == null || messageId == null || !pending.containsKey(messageId)) {
+        return null;
+      }
+      List<Frame> frames;
+      if (ackMode.equals("client-individual")) {
+        frames = Collections.singletonList(pending.remove(messageId).message);
+      } else {
+        // Cumulative: the messages are removed from the oldest one to the acknowledged one.
+        frames = new ArrayList<>();
+        Iterator<InFlight> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+          InFlight inFlight = iterator.next();
+          iterator.remove();
+          frames.add(inFlight.message);
+          if (inFlight.id.equals(messageId)) {
+            break;
+          }
+        }
+      }
+      inFlight = pending.size();
+      if (pending.isEmpty()) {
+        cancelTimer();
+      }
+      return frames;
+    }
+
+    private void cancelTimer() {
+      if (timer != -1) {
+        vertx.cancelTimer(timer);
+        timer = -1;
+      }
+    }
+
+    /**
+     * Called when the ack timeout has elapsed for the oldest message.
+     */
+    private void expire() {
+      List<Frame> expired = new ArrayList<>();
+      synchronized (this) {
+        timer = -1;
+        if (closed) {
+          return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<InFlight> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+          InFlight inFlight = iterator.next();
+          if (inFlight.deadline > now) {
+            // The messages are sorted by deadline.
+            timer = vertx.setTimer(inFlight.deadline - now, l -> expire());
+            break;
+          }
+          iterator.remove();
+          expired.add(inFlight.message);
+        }
+        this.inFlight = pending.size();
+      }
+      if (!expired.isEmpty()) {
+        notAcknowledged(expired, true);
+      }
+    }
+
+    /**
+     * Ends the subscription. The messages waiting for their acknowledgment are redelivered.
+     */
+    private void close() {
+      List<Frame> remaining;
+      synchronized (this) {
+        closed = true;
+        if (pending == null || pending.isEmpty()) {
+          return;
+        }
+        cancelTimer();
+        remaining = pending.values().stream().map(inFlight -> inFlight.message).collect(Collectors.toList());
+        pending.clear();
+        inFlight = 0;
+      }
+      notAcknowledged(remaining, false);
+    }
+
+    private void notAcknowledged(List<Frame> frames, boolean orElseSelf) {
+      StompServerHandler handler = connection.handler();
+      if (handler != null) {
+        handler.onNack(connection, frame, frames);
+      }
+      redeliver(frames, this, orElseSelf);
+      // The subscription may be ready to receive the held messages.
+      deliverHeld();
     }
   }
 
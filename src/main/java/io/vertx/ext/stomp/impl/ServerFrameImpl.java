@@ -16,6 +16,8 @@
 
 package io.vertx.ext.stomp.impl;
 
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.stomp.Frame;
 import io.vertx.ext.stomp.ServerFrame;
 import io.vertx.ext.stomp.StompServerConnection;
@@ -30,12 +32,18 @@ import java.util.Objects;
 public class ServerFrameImpl implements ServerFrame {
   private final StompServerConnection connection;
   private final Frame frame;
+  private final ReadStream<Buffer> bodyStream;
 
   public ServerFrameImpl(Frame frame, StompServerConnection connection) {
+    this(frame, connection, null);
+  }
+
+  public ServerFrameImpl(Frame frame, StompServerConnection connection, ReadStream<Buffer> bodyStream) {
     Objects.requireNonNull(connection);
     Objects.requireNonNull(frame);
     this.connection = connection;
     this.frame = frame;
+    this.bodyStream = bodyStream;
   }
 
 
@@ -54,4 +62,12 @@ public class ServerFrameImpl implements ServerFrame {
   public StompServerConnection connection() {
     return connection;
   }
+
+  /**
+   * @return the body stream, {@code null} if the body is not streamed
+   */
+  @Override
+  public ReadStream<Buffer> bodyStream() {
+    return bodyStream;
+  }
 }
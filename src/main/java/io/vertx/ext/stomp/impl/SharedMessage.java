@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+
+/**
+ * A message dispatched to several subscriptions, whose shared part (the headers inherited from the {@code SEND}
+ * frame and the body) is encoded once. Each delivery writes the {@code MESSAGE} command and its own
+ * {@code subscription}, {@code message-id} and {@code ack} headers, followed by a slice of the shared part.
+ * <p/>
+ * The shared part is an unpooled heap buffer, reclaimed by the garbage collector once the deliveries have been
+ * written. It is not reference-counted, as the buffers wrapped by {@link Buffer#buffer(ByteBuf)} are never released.
+ * <p/>
+ * This class is not thread-safe, it must be used by the thread dispatching the message.
+ */
+class SharedMessage {
+
+  private static final ByteBuf TRAILING_LINE = Unpooled.unreleasableBuffer(
+      Unpooled.wrappedBuffer(new byte[]{'\n'}));
+
+  private final Frame frame;
+  private final ByteBuf shared;
+
+  /**
+   * Encodes the shared part of the given frame.
+   *
+   * @param frame the frame ({@code SEND} frame)
+   */
+  SharedMessage(Frame frame) {
+    this.frame = frame;
+    // Headers not read since the reception of the frame are copied without being decoded.
+    LazyHeaders headers = new LazyHeaders(frame.getHeaders());
+    // Written by each delivery. An ack header sent by the producer is kept for the subscriptions in auto mode, the
+    // other deliveries write their own before it, and the first occurrence of a repeated header wins.
+    headers.remove(Frame.SUBSCRIPTION);
+    headers.remove(Frame.MESSAGE_ID);
+    this.shared = FrameEncoder.encodeMessageTail(headers, frame.getBody());
+  }
+
+  /**
+   * Builds the buffer of a delivery. The shared part is not copied.
+   *
+   * @param subscription the subscription id
+   * @param messageId    the message id
+   * @param ack          the ack id, {@code null} if the subscription does not acknowledge the messages
+   * @param trailingLine whether or not an empty line is appended after the frame
+   * @return the buffer containing the {@code MESSAGE} frame
+   */
+  Buffer encode(String subscription, String messageId, String ack, boolean trailingLine) {
+    ByteBuf head = FrameEncoder.encodeMessageHead(subscription, messageId, ack);
+    if (trailingLine) {
+      return Buffer.buffer(Unpooled.wrappedBuffer(head, shared.slice(), TRAILING_LINE.duplicate()));
+    }
+    return Buffer.buffer(Unpooled.wrappedBuffer(head, shared.slice()));
+  }
+
+  /**
+   * Builds the frame of a delivery, written with {@link io.vertx.ext.stomp.StompServerConnection#write(Frame)}. Its
+   * buffer is built by {@link #encode(String, String, String, boolean)}, so the shared part is not encoded again. The
+   * changes made to the frame by the handlers notified of the written frames are not written.
+   *
+   * @param subscription the subscription id
+   * @param messageId    the message id
+   * @param ack          the ack id, {@code null} if the subscription does not acknowledge the messages
+   * @return the {@code MESSAGE} frame
+   */
+  Frame frame(String subscription, String messageId, String ack) {
+    LazyHeaders headers = new LazyHeaders(frame.getHeaders());
+    headers.put(Frame.SUBSCRIPTION, subscription);
+    headers.put(Frame.MESSAGE_ID, messageId);
+    if (ack != null) {
+      headers.put(Frame.ACK, ack);
+    }
+    return new Frame(Frame.Command.MESSAGE, headers, frame.getBody()) {
+
+      @Override
+      public Buffer toBuffer() {
+        return encode(subscription, messageId, ack, false);
+      }
+
+      @Override
+      public Buffer toBuffer(boolean trailingLine) {
+        return encode(subscription, messageId, ack, trailingLine);
+      }
+    };
+  }
+}
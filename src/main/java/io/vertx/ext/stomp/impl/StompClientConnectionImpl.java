@@ -28,8 +28,13 @@ import io.vertx.ext.stomp.StompClientConnection;
 import io.vertx.ext.stomp.utils.Headers;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -47,7 +52,49 @@ public class StompClientConnectionImpl implements StompClientConnection, Handler
 
   private volatile long lastServerActivity;
 
-  private final Map<String, Handler<Void>> pendingReceipts = new HashMap<>();
+  private final Map<String, Handler<Void>> pendingReceipts = new ConcurrentHashMap<>();
+
+  /**
+   * The frames sent and not written yet, {@code null} if the batching is disabled (see
+   * {@link io.vertx.ext.stomp.StompClientOptions#setWriteBatchMaxBytes(int)}). The sending threads encode and queue
+   * the frames without locking, the context of the connection drains the queue.
+   */
+  private final ConcurrentLinkedQueue<Buffer> outbound;
+  private final AtomicLong outboundBytes = new AtomicLong();
+  private final AtomicBoolean drainScheduled = new AtomicBoolean();
+  private final int batchMaxBytes;
+  private final long batchMaxDelay;
+  /**
+   * Avoids concurrent drains when the connection is closed from another thread than its context.
+   */
+  private final Object drainLock = new Object();
+
+  /**
+   * The frames published with {@link #publish(Frame)} and waiting for their receipt, by receipt id, in the order they
+   * have been written, and the frames waiting for the window to have room. Guarded by the publish lock.
+   */
+  private final LinkedHashMap<String, Publication> inFlight = new LinkedHashMap<>();
+  private final ArrayDeque<Publication> waitingForWindow = new ArrayDeque<>();
+  /**
+   * The publications admitted in the window, written in order once the publish lock is released, so the socket and
+   * the writing frame handler are not called while holding it. Guarded by the publish lock.
+   */
+  private final ArrayDeque<Publication> admitted = new ArrayDeque<>();
+  /**
+   * The number of requests to write the admitted publications. Only the thread incrementing it from 0 writes them.
+   */
+  private final AtomicInteger writingPublications = new AtomicInteger();
+  /**
+   * The receipt ids of the last publications expired, so their late receipts are ignored. Guarded by the publish
+   * lock.
+   */
+  private final Set<String> expiredReceipts;
+  private final Object publishLock = new Object();
+  private final int publishWindowSize;
+  private final long publishTimeout;
+  private boolean publishWindowWasFull;
+  private long publishTimer = -1L;
+  private Handler<Void> publishDrainHandler;
 
   private String version;
   private String sessionId;
@@ -65,13 +112,35 @@ public class StompClientConnectionImpl implements StompClientConnection, Handler
   };
 
   private Handler<Frame> receivedFrameHandler;
-  private Handler<Frame> writingHandler;
+  private volatile Handler<Frame> writingHandler;
 
   private Handler<Frame> errorHandler;
   private volatile boolean closed;
   private Handler<Throwable> exceptionHandler;
   private volatile boolean connected;
 
+  /**
+   * A frame published with {@link #publish(Frame)}.
+   */
+  private static class Publication {
+    final Frame frame;
+    final Future<Frame> future = Future.future();
+    /**
+     * The time after which the publication fails (see {@link System#nanoTime()}), unused if there is no timeout.
+     */
+    final long deadline;
+    /**
+     * Whether the receipt id of the frame is already used by a publication waiting for its receipt. Set while holding
+     * the publish lock.
+     */
+    boolean duplicate;
+
+    private Publication(Frame frame, long deadline) {
+      this.frame = frame;
+      this.deadline = deadline;
+    }
+  }
+
   private static class Subscription {
     final String destination;
     final String id;
@@ -99,6 +168,17 @@ public class StompClientConnectionImpl implements StompClientConnection, Handler
     this.client = client;
     this.resultHandler = resultHandler;
     this.context = vertx.getOrCreateContext();
+    this.batchMaxBytes = client.options().getWriteBatchMaxBytes();
+    this.batchMaxDelay = client.options().getWriteBatchMaxDelay();
+    this.outbound = batchMaxBytes >= 0 ? new ConcurrentLinkedQueue<>() : null;
+    this.publishWindowSize = client.options().getPublishWindowSize();
+    this.publishTimeout = client.options().getPublishTimeout();
+    this.expiredReceipts = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > publishWindowSize;
+      }
+    });
 
     FrameParser parser = new FrameParser();
     parser.handler(this);
@@ -150,8 +230,13 @@ public class StompClientConnectionImpl implements StompClientConnection, Handler
       ponger = -1;
     }
 
+    if (outbound != null) {
+      // Do not lose the frames sent before closing.
+      drain();
+    }
     socket.close();
     client.close();
+    failPublications();
     pendingReceipts.clear();
     subscriptions.clear();
     server = null;
@@ -190,19 +275,73 @@ public class StompClientConnectionImpl implements StompClientConnection, Handler
   }
 
   @Override
-  public synchronized StompClientConnection send(Frame frame, Handler<Frame> receiptHandler) {
+  public StompClientConnection send(Frame frame, Handler<Frame> receiptHandler) {
+    // No lock, so the frames can be sent from several threads without contention.
     if (receiptHandler != null) {
-      String receiptId = UUID.randomUUID().toString();
+      String receiptId = client.options().getIdGenerator().next();
       frame.addHeader(Frame.RECEIPT, receiptId);
       pendingReceipts.put(receiptId, f -> receiptHandler.handle(frame));
     }
-    if (writingHandler != null) {
-      writingHandler.handle(frame);
+    Handler<Frame> handler = writingHandler;
+    if (handler != null) {
+      handler.handle(frame);
+    }
+    Buffer buffer = frame.toBuffer(client.options().isTrailingLine());
+    if (outbound == null) {
+      socket.write(buffer);
+    } else {
+      enqueue(buffer);
     }
-    socket.write(frame.toBuffer(client.options().isTrailingLine()));
     return this;
   }
 
+  /**
+   * Queues the given buffer, and schedules the drain of the queue if not already scheduled.
+   *
+   * @param buffer the buffer
+   */
+  private void enqueue(Buffer buffer) {
+    outbound.add(buffer);
+    long bytes = outboundBytes.addAndGet(buffer.length());
+    if (drainScheduled.compareAndSet(false, true)) {
+      if (batchMaxDelay > 0 && bytes < batchMaxBytes) {
+        context.runOnContext(v -> client.vertx().setTimer(batchMaxDelay, l -> drain()));
+      } else {
+        context.runOnContext(v -> drain());
+      }
+    } else if (batchMaxDelay > 0 && bytes >= batchMaxBytes && bytes - buffer.length() < batchMaxBytes) {
+      // The batch is full, it is written without waiting for the end of the delay.
+      context.runOnContext(v -> drain());
+    }
+  }
+
+  /**
+   * Writes the queued buffers, with a socket write per batch of at most {@code writeBatchMaxBytes} bytes (or a single
+   * buffer larger than this size).
+   */
+  private void drain() {
+    synchronized (drainLock) {
+      // Reset first, so the buffers queued from now on schedule another drain if this one misses them.
+      drainScheduled.set(false);
+      List<Buffer> batch = new ArrayList<>();
+      long bytes = 0;
+      Buffer buffer;
+      while ((buffer = outbound.poll()) != null) {
+        outboundBytes.addAndGet(-buffer.length());
+        if (!batch.isEmpty() && bytes + buffer.length() > batchMaxBytes) {
+          socket.write(FrameBatch.merge(batch));
+          batch.clear();
+          bytes = 0;
+        }
+        batch.add(buffer);
+        bytes += buffer.length();
+      }
+      if (!batch.isEmpty()) {
+        socket.write(FrameBatch.merge(batch));
+      }
+    }
+  }
+
   @Override
   public StompClientConnection send(String destination, Map<String, String> headers, Buffer body) {
     return send(destination, headers, body, null);
@@ -211,6 +350,10 @@ public class StompClientConnectionImpl implements StompClientConnection, Handler
   @Override
   public StompClientConnection send(String destination, Map<String, String> headers, Buffer body,
                                     Handler<Frame> receiptHandler) {
+    return send(createSendFrame(destination, headers, body), receiptHandler);
+  }
+
+  private Frame createSendFrame(String destination, Map<String, String> headers, Buffer body) {
     // No need for synchronization, no field access, except client (final)
     if (headers == null) {
       headers = new Headers();
@@ -229,8 +372,208 @@ public class StompClientConnectionImpl implements StompClientConnection, Handler
       headers.put(Frame.CONTENT_LENGTH, Integer.toString(body.length()));
     }
 
-    Frame frame = new Frame(Frame.Command.SEND, headers, body);
-    return send(frame, receiptHandler);
+    return new Frame(Frame.Command.SEND, headers, body);
+  }
+
+  @Override
+  public Future<Frame> publish(String destination, Buffer body) {
+    return publish(destination, null, body);
+  }
+
+  @Override
+  public Future<Frame> publish(String destination, Map<String, String> headers, Buffer body) {
+    return publish(createSendFrame(destination, headers, body));
+  }
+
+  @Override
+  public Future<Frame> publish(Frame frame) {
+    Objects.requireNonNull(frame);
+    Publication publication = new Publication(frame,
+        publishTimeout >= 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(publishTimeout) : 0);
+    synchronized (publishLock) {
+      if (closed) {
+        publication.future.fail("Connection closed");
+        return publication.future;
+      }
+      if (!waitingForWindow.isEmpty() || inFlight.size() >= publishWindowSize) {
+        waitingForWindow.add(publication);
+      } else {
+        admit(publication);
+      }
+      if (inFlight.size() + waitingForWindow.size() >= publishWindowSize) {
+        publishWindowWasFull = true;
+      }
+      if (publishTimeout >= 0 && publishTimer == -1) {
+        publishTimer = client.vertx().setPeriodic(Math.max(1, publishTimeout / 4), l -> expirePublications());
+      }
+    }
+    writeAdmitted();
+    return publication.future;
+  }
+
+  /**
+   * Admits a published frame in the window, requesting a receipt. The frame keeps the receipt id it already carries,
+   * if any (such as a frame published again after a failure), and the publication is registered under that id. Must
+   * be called with the publish lock held, so the published frames are written in order.
+   *
+   * @param publication the publication
+   */
+  private void admit(Publication publication) {
+    String receiptId = publication.frame.getHeader(Frame.RECEIPT);
+    if (receiptId == null) {
+      receiptId = client.options().getIdGenerator().next();
+      publication.frame.addHeader(Frame.RECEIPT, receiptId);
+    }
+    if (inFlight.containsKey(receiptId)) {
+      // Not written, the receipt could not be associated with the right publication.
+      publication.duplicate = true;
+    } else {
+      expiredReceipts.remove(receiptId);
+      inFlight.put(receiptId, publication);
+    }
+    admitted.add(publication);
+  }
+
+  /**
+   * Writes the admitted publications, in order. Must be called without holding the publish lock. When another thread
+   * is already writing them, it also writes the publications admitted by the current thread.
+   */
+  private void writeAdmitted() {
+    if (writingPublications.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      Publication publication;
+      while ((publication = nextAdmitted()) != null) {
+        if (publication.duplicate) {
+          publication.future.tryFail("A publication with the receipt id " + publication.frame.getHeader(Frame.RECEIPT)
+              + " is already waiting for its receipt");
+        } else {
+          send(publication.frame);
+        }
+      }
+      missed = writingPublications.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private Publication nextAdmitted() {
+    synchronized (publishLock) {
+      return admitted.poll();
+    }
+  }
+
+  /**
+   * Admits the frames waiting for the window to have room, if it has. Must be called with the publish lock held, and
+   * followed by {@link #writeAdmitted()} once the lock is released.
+   *
+   * @return the drain handler to call, {@code null} if none
+   */
+  private Handler<Void> releaseWindow() {
+    while (!waitingForWindow.isEmpty() && inFlight.size() < publishWindowSize) {
+      admit(waitingForWindow.poll());
+    }
+    if (inFlight.isEmpty() && publishTimer != -1) {
+      client.vertx().cancelTimer(publishTimer);
+      publishTimer = -1;
+    }
+    if (publishWindowWasFull && inFlight.size() + waitingForWindow.size() <= publishWindowSize / 2) {
+      publishWindowWasFull = false;
+      return publishDrainHandler;
+    }
+    return null;
+  }
+
+  /**
+   * Completes the publication associated with the given receipt id, if any.
+   *
+   * @param receipt the receipt id
+   * @return {@code true} if the receipt was expected by a publication
+   */
+  private boolean receiptPublication(String receipt) {
+    Publication publication;
+    Handler<Void> drainHandler;
+    synchronized (publishLock) {
+      publication = inFlight.remove(receipt);
+      if (publication == null) {
+        // Received after the timeout.
+        return expiredReceipts.remove(receipt);
+      }
+      drainHandler = releaseWindow();
+    }
+    writeAdmitted();
+    publication.future.tryComplete(publication.frame);
+    if (drainHandler != null) {
+      drainHandler.handle(null);
+    }
+    return true;
+  }
+
+  /**
+   * Fails the publications whose receipt has not been received in time.
+   */
+  private void expirePublications() {
+    List<Publication> expired = new ArrayList<>();
+    Handler<Void> drainHandler;
+    synchronized (publishLock) {
+      long now = System.nanoTime();
+      // The frames are published in order, and so expire in order.
+      Iterator<Map.Entry<String, Publication>> iterator = inFlight.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, Publication> entry = iterator.next();
+        if (now - entry.getValue().deadline < 0) {
+          break;
+        }
+        iterator.remove();
+        expiredReceipts.add(entry.getKey());
+        expired.add(entry.getValue());
+      }
+      while (!waitingForWindow.isEmpty() && now - waitingForWindow.peek().deadline >= 0) {
+        expired.add(waitingForWindow.poll());
+      }
+      drainHandler = releaseWindow();
+    }
+    writeAdmitted();
+    expired.forEach(publication -> publication.future.tryFail("No receipt received in " + publishTimeout + " ms"));
+    if (drainHandler != null) {
+      drainHandler.handle(null);
+    }
+  }
+
+  /**
+   * Fails the pending publications, as the connection is closed.
+   */
+  private void failPublications() {
+    List<Publication> pending;
+    synchronized (publishLock) {
+      pending = new ArrayList<>(inFlight.values());
+      pending.addAll(waitingForWindow);
+      // The other admitted publications are in flight.
+      admitted.stream().filter(publication -> publication.duplicate).forEach(pending::add);
+      inFlight.clear();
+      waitingForWindow.clear();
+      admitted.clear();
+      if (publishTimer != -1) {
+        client.vertx().cancelTimer(publishTimer);
+        publishTimer = -1;
+      }
+    }
+    pending.forEach(publication -> publication.future.tryFail("Connection closed"));
+  }
+
+  @Override
+  public boolean publishWindowFull() {
+    synchronized (publishLock) {
+      return inFlight.size() + waitingForWindow.size() >= publishWindowSize;
+    }
+  }
+
+  @Override
+  public StompClientConnection publishDrainHandler(Handler<Void> handler) {
+    synchronized (publishLock) {
+      this.publishDrainHandler = handler;
+    }
+    return this;
   }
 
   @Override
@@ -544,14 +887,20 @@ public class StompClientConnectionImpl implements StompClientConnection, Handler
     }
   }
 
-  private synchronized void handleReceipt(Frame frame) {
+  private void handleReceipt(Frame frame) {
     String receipt = frame.getHeader(Frame.RECEIPT_ID);
     if (receipt != null) {
-      Handler<Void> receiptHandler = pendingReceipts.remove(receipt);
-      if (receiptHandler == null) {
+      // Stack confinement, guarded by the parent class monitor lock. The receipt handler and the publication are
+      // completed once the lock is released, as they may write to the socket and call the drain handler.
+      Handler<Void> receiptHandler;
+      synchronized (this) {
+        receiptHandler = pendingReceipts.remove(receipt);
+      }
+      if (receiptHandler != null) {
+        receiptHandler.handle(null);
+      } else if (!receiptPublication(receipt)) {
         throw new IllegalStateException("No receipt handler for receipt " + receipt);
       }
-      receiptHandler.handle(null);
     }
   }
 
@@ -40,6 +40,7 @@ public class StompServerImpl implements StompServer {
   private final Vertx vertx;
   private final StompServerOptions options;
   private final NetServer server;
+  private final ProducerFlowControl flowControl;
 
   private StompServerHandler handler;
   private volatile boolean listening;
@@ -62,6 +63,7 @@ public class StompServerImpl implements StompServer {
     } else {
       server = net;
     }
+    flowControl = ProducerFlowControl.enabled(options) ? new ProducerFlowControl(options) : null;
   }
 
   @Override
@@ -111,13 +113,17 @@ public class StompServerImpl implements StompServer {
         "server.");
     server
         .connectHandler(socket -> {
-          StompServerConnection connection = new StompServerTCPConnectionImpl(socket, this, writingFrameHandler);
+          StompServerTCPConnectionImpl connection = new StompServerTCPConnectionImpl(socket, this, writingFrameHandler);
           FrameParser parser = new FrameParser(options);
           socket.exceptionHandler((exception) -> {
             LOGGER.error("The STOMP server caught a TCP socket error - closing connection", exception);
+            parser.close();
+            connection.close();
+          });
+          socket.endHandler(v -> {
+            parser.close();
             connection.close();
           });
-          socket.endHandler(v -> connection.close());
           parser
               .errorHandler((exception) -> {
                     connection.write(
@@ -125,7 +131,9 @@ public class StompServerImpl implements StompServer {
                     connection.close();
                   }
               )
-              .handler(frame -> stomp.handle(new ServerFrameImpl(frame, connection)));
+              .batchHandler(frames -> stomp.handle(connection, frames))
+              .bodyStreamHandler(connection.reader(),
+                  body -> stomp.handle(new ServerFrameImpl(body.frame(), connection, body)));
           socket.handler(parser);
         })
         .listen(port, host, ar -> {
@@ -171,6 +179,13 @@ public class StompServerImpl implements StompServer {
     return vertx;
   }
 
+  /**
+   * @return the memory-based flow control of the producers, {@code null} if the options do not limit the memory
+   */
+  public ProducerFlowControl flowControl() {
+    return flowControl;
+  }
+
   @Override
   public synchronized StompServerHandler stompHandler() {
     return handler;
@@ -220,13 +235,18 @@ public class StompServerImpl implements StompServer {
         socket.reject();
         return;
       }
-      StompServerConnection connection = new StompServerWebSocketConnectionImpl(socket, this, writingFrameHandler);
+      StompServerWebSocketConnectionImpl connection =
+          new StompServerWebSocketConnectionImpl(socket, this, writingFrameHandler);
       FrameParser parser = new FrameParser(options);
       socket.exceptionHandler((exception) -> {
         LOGGER.error("The STOMP server caught a WebSocket error - closing connection", exception);
+        parser.close();
+        connection.close();
+      });
+      socket.endHandler(v -> {
+        parser.close();
         connection.close();
       });
-      socket.endHandler(v -> connection.close());
       parser
           .errorHandler((exception) -> {
                 connection.write(
@@ -234,7 +254,9 @@ public class StompServerImpl implements StompServer {
                 connection.close();
               }
           )
-          .handler(frame -> stomp.handle(new ServerFrameImpl(frame, connection)));
+          .batchHandler(frames -> stomp.handle(connection, frames))
+          .bodyStreamHandler(connection.reader(),
+              body -> stomp.handle(new ServerFrameImpl(body.frame(), connection, body)));
       socket.handler(parser);
     };
   }
@@ -16,16 +16,27 @@
 
 package io.vertx.ext.stomp.impl;
 
+import io.vertx.core.Context;
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.core.net.NetSocket;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
-import java.util.UUID;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Default implementation of the {@link StompServerConnection}.
@@ -41,17 +52,93 @@ public class StompServerTCPConnectionImpl implements StompServerConnection {
   private final String sessionId;
   protected final Handler<ServerFrame> handler;
 
+  /**
+   * The context of the connection, on which the writes issued from other threads are completed.
+   */
+  private final Context context;
+
   private volatile long lastClientActivity;
   private long pinger = -1;
   private long ponger = -1;
 
+  /**
+   * The frame being written in several parts, {@code null} if none. While set, the other writes are delayed: they are
+   * kept in the outbound buffer, so the high-water mark and the {@link SlowConsumerPolicy} apply, or in the delayed
+   * writes if the outbound buffering is disabled. Guarded by the monitor lock.
+   */
+  private StreamedFrameWriter streamedFrame;
+  private final ArrayDeque<OutboundBuffer.Entry> delayedWrites = new ArrayDeque<>();
+
+  /**
+   * The frames waiting for the write queue of the socket to be drained, {@code null} if the outbound buffering is
+   * disabled (see {@link StompServerOptions#setOutboundHighWaterMark(int)}). Guarded by the monitor lock.
+   */
+  private final OutboundBuffer outbound;
+  private final SlowConsumerPolicy slowConsumerPolicy;
+  private boolean awaitingDrain;
+
+  /**
+   * The buffers written during the current event loop turn, written together at the end of the turn, {@code null} if
+   * the coalescing is disabled (see {@link StompServerOptions#setWriteCoalescingThreshold(int)}). Guarded by the
+   * monitor lock.
+   */
+  private final List<Buffer> coalesced;
+  private final int coalescingThreshold;
+  private int coalescedBytes;
+  private boolean coalescedMessages = true;
+
+  /**
+   * The number of writes to the socket, and of frames they contained. Updated with the monitor lock held, read from
+   * any thread.
+   */
+  private volatile long socketWrites;
+  private volatile long writtenFrames;
+
+  /**
+   * The buffers to write to the socket, in order. The writes are decided while holding the monitor lock, but the
+   * buffers are written once it is released, so the threads writing to this connection do not wait for the socket.
+   * Guarded by the monitor lock.
+   */
+  private final ArrayDeque<Buffer> toWrite = new ArrayDeque<>();
+  /**
+   * The number of requests to write the queued buffers. Only the thread incrementing it from 0 writes them.
+   */
+  private final AtomicInteger writing = new AtomicInteger();
+
+  /**
+   * The connections paused because the frames they have sent exceeded the high-water mark of this connection.
+   * Guarded by the monitor lock.
+   */
+  private final Set<StompServerTCPConnectionImpl> pausedProducers = new HashSet<>();
+  private final AtomicBoolean disconnected = new AtomicBoolean();
+
+  /**
+   * The number of reasons to stop reading from this connection. Guarded by its own lock, as the socket may be locked
+   * while the monitor lock is requested.
+   */
+  private final Object readLock = new Object();
+  private int readPauses;
+
+  /**
+   * The handlers waiting for the write queue to be no more full. Guarded by the monitor lock.
+   */
+  private final List<Handler<Void>> writableHandlers = new ArrayList<>();
+  private boolean drainHandlerSet;
+
+  private final ConnectionSubscriptions subscriptions = new ConnectionSubscriptions();
+
   public StompServerTCPConnectionImpl(NetSocket socket, StompServer server, Handler<ServerFrame> writingFrameHandler) {
     Objects.requireNonNull(socket);
     Objects.requireNonNull(server);
     this.socket = socket;
     this.server = server;
-    this.sessionId = UUID.randomUUID().toString();
+    this.sessionId = server.options().getIdGenerator().next();
     this.handler = writingFrameHandler;
+    this.context = context(server);
+    this.outbound = outboundBuffer(server);
+    this.slowConsumerPolicy = server.options().getSlowConsumerPolicy();
+    this.coalescingThreshold = server.options().getWriteCoalescingThreshold();
+    this.coalesced = coalescingThreshold >= 0 ? new ArrayList<>() : null;
   }
 
   public StompServerTCPConnectionImpl(StompServer server, Handler<ServerFrame> writingFrameHandler) {
@@ -59,7 +146,34 @@ public class StompServerTCPConnectionImpl implements StompServerConnection {
     this.socket = null;
     this.server = server;
     this.handler = writingFrameHandler;
-    this.sessionId = UUID.randomUUID().toString();
+    this.sessionId = server.options().getIdGenerator().next();
+    this.context = context(server);
+    this.outbound = outboundBuffer(server);
+    this.slowConsumerPolicy = server.options().getSlowConsumerPolicy();
+    // Each frame is written in its own web socket message, the writes are not coalesced.
+    this.coalescingThreshold = -1;
+    this.coalesced = null;
+  }
+
+  /**
+   * @return the context of the connection being created: the context of the current thread, as the connections are
+   * created by the handler of the socket
+   */
+  private static Context context(StompServer server) {
+    Context context = Vertx.currentContext();
+    return context != null ? context : server.vertx().getOrCreateContext();
+  }
+
+  private static OutboundBuffer outboundBuffer(StompServer server) {
+    int highWaterMark = server.options().getOutboundHighWaterMark();
+    return highWaterMark >= 0 ? new OutboundBuffer(highWaterMark) : null;
+  }
+
+  /**
+   * @return the subscriptions of this connection
+   */
+  ConnectionSubscriptions subscriptions() {
+    return subscriptions;
   }
 
   @Override
@@ -67,15 +181,562 @@ public class StompServerTCPConnectionImpl implements StompServerConnection {
     if (handler != null) {
       handler.handle(new ServerFrameImpl(frame, this));
     }
-    return write(frame.toBuffer(server.options().isTrailingLine()));
+    write(frame.toBuffer(server.options().isTrailingLine()), frame.getCommand() == Frame.Command.MESSAGE);
+    return this;
   }
 
   @Override
   public StompServerConnection write(Buffer buffer) {
-    socket.write(buffer);
+    // The content of the buffer is unknown, it is never dropped by the slow consumer policies.
+    write(buffer, false);
     return this;
   }
 
+  /**
+   * Writes the given buffer, containing a single frame.
+   *
+   * @param buffer  the buffer
+   * @param message whether or not the frame is a {@code MESSAGE} frame, that the slow consumer policies can drop
+   */
+  void write(Buffer buffer, boolean message) {
+    Outcome outcome;
+    synchronized (this) {
+      if (streamedFrame != null) {
+        // Do not interleave the buffer with the parts of the frame being written.
+        outcome = delay(buffer, 1, message);
+      } else if (FrameBatch.gather(this, buffer, message)) {
+        return;
+      } else if (coalesced != null) {
+        if (coalesced.isEmpty()) {
+          // At the end of the turn of the event loop of the connection, even if written from another thread.
+          context.runOnContext(v -> flushCoalesced());
+        }
+        coalesced.add(buffer);
+        coalescedBytes += buffer.length();
+        coalescedMessages &= message;
+        if (coalescedBytes < coalescingThreshold) {
+          return;
+        }
+        boolean messages = coalescedMessages;
+        int frames = coalesced.size();
+        outcome = send(takeCoalesced(), frames, messages);
+      } else {
+        outcome = send(buffer, 1, message);
+      }
+    }
+    handle(outcome);
+  }
+
+  /**
+   * Writes the buffers coalesced during the event loop turn, if any.
+   */
+  private void flushCoalesced() {
+    Outcome outcome;
+    synchronized (this) {
+      if (coalesced.isEmpty()) {
+        // Already written, as the threshold has been reached or another write has been issued meanwhile.
+        return;
+      }
+      boolean messages = coalescedMessages;
+      int frames = coalesced.size();
+      outcome = send(takeCoalesced(), frames, messages);
+    }
+    handle(outcome);
+  }
+
+  /**
+   * Merges the coalesced buffers, and clears them. Must be called with the monitor lock held.
+   *
+   * @return the merged buffer
+   */
+  private Buffer takeCoalesced() {
+    Buffer buffer = FrameBatch.merge(coalesced);
+    coalesced.clear();
+    coalescedBytes = 0;
+    coalescedMessages = true;
+    return buffer;
+  }
+
+  /**
+   * Writes the given buffer after the coalesced buffers, if any, to keep the order of the writes. Must be called with
+   * the monitor lock held.
+   *
+   * @param buffer   the buffer
+   * @param frames   the number of frames in the buffer
+   * @param messages whether or not the buffer only contains {@code MESSAGE} frames
+   * @return the outcome
+   */
+  private Outcome sendAfterCoalesced(Buffer buffer, int frames, boolean messages) {
+    if (coalesced == null || coalesced.isEmpty()) {
+      return send(buffer, frames, messages);
+    }
+    int total = coalesced.size() + frames;
+    boolean merged = messages && coalescedMessages;
+    coalesced.add(buffer);
+    return send(takeCoalesced(), total, merged);
+  }
+
+  /**
+   * Delays the given buffer until the end of the frame being written in several parts. Must be called with the
+   * monitor lock held.
+   *
+   * @param buffer   the buffer
+   * @param frames   the number of frames in the buffer
+   * @param messages whether or not the buffer only contains {@code MESSAGE} frames
+   * @return the outcome
+   */
+  private Outcome delay(Buffer buffer, int frames, boolean messages) {
+    if (outbound == null) {
+      delayedWrites.add(new OutboundBuffer.Entry(buffer, frames, messages));
+      return Outcome.WRITTEN;
+    }
+    // Buffered, as the frame being written is not terminated.
+    return send(buffer, frames, messages);
+  }
+
+  /**
+   * Writes the buffers gathered during a {@link FrameBatch}.
+   *
+   * @param buffer   the buffers
+   * @param frames   the number of frames in the buffers
+   * @param messages whether or not the buffers only contain {@code MESSAGE} frames
+   */
+  void writeGathered(Buffer buffer, int frames, boolean messages) {
+    Outcome outcome;
+    synchronized (this) {
+      if (streamedFrame != null) {
+        outcome = delay(buffer, frames, messages);
+      } else {
+        outcome = sendAfterCoalesced(buffer, frames, messages);
+      }
+    }
+    handle(outcome);
+  }
+
+  /**
+   * Writes the given buffer, containing a single frame, bypassing the batch and the frame written in several parts,
+   * if any.
+   *
+   * @param buffer  the buffer
+   * @param message whether or not the frame is a {@code MESSAGE} frame
+   */
+  void writeNow(Buffer buffer, boolean message) {
+    Outcome outcome;
+    synchronized (this) {
+      outcome = sendAfterCoalesced(buffer, 1, message);
+    }
+    handle(outcome);
+  }
+
+  /**
+   * Writes the given buffer to the socket. Must be called without holding the monitor lock.
+   *
+   * @param buffer the buffer
+   */
+  void socketWrite(Buffer buffer) {
+    socket.write(buffer);
+  }
+
+  /**
+   * Queues the given buffer, written to the socket by {@link #writeQueued()}. Must be called with the monitor lock
+   * held.
+   *
+   * @param buffer the buffer
+   */
+  private void queueWrite(Buffer buffer) {
+    toWrite.add(buffer);
+  }
+
+  /**
+   * Queues the given buffer, written to the socket by {@link #writeQueued()}, and records the write. Must be called
+   * with the monitor lock held.
+   *
+   * @param buffer the buffer
+   * @param frames the number of frames in the buffer
+   */
+  private void queueWrite(Buffer buffer, int frames) {
+    toWrite.add(buffer);
+    socketWrites++;
+    writtenFrames += frames;
+  }
+
+  /**
+   * Writes the queued buffers to the socket, in order, followed by the buffered frames while the write queue of the
+   * socket is not full. Must be called without holding the monitor lock. When another thread is already writing, the
+   * buffers queued by the current thread are written by that thread.
+   */
+  private void writeQueued() {
+    if (writing.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      Buffer buffer;
+      while ((buffer = nextWrite()) != null) {
+        socketWrite(buffer);
+      }
+      missed = writing.addAndGet(-missed);
+    } while (missed != 0);
+    if (outbound != null) {
+      outboundWritten();
+    }
+  }
+
+  /**
+   * @return the next buffer to write to the socket: a queued buffer, or else a buffered frame if the write queue of the
+   * socket is not full and no frame is being written in several parts, {@code null} if none
+   */
+  private synchronized Buffer nextWrite() {
+    Buffer buffer = toWrite.poll();
+    if (buffer == null && outbound != null && streamedFrame == null && !outbound.isEmpty() && !writeQueueFull()) {
+      OutboundBuffer.Entry entry = outbound.poll();
+      buffer = entry.buffer;
+      socketWrites++;
+      writtenFrames += entry.frames;
+    }
+    return buffer;
+  }
+
+  /**
+   * What happened to a buffer written to the connection, by increasing order of severity.
+   */
+  private enum Outcome {
+    WRITTEN, BUFFERED, OVER_HIGH_WATER_MARK, REJECTED
+  }
+
+  /**
+   * Writes the given buffer to the socket, or keeps it until the write queue of the socket is drained. The
+   * {@link SlowConsumerPolicy} is applied if the buffer would exceed the high-water mark. The dropping policies only
+   * drop the buffers containing {@code MESSAGE} frames only, the other frames (receipts, errors...) are always kept.
+   * Must be called with the monitor lock held.
+   *
+   * @param buffer   the buffer
+   * @param frames   the number of frames in the buffer
+   * @param messages whether or not the buffer only contains {@code MESSAGE} frames
+   * @return the outcome, to handle once the lock is released (see {@link #handle(Outcome)})
+   */
+  private Outcome send(Buffer buffer, int frames, boolean messages) {
+    if (outbound == null || streamedFrame == null && outbound.isEmpty() && !writeQueueFull()) {
+      queueWrite(buffer, frames);
+      return Outcome.WRITTEN;
+    }
+    OutboundBuffer.Entry entry = new OutboundBuffer.Entry(buffer, frames, messages);
+    if (!outbound.exceeds(buffer.length())) {
+      outbound.add(entry);
+      return Outcome.BUFFERED;
+    }
+    outbound.overMark();
+    switch (slowConsumerPolicy) {
+      case DROP_NEWEST:
+        if (messages) {
+          outbound.dropped(frames);
+        } else {
+          outbound.add(entry);
+        }
+        return Outcome.BUFFERED;
+      case DROP_OLDEST:
+        outbound.add(entry);
+        outbound.dropOldest();
+        return Outcome.BUFFERED;
+      case DISCONNECT:
+        outbound.dropped(frames);
+        return Outcome.REJECTED;
+      default:
+        outbound.add(entry);
+        return Outcome.OVER_HIGH_WATER_MARK;
+    }
+  }
+
+  private void handle(Outcome outcome) {
+    writeQueued();
+    switch (outcome) {
+      case WRITTEN:
+        break;
+      case REJECTED:
+        disconnect();
+        break;
+      case OVER_HIGH_WATER_MARK:
+        pauseProducer();
+        awaitDrain();
+        break;
+      default:
+        awaitDrain();
+    }
+  }
+
+  private void awaitDrain() {
+    synchronized (this) {
+      if (awaitingDrain) {
+        return;
+      }
+      awaitingDrain = true;
+    }
+    whenWritable(v -> flushOutbound());
+  }
+
+  /**
+   * Writes the buffered frames while the write queue of the socket is not full, as it has been drained.
+   */
+  private void flushOutbound() {
+    synchronized (this) {
+      awaitingDrain = false;
+    }
+    writeQueued();
+  }
+
+  /**
+   * Resumes the producers once back under the high-water mark, and waits for the write queue of the socket to be
+   * drained if frames are still buffered.
+   */
+  private void outboundWritten() {
+    List<StompServerTCPConnectionImpl> resumed = null;
+    boolean remaining;
+    synchronized (this) {
+      outbound.underMark();
+      if (!outbound.exceeds(0) && !pausedProducers.isEmpty()) {
+        resumed = new ArrayList<>(pausedProducers);
+        pausedProducers.clear();
+      }
+      // Written once the frame being written in several parts is terminated.
+      remaining = streamedFrame == null && !outbound.isEmpty();
+    }
+    if (resumed != null) {
+      resumed.forEach(StompServerTCPConnectionImpl::resumeReading);
+    }
+    if (remaining) {
+      awaitDrain();
+    }
+  }
+
+  /**
+   * Stops reading from the connection that has sent the frames being handled on the current thread, until the frames
+   * waiting to be written on this connection go back under the high-water mark.
+   */
+  private void pauseProducer() {
+    FrameBatch batch = FrameBatch.current();
+    StompServerConnection source = batch != null ? batch.source() : null;
+    if (!(source instanceof StompServerTCPConnectionImpl) || source == this) {
+      return;
+    }
+    StompServerTCPConnectionImpl producer = (StompServerTCPConnectionImpl) source;
+    synchronized (this) {
+      if (!outbound.exceeds(0) || !pausedProducers.add(producer)) {
+        // Drained meanwhile, or already paused.
+        return;
+      }
+    }
+    producer.pauseReading();
+  }
+
+  private void disconnect() {
+    if (disconnected.compareAndSet(false, true)) {
+      log.warn("Disconnecting client " + this + " - the frames waiting to be written exceed the high-water mark");
+      Frame error = Frames.createErrorFrame("Slow consumer", Headers.create(),
+          "The frames waiting to be written exceed the high-water mark");
+      synchronized (this) {
+        // Not written in the middle of a frame being written in several parts.
+        if (streamedFrame == null) {
+          queueWrite(error.toBuffer(server.options().isTrailingLine()));
+        }
+      }
+      writeQueued();
+      close();
+    }
+  }
+
+  /**
+   * @return the stream of the bytes received on this connection
+   */
+  ReadStream<Buffer> readStream() {
+    return socket;
+  }
+
+  /**
+   * Stops reading from the connection. The reading is resumed once {@link #resumeReading()} has been called as many
+   * times as this method.
+   */
+  void pauseReading() {
+    synchronized (readLock) {
+      if (++readPauses == 1) {
+        readStream().pause();
+      }
+    }
+  }
+
+  /**
+   * Resumes the reading stopped by {@link #pauseReading()}.
+   */
+  void resumeReading() {
+    synchronized (readLock) {
+      if (--readPauses == 0) {
+        readStream().resume();
+      }
+    }
+  }
+
+  /**
+   * @return the stream of the bytes received on this connection, whose pause and resume calls are combined with the
+   * other reasons to stop reading from this connection (see {@link #pauseReading()})
+   */
+  ReadStream<Buffer> reader() {
+    ReadStream<Buffer> stream = readStream();
+    return new ReadStream<Buffer>() {
+      @Override
+      public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+        stream.exceptionHandler(handler);
+        return this;
+      }
+
+      @Override
+      public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+        stream.handler(handler);
+        return this;
+      }
+
+      @Override
+      public ReadStream<Buffer> pause() {
+        pauseReading();
+        return this;
+      }
+
+      @Override
+      public ReadStream<Buffer> resume() {
+        resumeReading();
+        return this;
+      }
+
+      @Override
+      public ReadStream<Buffer> endHandler(Handler<Void> handler) {
+        stream.endHandler(handler);
+        return this;
+      }
+    };
+  }
+
+  /**
+   * @return the number of frames dropped, or rejected, because the frames waiting to be written on this connection
+   * exceeded the high-water mark (see {@link StompServerOptions#setOutboundHighWaterMark(int)})
+   */
+  public long droppedFrames() {
+    return outbound != null ? outbound.droppedFrames() : 0;
+  }
+
+  /**
+   * @return the time spent by this connection over the high-water mark, in milliseconds
+   */
+  public long timeOverHighWaterMark() {
+    return outbound != null ? TimeUnit.NANOSECONDS.toMillis(outbound.timeOverMark()) : 0;
+  }
+
+  /**
+   * @return the number of writes to the socket of this connection, each of them flushing the socket in most cases
+   */
+  public long socketWrites() {
+    return socketWrites;
+  }
+
+  /**
+   * @return the number of frames written to the socket of this connection, excluding the frames written in several
+   * parts
+   */
+  public long writtenFrames() {
+    return writtenFrames;
+  }
+
+  /**
+   * @return the average number of socket writes (and so of system calls) per frame written to this connection, lower
+   * than 1 when the frames are gathered (see {@link StompServerOptions#setWriteCoalescingThreshold(int)}), {@code 0}
+   * if no frame has been written
+   */
+  public double socketWritesPerFrame() {
+    long frames = writtenFrames;
+    return frames == 0 ? 0 : (double) socketWrites / frames;
+  }
+
+  /**
+   * @return the number of bytes waiting for the write queue of the socket to be drained
+   */
+  public synchronized long outboundBytes() {
+    return outbound != null ? outbound.bytes() : 0;
+  }
+
+  /**
+   * Starts writing a frame whose body is written in several parts, as it is received. Until the end of the frame,
+   * the other writes are delayed.
+   *
+   * @param frame the frame, without body
+   * @return the writer, {@code null} if a frame in several parts cannot be written on this connection right now (the
+   * frame must then be written with its whole body)
+   */
+  StreamedFrameWriter writeStreamed(Frame frame) {
+    StreamedFrameWriter writer = new StreamedFrameWriter(frame);
+    Buffer head = FrameEncoder.encodeHead(frame);
+    synchronized (this) {
+      if (streamedFrame != null || outbound != null && !outbound.isEmpty()
+          || coalesced != null && !coalesced.isEmpty()) {
+        return null;
+      }
+      streamedFrame = writer;
+      queueWrite(head);
+    }
+    writeQueued();
+    if (handler != null) {
+      handler.handle(new ServerFrameImpl(frame, this));
+    }
+    return writer;
+  }
+
+  /**
+   * @return whether or not the write queue of the connection is full
+   */
+  boolean writeQueueFull() {
+    return socket.writeQueueFull();
+  }
+
+  /**
+   * Sets the handler called when the write queue of the connection is no more full.
+   *
+   * @param handler the handler
+   */
+  void drainHandler(Handler<Void> handler) {
+    socket.drainHandler(handler);
+  }
+
+  /**
+   * Calls the given handler once the write queue of the connection is no more full, or once the connection is
+   * closed. The handler may be called from the event loop of this connection, or from the current thread.
+   *
+   * @param handler the handler
+   */
+  void whenWritable(Handler<Void> handler) {
+    synchronized (this) {
+      writableHandlers.add(handler);
+      if (!drainHandlerSet) {
+        drainHandlerSet = true;
+        // The socket may be locked while the drain handler is called, the handlers are called once it is unlocked.
+        drainHandler(v -> context.runOnContext(x -> releaseWritableHandlers()));
+      }
+    }
+    if (!writeQueueFull()) {
+      releaseWritableHandlers();
+    }
+  }
+
+  /**
+   * Calls the handlers waiting for the write queue to be no more full.
+   */
+  protected void releaseWritableHandlers() {
+    List<Handler<Void>> handlers;
+    synchronized (this) {
+      if (writableHandlers.isEmpty()) {
+        return;
+      }
+      handlers = new ArrayList<>(writableHandlers);
+      writableHandlers.clear();
+    }
+    handlers.forEach(handler -> handler.handle(null));
+  }
+
   @Override
   public StompServer server() {
     return server;
@@ -93,20 +754,67 @@ public class StompServerTCPConnectionImpl implements StompServerConnection {
 
   @Override
   public void close() {
+    // Do not lose the frames written by the current batch (errors, receipts...), or coalesced.
+    FrameBatch.flush(this);
+    if (coalesced != null) {
+      flushCoalesced();
+    }
+    releaseStreamedFrame();
+    releaseWritableHandlers();
+    releasePausedProducers();
     cancelHeartbeat();
     handler().onClose(this);
     socket.close();
   }
 
   /**
-   * Sends a `PING` frame to the client. A `PING` frame is a frame containing only {@code EOL}.
+   * Sends a `PING` frame to the client. A `PING` frame is a frame containing only {@code EOL}. It is written ahead of
+   * the frames buffered for the write queue to be drained, as it is only meant to show the activity of the server.
+   * It is not written while a frame is written in several parts, the parts already showing the activity.
    */
   @Override
   public void ping() {
+    synchronized (this) {
+      if (streamedFrame != null) {
+        return;
+      }
+      queueWrite(Buffer.buffer(FrameParser.EOL));
+    }
+    writeQueued();
     if (handler != null) {
       handler.handle(new ServerFrameImpl(Frames.PING, this));
     }
-    socket.write(Buffer.buffer(FrameParser.EOL));
+  }
+
+  /**
+   * Unblocks the writer of the frame being written in several parts, if any, as the connection is closed.
+   */
+  protected void releaseStreamedFrame() {
+    StreamedFrameWriter writer;
+    synchronized (this) {
+      writer = streamedFrame;
+    }
+    if (writer != null) {
+      writer.release();
+    }
+  }
+
+  /**
+   * Resumes the producers paused by this connection, and forgets this connection if it is paused, as the connection
+   * is closed.
+   */
+  protected void releasePausedProducers() {
+    List<StompServerTCPConnectionImpl> resumed;
+    synchronized (this) {
+      resumed = new ArrayList<>(pausedProducers);
+      pausedProducers.clear();
+    }
+    resumed.forEach(StompServerTCPConnectionImpl::resumeReading);
+    // This connection may itself be paused by the memory-based flow control.
+    ProducerFlowControl flowControl = ProducerFlowControl.of(this);
+    if (flowControl != null) {
+      flowControl.closed(this);
+    }
   }
 
   public synchronized void cancelHeartbeat() {
@@ -126,6 +834,91 @@ public class StompServerTCPConnectionImpl implements StompServerConnection {
     lastClientActivity = System.nanoTime();
   }
 
+  /**
+   * Writes the body of a frame in several parts. The parts must be written from the same thread.
+   */
+  class StreamedFrameWriter {
+
+    private final AtomicReference<Handler<Void>> writableHandler = new AtomicReference<>();
+    private final String messageId;
+
+    private StreamedFrameWriter(Frame frame) {
+      this.messageId = frame.getHeader(Frame.MESSAGE_ID);
+    }
+
+    /**
+     * Writes a part of the body.
+     *
+     * @param chunk the part
+     */
+    void write(Buffer chunk) {
+      synchronized (StompServerTCPConnectionImpl.this) {
+        queueWrite(chunk);
+      }
+      writeQueued();
+    }
+
+    /**
+     * @return whether or not the write queue of the connection is full
+     */
+    boolean writeQueueFull() {
+      return StompServerTCPConnectionImpl.this.writeQueueFull();
+    }
+
+    /**
+     * Calls the given handler once the write queue of the connection is no more full, or once the connection is
+     * closed. The handler may be called from the event loop of this connection.
+     *
+     * @param handler the handler
+     */
+    void whenWritable(Handler<Void> handler) {
+      writableHandler.set(handler);
+      StompServerTCPConnectionImpl.this.whenWritable(v -> release());
+    }
+
+    private void release() {
+      Handler<Void> handler = writableHandler.getAndSet(null);
+      if (handler != null) {
+        handler.handle(null);
+      }
+    }
+
+    /**
+     * Terminates the frame, and writes the delayed writes.
+     */
+    void end() {
+      Buffer terminator = Buffer.buffer(server.options().isTrailingLine() ? FrameParser.NULL + FrameParser.EOL
+          : FrameParser.NULL);
+      Outcome outcome = Outcome.WRITTEN;
+      synchronized (StompServerTCPConnectionImpl.this) {
+        queueWrite(terminator);
+        streamedFrame = null;
+        OutboundBuffer.Entry delayed;
+        while ((delayed = delayedWrites.poll()) != null) {
+          Outcome o = send(delayed.buffer, delayed.frames, delayed.messages);
+          if (o.compareTo(outcome) > 0) {
+            outcome = o;
+          }
+        }
+        if (outbound != null && !outbound.isEmpty() && outcome == Outcome.WRITTEN) {
+          // The writes delayed in the outbound buffer.
+          outcome = Outcome.BUFFERED;
+        }
+      }
+      handle(outcome);
+    }
+
+    /**
+     * Aborts the frame, as its body cannot be received entirely. The frame cannot be terminated, and a truncated
+     * message must not reach the client, so the connection is closed.
+     */
+    void abort() {
+      log.warn("Closing client " + StompServerTCPConnectionImpl.this + " - the body of the message " + messageId
+          + " has not been received entirely");
+      close();
+    }
+  }
+
   @Override
   public synchronized void configureHeartbeat(long ping, long pong, Handler<StompServerConnection> pingHandler) {
     if (ping > 0) {
@@ -22,6 +22,7 @@ import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.core.net.NetSocket;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.stomp.*;
 
 import java.util.Objects;
@@ -45,10 +46,48 @@ public class StompServerWebSocketConnectionImpl extends  StompServerTCPConnectio
 
   @Override
   public StompServerConnection write(Buffer buffer) {
-    socket.write(buffer);
+    write(buffer, false);
     return this;
   }
 
+  @Override
+  void write(Buffer buffer, boolean message) {
+    // Each frame is written in its own web socket message, they are not gathered.
+    writeNow(buffer, message);
+  }
+
+  @Override
+  void socketWrite(Buffer buffer) {
+    socket.write(buffer);
+  }
+
+  @Override
+  ReadStream<Buffer> readStream() {
+    return socket;
+  }
+
+  /**
+   * Web socket clients expect a complete frame in each web socket message, so frames cannot be written in several
+   * parts.
+   *
+   * @param frame the frame
+   * @return {@code null}
+   */
+  @Override
+  StreamedFrameWriter writeStreamed(Frame frame) {
+    return null;
+  }
+
+  @Override
+  boolean writeQueueFull() {
+    return socket.writeQueueFull();
+  }
+
+  @Override
+  void drainHandler(Handler<Void> handler) {
+    socket.drainHandler(handler);
+  }
+
   @Override
   public void ping() {
     if (handler != null) {
@@ -59,6 +98,8 @@ public class StompServerWebSocketConnectionImpl extends  StompServerTCPConnectio
 
   @Override
   public void close() {
+    releaseWritableHandlers();
+    releasePausedProducers();
     cancelHeartbeat();
     handler().onClose(this);
     try {
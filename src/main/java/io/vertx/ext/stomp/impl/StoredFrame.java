@@ -0,0 +1,44 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+
+import java.util.Map;
+
+/**
+ * A frame kept by a {@link io.vertx.ext.stomp.MessageStore}, carrying the id assigned by the store. The id follows the
+ * message through its redeliveries, so the store can forget the message once it has been consumed.
+ */
+class StoredFrame extends Frame {
+
+  private final long storeId;
+
+  StoredFrame(Command command, Map<String, String> headers, Buffer body, long storeId) {
+    super(command, headers, body);
+    this.storeId = storeId;
+  }
+
+  /**
+   * @return the id of the message in the store
+   */
+  long storeId() {
+    return storeId;
+  }
+}
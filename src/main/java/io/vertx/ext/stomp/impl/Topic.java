@@ -16,15 +16,20 @@
 
 package io.vertx.ext.stomp.impl;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.stomp.Destination;
 import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.IdGenerator;
+import io.vertx.ext.stomp.StompServer;
 import io.vertx.ext.stomp.StompServerConnection;
-import io.vertx.ext.stomp.utils.Headers;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
@@ -36,7 +41,11 @@ public class Topic implements Destination {
 
   protected final String destination;
 
-  protected final List<Subscription> subscriptions = new ArrayList<>();
+  /**
+   * The subscriptions. Modifications copy the underlying array, so the dispatch iterates over a snapshot without
+   * locking. Compound modifications are done while holding the lock of the topic.
+   */
+  protected final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
   protected final Vertx vertx;
 
   public Topic(Vertx vertx, String destination) {
@@ -60,23 +69,79 @@ public class Topic implements Destination {
    * @return the current instance of {@link Destination}
    */
   @Override
-  public synchronized Destination dispatch(StompServerConnection connection, Frame frame) {
+  public Destination dispatch(StompServerConnection connection, Frame frame) {
+    // Iterates over a snapshot of the subscriptions, not affected by concurrent modifications.
+    deliver(frame, subscriptions);
+    return this;
+  }
+
+  /**
+   * Writes a {@code MESSAGE} frame built from the given frame to each of the given subscriptions. When there are
+   * several subscriptions, the headers and the body are encoded once, and shared by the deliveries.
+   *
+   * @param frame         the frame ({@code SEND} frame)
+   * @param subscriptions the subscriptions
+   */
+  protected static void deliver(Frame frame, List<Subscription> subscriptions) {
+    if (subscriptions.size() < 2) {
+      for (Subscription subscription : subscriptions) {
+        String messageId = nextId(subscription.connection);
+        Frame message = transform(frame, subscription, messageId);
+        subscription.connection.write(message);
+      }
+      return;
+    }
+    SharedMessage message = new SharedMessage(frame);
     for (Subscription subscription : subscriptions) {
-      String messageId = UUID.randomUUID().toString();
-      Frame message = transform(frame, subscription, messageId);
-      subscription.connection.write(message);
+      String messageId = nextId(subscription.connection);
+      String ack = subscription.ackMode.equals("auto") ? null : messageId;
+      subscription.connection.write(message.frame(subscription.id, messageId, ack));
     }
+  }
+
+  /**
+   * Dispatches the given frame, relaying its body to the subscribers as it is received.
+   *
+   * @param connection        the connection
+   * @param frame             the frame ({@code SEND} frame), without body
+   * @param body              the body
+   * @param completionHandler called once the message has been written to all subscribers
+   * @return the current instance of {@link Destination}
+   */
+  @Override
+  public Destination dispatch(StompServerConnection connection, Frame frame, ReadStream<Buffer> body,
+                              Handler<AsyncResult<Void>> completionHandler) {
+    List<StompServerConnection> connections = new ArrayList<>();
+    List<Frame> messages = new ArrayList<>();
+    for (Subscription subscription : subscriptions) {
+      connections.add(subscription.connection);
+      messages.add(transform(frame, subscription, nextId(subscription.connection)));
+    }
+    BodyRelay.relay(connections, messages, body, completionHandler);
     return this;
   }
 
+  /**
+   * Generates a message id, with the {@link io.vertx.ext.stomp.IdGenerator} configured on the server of the given
+   * connection.
+   *
+   * @param connection the connection the message is delivered to
+   * @return the id
+   */
+  static String nextId(StompServerConnection connection) {
+    StompServer server = connection.server();
+    return (server != null ? server.options().getIdGenerator() : IdGenerator.counter()).next();
+  }
+
   public static Frame transform(Frame frame, Subscription subscription, String messageId) {
-    final Headers headers = Headers.create(frame.getHeaders())
-        // Destination already set in the input headers.
-        .add(Frame.SUBSCRIPTION, subscription.id)
-        .add(Frame.MESSAGE_ID, messageId);
+    // Headers not read since the reception of the frame are copied without being decoded.
+    final LazyHeaders headers = new LazyHeaders(frame.getHeaders());
+    // Destination already set in the input headers.
+    headers.put(Frame.SUBSCRIPTION, subscription.id);
+    headers.put(Frame.MESSAGE_ID, messageId);
     if (!subscription.ackMode.equals("auto")) {
       // We reuse the message Id as ack Id
-      headers.add(Frame.ACK, messageId);
+      headers.put(Frame.ACK, messageId);
     }
     return new Frame(Frame.Command.MESSAGE,
         headers,
@@ -116,7 +181,7 @@ public class Topic implements Destination {
       }
     }
     if (subscriptions.isEmpty()) {
-      vertx.sharedData().getLocalMap("stomp.destinations").remove(this);
+      DestinationRegistry.instance(vertx).remove(this);
     }
     return r;
   }
@@ -129,13 +194,10 @@ public class Topic implements Destination {
    */
   @Override
   public synchronized Destination unsubscribeConnection(StompServerConnection connection) {
-    new ArrayList<>(subscriptions)
-        .stream()
-        .filter(subscription -> subscription.connection.equals(connection))
-        .forEach(subscriptions::remove);
+    subscriptions.removeIf(subscription -> subscription.connection.equals(connection));
 
     if (subscriptions.isEmpty()) {
-      vertx.sharedData().getLocalMap("stomp.destinations").remove(this);
+      DestinationRegistry.instance(vertx).remove(this);
     }
     return this;
   }
@@ -171,7 +233,7 @@ public class Topic implements Destination {
    * @return the list of subscription id, empty if none
    */
   @Override
-  public synchronized List<String> getSubscriptions(StompServerConnection connection) {
+  public List<String> getSubscriptions(StompServerConnection connection) {
     return subscriptions.stream()
         .filter(subscription -> subscription.connection.equals(connection))
         .map(s -> s.id)
@@ -184,7 +246,7 @@ public class Topic implements Destination {
    * @return the number of subscriptions.
    */
   @Override
-  public synchronized int numberOfSubscriptions() {
+  public int numberOfSubscriptions() {
     return subscriptions.size();
   }
 
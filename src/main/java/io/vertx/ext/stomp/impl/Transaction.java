@@ -62,7 +62,9 @@ public class Transaction {
    * frames stored in the transaction that have exceed the number of allowed frames in transaction.
    */
   public synchronized boolean addFrameToTransaction(Frame frame) {
-    return frames.size() < connection.server().options().getMaxFrameInTransaction() && frames.add(frame);
+    // Kept until the end of the transaction, so detached from the received buffer.
+    return frames.size() < connection.server().options().getMaxFrameInTransaction()
+        && frames.add(FrameParser.detach(frame));
   }
 
   /**
@@ -0,0 +1,337 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A topic handling all the destinations starting with a given prefix, and accepting subscriptions using wildcards.
+ * Destination names are split in segments separated by {@code .}. In the destination of a subscription, {@code *}
+ * matches exactly one segment, and {@code #} matches zero or more segments. For instance, {@code /topic/prices.EUR.*}
+ * matches {@code /topic/prices.EUR.USD}, and {@code /topic/prices.#} matches {@code /topic/prices},
+ * {@code /topic/prices.EUR} and {@code /topic/prices.EUR.USD}.
+ * <p/>
+ * The subscriptions are stored in a trie indexed by segment, so the subscriptions matching a destination are found
+ * in a time depending on the number of segments of the destination, and not on the number of subscriptions.
+ */
+public class WildcardTopic extends Topic {
+
+  /**
+   * The segment separator.
+   */
+  public static final char SEPARATOR = '.';
+
+  /**
+   * Matches exactly one segment.
+   */
+  public static final String ANY_SEGMENT = "*";
+
+  /**
+   * Matches zero or more segments.
+   */
+  public static final String ANY_SEGMENTS = "#";
+
+  private final Node root = new Node();
+
+  /**
+   * Creates a new instance of {@link WildcardTopic}.
+   *
+   * @param vertx  the vert.x instance
+   * @param prefix the prefix of the destinations handled by this topic, for instance {@code /topic/}
+   */
+  public WildcardTopic(Vertx vertx, String prefix) {
+    super(vertx, prefix);
+  }
+
+  /**
+   * Checks whether or not the given address is handled by this topic, meaning that it starts with the prefix of the
+   * topic.
+   *
+   * @param address the address
+   * @return {@code true} if it matches, {@code false} otherwise.
+   */
+  @Override
+  public boolean matches(String address) {
+    return address != null && address.startsWith(destination);
+  }
+
+  /**
+   * Dispatches the given frame to the subscriptions matching its destination. Only the lookup is made while holding
+   * the lock of the topic, the message is written once it is released.
+   *
+   * @param connection the connection
+   * @param frame      the frame ({@code SEND} frame).
+   * @return the current instance of {@link Destination}
+   */
+  @Override
+  public Destination dispatch(StompServerConnection connection, Frame frame) {
+    List<Subscription> matching;
+    synchronized (this) {
+      matching = match(frame.getDestination());
+    }
+    deliver(frame, matching);
+    return this;
+  }
+
+  /**
+   * Dispatches the given frame to the subscriptions matching its destination, relaying its body as it is received.
+   *
+   * @param connection        the connection
+   * @param frame             the frame ({@code SEND} frame), without body
+   * @param body              the body
+   * @param completionHandler called once the message has been written to all subscribers
+   * @return the current instance of {@link Destination}
+   */
+  @Override
+  public Destination dispatch(StompServerConnection connection, Frame frame, ReadStream<Buffer> body,
+                              Handler<AsyncResult<Void>> completionHandler) {
+    List<StompServerConnection> connections = new ArrayList<>();
+    List<Frame> messages = new ArrayList<>();
+    synchronized (this) {
+      for (Subscription subscription : match(frame.getDestination())) {
+        connections.add(subscription.connection);
+        messages.add(transform(frame, subscription, nextId(subscription.connection)));
+      }
+    }
+    BodyRelay.relay(connections, messages, body, completionHandler);
+    return this;
+  }
+
+  /**
+   * Handles a subscription request. The destination of the subscription may contain wildcards.
+   *
+   * @param connection the connection
+   * @param frame      the {@code SUBSCRIBE} frame
+   * @return the current instance of {@link Destination}
+   */
+  @Override
+  public synchronized Destination subscribe(StompServerConnection connection, Frame frame) {
+    Subscription subscription = new Subscription(connection, frame);
+    subscriptions.add(subscription);
+    Node node = root;
+    for (String segment : split(subscription.destination)) {
+      node = node.child(segment);
+    }
+    node.subscriptions.add(subscription);
+    return this;
+  }
+
+  /**
+   * Handles a un-subscription request.
+   *
+   * @param connection the connection
+   * @param frame      the {@code UNSUBSCRIBE} frame
+   * @return {@code true} if the un-subscription has been handled, {@code false} otherwise.
+   */
+  @Override
+  public synchronized boolean unsubscribe(StompServerConnection connection, Frame frame) {
+    boolean r = false;
+    for (Subscription subscription : subscriptions) {
+      if (subscription.connection.equals(connection) && subscription.id.equals(frame.getId())) {
+        r = remove(subscription);
+        // Subscription id are unique for a connection.
+        break;
+      }
+    }
+    if (subscriptions.isEmpty()) {
+      DestinationRegistry.instance(vertx).remove(this);
+    }
+    return r;
+  }
+
+  /**
+   * Removes all subscriptions of the given connection
+   *
+   * @param connection the connection
+   * @return the current instance of {@link Destination}
+   */
+  @Override
+  public synchronized Destination unsubscribeConnection(StompServerConnection connection) {
+    new ArrayList<>(subscriptions)
+        .stream()
+        .filter(subscription -> subscription.connection.equals(connection))
+        .forEach(this::remove);
+
+    if (subscriptions.isEmpty()) {
+      DestinationRegistry.instance(vertx).remove(this);
+    }
+    return this;
+  }
+
+  private boolean remove(Subscription subscription) {
+    if (!subscriptions.remove(subscription)) {
+      return false;
+    }
+    List<String> segments = split(subscription.destination);
+    // Keep the path to prune the nodes left empty.
+    List<Node> path = new ArrayList<>(segments.size() + 1);
+    Node node = root;
+    path.add(node);
+    for (String segment : segments) {
+      node = node.get(segment);
+      if (node == null) {
+        return true;
+      }
+      path.add(node);
+    }
+    node.subscriptions.remove(subscription);
+    for (int i = segments.size(); i > 0 && path.get(i).isEmpty(); i--) {
+      path.get(i - 1).remove(segments.get(i - 1));
+    }
+    return true;
+  }
+
+  /**
+   * Finds the subscriptions matching the given destination. Must be called while holding the lock of the topic.
+   *
+   * @param address the destination of the published message
+   * @return the subscriptions, each subscription is listed once
+   */
+  List<Subscription> match(String address) {
+    List<Subscription> result = new ArrayList<>();
+    if (address == null) {
+      return result;
+    }
+    List<String> segments = split(address);
+    boolean duplicates = collect(root, segments, 0, result);
+    if (duplicates) {
+      // A subscription using several '#' may match the same destination in several ways.
+      return new ArrayList<>(new LinkedHashSet<>(result));
+    }
+    return result;
+  }
+
+  /**
+   * Collects the subscriptions of the given node matching the segments from {@code index}.
+   *
+   * @return whether or not a {@code #} has been traversed, meaning that the same subscription may have been
+   * collected several times
+   */
+  private static boolean collect(Node node, List<String> segments, int index, List<Subscription> result) {
+    boolean multi = false;
+    if (node.anySegments != null) {
+      multi = true;
+      // '#' consumes from zero to all the remaining segments.
+      for (int i = index; i <= segments.size(); i++) {
+        collect(node.anySegments, segments, i, result);
+      }
+    }
+    if (index == segments.size()) {
+      result.addAll(node.subscriptions);
+      return multi;
+    }
+    Node child = node.children == null ? null : node.children.get(segments.get(index));
+    if (child != null) {
+      multi |= collect(child, segments, index + 1, result);
+    }
+    if (node.anySegment != null) {
+      multi |= collect(node.anySegment, segments, index + 1, result);
+    }
+    return multi;
+  }
+
+  /**
+   * Splits the given destination in segments.
+   *
+   * @param destination the destination
+   * @return the segments
+   */
+  static List<String> split(String destination) {
+    List<String> segments = new ArrayList<>();
+    int start = 0;
+    int end;
+    while ((end = destination.indexOf(SEPARATOR, start)) != -1) {
+      segments.add(destination.substring(start, end));
+      start = end + 1;
+    }
+    segments.add(destination.substring(start));
+    return segments;
+  }
+
+  /**
+   * A node of the trie. The children matching a given segment, {@code *} and {@code #} are kept apart.
+   */
+  private static class Node {
+    private Map<String, Node> children;
+    private Node anySegment;
+    private Node anySegments;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+
+    private Node get(String segment) {
+      switch (segment) {
+        case ANY_SEGMENT:
+          return anySegment;
+        case ANY_SEGMENTS:
+          return anySegments;
+        default:
+          return children == null ? null : children.get(segment);
+      }
+    }
+
+    private Node child(String segment) {
+      Node node = get(segment);
+      if (node == null) {
+        node = new Node();
+        switch (segment) {
+          case ANY_SEGMENT:
+            anySegment = node;
+            break;
+          case ANY_SEGMENTS:
+            anySegments = node;
+            break;
+          default:
+            if (children == null) {
+              children = new HashMap<>();
+            }
+            children.put(segment, node);
+        }
+      }
+      return node;
+    }
+
+    private void remove(String segment) {
+      switch (segment) {
+        case ANY_SEGMENT:
+          anySegment = null;
+          break;
+        case ANY_SEGMENTS:
+          anySegments = null;
+          break;
+        default:
+          children.remove(segment);
+      }
+    }
+
+    private boolean isEmpty() {
+      return subscriptions.isEmpty() && anySegment == null && anySegments == null
+          && (children == null || children.isEmpty());
+    }
+  }
+}
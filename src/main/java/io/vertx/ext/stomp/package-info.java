@@ -147,6 +147,16 @@
  * specification requires, the client connection is closed immediately after having sent the error. The same behavior
  * happens with the other thresholds.
  *
+ * The ids of the messages and of the sessions are produced by the {@link io.vertx.ext.stomp.IdGenerator} set with
+ * {@link io.vertx.ext.stomp.StompServerOptions#setIdGenerator(io.vertx.ext.stomp.IdGenerator)} (the client uses
+ * {@link io.vertx.ext.stomp.StompClientOptions#setIdGenerator(io.vertx.ext.stomp.IdGenerator)} for the receipts). The
+ * default generator builds short ids from per-thread counters, so the ids are predictable. Use
+ * {@link io.vertx.ext.stomp.IdGenerator#uuid()} if they must not be guessed.
+ *
+ * By default, each frame written outside of the handling of received frames causes a socket write. With
+ * {@link io.vertx.ext.stomp.StompServerOptions#setWriteCoalescingThreshold(int)}, the frames written to a TCP
+ * connection during an event loop turn are written together at the end of the turn, or once the threshold is reached.
+ *
  * === Subscriptions
  *
  * The default STOMP server handles subscription destination as opaque Strings. So it does not promote a structure
@@ -177,6 +187,19 @@
  *
  * Queues dispatches messages using a round-robin strategies.
  *
+ * Topics can also handle hierarchical destinations. A _wildcard topic_ handles all the destinations starting with a
+ * prefix. Destination names are split in segments separated by `.`, and the subscriptions can use `*` to match
+ * exactly one segment and `#` to match zero or more segments:
+ *
+ * [source,$lang]
+ * ----
+ * {@link examples.StompServerExamples#example19}
+ * ----
+ *
+ * In this example, a client subscribing to `/topic/prices.EUR.*` receives the messages sent to
+ * `/topic/prices.EUR.USD` and `/topic/prices.EUR.GBP`, while a client subscribing to `/topic/prices.#` receives all
+ * the prices. The wildcard topic is created once, for the first destination starting with `/topic/`.
+ *
  * === Providing your own type of destination
  *
  * On purpose the STOMP server does not implement any advanced feature. IF you need more advanced dispatching policy,
@@ -185,9 +208,38 @@
  *
  * === Acknowledgment
  *
- * By default, the STOMP server does nothing when a message is not acknowledged. You can customize this by
+ * The queues keep the messages sent to the subscriptions in the `client` and `client-individual` modes until they
+ * are acknowledged. A message that is not acknowledged (`NACK` frame, end of the subscription, or expiration of the
+ * {@link io.vertx.ext.stomp.StompServerOptions#setAckTimeout(long)}) is redelivered to another subscriber of the
+ * queue, or to the same subscriber after a `NACK` frame or the timeout if there is no other subscriber. The topics do
+ * nothing when a message is not acknowledged. You can customize this by
  * providing your own {@link io.vertx.ext.stomp.Destination} implementation.
  *
+ * A subscriber of a queue can limit the number of messages it receives before acknowledging them with the
+ * `prefetch-count` header of the `SUBSCRIBE` frame. The queues do not send messages to the subscribers having reached
+ * this limit, nor to the subscribers whose connection cannot keep up. The messages are held until a subscriber is
+ * ready.
+ *
+ * The memory used by the held messages can be limited per destination with
+ * {@link io.vertx.ext.stomp.StompServerOptions#setDestinationMemoryLimit(long)}, and for all the destinations with
+ * {@link io.vertx.ext.stomp.StompServerOptions#setMemoryLimit(long)}. Once a limit is exceeded, the server stops
+ * reading the frames sent by the producers, until the usage falls below the
+ * {@link io.vertx.ext.stomp.StompServerOptions#setMemoryLowWaterMark(int)}.
+ *
+ * By default, the messages sent to a queue without subscriptions are discarded. With
+ * {@link io.vertx.ext.stomp.StompServerOptions#setQueueBacklogSize(long)}, the queues keep them, and deliver them to
+ * the first subscriber. The messages exceeding this size are appended to a file in the
+ * {@link io.vertx.ext.stomp.StompServerOptions#setQueueBacklogDirectory(String)}, so the heap usage stays bounded.
+ *
+ * The queues can also keep their messages across restarts, using a {@link io.vertx.ext.stomp.MessageStore}. The
+ * queues created with {@link io.vertx.ext.stomp.Destination#queue(io.vertx.core.Vertx, java.lang.String, io.vertx.ext.stomp.MessageStore)}
+ * store the messages sent with the `persistent:true` header until they are consumed, and send the `RECEIPT` frame
+ * once the message is durable. {@link io.vertx.ext.stomp.MessageStore#journal(io.vertx.core.Vertx, java.lang.String)}
+ * creates a store writing the messages in memory-mapped journal files, synced to disk in batches. A `persistent:true`
+ * frame creates its queue if needed, and these queues keep the stored messages until a subscriber consumes them, even
+ * without backlog. A `persistent:true` frame is rejected with an `ERROR` frame when its destination does not exist,
+ * and the destination factory does not create a queue with a store.
+ *
  * The custom destination should call the
  *
  * {@link io.vertx.ext.stomp.StompServerHandler#onAck(io.vertx.ext.stomp.StompServerConnection, io.vertx.ext.stomp.Frame, java.util.List)}
@@ -315,6 +367,9 @@
  * * whether or not the `STOMP` command should be used instead of the `CONNECT` command (disabled by default)
  * * whether or not the `host` header should be ignored in the `CONNECT` frame (disabled by default)
  * * the heartbeat configuration (1000, 1000 by default)
+ * * the batching of the frames sent from several threads (disabled by default): the frames are queued without
+ * locking, and written in batches by the context of the connection, up to a number of bytes and after an optional
+ * delay
  *
  * === Subscribing to destinations
  *
@@ -374,6 +429,18 @@
  * {@link examples.StompClientExamples#example13(io.vertx.core.Vertx)}
  * ----
  *
+ * To publish many messages without waiting for each receipt, use
+ * {@link io.vertx.ext.stomp.StompClientConnection#publish(java.lang.String, io.vertx.core.buffer.Buffer)}. It returns
+ * a future completed once the receipt has been received, or failed if it has not been received in time
+ * ({@link io.vertx.ext.stomp.StompClientOptions#setPublishTimeout(long)}) or if the connection is closed. At most
+ * {@link io.vertx.ext.stomp.StompClientOptions#setPublishWindowSize(int)} frames wait for their receipt, the next
+ * ones are kept by the client until receipts are received:
+ *
+ * [source,$lang]
+ * ----
+ * {@link examples.StompClientExamples#example15(io.vertx.core.Vertx)}
+ * ----
+ *
  * == Using the STOMP server as a bridge to the vert.x Event Bus
  *
  * The STOMP server can be used as a bridge to the vert.x Event Bus. The bridge is bi-directional meaning the STOMP
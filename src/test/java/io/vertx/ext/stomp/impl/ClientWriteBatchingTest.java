@@ -0,0 +1,159 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import com.jayway.awaitility.Awaitility;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the batching of the frames sent by the client connections (see
+ * {@link StompClientOptions#setWriteBatchMaxBytes(int)}).
+ */
+public class ClientWriteBatchingTest {
+
+  private static final int THREADS = 4;
+  private static final int MESSAGES = 1000;
+
+  private Vertx vertx;
+  private StompServer server;
+  private StompClient client;
+
+  /**
+   * The next expected sequence number of the frames received from each sending thread.
+   */
+  private final Map<String, AtomicInteger> sequences = new ConcurrentHashMap<>();
+  private final AtomicInteger received = new AtomicInteger();
+  private final AtomicInteger outOfOrder = new AtomicInteger();
+
+  @Before
+  public void setUp() {
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    vertx = Vertx.vertx();
+    server = StompServer.create(vertx)
+        .handler(StompServerHandler.create(vertx).receivedFrameHandler(sf -> {
+          Frame frame = sf.frame();
+          if (frame.getCommand() == Frame.Command.SEND) {
+            int expected = sequences.computeIfAbsent(frame.getHeader("thread"), t -> new AtomicInteger())
+                .getAndIncrement();
+            if (Integer.parseInt(frame.getHeader("sequence")) != expected) {
+              outOfOrder.incrementAndGet();
+            }
+            received.incrementAndGet();
+          }
+        }))
+        .listen(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  @After
+  public void tearDown() {
+    if (client != null) {
+      client.close();
+    }
+    AsyncLock<Void> lock = new AsyncLock<>();
+    server.close(lock.handler());
+    lock.waitForSuccess();
+    lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  private StompClientConnection connect(StompClientOptions options) {
+    AtomicReference<StompClientConnection> connection = new AtomicReference<>();
+    client = StompClient.create(vertx, options).connect(server.actualPort(), "0.0.0.0",
+        ar -> connection.set(ar.result()));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> connection.get() != null);
+    return connection.get();
+  }
+
+  /**
+   * Sends the messages from several threads concurrently, and waits for the receipt of the last message of each
+   * thread.
+   */
+  private void sendConcurrently(StompClientConnection connection) throws InterruptedException {
+    AtomicInteger receipts = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      String name = "thread-" + i;
+      threads.add(new Thread(() -> {
+        for (int j = 0; j < MESSAGES; j++) {
+          Map<String, String> headers = Headers.create("thread", name, "sequence", Integer.toString(j));
+          if (j == MESSAGES - 1) {
+            connection.send("/queue", headers, Buffer.buffer("hello"), receipt -> receipts.incrementAndGet());
+          } else {
+            connection.send("/queue", headers, Buffer.buffer("hello"));
+          }
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> receipts.get() == THREADS);
+  }
+
+  @Test
+  public void testFramesSentConcurrentlyAreBatched() throws InterruptedException {
+    sendConcurrently(connect(new StompClientOptions().setWriteBatchMaxBytes(16 * 1024)));
+    assertThat(received.get()).isEqualTo(THREADS * MESSAGES);
+    assertThat(outOfOrder.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void testFramesAreDelayedToBeBatched() throws InterruptedException {
+    sendConcurrently(connect(new StompClientOptions().setWriteBatchMaxBytes(16 * 1024).setWriteBatchMaxDelay(5)));
+    assertThat(received.get()).isEqualTo(THREADS * MESSAGES);
+    assertThat(outOfOrder.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void testFramesSentConcurrentlyWithoutBatching() throws InterruptedException {
+    sendConcurrently(connect(new StompClientOptions()));
+    assertThat(received.get()).isEqualTo(THREADS * MESSAGES);
+    assertThat(outOfOrder.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void testQueuedFramesAreWrittenBeforeClosing() {
+    StompClientConnection connection = connect(new StompClientOptions().setWriteBatchMaxBytes(16 * 1024)
+        .setWriteBatchMaxDelay(60000));
+    for (int i = 0; i < 10; i++) {
+      connection.send("/queue", Headers.create("thread", "main", "sequence", Integer.toString(i)),
+          Buffer.buffer("hello"));
+    }
+    connection.close();
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> received.get() == 10);
+    assertThat(outOfOrder.get()).isEqualTo(0);
+  }
+}
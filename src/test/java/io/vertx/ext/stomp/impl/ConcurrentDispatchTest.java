@@ -0,0 +1,168 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the {@link Topic} and the {@link Queue} can be used concurrently by several publishers, while the
+ * subscriptions are modified.
+ */
+public class ConcurrentDispatchTest {
+
+  private static final int PUBLISHERS = 4;
+  private static final int MESSAGES = 1000;
+
+  private Vertx vertx;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    executor = Executors.newFixedThreadPool(PUBLISHERS + 1);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    AsyncLock<Void> lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  private static StompServerConnection connection(AtomicInteger received) {
+    return (StompServerConnection) Proxy.newProxyInstance(ConcurrentDispatchTest.class.getClassLoader(),
+        new Class<?>[]{StompServerConnection.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "equals":
+              return proxy == args[0];
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "write":
+              received.incrementAndGet();
+              return proxy;
+            default:
+              return null;
+          }
+        });
+  }
+
+  private static Frame subscribe(String destination, String id) {
+    return new Frame().setCommand(Frame.Command.SUBSCRIBE).setId(id).setDestination(destination);
+  }
+
+  private static Frame unsubscribe(String destination, String id) {
+    return new Frame().setCommand(Frame.Command.UNSUBSCRIBE).setId(id).setDestination(destination);
+  }
+
+  private void publish(Destination destination) throws Exception {
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < PUBLISHERS; i++) {
+      futures.add(executor.submit(() -> {
+        for (int j = 0; j < MESSAGES; j++) {
+          destination.dispatch(null, new Frame().setCommand(Frame.Command.SEND)
+              .setDestination(destination.destination()).setBody(Buffer.buffer("hello")));
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get(30, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testRoundRobinWithConcurrentPublishers() throws Exception {
+    Destination queue = Destination.queue(vertx, "/queue");
+    List<AtomicInteger> counters = new ArrayList<>();
+    for (int i = 0; i < PUBLISHERS; i++) {
+      AtomicInteger counter = new AtomicInteger();
+      counters.add(counter);
+      queue.subscribe(connection(counter), subscribe("/queue", "sub-" + i));
+    }
+
+    publish(queue);
+
+    // The subscriptions have not been modified, so the messages are evenly distributed.
+    for (AtomicInteger counter : counters) {
+      assertThat(counter.get()).isEqualTo(MESSAGES);
+    }
+  }
+
+  @Test
+  public void testFanOutWhileSubscriptionsAreModified() throws Exception {
+    Destination topic = Destination.topic(vertx, "/topic");
+    AtomicInteger stable = new AtomicInteger();
+    topic.subscribe(connection(stable), subscribe("/topic", "stable"));
+
+    AtomicInteger churned = new AtomicInteger();
+    StompServerConnection connection = connection(churned);
+    Future<?> churn = executor.submit(() -> {
+      for (int i = 0; i < MESSAGES; i++) {
+        topic.subscribe(connection, subscribe("/topic", "churn"));
+        topic.unsubscribe(connection, unsubscribe("/topic", "churn"));
+      }
+    });
+
+    publish(topic);
+    churn.get(30, TimeUnit.SECONDS);
+
+    assertThat(stable.get()).isEqualTo(PUBLISHERS * MESSAGES);
+    assertThat(topic.numberOfSubscriptions()).isEqualTo(1);
+  }
+
+  @Test
+  public void testQueueWhileSubscriptionsAreModified() throws Exception {
+    Destination queue = Destination.queue(vertx, "/queue");
+    AtomicInteger stable = new AtomicInteger();
+    queue.subscribe(connection(stable), subscribe("/queue", "stable"));
+
+    AtomicInteger churned = new AtomicInteger();
+    StompServerConnection connection = connection(churned);
+    Future<?> churn = executor.submit(() -> {
+      for (int i = 0; i < MESSAGES; i++) {
+        queue.subscribe(connection, subscribe("/queue", "churn"));
+        queue.unsubscribe(connection, unsubscribe("/queue", "churn"));
+      }
+    });
+
+    publish(queue);
+    churn.get(30, TimeUnit.SECONDS);
+
+    // Each message is delivered to exactly one subscriber.
+    assertThat(stable.get() + churned.get()).isEqualTo(PUBLISHERS * MESSAGES);
+    assertThat(queue.numberOfSubscriptions()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.StompServerConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the behavior of {@link ConnectionSubscriptions}.
+ */
+public class ConnectionSubscriptionsTest {
+
+  private Vertx vertx;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown() {
+    AsyncLock<Void> lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  private static StompServerConnection connection() {
+    return (StompServerConnection) Proxy.newProxyInstance(ConnectionSubscriptionsTest.class.getClassLoader(),
+        new Class<?>[]{StompServerConnection.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "equals":
+              return proxy == args[0];
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            default:
+              return null;
+          }
+        });
+  }
+
+  @Test
+  public void testSubscriptions() {
+    StompServerConnection connection = connection();
+    ConnectionSubscriptions subscriptions = ConnectionSubscriptions.of(connection);
+    assertThat(ConnectionSubscriptions.of(connection)).isSameAs(subscriptions);
+    assertThat(ConnectionSubscriptions.of(connection())).isNotSameAs(subscriptions);
+
+    Destination topic = Destination.topic(vertx, "/topic");
+    Destination queue = Destination.queue(vertx, "/queue");
+    assertThat(subscriptions.add("0", topic)).isTrue();
+    assertThat(subscriptions.add("1", topic)).isTrue();
+    assertThat(subscriptions.add("2", queue)).isTrue();
+    assertThat(subscriptions.add("2", topic)).isFalse();
+
+    assertThat(subscriptions.size()).isEqualTo(3);
+    assertThat(subscriptions.contains("1")).isTrue();
+    assertThat(subscriptions.contains("3")).isFalse();
+    assertThat(subscriptions.destinations()).containsOnly(topic, queue).hasSize(2);
+
+    assertThat(subscriptions.remove("2")).isSameAs(queue);
+    assertThat(subscriptions.remove("2")).isNull();
+    assertThat(subscriptions.destinations()).containsOnly(topic);
+
+    ConnectionSubscriptions.clear(connection);
+    assertThat(ConnectionSubscriptions.of(connection).size()).isEqualTo(0);
+  }
+}
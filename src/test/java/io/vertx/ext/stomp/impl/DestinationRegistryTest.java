@@ -0,0 +1,168 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.bridge.PermittedOptions;
+import io.vertx.ext.stomp.BridgeOptions;
+import io.vertx.ext.stomp.Destination;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the behavior of the {@link DestinationRegistry}.
+ */
+public class DestinationRegistryTest {
+
+  private Vertx vertx;
+  private DestinationRegistry registry;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    registry = DestinationRegistry.instance(vertx);
+  }
+
+  @After
+  public void tearDown() {
+    AsyncLock<Void> lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  @Test
+  public void testSharedByVertxInstance() {
+    assertThat(DestinationRegistry.instance(vertx)).isSameAs(registry);
+  }
+
+  @Test
+  public void testExactDestinations() {
+    Destination topic = registry.getOrCreate(vertx, "/topic", Destination::topic);
+    Destination queue = registry.getOrCreate(vertx, "/queue", Destination::queue);
+
+    assertThat(registry.get("/topic")).isSameAs(topic);
+    assertThat(registry.get("/queue")).isSameAs(queue);
+    assertThat(registry.get("/missing")).isNull();
+    assertThat(registry.getOrCreate(vertx, "/topic", Destination::queue)).isSameAs(topic);
+    assertThat(registry.list()).containsOnly(topic, queue);
+
+    assertThat(registry.remove(topic)).isTrue();
+    assertThat(registry.remove(topic)).isFalse();
+    assertThat(registry.get("/topic")).isNull();
+  }
+
+  @Test
+  public void testPatternDestinations() {
+    Destination bridge = Destination.bridge(vertx, new BridgeOptions()
+        .addInboundPermitted(new PermittedOptions().setAddressRegex("/bus/.*"))
+        .addOutboundPermitted(new PermittedOptions().setAddress("/topic")));
+    registry.add(bridge);
+
+    assertThat(registry.get("/bus/a")).isSameAs(bridge);
+    assertThat(registry.get("/topic")).isSameAs(bridge);
+    assertThat(registry.get("/missing")).isNull();
+
+    // Destinations registered for the exact address are found first.
+    Destination topic = registry.getOrCreate(vertx, "/other", Destination::topic);
+    assertThat(topic).isNotSameAs(bridge);
+    registry.add(Destination.topic(vertx, "/topic"));
+    assertThat(registry.get("/topic")).isNotSameAs(bridge);
+
+    assertThat(registry.remove(bridge)).isTrue();
+    assertThat(registry.get("/bus/a")).isNull();
+  }
+
+  @Test
+  public void testCustomDestinationsAreNotIndexed() {
+    AtomicInteger created = new AtomicInteger();
+    Destination custom = registry.getOrCreate(vertx, "/custom", (v, name) -> {
+      created.incrementAndGet();
+      return new QueueManagingAcknowledgments(v, name);
+    });
+
+    assertThat(custom).isInstanceOf(QueueManagingAcknowledgments.class);
+    assertThat(registry.get("/custom")).isSameAs(custom);
+    assertThat(registry.getOrCreate(vertx, "/custom", (v, name) -> {
+      created.incrementAndGet();
+      return new QueueManagingAcknowledgments(v, name);
+    })).isSameAs(custom);
+    assertThat(created.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRejectedCreation() {
+    assertThat(registry.getOrCreate(vertx, "/rejected", (v, name) -> null)).isNull();
+    assertThat(registry.get("/rejected")).isNull();
+    assertThat(registry.list()).isEmpty();
+  }
+
+  @Test
+  public void testFactoryUsingTheRegistry() {
+    // The factory is not called while holding the index, so it can look up or create other destinations.
+    Destination topic = registry.getOrCreate(vertx, "/topic", (v, name) -> {
+      registry.getOrCreate(v, "/topic/audit", Destination::topic);
+      return Destination.topic(v, name);
+    });
+
+    assertThat(registry.get("/topic")).isSameAs(topic);
+    assertThat(registry.get("/topic/audit")).isNotNull().isNotSameAs(topic);
+  }
+
+  @Test
+  public void testConcurrentCreation() throws InterruptedException {
+    AtomicInteger created = new AtomicInteger();
+    List<Destination> destinations = new CopyOnWriteArrayList<>();
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(8);
+    for (int i = 0; i < 8; i++) {
+      new Thread(() -> {
+        try {
+          start.await();
+          for (int j = 0; j < 100; j++) {
+            destinations.add(registry.getOrCreate(vertx, "/topic-" + j, (v, name) -> {
+              created.incrementAndGet();
+              return Destination.topic(v, name);
+            }));
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          done.countDown();
+        }
+      }).start();
+    }
+    start.countDown();
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+
+    // Concurrent creations may call the factory several times, but only one destination is kept per address.
+    assertThat(created.get()).isGreaterThanOrEqualTo(100);
+    assertThat(destinations).hasSize(800);
+    assertThat(registry.list()).hasSize(100);
+    for (Destination destination : destinations) {
+      assertThat(registry.get(destination.destination())).isSameAs(destination);
+    }
+  }
+}
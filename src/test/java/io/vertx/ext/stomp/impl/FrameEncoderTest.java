@@ -0,0 +1,107 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the behavior of {@link FrameEncoder}.
+ */
+public class FrameEncoderTest {
+
+  @Test
+  public void testEncoding() {
+    Frame frame = new Frame(Frame.Command.SEND, Headers.create("destination", "/queue"), Buffer.buffer("hello"));
+    Buffer buffer = FrameEncoder.encode(frame, false);
+    assertThat(buffer.toString()).isEqualTo("SEND\n" + "destination:/queue\n" + "\n" + "hello" + FrameParser.NULL);
+    assertThat(buffer.getByteBuf().capacity()).isEqualTo(buffer.length());
+
+    buffer = FrameEncoder.encode(frame, true);
+    assertThat(buffer.toString()).isEqualTo("SEND\n" + "destination:/queue\n" + "\n" + "hello" + FrameParser.NULL
+        + "\n");
+    assertThat(buffer.getByteBuf().capacity()).isEqualTo(buffer.length());
+  }
+
+  @Test
+  public void testEncodingOfNonAsciiAndEscapedValues() {
+    String value = "h\u00e9llo:w\u20acrld\\\n\ud83d\ude00";
+    Frame frame = new Frame(Frame.Command.SEND, Headers.create("h\u00e9ader", value), null);
+    Buffer buffer = FrameEncoder.encode(frame, false);
+    assertThat(buffer.toString()).isEqualTo("SEND\n" + "h\u00e9ader:"
+        + HeaderCodec.encode(value, false) + "\n" + "\n" + FrameParser.NULL);
+    assertThat(buffer.getByteBuf().capacity()).isEqualTo(buffer.length());
+
+    frame = new Frame(Frame.Command.CONNECT, Headers.create("header", value), null);
+    buffer = FrameEncoder.encode(frame, false);
+    assertThat(buffer.toString()).isEqualTo("CONNECT\n" + "header:"
+        + HeaderCodec.encode(value, true) + "\n" + "\n" + FrameParser.NULL);
+    assertThat(buffer.getByteBuf().capacity()).isEqualTo(buffer.length());
+  }
+
+  @Test
+  public void testEncodingOfReceivedFrame() {
+    FrameParser parser = new FrameParser();
+    AtomicReference<Frame> ref = new AtomicReference<>();
+    parser.handler(ref::set);
+    String received = "SEND\n" + "destination:/queue\n" + "header:a" + (char) 92 + (char) 99 + "b\n" + "\n"
+        + "hello" + FrameParser.NULL;
+    parser.handle(Buffer.buffer(received));
+
+    Buffer buffer = FrameEncoder.encode(ref.get(), false);
+    assertThat(buffer.length()).isEqualTo(received.length());
+    assertThat(buffer.getByteBuf().capacity()).isEqualTo(buffer.length());
+    assertThat(buffer.toString()).startsWith("SEND\n").contains("destination:/queue\n")
+        .contains("header:a" + (char) 92 + (char) 99 + "b\n").endsWith("\n\nhello" + FrameParser.NULL);
+  }
+
+  @Test
+  public void testEncodingOfSharedMessage() {
+    FrameParser parser = new FrameParser();
+    AtomicReference<Frame> ref = new AtomicReference<>();
+    parser.handler(ref::set);
+    parser.handle(Buffer.buffer("SEND\n" + "destination:/topic\n" + "message-id:ignored\n" + "header:a" + (char) 92
+        + (char) 99 + "b\n" + "\n" + "hello" + FrameParser.NULL));
+
+    SharedMessage message = new SharedMessage(ref.get());
+    Buffer first = message.encode("sub-1", "id-1", null, false);
+    Buffer second = message.encode("sub-2", "id-2", "id-2", true);
+    // The deliveries do not consume the shared part.
+    assertThat(message.encode("sub-1", "id-1", null, false)).isEqualTo(first);
+
+    assertThat(first.toString()).isEqualTo("MESSAGE\n" + "subscription:sub-1\n" + "message-id:id-1\n"
+        + "destination:/topic\n" + "header:a" + (char) 92 + (char) 99 + "b\n" + "\n" + "hello" + FrameParser.NULL);
+    assertThat(second.toString()).isEqualTo("MESSAGE\n" + "subscription:sub-2\n" + "message-id:id-2\n"
+        + "ack:id-2\n" + "destination:/topic\n" + "header:a" + (char) 92 + (char) 99 + "b\n" + "\n" + "hello"
+        + FrameParser.NULL + "\n");
+
+    parser.handle(second);
+    Frame parsed = ref.get();
+    Frame expected = message.frame("sub-2", "id-2", "id-2");
+    assertThat(parsed.getCommand()).isEqualTo(Frame.Command.MESSAGE);
+    assertThat(parsed.getHeaders()).isEqualTo(expected.getHeaders());
+    assertThat(parsed.getBodyAsString()).isEqualTo("hello");
+    // The frame of a delivery is written from the shared part.
+    assertThat(expected.toBuffer(true)).isEqualTo(second);
+  }
+}
@@ -16,15 +16,19 @@
 
 package io.vertx.ext.stomp.impl;
 
+import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.stomp.Frame;
 import io.vertx.ext.stomp.StompOptions;
 import io.vertx.ext.stomp.StompServerOptions;
+import org.assertj.core.api.Condition;
 import org.junit.Test;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -232,7 +236,7 @@ public class FrameParserTest {
     assertThat(frame.getBodyAsString(StompOptions.UTF_8)).isEqualTo("this is my \n content.");
   }
 
-  @Test(expected = NumberFormatException.class)
+  @Test(expected = FrameException.class)
   public void testFrameContainingAnIllegalContentLength() {
     String content = "this is my \n content.";
     Buffer buffer = Buffer.buffer("SEND\n" +
@@ -264,7 +268,7 @@ public class FrameParserTest {
     assertThat(frame.getBodyAsString(StompOptions.UTF_8)).isEqualTo("this is my \n conten");
   }
 
-  @Test(expected = IllegalArgumentException.class)
+  @Test(expected = FrameException.class)
   public void testFrameContainingANegativeContentLength() {
     String content = "this is my \n content.";
     Buffer buffer = Buffer.buffer("SEND\n" +
@@ -390,6 +394,42 @@ public class FrameParserTest {
     assertThat(frame.getHeader(Frame.STOMP_FRAME_COMMAND)).isEqualTo("ILLEGAL");
   }
 
+  @Test
+  public void testWellKnownHeaderNamesAreShared() {
+    Buffer buffer = Buffer.buffer("SEND\n"
+        + "destination:/queue\n"
+        + "receipt:1\n"
+        + "destinations:/queue\n"
+        + "\n")
+        .appendString(FrameParser.NULL);
+
+    Frame frame = parse(buffer);
+    assertThat(frame.getCommand()).isEqualTo(Frame.Command.SEND);
+    assertThat(frame.getHeaders().keySet())
+        .containsOnly(Frame.DESTINATION, Frame.RECEIPT, "destinations")
+        .areExactly(2, new Condition<String>(
+            key -> key == Frame.DESTINATION || key == Frame.RECEIPT, "shared"));
+  }
+
+  @Test
+  public void testCommandPrefix() {
+    Buffer buffer = Buffer.buffer("SENDS\n"
+        + "\n")
+        .appendString(FrameParser.NULL);
+
+    Frame frame = parse(buffer);
+    assertThat(frame.getCommand()).isEqualTo(Frame.Command.UNKNOWN);
+    assertThat(frame.getHeader(Frame.STOMP_FRAME_COMMAND)).isEqualTo("SENDS");
+
+    buffer = Buffer.buffer("SEN\n"
+        + "\n")
+        .appendString(FrameParser.NULL);
+
+    frame = parse(buffer);
+    assertThat(frame.getCommand()).isEqualTo(Frame.Command.UNKNOWN);
+    assertThat(frame.getHeader(Frame.STOMP_FRAME_COMMAND)).isEqualTo("SEN");
+  }
+
   @Test(expected = FrameException.class)
   public void testNumberOfHeadersExceeded() {
     Buffer buffer = Buffer.buffer("CONNECT\n"
@@ -575,6 +615,224 @@ public class FrameParserTest {
     }
   }
 
+  @Test
+  public void testFrameReceivedByteByByte() {
+    FrameParser parser = new FrameParser();
+    List<Frame> frames = new ArrayList<>();
+    parser.handler(frames::add);
+
+    Buffer buffer = Buffer.buffer("SEND\r\n" + "destination:/queue\r\n" + "header:a" + (char) 92 + (char) 99 + "b\r\n"
+        + "\r\n" + LOREM + FrameParser.NULL)
+        .appendString("SEND\n" + "content-length:5\n" + "\n" + "he" + FrameParser.NULL + "lo" + FrameParser.NULL);
+    for (int i = 0; i < buffer.length(); i++) {
+      parser.handle(buffer.getBuffer(i, i + 1));
+    }
+
+    assertThat(frames).hasSize(2);
+    assertThat(frames.get(0).getCommand()).isEqualTo(Frame.Command.SEND);
+    assertThat(frames.get(0).getHeader("destination")).isEqualTo("/queue");
+    assertThat(frames.get(0).getHeader("header")).isEqualTo("a:b");
+    assertThat(frames.get(0).getBodyAsString()).isEqualTo(LOREM);
+    assertThat(frames.get(1).getBodyAsString()).isEqualTo("he" + FrameParser.NULL + "lo");
+    assertThat(getCurrentBodySize(parser)).isEqualTo(0);
+  }
+
+  @Test
+  public void testContentLengthBodySpanningSeveralBuffers() {
+    FrameParser parser = new FrameParser();
+    List<Frame> frames = new ArrayList<>();
+    parser.handler(frames::add);
+
+    parser.handle(Buffer.buffer("SEND\n" + "content-length:" + (LOREM.length() * 2) + "\n\n" + LOREM));
+    assertThat(frames).isEmpty();
+    parser.handle(Buffer.buffer(LOREM + FrameParser.NULL + "SEND\n\nHello" + FrameParser.NULL));
+
+    assertThat(frames).hasSize(2);
+    assertThat(frames.get(0).getBodyAsString()).isEqualTo(LOREM + LOREM);
+    assertThat(frames.get(1).getBodyAsString()).isEqualTo("Hello");
+  }
+
+  @Test(expected = FrameException.class)
+  public void testHeaderLengthExceededBeforeEndOfLine() {
+    FrameParser parser = new FrameParser(new StompServerOptions().setMaxHeaderLength(50));
+    parser.handler(frame -> fail("No frame expected"));
+
+    parser.handle(Buffer.buffer("SEND\n" + "header1:"));
+    parser.handle(Buffer.buffer(LOREM));
+  }
+
+  @Test
+  public void testStreamedBody() {
+    FrameParser parser = new FrameParser(new StompServerOptions().setStreamedBodyThreshold(10));
+    List<Frame> frames = new ArrayList<>();
+    List<BodyStream> streams = new ArrayList<>();
+    Buffer received = Buffer.buffer();
+    AtomicBoolean ended = new AtomicBoolean();
+    parser.handler(frames::add).bodyStreamHandler(null, stream -> {
+      streams.add(stream);
+      stream.endHandler(v -> ended.set(true)).handler(received::appendBuffer);
+    });
+
+    parser.handle(Buffer.buffer("SEND\n" + "destination:/queue\n" + "content-length:" + (LOREM.length() * 2)
+        + "\n\n" + LOREM));
+    assertThat(frames).isEmpty();
+    assertThat(streams).hasSize(1);
+    assertThat(streams.get(0).frame().getCommand()).isEqualTo(Frame.Command.SEND);
+    assertThat(streams.get(0).frame().getDestination()).isEqualTo("/queue");
+    assertThat(streams.get(0).frame().getBody()).isNull();
+    assertThat(received.toString()).isEqualTo(LOREM);
+    assertThat(ended.get()).isFalse();
+
+    // Small frames are not streamed.
+    parser.handle(Buffer.buffer(LOREM + FrameParser.NULL + "SEND\n" + "content-length:5\n\nHello" + FrameParser.NULL));
+    assertThat(received.toString()).isEqualTo(LOREM + LOREM);
+    assertThat(ended.get()).isTrue();
+    assertThat(streams).hasSize(1);
+    assertThat(frames).hasSize(1);
+    assertThat(frames.get(0).getBodyAsString()).isEqualTo("Hello");
+  }
+
+  @Test
+  public void testStreamedBodyPausesTheSource() {
+    FrameParser parser = new FrameParser(new StompServerOptions().setStreamedBodyThreshold(10));
+    AtomicBoolean sourcePaused = new AtomicBoolean();
+    ReadStream<Buffer> source = new ReadStream<Buffer>() {
+      @Override
+      public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+        return this;
+      }
+
+      @Override
+      public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+        return this;
+      }
+
+      @Override
+      public ReadStream<Buffer> pause() {
+        sourcePaused.set(true);
+        return this;
+      }
+
+      @Override
+      public ReadStream<Buffer> resume() {
+        sourcePaused.set(false);
+        return this;
+      }
+
+      @Override
+      public ReadStream<Buffer> endHandler(Handler<Void> endHandler) {
+        return this;
+      }
+    };
+    AtomicReference<BodyStream> stream = new AtomicReference<>();
+    Buffer received = Buffer.buffer();
+    parser.handler(frame -> fail("Frame not expected")).bodyStreamHandler(source, body -> {
+      stream.set(body);
+      body.handler(received::appendBuffer).pause();
+    });
+
+    parser.handle(Buffer.buffer("SEND\n" + "content-length:" + (LOREM.length() * 2) + "\n\n" + LOREM));
+    assertThat(received.length()).isEqualTo(0);
+    assertThat(sourcePaused.get()).isTrue();
+
+    stream.get().resume();
+    assertThat(received.toString()).isEqualTo(LOREM);
+    assertThat(sourcePaused.get()).isFalse();
+  }
+
+  @Test
+  public void testStreamedBodyFailsWhenClosed() {
+    FrameParser parser = new FrameParser(new StompServerOptions().setStreamedBodyThreshold(10));
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    parser.handler(frame -> fail("Frame not expected")).bodyStreamHandler(null, body ->
+        body.exceptionHandler(failure::set).endHandler(v -> fail("End not expected")).handler(chunk -> {
+        }));
+
+    parser.handle(Buffer.buffer("SEND\n" + "content-length:" + (LOREM.length() * 2) + "\n\n" + LOREM));
+    parser.close();
+    assertThat(failure.get()).isInstanceOf(FrameException.class);
+  }
+
+  @Test
+  public void testBatch() {
+    FrameParser parser = new FrameParser();
+    List<List<Frame>> batches = new ArrayList<>();
+    parser.handler(frame -> fail("Frames must be passed to the batch handler")).batchHandler(batches::add);
+
+    parser.handle(Buffer.buffer("SEND\n" + "destination:/queue\n\n" + "a" + FrameParser.NULL
+        + "\n"
+        + "ACK\n" + "id:1\n\n" + FrameParser.NULL
+        + "SEND\n" + "destination:/queue\n\n" + "b"));
+    assertThat(batches).hasSize(1);
+    assertThat(batches.get(0)).extracting(Frame::getCommand)
+        .containsExactly(Frame.Command.SEND, Frame.Command.PING, Frame.Command.ACK);
+
+    parser.handle(Buffer.buffer(FrameParser.NULL));
+    assertThat(batches).hasSize(2);
+    assertThat(batches.get(1)).hasSize(1);
+    assertThat(batches.get(1).get(0).getBodyAsString()).isEqualTo("b");
+
+    // Nothing parsed, no batch.
+    parser.handle(Buffer.buffer("SEND\n"));
+    assertThat(batches).hasSize(2);
+  }
+
+  @Test
+  public void testBatchIsDeliveredBeforeErrors() {
+    FrameParser parser = new FrameParser(new StompServerOptions().setMaxHeaders(1));
+    List<Object> events = new ArrayList<>();
+    parser.batchHandler(events::addAll).errorHandler(events::add);
+
+    parser.handle(Buffer.buffer("SEND\n" + "destination:/queue\n\n" + "a" + FrameParser.NULL
+        + "SEND\n" + "destination:/queue\n" + "header:value\n\n" + "b" + FrameParser.NULL));
+
+    assertThat(events).hasSize(2);
+    assertThat(events.get(0)).isInstanceOf(Frame.class);
+    assertThat(events.get(1)).isInstanceOf(FrameException.class);
+  }
+
+  @Test
+  public void testInvalidContentLengthIsReportedToTheErrorHandler() {
+    FrameParser parser = new FrameParser();
+    List<Object> events = new ArrayList<>();
+    parser.handler(events::add).errorHandler(events::add);
+
+    parser.handle(Buffer.buffer("SEND\n" + "content-length:illegal\n\n" + "a" + FrameParser.NULL));
+    parser.handle(Buffer.buffer("SEND\n" + "content-length:-1\n\n" + "b" + FrameParser.NULL));
+    parser.handle(Buffer.buffer("SEND\n" + "content-length:1\n\n" + "c" + FrameParser.NULL));
+
+    assertThat(events).hasSize(3);
+    assertThat(events.get(0)).isInstanceOf(FrameException.class);
+    assertThat(((FrameException) events.get(0)).getMessage()).contains("illegal");
+    assertThat(events.get(1)).isInstanceOf(FrameException.class);
+    assertThat(((FrameException) events.get(1)).getMessage()).contains("-1");
+    // The parser is reset after the errors.
+    assertThat(events.get(2)).isInstanceOf(Frame.class);
+    assertThat(((Frame) events.get(2)).getBodyAsString()).isEqualTo("c");
+  }
+
+  @Test
+  public void testDetachedFramesDoNotShareTheReceivedBuffer() {
+    FrameParser parser = new FrameParser();
+    List<Frame> frames = new ArrayList<>();
+    parser.handler(frames::add);
+    parser.handle(Buffer.buffer("SEND\n" + "destination:/queue\n" + "header:a" + (char) 92 + (char) 99 + "b\n\n"
+        + "hello" + FrameParser.NULL + "SEND\n" + "destination:/queue\n\n" + "world" + FrameParser.NULL));
+    assertThat(frames).hasSize(2);
+
+    Frame frame = frames.get(0);
+    assertThat(FrameParser.isSlice(frame.getBody().getByteBuf())).isTrue();
+    Buffer body = FrameParser.detach(frame).getBody();
+    assertThat(FrameParser.isSlice(body.getByteBuf())).isFalse();
+    assertThat(body.toString()).isEqualTo("hello");
+    assertThat(frame.getHeader("header")).isEqualTo("a:b");
+    assertThat(frame.getDestination()).isEqualTo("/queue");
+    // Already detached, not copied again.
+    assertThat(FrameParser.detach(frame).getBody()).isSameAs(body);
+    // Still written as received.
+    assertThat(frame.toBuffer().toString()).contains("header:a" + (char) 92 + (char) 99 + "b\n");
+  }
+
   private int getCurrentBodySize(FrameParser parser) {
     try {
       Field field = parser.getClass().getDeclaredField("bodyLength");
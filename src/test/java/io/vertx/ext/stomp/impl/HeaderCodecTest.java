@@ -16,8 +16,12 @@
 
 package io.vertx.ext.stomp.impl;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -104,4 +108,52 @@ public class HeaderCodecTest {
         + "slash");
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testThatValuesWithoutEscapingAreNotCopied() {
+    String value = "hello world";
+    assertThat(HeaderCodec.encode(value, false)).isSameAs(value);
+    assertThat(HeaderCodec.encode(value, true)).isSameAs(value);
+    assertThat(HeaderCodec.decode(value, false)).isSameAs(value);
+    assertThat(HeaderCodec.decode(value, true)).isSameAs(value);
+    String connect = "h:e\nllo";
+    assertThat(HeaderCodec.encode(connect, true)).isSameAs(connect);
+  }
+
+  @Test
+  public void testEncodingIntoBuffer() {
+    String[] values = {"hello", "h:e", "multi\r\nline", "test\\slash", "h\u00e9:llo \u20ac \ud83d\ude00", "", "\ud83d"};
+    for (String value : values) {
+      for (boolean connect : new boolean[]{false, true}) {
+        ByteBuf buffer = Unpooled.buffer();
+        HeaderCodec.encode(value, connect, buffer);
+        byte[] expected = HeaderCodec.encode(value, connect).getBytes(StandardCharsets.UTF_8);
+        assertThat(buffer.toString(StandardCharsets.UTF_8))
+            .isEqualTo(new String(expected, StandardCharsets.UTF_8));
+        assertThat(buffer.readableBytes()).isEqualTo(expected.length)
+            .isEqualTo(HeaderCodec.encodedLength(value, connect));
+      }
+    }
+  }
+
+  @Test
+  public void testDecodingFromBuffer() {
+    String[] values = {"hello", "h\\ce", "multi" + (char) 92 + (char) 114 + (char) 92 + (char) 110 + "line",
+        "test" + (char) 92 + (char) 92 + "slash", "h\u00e9" + (char) 92 + (char) 99 + "llo \u20ac \ud83d\ude00",
+        "trailing" + (char) 92};
+    for (String value : values) {
+      for (boolean connect : new boolean[]{false, true}) {
+        ByteBuf buffer = Unpooled.copiedBuffer("header:" + value + "\n", StandardCharsets.UTF_8);
+        assertThat(HeaderCodec.decode(buffer, 7, buffer.writerIndex() - 1, connect))
+            .isEqualTo(HeaderCodec.decode(value, connect));
+      }
+    }
+  }
+
+  @Test(expected = FrameException.class)
+  public void testDecodingIllegalEscapeFromBuffer() {
+    ByteBuf buffer = Unpooled.copiedBuffer("this is an illegal " + (char) 92 + (char) 116 + " escape",
+        StandardCharsets.UTF_8);
+    HeaderCodec.decode(buffer, 0, buffer.writerIndex(), false);
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.ext.stomp.IdGenerator;
+import io.vertx.ext.stomp.StompClientOptions;
+import io.vertx.ext.stomp.StompServerOptions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the behavior of the {@link IdGenerator} implementations.
+ */
+public class IdGeneratorTest {
+
+  @Test
+  public void testCounterIds() {
+    IdGenerator generator = IdGenerator.counter("node");
+    assertThat(generator.next()).isEqualTo("node-0-0");
+    assertThat(generator.next()).isEqualTo("node-0-1");
+    for (int i = 0; i < 34; i++) {
+      generator.next();
+    }
+    assertThat(generator.next()).isEqualTo("node-0-10");
+  }
+
+  @Test
+  public void testCounterIdsAreUniqueAcrossThreads() throws InterruptedException {
+    IdGenerator generator = IdGenerator.counter();
+    Set<String> ids = ConcurrentHashMap.newKeySet();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      threads.add(new Thread(() -> {
+        for (int j = 0; j < 10000; j++) {
+          ids.add(generator.next());
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(ids).hasSize(40000);
+    assertThat(ids).allMatch(id -> id.matches("[0-9a-z]+-[0-9a-z]+-[0-9a-z]+"));
+  }
+
+  @Test
+  public void testUuidIds() {
+    String id = IdGenerator.uuid().next();
+    assertThat(UUID.fromString(id).toString()).isEqualTo(id);
+  }
+
+  @Test
+  public void testOptions() {
+    assertThat(new StompServerOptions().getIdGenerator()).isSameAs(IdGenerator.counter());
+    assertThat(new StompClientOptions().getIdGenerator()).isSameAs(IdGenerator.counter());
+
+    IdGenerator generator = IdGenerator.uuid();
+    assertThat(new StompServerOptions(new StompServerOptions().setIdGenerator(generator)).getIdGenerator())
+        .isSameAs(generator);
+    assertThat(new StompClientOptions(new StompClientOptions().setIdGenerator(generator)).getIdGenerator())
+        .isSameAs(generator);
+  }
+}
@@ -0,0 +1,356 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.impl;
+
+import com.jayway.awaitility.Awaitility;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the {@link JournalMessageStore}, and the queues storing their messages in it.
+ */
+public class JournalMessageStoreTest {
+
+  private Vertx vertx;
+  private File directory;
+  private MessageStore store;
+  private StompServer server;
+
+  private List<StompClient> clients = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    vertx = Vertx.vertx();
+    directory = Files.createTempDirectory("stomp-journal").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    clients.forEach(StompClient::close);
+    clients.clear();
+    stopServer();
+    vertx.fileSystem().deleteRecursiveBlocking(directory.getAbsolutePath(), true);
+    AsyncLock<Void> lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  private static Frame message(String body) {
+    return new Frame(Frame.Command.SEND, Headers.create(Frame.DESTINATION, "/queue", MessageStore.PERSISTENT, "true"),
+        Buffer.buffer(body));
+  }
+
+  @Test
+  public void testAppendReadAndAcknowledge() throws IOException {
+    store = MessageStore.journal(vertx, directory.getAbsolutePath());
+    long a = store.append("/queue", message("a"));
+    long b = store.append("/queue", message("b"));
+    long c = store.append("/other", message("c"));
+
+    assertThat(b).isGreaterThan(a);
+    assertThat(store.pending("/queue")).containsExactly(a, b);
+    assertThat(store.pending("/other")).containsExactly(c);
+    assertThat(store.read(b).getBodyAsString()).isEqualTo("b");
+    assertThat(store.read(b).getHeader(MessageStore.PERSISTENT)).isEqualTo("true");
+
+    store.acknowledge(a);
+    assertThat(store.read(a)).isNull();
+    assertThat(store.pending("/queue")).containsExactly(b);
+    store.close();
+  }
+
+  @Test
+  public void testRecovery() throws IOException {
+    store = MessageStore.journal(vertx, directory.getAbsolutePath());
+    long a = store.append("/queue", message("a"));
+    long b = store.append("/queue", message("b"));
+    store.append("/queue", message("c"));
+    store.acknowledge(a);
+    store.close();
+
+    store = MessageStore.journal(vertx, directory.getAbsolutePath());
+    long[] pending = store.pending("/queue");
+    assertThat(pending).hasSize(2);
+    assertThat(pending[0]).isEqualTo(b);
+    assertThat(store.read(pending[1]).getBodyAsString()).isEqualTo("c");
+    // The ids keep increasing.
+    assertThat(store.append("/queue", message("d"))).isGreaterThan(pending[1]);
+    store.close();
+  }
+
+  @Test
+  public void testSegmentsAreDeletedOnceAcknowledged() throws IOException {
+    // Small segments, holding a few messages each.
+    store = MessageStore.journal(vertx, directory.getAbsolutePath(), 256);
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      ids.add(store.append("/queue", message("message-" + i)));
+    }
+    int segments = directory.list((dir, name) -> name.endsWith(".journal")).length;
+    assertThat(segments).isGreaterThan(2);
+
+    ids.subList(0, 19).forEach(store::acknowledge);
+    // Only the current segment remains.
+    assertThat(directory.list((dir, name) -> name.endsWith(".journal"))).hasSize(1);
+    assertThat(directory.list((dir, name) -> name.endsWith(".index"))).hasSize(1);
+    assertThat(store.pending("/queue")).containsExactly(ids.get(19));
+    store.close();
+  }
+
+  @Test
+  public void testIndexIsGrownWithTheRecords() throws IOException {
+    store = MessageStore.journal(vertx, directory.getAbsolutePath(), 1024 * 1024);
+    List<Long> ids = new ArrayList<>();
+    ids.add(store.append("/queue", message("message-0")));
+    File index = directory.listFiles((dir, name) -> name.endsWith(".index"))[0];
+    // Not sized for the largest number of records of the segment.
+    long initial = index.length();
+    assertThat(initial).isLessThan(1024 * 1024 / 32 * JournalMessageStore.INDEX_ENTRY_SIZE);
+
+    for (int i = 1; i < 3000; i++) {
+      ids.add(store.append(i % 2 == 0 ? "/queue" : "/other", message("message-" + i)));
+    }
+    assertThat(directory.list((dir, name) -> name.endsWith(".journal"))).hasSize(1);
+    assertThat(index.length()).isGreaterThan(initial);
+    assertThat(store.pending("/queue")).hasSize(1500);
+    assertThat(store.read(ids.get(2999)).getBodyAsString()).isEqualTo("message-2999");
+    store.close();
+
+    store = MessageStore.journal(vertx, directory.getAbsolutePath(), 1024 * 1024);
+    assertThat(store.pending("/queue")).hasSize(1500).startsWith(ids.get(0)).endsWith(ids.get(2998));
+    assertThat(store.pending("/other")).hasSize(1500).startsWith(ids.get(1)).endsWith(ids.get(2999));
+    store.close();
+  }
+
+  @Test
+  public void testAcknowledgedMessagesAreNotListedAsPending() throws IOException {
+    store = MessageStore.journal(vertx, directory.getAbsolutePath());
+    long last = 0;
+    for (int i = 0; i < 1000; i++) {
+      long id = store.append("/queue", message("message-" + i));
+      if (i < 999) {
+        store.acknowledge(id);
+      }
+      last = id;
+    }
+    assertThat(store.pending("/queue")).containsExactly(last);
+    store.acknowledge(last);
+    assertThat(store.pending("/queue")).isEmpty();
+    assertThat(store.pending("/unknown")).isEmpty();
+    store.close();
+  }
+
+  @Test
+  public void testCorruptedRecordsAreSkipped() throws IOException {
+    store = MessageStore.journal(vertx, directory.getAbsolutePath());
+    store.append("/queue", message("a"));
+    long b = store.append("/queue", message("b"));
+    store.close();
+
+    File journal = directory.listFiles((dir, name) -> name.endsWith(".journal"))[0];
+    try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+      // Corrupts the body of the first record (its last byte).
+      file.seek(0);
+      int length = file.readInt();
+      file.seek(8 + length - 1);
+      file.write('x');
+    }
+
+    store = MessageStore.journal(vertx, directory.getAbsolutePath());
+    assertThat(store.pending("/queue")).containsExactly(b);
+    store.close();
+  }
+
+  @Test
+  public void testGroupCommit() throws IOException {
+    store = MessageStore.journal(vertx, directory.getAbsolutePath());
+    AtomicInteger synced = new AtomicInteger();
+    for (int i = 0; i < 100; i++) {
+      store.append("/queue", message("message-" + i));
+      store.sync(ar -> {
+        if (ar.succeeded()) {
+          synced.incrementAndGet();
+        }
+      });
+    }
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> synced.get() == 100);
+    store.close();
+  }
+
+  private void startServer() throws IOException {
+    store = MessageStore.journal(vertx, directory.getAbsolutePath());
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    server = StompServer.create(vertx)
+        .handler(StompServerHandler.create(vertx)
+            .destinationFactory((v, name) -> Destination.queue(v, name, store)))
+        .listen(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  private void stopServer() {
+    if (server != null) {
+      AsyncLock<Void> lock = new AsyncLock<>();
+      server.close(lock.handler());
+      lock.waitForSuccess();
+      server = null;
+    }
+    if (store != null) {
+      store.close();
+      store = null;
+    }
+  }
+
+  @Test
+  public void testPersistentMessagesSurviveARestart() throws IOException {
+    startServer();
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    AtomicReference<StompClientConnection> subscriber = new AtomicReference<>();
+    clients.add(StompClient.create(vertx).connect(ar ->
+        ar.result().subscribe("/queue", Headers.create(Frame.ACK, "client-individual"), frames::add,
+            receipt -> subscriber.set(ar.result()))));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> subscriber.get() != null);
+
+    AtomicInteger receipts = new AtomicInteger();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      for (String body : new String[]{"a", "b"}) {
+        ar.result().send("/queue", Headers.create(MessageStore.PERSISTENT, "true"), Buffer.buffer(body),
+            receipt -> receipts.incrementAndGet());
+      }
+      // Not stored.
+      ar.result().send("/queue", Buffer.buffer("c"), receipt -> receipts.incrementAndGet());
+    }));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 3 && receipts.get() == 3);
+    assertThat(store.pending("/queue")).hasSize(2);
+
+    // The subscriber only acknowledges the first message, and the server is restarted.
+    AtomicBoolean acknowledged = new AtomicBoolean();
+    subscriber.get().ack(frames.get(0).getAck(), frame -> acknowledged.set(true));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(acknowledged::get);
+    assertThat(store.pending("/queue")).hasSize(1);
+    clients.forEach(StompClient::close);
+    clients.clear();
+    stopServer();
+
+    startServer();
+    List<String> bodies = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar ->
+        ar.result().subscribe("/queue", frame -> bodies.add(frame.getBodyAsString()))));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> bodies.size() == 1);
+    assertThat(bodies).containsExactly("b");
+    // Consumed in the auto mode.
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> store.pending("/queue").length == 0);
+  }
+
+  @Test
+  public void testPersistentMessagesSentWithoutSubscriptionsAreKept() throws IOException {
+    // The backlog is disabled, the queue is created by the persistent frame, and stays registered.
+    startServer();
+    AtomicInteger receipts = new AtomicInteger();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      ar.result().send("/queue", Headers.create(MessageStore.PERSISTENT, "true"), Buffer.buffer("a"),
+          receipt -> receipts.incrementAndGet());
+      // Not stored, so discarded.
+      ar.result().send("/queue", Buffer.buffer("b"), receipt -> receipts.incrementAndGet());
+    }));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> receipts.get() == 2);
+    assertThat(store.pending("/queue")).hasSize(1);
+
+    List<String> bodies = new CopyOnWriteArrayList<>();
+    AtomicReference<StompClientConnection> subscriber = new AtomicReference<>();
+    clients.add(StompClient.create(vertx).connect(ar ->
+        ar.result().subscribe("/queue", frame -> bodies.add(frame.getBodyAsString()),
+            receipt -> subscriber.set(ar.result()))));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> bodies.size() == 1);
+    assertThat(bodies).containsExactly("a");
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> store.pending("/queue").length == 0);
+
+    // Still registered once the subscriber has left.
+    AtomicBoolean unsubscribed = new AtomicBoolean();
+    subscriber.get().unsubscribe("/queue", receipt -> unsubscribed.set(true));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(unsubscribed::get);
+    assertThat(server.stompHandler().getDestinations()).hasSize(1);
+  }
+
+  @Test
+  public void testPersistentMessagesAreRejectedWhenNoQueueStoresThem() {
+    // The default factory creates topics, which do not store the messages.
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    server = StompServer.create(vertx)
+        .handler(StompServerHandler.create(vertx))
+        .listen(lock.handler());
+    lock.waitForSuccess();
+
+    AtomicBoolean receipt = new AtomicBoolean();
+    AtomicReference<Frame> error = new AtomicReference<>();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      ar.result().errorHandler(error::set);
+      ar.result().send("/topic", Headers.create(MessageStore.PERSISTENT, "true"), Buffer.buffer("a"),
+          frame -> receipt.set(true));
+    }));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> error.get() != null);
+    assertThat(error.get().getHeader(Frame.MESSAGE)).isEqualTo("Message not stored");
+    assertThat(receipt.get()).isFalse();
+    // No destination is left behind.
+    assertThat(server.stompHandler().getDestinations()).isEmpty();
+  }
+
+  @Test
+  public void testCommitIsNotAcknowledgedWhenAMessageCannotBeStored() throws IOException {
+    store = MessageStore.journal(vertx, directory.getAbsolutePath());
+    // Closed, so the messages cannot be appended.
+    store.close();
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    server = StompServer.create(vertx)
+        .handler(StompServerHandler.create(vertx)
+            .destinationFactory((v, name) -> Destination.queue(v, name, store)))
+        .listen(lock.handler());
+    lock.waitForSuccess();
+
+    AtomicBoolean committed = new AtomicBoolean();
+    AtomicReference<Frame> error = new AtomicReference<>();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      ar.result().errorHandler(error::set);
+      ar.result().beginTX("tx");
+      ar.result().send("/queue", Headers.create(MessageStore.PERSISTENT, "true", Frame.TRANSACTION, "tx"),
+          Buffer.buffer("a"));
+      ar.result().commit("tx", receipt -> committed.set(true));
+    }));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> error.get() != null);
+    assertThat(error.get().getHeader(Frame.TRANSACTION)).isEqualTo("tx");
+    assertThat(committed.get()).isFalse();
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Checks the behavior of {@link LazyHeaders}.
+ */
+public class LazyHeadersTest {
+
+  private static final String ESCAPED = "a" + (char) 92 + (char) 99 + "b" + (char) 92 + (char) 110 + "c";
+
+  @Test
+  public void testDecodingOnRead() {
+    Frame frame = parse("SEND\n" + "destination:/queue\n" + "header:" + ESCAPED + "\n" + "\n" + FrameParser.NULL);
+
+    assertThat(frame.getHeaders()).isInstanceOf(LazyHeaders.class);
+    assertThat(frame.getHeader("header")).isEqualTo("a:b\nc");
+    assertThat(frame.getHeaders()).containsOnly(entry("destination", "/queue"), entry("header", "a:b\nc"));
+  }
+
+  @Test
+  public void testModification() {
+    Frame frame = parse("SEND\n" + "destination:/queue\n" + "header:" + ESCAPED + "\n" + "\n" + FrameParser.NULL);
+
+    assertThat(frame.getHeaders().put("header", "x:y")).isEqualTo("a:b\nc");
+    assertThat(frame.getHeaders().remove("destination")).isEqualTo("/queue");
+    assertThat(frame.toBuffer().toString()).isEqualTo("SEND\n" + "header:x" + (char) 92 + (char) 99 + "y\n" + "\n"
+        + FrameParser.NULL);
+  }
+
+  @Test
+  public void testForwardingWithoutDecoding() {
+    Frame frame = parse("SEND\n" + "destination:/queue\n" + "header:" + ESCAPED + "\n" + "\n" + "hello"
+        + FrameParser.NULL);
+
+    Frame message = Topic.transform(frame, new Topic.Subscription(null,
+        new Frame().setCommand(Frame.Command.SUBSCRIBE).setId("0").setDestination("/queue")), "1");
+
+    String encoded = message.toBuffer().toString();
+    assertThat(encoded).startsWith("MESSAGE\n").contains("header:" + ESCAPED + "\n").endsWith("\nhello" +
+        FrameParser.NULL);
+    assertThat(message.getHeader(Frame.SUBSCRIPTION)).isEqualTo("0");
+    assertThat(message.getHeader(Frame.MESSAGE_ID)).isEqualTo("1");
+    assertThat(message.getHeader("header")).isEqualTo("a:b\nc");
+    // The original frame is not modified.
+    assertThat(frame.getHeader(Frame.SUBSCRIPTION)).isNull();
+  }
+
+  @Test
+  public void testForwardingAConnectHeader() {
+    // \c is not decoded in CONNECT frames, so must be encoded when written in another frame.
+    Frame frame = parse("CONNECT\n" + "header:" + ESCAPED + "\n" + "\n" + FrameParser.NULL);
+    Frame copy = new Frame(Frame.Command.SEND, new LazyHeaders(frame.getHeaders()), null);
+
+    assertThat(copy.toBuffer().toString()).contains("header:a" + (char) 92 + (char) 92 + (char) 99 + "b");
+  }
+
+  @Test(expected = FrameException.class)
+  public void testIllegalEscapeReportedOnReception() {
+    parse("SEND\n" + "header:a" + (char) 92 + "t\n" + "\n" + FrameParser.NULL);
+  }
+
+  @Test
+  public void testInsertionOrder() {
+    LazyHeaders headers = new LazyHeaders();
+    headers.put("c", "1");
+    headers.put("a", "2");
+    headers.put("b", "3");
+    headers.put("a", "4");
+
+    assertThat(headers.keySet()).containsExactly("c", "a", "b");
+    assertThat(headers.values()).containsExactly("1", "4", "3");
+    assertThat(new Frame(Frame.Command.SEND, headers, null).toBuffer().toString())
+        .isEqualTo("SEND\n" + "c:1\n" + "a:4\n" + "b:3\n" + "\n" + FrameParser.NULL);
+  }
+
+  @Test
+  public void testManyHeaders() {
+    LazyHeaders headers = new LazyHeaders();
+    Map<String, String> expected = new HashMap<>();
+    for (int i = 0; i < LazyHeaders.HASH_THRESHOLD * 2; i++) {
+      headers.put("header-" + i, "value-" + i);
+      expected.put("header-" + i, "value-" + i);
+    }
+    assertThat(headers).isEqualTo(expected).hasSize(LazyHeaders.HASH_THRESHOLD * 2);
+    assertThat(headers.get("header-20")).isEqualTo("value-20");
+
+    // Remove headers until the index is dropped.
+    for (int i = 0; i < LazyHeaders.HASH_THRESHOLD + 4; i++) {
+      assertThat(headers.remove("header-" + i)).isEqualTo("value-" + i);
+      expected.remove("header-" + i);
+      assertThat(headers).isEqualTo(expected);
+    }
+    assertThat(headers.get("header-0")).isNull();
+    assertThat(headers.get("header-" + (LazyHeaders.HASH_THRESHOLD * 2 - 1)))
+        .isEqualTo("value-" + (LazyHeaders.HASH_THRESHOLD * 2 - 1));
+
+    // Copies keep the content.
+    assertThat(new LazyHeaders(headers)).isEqualTo(expected);
+  }
+
+  @Test
+  public void testIteratorRemoval() {
+    LazyHeaders headers = new LazyHeaders();
+    headers.put("a", "1");
+    headers.put("b", "2");
+    headers.put("c", "3");
+
+    Iterator<Map.Entry<String, String>> iterator = headers.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, String> entry = iterator.next();
+      if (entry.getKey().equals("b")) {
+        iterator.remove();
+      } else {
+        entry.setValue(entry.getValue() + "!");
+      }
+    }
+    assertThat(headers).containsExactly(entry("a", "1!"), entry("c", "3!"));
+  }
+
+  @Test
+  public void testCopyIsIndependent() {
+    Frame frame = parse("SEND\n" + "destination:/queue\n" + "header:" + ESCAPED + "\n" + "\n" + FrameParser.NULL);
+    LazyHeaders copy = new LazyHeaders(frame.getHeaders());
+    copy.put("header", "other");
+    copy.put("extra", "value");
+
+    assertThat(frame.getHeaders()).containsOnly(entry("destination", "/queue"), entry("header", "a:b\nc"));
+    assertThat(copy).containsExactly(entry("destination", "/queue"), entry("header", "other"),
+        entry("extra", "value"));
+  }
+
+  private Frame parse(String frame) {
+    FrameParser parser = new FrameParser();
+    AtomicReference<Frame> ref = new AtomicReference<>();
+    parser.handler(ref::set);
+    parser.handle(Buffer.buffer(frame));
+    return ref.get();
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.impl;
+
+import com.jayway.awaitility.Awaitility;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the memory-based flow control of the producers ({@link ProducerFlowControl}).
+ */
+public class ProducerFlowControlTest {
+
+  private static final int MESSAGES = 1000;
+  private static final int LIMIT = 16 * 1024;
+
+  private Vertx vertx;
+  private StompServer server;
+
+  private List<StompClient> clients = new ArrayList<>();
+
+  private void startServer(StompServerOptions options) {
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    vertx = Vertx.vertx();
+    server = StompServer.create(vertx, options)
+        .handler(StompServerHandler.create(vertx).destinationFactory(Destination::queue))
+        .listen(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  @After
+  public void tearDown() {
+    clients.forEach(StompClient::close);
+    clients.clear();
+    AsyncLock<Void> lock = new AsyncLock<>();
+    server.close(lock.handler());
+    lock.waitForSuccess();
+    lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  @Test
+  public void testDestinationLimit() {
+    startServer(new StompServerOptions().setDestinationMemoryLimit(LIMIT));
+    checkThatTheProducerIsPausedUntilTheMessagesAreConsumed(
+        () -> ((StompServerImpl) server).flowControl().usage("/queue"));
+  }
+
+  @Test
+  public void testGlobalLimit() {
+    startServer(new StompServerOptions().setMemoryLimit(LIMIT));
+    checkThatTheProducerIsPausedUntilTheMessagesAreConsumed(
+        () -> ((StompServerImpl) server).flowControl().usage());
+  }
+
+  @Test
+  public void testNoLimit() {
+    startServer(new StompServerOptions());
+    assertThat(((StompServerImpl) server).flowControl()).isNull();
+  }
+
+  @Test
+  public void testClosedProducersAreForgotten() {
+    startServer(new StompServerOptions().setDestinationMemoryLimit(LIMIT));
+    ProducerFlowControl flowControl = ((StompServerImpl) server).flowControl();
+    // The subscriber does not acknowledge the messages, so the queue holds them.
+    clients.add(StompClient.create(vertx).connect(ar ->
+        ar.result().subscribe("/queue", Headers.create(Frame.ACK, "client-individual", Frame.PREFETCH_COUNT, "1"),
+            frame -> {
+            })));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> {
+      Destination destination = server.stompHandler().getDestination("/queue");
+      return destination != null && destination.numberOfSubscriptions() == 1;
+    });
+
+    StompClient producer = StompClient.create(vertx);
+    Buffer body = Buffer.buffer(new byte[1024]);
+    producer.connect(ar -> {
+      for (int i = 0; i < MESSAGES; i++) {
+        ar.result().send("/queue", body);
+      }
+    });
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> flowControl.pausedProducers() == 1);
+
+    producer.close();
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> flowControl.pausedProducers() == 0);
+  }
+
+  @Test
+  public void testProducersConsumingTheDestinationAreNotPaused() {
+    startServer(new StompServerOptions().setDestinationMemoryLimit(LIMIT));
+    // The client acknowledges the messages it sends to itself. Pausing it would stop reading the acknowledgments.
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    AtomicReference<StompClientConnection> client = new AtomicReference<>();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      client.set(ar.result());
+      ar.result().subscribe("/queue", Headers.create(Frame.ACK, "client-individual", Frame.PREFETCH_COUNT, "1"),
+          frame -> {
+            frames.add(frame);
+            client.get().ack(frame.getAck());
+          }, receipt -> {
+            Buffer body = Buffer.buffer(new byte[1024]);
+            for (int i = 0; i < MESSAGES; i++) {
+              client.get().send("/queue", body);
+            }
+          });
+    }));
+
+    Awaitility.waitAtMost(20, TimeUnit.SECONDS).until(() -> frames.size() == MESSAGES);
+    assertThat(((StompServerImpl) server).flowControl().pausedProducers()).isEqualTo(0);
+  }
+
+  private void checkThatTheProducerIsPausedUntilTheMessagesAreConsumed(LongSupplier usage) {
+    // The subscriber receives a single message, and does not acknowledge it, so the queue holds the others.
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    AtomicBoolean acking = new AtomicBoolean();
+    AtomicReference<StompClientConnection> subscriber = new AtomicReference<>();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      subscriber.set(ar.result());
+      ar.result().subscribe("/queue", Headers.create(Frame.ACK, "client-individual", Frame.PREFETCH_COUNT, "1"),
+          frame -> {
+            frames.add(frame);
+            if (acking.get()) {
+              subscriber.get().ack(frame.getAck());
+            }
+          });
+    }));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> {
+      Destination destination = server.stompHandler().getDestination("/queue");
+      return destination != null && destination.numberOfSubscriptions() == 1;
+    });
+
+    AtomicInteger receipts = new AtomicInteger();
+    Buffer body = Buffer.buffer(new byte[1024]);
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      for (int i = 0; i < MESSAGES; i++) {
+        ar.result().send("/queue", body, receipt -> receipts.incrementAndGet());
+      }
+    }));
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> usage.getAsLong() > LIMIT);
+    // The producer is paused: the messages read before the pause are dispatched, but not the others.
+    Awaitility.await().pollDelay(1, TimeUnit.SECONDS).until(() -> true);
+    assertThat(receipts.get()).isLessThan(MESSAGES);
+    assertThat(usage.getAsLong()).isLessThan(MESSAGES * 1024);
+    assertThat(frames).hasSize(1);
+
+    // Consumes the messages, the producer is resumed once the usage is below the low-water mark.
+    acking.set(true);
+    subscriber.get().ack(frames.get(0).getAck());
+    Awaitility.waitAtMost(20, TimeUnit.SECONDS).until(() -> frames.size() == MESSAGES
+        && receipts.get() == MESSAGES);
+    assertThat(usage.getAsLong()).isEqualTo(0);
+  }
+}
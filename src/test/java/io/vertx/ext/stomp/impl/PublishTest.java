@@ -0,0 +1,184 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import com.jayway.awaitility.Awaitility;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetServer;
+import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the frames published with {@link StompClientConnection#publish(Frame)}.
+ */
+public class PublishTest {
+
+  private Vertx vertx;
+  private StompServer server;
+  private NetServer silentServer;
+  private StompClient client;
+
+  @Before
+  public void setUp() {
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    vertx = Vertx.vertx();
+    server = StompServer.create(vertx)
+        .handler(StompServerHandler.create(vertx))
+        .listen(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  @After
+  public void tearDown() {
+    if (client != null) {
+      client.close();
+    }
+    if (silentServer != null) {
+      silentServer.close();
+    }
+    AsyncLock<Void> lock = new AsyncLock<>();
+    server.close(lock.handler());
+    lock.waitForSuccess();
+    lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  private StompClientConnection connect(int port, StompClientOptions options) {
+    AtomicReference<StompClientConnection> connection = new AtomicReference<>();
+    client = StompClient.create(vertx, options).connect(port, "0.0.0.0", ar -> connection.set(ar.result()));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> connection.get() != null);
+    return connection.get();
+  }
+
+  /**
+   * Starts a server accepting the connections, but never sending receipts.
+   *
+   * @return the port of the server
+   */
+  private int startSilentServer() {
+    AsyncLock<NetServer> lock = new AsyncLock<>();
+    silentServer = vertx.createNetServer().connectHandler(socket -> {
+      FrameParser parser = new FrameParser().handler(frame -> {
+        if (frame.getCommand() == Frame.Command.CONNECT) {
+          socket.write("CONNECTED\nversion:1.2\n\n" + FrameParser.NULL);
+        }
+      });
+      socket.handler(parser);
+    }).listen(0, lock.handler());
+    lock.waitForSuccess();
+    return silentServer.actualPort();
+  }
+
+  @Test
+  public void testPublishedFramesAreConfirmed() {
+    StompClientConnection connection = connect(server.actualPort(),
+        new StompClientOptions().setPublishWindowSize(10));
+    AtomicInteger drained = new AtomicInteger();
+    connection.publishDrainHandler(v -> drained.incrementAndGet());
+
+    List<Future<Frame>> futures = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      futures.add(connection.publish("/queue", Buffer.buffer("message-" + i)));
+    }
+    assertThat(connection.publishWindowFull()).isTrue();
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> futures.stream().allMatch(Future::isComplete));
+    for (int i = 0; i < futures.size(); i++) {
+      assertThat(futures.get(i).succeeded()).isTrue();
+      assertThat(futures.get(i).result().getBodyAsString()).isEqualTo("message-" + i);
+      assertThat(futures.get(i).result().getReceipt()).isNotNull();
+    }
+    assertThat(connection.publishWindowFull()).isFalse();
+    assertThat(drained.get()).isGreaterThanOrEqualTo(1);
+  }
+
+  @Test
+  public void testPublishedFramesFailWithoutReceipt() {
+    StompClientConnection connection = connect(startSilentServer(),
+        new StompClientOptions().setPublishWindowSize(2).setPublishTimeout(200));
+    AtomicInteger drained = new AtomicInteger();
+    connection.publishDrainHandler(v -> drained.incrementAndGet());
+
+    Future<Frame> first = connection.publish("/queue", Buffer.buffer("first"));
+    Future<Frame> second = connection.publish("/queue", Buffer.buffer("second"));
+    // Kept until the window has room.
+    Future<Frame> third = connection.publish("/queue", Buffer.buffer("third"));
+    assertThat(connection.publishWindowFull()).isTrue();
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> first.isComplete() && second.isComplete()
+        && third.isComplete());
+    assertThat(first.failed()).isTrue();
+    assertThat(first.cause().getMessage()).contains("No receipt received");
+    assertThat(second.failed()).isTrue();
+    assertThat(third.failed()).isTrue();
+    assertThat(connection.publishWindowFull()).isFalse();
+    assertThat(drained.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testPublishedFramesKeepTheirReceiptId() {
+    StompClientConnection connection = connect(server.actualPort(), new StompClientOptions());
+    Future<Frame> future = connection.publish(new Frame(Frame.Command.SEND,
+        Headers.create(Frame.DESTINATION, "/queue", Frame.RECEIPT, "my-receipt"), Buffer.buffer("hello")));
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(future::isComplete);
+    assertThat(future.succeeded()).isTrue();
+    assertThat(future.result().getReceipt()).isEqualTo("my-receipt");
+  }
+
+  @Test
+  public void testPublishedFramesWithADuplicateReceiptIdFail() {
+    StompClientConnection connection = connect(startSilentServer(),
+        new StompClientOptions().setPublishTimeout(-1));
+    Future<Frame> first = connection.publish(new Frame(Frame.Command.SEND,
+        Headers.create(Frame.DESTINATION, "/queue", Frame.RECEIPT, "r"), Buffer.buffer("first")));
+    Future<Frame> second = connection.publish(new Frame(Frame.Command.SEND,
+        Headers.create(Frame.DESTINATION, "/queue", Frame.RECEIPT, "r"), Buffer.buffer("second")));
+
+    assertThat(first.isComplete()).isFalse();
+    assertThat(second.failed()).isTrue();
+    assertThat(second.cause().getMessage()).contains("already waiting for its receipt");
+  }
+
+  @Test
+  public void testPublishedFramesFailWhenTheConnectionIsClosed() {
+    StompClientConnection connection = connect(startSilentServer(),
+        new StompClientOptions().setPublishWindowSize(1).setPublishTimeout(-1));
+    Future<Frame> first = connection.publish("/queue", Buffer.buffer("first"));
+    Future<Frame> second = connection.publish("/queue", Buffer.buffer("second"));
+    connection.close();
+
+    assertThat(first.failed()).isTrue();
+    assertThat(first.cause().getMessage()).isEqualTo("Connection closed");
+    assertThat(second.failed()).isTrue();
+    assertThat(connection.publish("/queue", Buffer.buffer("third")).failed()).isTrue();
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.impl;
+
+import com.jayway.awaitility.Awaitility;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the tracking of the messages waiting for an acknowledgment by the {@link Queue}, and their redelivery.
+ */
+public class QueueAckTest {
+
+  private Vertx vertx;
+  private StompServer server;
+
+  private List<StompClient> clients = new ArrayList<>();
+  private List<Frame> acked = new CopyOnWriteArrayList<>();
+  private List<Frame> nacked = new CopyOnWriteArrayList<>();
+
+  private void startServer(long ackTimeout) {
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    vertx = Vertx.vertx();
+    server = StompServer.create(vertx, new StompServerOptions().setAckTimeout(ackTimeout))
+        .handler(StompServerHandler.create(vertx)
+            .destinationFactory(Destination::queue)
+            .onAckHandler(acknowledgement -> acked.addAll(acknowledgement.frames()))
+            .onNackHandler(acknowledgement -> nacked.addAll(acknowledgement.frames())))
+        .listen(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  @After
+  public void tearDown() {
+    clients.forEach(StompClient::close);
+    clients.clear();
+    AsyncLock<Void> lock = new AsyncLock<>();
+    server.close(lock.handler());
+    lock.waitForSuccess();
+    lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  private void waitForSubscriptions(int count) {
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> {
+      Destination destination = server.stompHandler().getDestination("/queue");
+      return destination != null && destination.numberOfSubscriptions() == count;
+    });
+  }
+
+  private void send(String... bodies) {
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      for (String body : bodies) {
+        ar.result().send("/queue", Buffer.buffer(body));
+      }
+    }));
+  }
+
+  private static List<String> bodies(List<Frame> frames) {
+    return frames.stream().map(Frame::getBodyAsString).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testCumulativeAck() {
+    startServer(0);
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      StompClientConnection connection = ar.result();
+      connection.subscribe("/queue", Headers.create(Frame.ACK, "client"), frame -> {
+        frames.add(frame);
+        if (frames.size() == 3) {
+          connection.ack(frame.getAck());
+        }
+      });
+    }));
+    waitForSubscriptions(1);
+
+    send("a", "b", "c");
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> acked.size() == 3);
+    assertThat(bodies(acked)).containsExactly("a", "b", "c");
+    assertThat(nacked).isEmpty();
+  }
+
+  @Test
+  public void testIndividualAck() {
+    startServer(0);
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      StompClientConnection connection = ar.result();
+      connection.subscribe("/queue", Headers.create(Frame.ACK, "client-individual"), frame -> {
+        frames.add(frame);
+        if (frame.getBodyAsString().equals("b")) {
+          connection.ack(frame.getAck());
+        }
+      });
+    }));
+    waitForSubscriptions(1);
+
+    send("a", "b", "c");
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 3 && acked.size() == 1);
+    assertThat(bodies(acked)).containsExactly("b");
+  }
+
+  @Test
+  public void testRedeliveryOnNack() {
+    startServer(0);
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      StompClientConnection connection = ar.result();
+      connection.subscribe("/queue", Headers.create(Frame.ACK, "client-individual"),
+          frame -> connection.nack(frame.getAck()));
+    }));
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      StompClientConnection connection = ar.result();
+      connection.subscribe("/queue", Headers.create(Frame.ACK, "client-individual"), frame -> {
+        frames.add(frame);
+        connection.ack(frame.getAck());
+      });
+    }));
+    waitForSubscriptions(2);
+
+    send("a", "b", "c", "d");
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 4 && acked.size() == 4);
+    assertThat(bodies(frames)).containsOnly("a", "b", "c", "d");
+    assertThat(nacked).hasSize(2);
+    // The redelivered messages have a new id.
+    assertThat(frames.stream().map(Frame::getAck).distinct().count()).isEqualTo(4);
+  }
+
+  @Test
+  public void testRedeliveryOnNackWithASingleSubscriber() {
+    startServer(0);
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      StompClientConnection connection = ar.result();
+      connection.subscribe("/queue", Headers.create(Frame.ACK, "client-individual"), frame -> {
+        frames.add(frame);
+        // Rejects the first delivery only.
+        if (frames.size() == 1) {
+          connection.nack(frame.getAck());
+        } else {
+          connection.ack(frame.getAck());
+        }
+      });
+    }));
+    waitForSubscriptions(1);
+
+    send("a");
+
+    // Not discarded, but sent again to the same subscriber.
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> acked.size() == 1);
+    assertThat(bodies(frames)).containsExactly("a", "a");
+    assertThat(bodies(nacked)).containsExactly("a");
+    assertThat(frames.get(0).getAck()).isNotEqualTo(frames.get(1).getAck());
+  }
+
+  @Test
+  public void testRedeliveryOnClose() {
+    startServer(0);
+    AtomicReference<StompClientConnection> silent = new AtomicReference<>();
+    List<Frame> received = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      silent.set(ar.result());
+      ar.result().subscribe("/queue", Headers.create(Frame.ACK, "client"), received::add);
+    }));
+    waitForSubscriptions(1);
+
+    send("a", "b");
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> received.size() == 2);
+
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar ->
+        ar.result().subscribe("/queue", frames::add)));
+    waitForSubscriptions(2);
+
+    silent.get().close();
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 2);
+    assertThat(bodies(frames)).containsExactly("a", "b");
+    assertThat(bodies(nacked)).containsExactly("a", "b");
+    // Delivered in the auto mode.
+    assertThat(frames.get(0).getAck()).isNull();
+  }
+
+  @Test
+  public void testRedeliveryOnAckTimeout() {
+    startServer(500);
+    List<Frame> received = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar ->
+        ar.result().subscribe("/queue", Headers.create(Frame.ACK, "client"), received::add)));
+    waitForSubscriptions(1);
+
+    send("a");
+
+    // Only one subscriber, the message is sent again to the same subscriber.
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> received.size() >= 2);
+    assertThat(bodies(nacked)).startsWith("a");
+    assertThat(received.get(0).getAck()).isNotEqualTo(received.get(1).getAck());
+    assertThat(bodies(received).subList(0, 2)).containsExactly("a", "a");
+  }
+
+  @Test
+  public void testPrefetchCount() {
+    startServer(0);
+    List<Frame> slow = new CopyOnWriteArrayList<>();
+    List<Frame> fast = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar ->
+        ar.result().subscribe("/queue", Headers.create(Frame.ACK, "client-individual", Frame.PREFETCH_COUNT, "1"),
+            slow::add)));
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      StompClientConnection connection = ar.result();
+      connection.subscribe("/queue", Headers.create(Frame.ACK, "client-individual", Frame.PREFETCH_COUNT, "1"),
+          frame -> {
+            fast.add(frame);
+            connection.ack(frame.getAck());
+          });
+    }));
+    waitForSubscriptions(2);
+
+    send("a", "b", "c", "d", "e");
+
+    // The slow subscriber never acknowledges its message, the other messages go to the fast subscriber.
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> slow.size() + fast.size() == 5);
+    assertThat(slow).hasSize(1);
+    assertThat(fast).hasSize(4);
+  }
+
+  @Test
+  public void testMessagesAreHeldUntilAcknowledgment() {
+    startServer(0);
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    AtomicReference<StompClientConnection> subscriber = new AtomicReference<>();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      subscriber.set(ar.result());
+      ar.result().subscribe("/queue", Headers.create(Frame.ACK, "client", Frame.PREFETCH_COUNT, "2"), frames::add);
+    }));
+    waitForSubscriptions(1);
+
+    send("a", "b", "c", "d", "e");
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 2);
+    // Still 2 after a while.
+    Awaitility.await().pollDelay(500, TimeUnit.MILLISECONDS).until(() -> frames.size() == 2);
+
+    // Acknowledges a and b.
+    subscriber.get().ack(frames.get(1).getAck());
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 4);
+    subscriber.get().ack(frames.get(3).getAck());
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 5);
+
+    // The order is preserved.
+    assertThat(bodies(frames)).containsExactly("a", "b", "c", "d", "e");
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.impl;
+
+import com.jayway.awaitility.Awaitility;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the backlog of the {@link Queue}, keeping the messages sent without subscriptions, and spilling them to disk.
+ */
+public class QueueBacklogTest {
+
+  private Vertx vertx;
+  private StompServer server;
+  private File directory;
+
+  private List<StompClient> clients = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("stomp-backlog").toFile();
+  }
+
+  private void startServer(StompServerOptions options) {
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    vertx = Vertx.vertx();
+    server = StompServer.create(vertx, options)
+        .handler(StompServerHandler.create(vertx).destinationFactory(Destination::queue))
+        .listen(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  @After
+  public void tearDown() {
+    clients.forEach(StompClient::close);
+    clients.clear();
+    AsyncLock<Void> lock = new AsyncLock<>();
+    server.close(lock.handler());
+    lock.waitForSuccess();
+    lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+    vertx.fileSystem().deleteRecursiveBlocking(directory.getAbsolutePath(), true);
+  }
+
+  private void startServerWithTopics(StompServerOptions options) {
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    vertx = Vertx.vertx();
+    server = StompServer.create(vertx, options)
+        .handler(StompServerHandler.create(vertx))
+        .listen(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  private void sendAndWaitForReceipts(List<String> bodies) {
+    AtomicInteger receipts = new AtomicInteger();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      for (String body : bodies) {
+        ar.result().send("/queue", Buffer.buffer(body), receipt -> receipts.incrementAndGet());
+      }
+    }));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> receipts.get() == bodies.size());
+  }
+
+  private List<String> subscribe() {
+    List<String> received = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar ->
+        ar.result().subscribe("/queue", frame -> received.add(frame.getBodyAsString()))));
+    return received;
+  }
+
+  private static List<String> bodies(int count) {
+    return IntStream.range(0, count).mapToObj(i -> "message-" + i).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testMessagesAreKeptUntilTheFirstSubscription() {
+    startServer(new StompServerOptions().setQueueBacklogSize(1024 * 1024));
+    sendAndWaitForReceipts(bodies(10));
+    assertThat(server.stompHandler().getDestination("/queue").numberOfSubscriptions()).isEqualTo(0);
+
+    List<String> received = subscribe();
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> received.size() == 10);
+    assertThat(received).containsExactlyElementsOf(bodies(10));
+  }
+
+  @Test
+  public void testMessagesAreSpilledToDisk() {
+    startServer(new StompServerOptions()
+        .setQueueBacklogSize(100)
+        .setQueueBacklogDirectory(directory.getAbsolutePath()));
+    sendAndWaitForReceipts(bodies(1000));
+    // Written by a worker thread.
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> directory.list().length == 1);
+
+    List<String> received = subscribe();
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> received.size() == 1000);
+    assertThat(received).containsExactlyElementsOf(bodies(1000));
+    // The segment is deleted once all its messages have been delivered.
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> directory.list().length == 0);
+  }
+
+  @Test
+  public void testTopicsAreNotCreatedForTheBacklog() {
+    startServerWithTopics(new StompServerOptions().setQueueBacklogSize(1024 * 1024));
+    AtomicInteger receipts = new AtomicInteger();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      for (int i = 0; i < 10; i++) {
+        ar.result().send("/topic-" + i, Buffer.buffer("hello"), receipt -> receipts.incrementAndGet());
+      }
+    }));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> receipts.get() == 10);
+    // A topic would not keep the messages, and would never be removed.
+    assertThat(server.stompHandler().getDestinations()).isEmpty();
+  }
+
+  @Test
+  public void testErrorOnNoSubscriptionsWithTheBacklog() {
+    startServerWithTopics(new StompServerOptions().setQueueBacklogSize(1024 * 1024)
+        .setSendErrorOnNoSubscriptions(true));
+    AtomicReference<Frame> error = new AtomicReference<>();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      ar.result().errorHandler(error::set);
+      ar.result().send("/topic", Buffer.buffer("hello"));
+    }));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> error.get() != null);
+    assertThat(error.get().getHeader(Frame.MESSAGE)).isEqualTo("No subscriptions");
+    assertThat(server.stompHandler().getDestinations()).isEmpty();
+  }
+
+  @Test
+  public void testMessagesExceedingTheBacklogAreDiscardedWithoutDirectory() {
+    // "message-x" is 9 bytes long.
+    startServer(new StompServerOptions().setQueueBacklogSize(30));
+    sendAndWaitForReceipts(bodies(5));
+
+    List<String> received = subscribe();
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> received.size() == 3);
+    Awaitility.await().pollDelay(500, TimeUnit.MILLISECONDS).until(() -> received.size() == 3);
+    assertThat(received).containsExactly("message-0", "message-1", "message-2");
+  }
+
+  @Test
+  public void testMessagesAreDiscardedWithoutBacklog() {
+    startServer(new StompServerOptions());
+    sendAndWaitForReceipts(bodies(5));
+    assertThat(server.stompHandler().getDestination("/queue")).isNull();
+  }
+}
@@ -130,7 +130,7 @@ public class QueueManagingAcknowledgments implements Destination {
       }
     }
     if (subscriptions.isEmpty()) {
-      vertx.sharedData().getLocalMap("stomp.destinations").remove(destination);
+      DestinationRegistry.instance(vertx).remove(this);
     }
     return r;
   }
@@ -149,7 +149,7 @@ public class QueueManagingAcknowledgments implements Destination {
         .forEach(subscriptions::remove);
 
     if (subscriptions.isEmpty()) {
-      vertx.sharedData().getLocalMap("stomp.destinations").remove(destination);
+      DestinationRegistry.instance(vertx).remove(this);
     }
     return this;
   }
@@ -0,0 +1,204 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+
+package io.vertx.ext.stomp.impl;
+
+import com.jayway.awaitility.Awaitility;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.stomp.*;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the bounded outbound buffering of the connections, and the {@link SlowConsumerPolicy}.
+ */
+public class SlowConsumerTest {
+
+  private static final int MESSAGES = 200;
+  private static final int BODY_SIZE = 64 * 1024;
+
+  private Vertx vertx;
+  private StompServer server;
+  private NetClient client;
+  private NetSocket subscriber;
+
+  private List<StompClient> clients = new ArrayList<>();
+  private AtomicReference<StompServerTCPConnectionImpl> subscriberConnection = new AtomicReference<>();
+  private AtomicInteger received = new AtomicInteger();
+  private AtomicInteger receipts = new AtomicInteger();
+
+  private void startServer(SlowConsumerPolicy policy) {
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    vertx = Vertx.vertx();
+    server = StompServer.create(vertx, new StompServerOptions()
+        .setOutboundHighWaterMark(128 * 1024)
+        .setSlowConsumerPolicy(policy))
+        .handler(StompServerHandler.create(vertx))
+        .writingFrameHandler(frame -> {
+          if (frame.frame().getCommand() == Frame.Command.MESSAGE) {
+            subscriberConnection.set((StompServerTCPConnectionImpl) frame.connection());
+          }
+        })
+        .listen(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  @After
+  public void tearDown() {
+    clients.forEach(StompClient::close);
+    clients.clear();
+    if (client != null) {
+      client.close();
+    }
+    AsyncLock<Void> lock = new AsyncLock<>();
+    server.close(lock.handler());
+    lock.waitForSuccess();
+    lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  /**
+   * Subscribes to {@code /topic} with a client that stops reading once subscribed.
+   */
+  private void subscribeAndStopReading() {
+    AtomicBoolean subscribed = new AtomicBoolean();
+    client = vertx.createNetClient().connect(server.actualPort(), "0.0.0.0", ar -> {
+      subscriber = ar.result();
+      FrameParser parser = new FrameParser().handler(frame -> {
+        if (frame.getCommand() == Frame.Command.RECEIPT) {
+          receipts.incrementAndGet();
+          subscriber.pause();
+          subscribed.set(true);
+        } else if (frame.getCommand() == Frame.Command.MESSAGE) {
+          received.incrementAndGet();
+        }
+      });
+      subscriber.handler(parser);
+      subscriber.write("CONNECT\naccept-version:1.2\n\n" + FrameParser.NULL);
+      subscriber.write("SUBSCRIBE\nid:0\ndestination:/topic\nreceipt:r\n\n" + FrameParser.NULL);
+    });
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(subscribed::get);
+  }
+
+  private void publish(AtomicBoolean done) {
+    Buffer body = Buffer.buffer(new byte[BODY_SIZE]);
+    clients.add(StompClient.create(vertx).connect(server.actualPort(), "0.0.0.0", ar -> {
+      StompClientConnection connection = ar.result();
+      for (int i = 0; i < MESSAGES - 1; i++) {
+        connection.send("/topic", body);
+      }
+      connection.send("/topic", body, receipt -> done.set(true));
+    }));
+  }
+
+  @Test
+  public void testDropNewest() {
+    startServer(SlowConsumerPolicy.DROP_NEWEST);
+    subscribeAndStopReading();
+    AtomicBoolean done = new AtomicBoolean();
+    publish(done);
+
+    Awaitility.waitAtMost(30, TimeUnit.SECONDS).until(done::get);
+    StompServerTCPConnectionImpl connection = subscriberConnection.get();
+    assertThat(connection.droppedFrames()).isGreaterThan(0);
+    assertThat(connection.outboundBytes()).isLessThanOrEqualTo(128 * 1024);
+
+    subscriber.resume();
+    Awaitility.waitAtMost(30, TimeUnit.SECONDS).until(() ->
+        received.get() + connection.droppedFrames() == MESSAGES);
+  }
+
+  @Test
+  public void testDropNewestKeepsReceipts() {
+    startServer(SlowConsumerPolicy.DROP_NEWEST);
+    subscribeAndStopReading();
+    AtomicBoolean done = new AtomicBoolean();
+    publish(done);
+
+    Awaitility.waitAtMost(30, TimeUnit.SECONDS).until(done::get);
+    StompServerTCPConnectionImpl connection = subscriberConnection.get();
+    assertThat(connection.droppedFrames()).isGreaterThan(0);
+    // The buffer is full, but the receipt is not a message and must not be dropped.
+    subscriber.write("SUBSCRIBE\nid:1\ndestination:/other\nreceipt:r2\n\n" + FrameParser.NULL);
+
+    subscriber.resume();
+    Awaitility.waitAtMost(30, TimeUnit.SECONDS).until(() -> receipts.get() >= 2);
+  }
+
+  @Test
+  public void testDropOldest() {
+    startServer(SlowConsumerPolicy.DROP_OLDEST);
+    subscribeAndStopReading();
+    AtomicBoolean done = new AtomicBoolean();
+    publish(done);
+
+    Awaitility.waitAtMost(30, TimeUnit.SECONDS).until(done::get);
+    StompServerTCPConnectionImpl connection = subscriberConnection.get();
+    assertThat(connection.droppedFrames()).isGreaterThan(0);
+    assertThat(connection.outboundBytes()).isLessThanOrEqualTo(128 * 1024);
+
+    subscriber.resume();
+    Awaitility.waitAtMost(30, TimeUnit.SECONDS).until(() ->
+        received.get() + connection.droppedFrames() == MESSAGES);
+  }
+
+  @Test
+  public void testDisconnect() {
+    startServer(SlowConsumerPolicy.DISCONNECT);
+    subscribeAndStopReading();
+    publish(new AtomicBoolean());
+
+    Awaitility.waitAtMost(30, TimeUnit.SECONDS).until(() -> {
+      Destination destination = server.stompHandler().getDestination("/topic");
+      return destination == null || destination.numberOfSubscriptions() == 0;
+    });
+    assertThat(subscriberConnection.get().droppedFrames()).isGreaterThan(0);
+  }
+
+  @Test
+  public void testPauseProducer() {
+    startServer(SlowConsumerPolicy.PAUSE_PRODUCER);
+    subscribeAndStopReading();
+    AtomicBoolean done = new AtomicBoolean();
+    publish(done);
+
+    Awaitility.waitAtMost(30, TimeUnit.SECONDS).until(() -> subscriberConnection.get() != null
+        && subscriberConnection.get().outboundBytes() > 128 * 1024);
+    StompServerTCPConnectionImpl connection = subscriberConnection.get();
+    // The producer is paused, so the last message is not handled.
+    Awaitility.await().pollDelay(1, TimeUnit.SECONDS).until(() -> true);
+    assertThat(done.get()).isFalse();
+
+    subscriber.resume();
+    Awaitility.waitAtMost(30, TimeUnit.SECONDS).until(() -> received.get() == MESSAGES && done.get());
+    assertThat(connection.droppedFrames()).isEqualTo(0);
+    assertThat(connection.timeOverHighWaterMark()).isGreaterThan(0);
+  }
+}
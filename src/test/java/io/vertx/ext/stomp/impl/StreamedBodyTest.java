@@ -0,0 +1,190 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import com.jayway.awaitility.Awaitility;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the delivery of messages whose body is streamed (larger than the streamed body threshold).
+ */
+public class StreamedBodyTest {
+
+  private static final int THRESHOLD = 1024;
+
+  private Vertx vertx;
+  private StompServer server;
+
+  private List<StompClient> clients = new ArrayList<>();
+
+  private void startServer(DestinationFactory factory) {
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    vertx = Vertx.vertx();
+    server = StompServer.create(vertx, new StompServerOptions().setStreamedBodyThreshold(THRESHOLD))
+        .handler(StompServerHandler.create(vertx).destinationFactory(factory))
+        .listen(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  @After
+  public void tearDown() {
+    AsyncLock<Void> lock = new AsyncLock<>();
+    clients.forEach(StompClient::close);
+    clients.clear();
+    server.close(lock.handler());
+    lock.waitForSuccess();
+    lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  private static Buffer payload(int size) {
+    Buffer buffer = Buffer.buffer(size);
+    for (int i = 0; i < size; i++) {
+      buffer.appendByte((byte) ('a' + i % 26));
+    }
+    return buffer;
+  }
+
+  @Test
+  public void testLargeMessageOnTopic() {
+    startServer(Destination::topic);
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar -> ar.result().subscribe("/topic", frames::add)));
+    clients.add(StompClient.create(vertx).connect(ar -> ar.result().subscribe("/topic", frames::add)));
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() ->
+        Helper.hasDestination(server.stompHandler().getDestinations(), "/topic")
+            && server.stompHandler().getDestination("/topic").numberOfSubscriptions() == 2);
+
+    Buffer large = payload(1024 * 1024);
+    AtomicBoolean receipt = new AtomicBoolean();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      final StompClientConnection connection = ar.result();
+      connection.send("/topic", large, frame -> receipt.set(true));
+      // Must not be interleaved with the large message.
+      connection.send("/topic", Buffer.buffer("Hello"));
+    }));
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 4 && receipt.get());
+
+    assertThat(frames.stream().filter(frame -> frame.getBody().equals(large)).count()).isEqualTo(2);
+    assertThat(frames.stream().filter(frame -> frame.getBodyAsString().equals("Hello")).count()).isEqualTo(2);
+    for (Frame frame : frames) {
+      assertThat(frame.getCommand()).isEqualTo(Frame.Command.MESSAGE);
+      assertThat(frame.getHeader(Frame.MESSAGE_ID)).isNotNull().isNotEmpty();
+      assertThat(frame.getHeader(Frame.SUBSCRIPTION)).isEqualTo("/topic");
+      assertThat(frame.getHeader(Frame.CONTENT_LENGTH)).isEqualTo(Integer.toString(frame.getBody().length()));
+    }
+  }
+
+  @Test
+  public void testLargeMessageOnQueue() {
+    startServer(Destination::queue);
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar -> ar.result().subscribe("/queue", frames::add)));
+    clients.add(StompClient.create(vertx).connect(ar -> ar.result().subscribe("/queue", frames::add)));
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() ->
+        Helper.hasDestination(server.stompHandler().getDestinations(), "/queue")
+            && server.stompHandler().getDestination("/queue").numberOfSubscriptions() == 2);
+
+    Buffer large = payload(256 * 1024);
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      final StompClientConnection connection = ar.result();
+      connection.send("/queue", large);
+      connection.send("/queue", large);
+    }));
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 2);
+
+    assertThat(frames.get(0).getBody()).isEqualTo(large);
+    assertThat(frames.get(1).getBody()).isEqualTo(large);
+    assertThat(frames.get(0).getHeader(Frame.SUBSCRIPTION)).isEqualTo("/queue");
+  }
+
+  @Test
+  public void testLargeMessageWithoutSubscriber() {
+    startServer(Destination::topic);
+    AtomicBoolean receipt = new AtomicBoolean();
+    clients.add(StompClient.create(vertx).connect(ar ->
+        ar.result().send("/nobody", payload(64 * 1024), frame -> receipt.set(true))));
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(receipt::get);
+  }
+
+  @Test
+  public void testStreamedMessagesOnQueueAreNotAcknowledged() {
+    startServer(Destination::queue);
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar ->
+        ar.result().subscribe("/queue", Headers.create(Frame.ACK, "client-individual"), frames::add)));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() ->
+        Helper.hasDestination(server.stompHandler().getDestinations(), "/queue"));
+
+    Buffer large = payload(64 * 1024);
+    clients.add(StompClient.create(vertx).connect(ar -> ar.result().send("/queue", large)));
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 1);
+    assertThat(frames.get(0).getBody()).isEqualTo(large);
+    // Not tracked, as it cannot be redelivered.
+    assertThat(frames.get(0).getAck()).isNull();
+  }
+
+  @Test
+  public void testAbortedMessageClosesTheSubscribersReceivingIt() {
+    startServer(Destination::topic);
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    AtomicBoolean closed = new AtomicBoolean();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      ar.result().connectionDroppedHandler(connection -> closed.set(true));
+      ar.result().subscribe("/topic", frames::add);
+    }));
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() ->
+        Helper.hasDestination(server.stompHandler().getDestinations(), "/topic"));
+
+    // The publisher leaves in the middle of the body.
+    vertx.createNetClient().connect(server.actualPort(), "0.0.0.0", ar -> {
+      NetSocket socket = ar.result();
+      socket.write("CONNECT\n" + "accept-version:1.2\n" + "\n" + FrameParser.NULL);
+      socket.write("SEND\n" + "destination:/topic\n" + "content-length:65536\n" + "\n");
+      socket.write(payload(32 * 1024));
+      vertx.setTimer(100, l -> socket.close());
+    });
+
+    // The subscriber is closed, and never receives the truncated message.
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(closed::get);
+    assertThat(frames).isEmpty();
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() ->
+        server.stompHandler().getDestination("/topic") == null
+            || server.stompHandler().getDestination("/topic").numberOfSubscriptions() == 0);
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import com.jayway.awaitility.Awaitility;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the behavior of the {@link WildcardTopic}.
+ */
+public class WildcardTopicTest {
+
+  private Vertx vertx;
+  private WildcardTopic topic;
+
+  private StompServer server;
+  private List<StompClient> clients = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    topic = new WildcardTopic(vertx, "/topic/");
+  }
+
+  @After
+  public void tearDown() {
+    clients.forEach(StompClient::close);
+    clients.clear();
+    AsyncLock<Void> lock;
+    if (server != null) {
+      lock = new AsyncLock<>();
+      server.close(lock.handler());
+      lock.waitForSuccess();
+    }
+    lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  private static StompServerConnection connection() {
+    return (StompServerConnection) Proxy.newProxyInstance(WildcardTopicTest.class.getClassLoader(),
+        new Class<?>[]{StompServerConnection.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "equals":
+              return proxy == args[0];
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            default:
+              return null;
+          }
+        });
+  }
+
+  private void subscribe(StompServerConnection connection, String id, String destination) {
+    topic.subscribe(connection, new Frame().setCommand(Frame.Command.SUBSCRIBE).setId(id).setDestination(destination));
+  }
+
+  private List<String> match(String destination) {
+    return topic.match(destination).stream().map(s -> s.id).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testMatches() {
+    assertThat(topic.matches("/topic/prices")).isTrue();
+    assertThat(topic.matches("/topic/prices.EUR.USD")).isTrue();
+    assertThat(topic.matches("/queue/prices")).isFalse();
+    assertThat(topic.matches(null)).isFalse();
+  }
+
+  @Test
+  public void testSegmentMatching() {
+    StompServerConnection connection = connection();
+    subscribe(connection, "exact", "/topic/prices.EUR.USD");
+    subscribe(connection, "one", "/topic/prices.EUR.*");
+    subscribe(connection, "middle", "/topic/prices.*.USD");
+    subscribe(connection, "all", "/topic/prices.#");
+    subscribe(connection, "tail", "/topic/prices.EUR.#");
+    subscribe(connection, "inner", "/topic/prices.#.USD");
+
+    assertThat(match("/topic/prices.EUR.USD")).containsOnly("exact", "one", "middle", "all", "tail", "inner");
+    assertThat(match("/topic/prices.EUR.GBP")).containsOnly("one", "all", "tail");
+    assertThat(match("/topic/prices.GBP.USD")).containsOnly("middle", "all", "inner");
+    assertThat(match("/topic/prices.EUR")).containsOnly("all", "tail");
+    assertThat(match("/topic/prices")).containsOnly("all");
+    assertThat(match("/topic/prices.EUR.USD.spot")).containsOnly("all", "tail");
+    assertThat(match("/topic/orders")).isEmpty();
+  }
+
+  @Test
+  public void testEachSubscriptionIsMatchedOnce() {
+    subscribe(connection(), "0", "/topic/a.#.#");
+    subscribe(connection(), "1", "/topic/a.#.c.#");
+
+    assertThat(match("/topic/a.b.c.d")).hasSize(2).containsOnly("0", "1");
+  }
+
+  @Test
+  public void testUnsubscription() {
+    StompServerConnection connection1 = connection();
+    StompServerConnection connection2 = connection();
+    subscribe(connection1, "0", "/topic/prices.EUR.*");
+    subscribe(connection1, "1", "/topic/prices.#");
+    subscribe(connection2, "0", "/topic/prices.EUR.*");
+    assertThat(topic.numberOfSubscriptions()).isEqualTo(3);
+
+    assertThat(topic.unsubscribe(connection1, new Frame().setCommand(Frame.Command.UNSUBSCRIBE).setId("0"))).isTrue();
+    assertThat(match("/topic/prices.EUR.USD")).containsOnly("1", "0");
+    assertThat(topic.match("/topic/prices.EUR.USD").stream().filter(s -> s.connection == connection1).count())
+        .isEqualTo(1);
+
+    topic.unsubscribeConnection(connection1);
+    assertThat(match("/topic/prices.EUR.USD")).containsOnly("0");
+    assertThat(match("/topic/prices.GBP")).isEmpty();
+
+    topic.unsubscribeConnection(connection2);
+    assertThat(topic.numberOfSubscriptions()).isEqualTo(0);
+    assertThat(match("/topic/prices.EUR.USD")).isEmpty();
+  }
+
+  @Test
+  public void testDispatch() {
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    server = StompServer.create(vertx)
+        .handler(StompServerHandler.create(vertx).destinationFactory((v, name) -> {
+          if (name.startsWith("/topic/")) {
+            return Destination.wildcardTopic(v, "/topic/");
+          }
+          return Destination.queue(v, name);
+        }))
+        .listen(lock.handler());
+    lock.waitForSuccess();
+
+    List<Frame> eur = new CopyOnWriteArrayList<>();
+    List<Frame> all = new CopyOnWriteArrayList<>();
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      ar.result().subscribe("/topic/prices.EUR.*", eur::add);
+      ar.result().subscribe("/topic/prices.#", all::add);
+    }));
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() ->
+        Helper.hasDestination(server.stompHandler().getDestinations(), "/topic/")
+            && server.stompHandler().getDestination("/topic/prices").numberOfSubscriptions() == 2);
+    assertThat(server.stompHandler().getDestinations()).hasSize(1);
+
+    clients.add(StompClient.create(vertx).connect(ar -> {
+      ar.result().send("/topic/prices.EUR.USD", Buffer.buffer("1.18"));
+      ar.result().send("/topic/prices.GBP.USD", Buffer.buffer("1.31"));
+    }));
+
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> eur.size() == 1 && all.size() == 2);
+    assertThat(eur.get(0).getDestination()).isEqualTo("/topic/prices.EUR.USD");
+    assertThat(eur.get(0).getBodyAsString()).isEqualTo("1.18");
+    assertThat(all.stream().map(Frame::getDestination))
+        .containsOnly("/topic/prices.EUR.USD", "/topic/prices.GBP.USD");
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ *  Copyright (c) 2011-2015 The original author or authors
+ *  ------------------------------------------------------
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *       The Eclipse Public License is available at
+ *       http://www.eclipse.org/legal/epl-v10.html
+ *
+ *       The Apache License v2.0 is available at
+ *       http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.stomp.impl;
+
+import com.jayway.awaitility.Awaitility;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the coalescing of the writes issued during an event loop turn (see
+ * {@link StompServerOptions#setWriteCoalescingThreshold(int)}).
+ */
+public class WriteCoalescingTest {
+
+  private static final int MESSAGES = 50;
+
+  private Vertx vertx;
+  private StompServer server;
+  private StompClient client;
+
+  private AtomicReference<StompServerTCPConnectionImpl> connection = new AtomicReference<>();
+  private List<Frame> received = new ArrayList<>();
+
+  private void startServer(int threshold) {
+    AsyncLock<StompServer> lock = new AsyncLock<>();
+    vertx = Vertx.vertx();
+    server = StompServer.create(vertx, new StompServerOptions().setWriteCoalescingThreshold(threshold))
+        .handler(StompServerHandler.create(vertx))
+        .writingFrameHandler(frame -> {
+          if (frame.frame().getCommand() == Frame.Command.CONNECTED) {
+            connection.set((StompServerTCPConnectionImpl) frame.connection());
+          }
+        })
+        .listen(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  @After
+  public void tearDown() {
+    if (client != null) {
+      client.close();
+    }
+    AsyncLock<Void> lock = new AsyncLock<>();
+    server.close(lock.handler());
+    lock.waitForSuccess();
+    lock = new AsyncLock<>();
+    vertx.close(lock.handler());
+    lock.waitForSuccess();
+  }
+
+  private void subscribe() {
+    AtomicBoolean subscribed = new AtomicBoolean();
+    client = StompClient.create(vertx).connect(server.actualPort(), "0.0.0.0", ar -> {
+      ar.result().subscribe("/topic", frame -> {
+        synchronized (received) {
+          received.add(frame);
+        }
+      }, receipt -> subscribed.set(true));
+    });
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(subscribed::get);
+  }
+
+  /**
+   * Dispatches the messages to {@code /topic} during a single event loop turn, outside of the handling of received
+   * frames.
+   *
+   * @return the number of socket writes used to write the messages
+   */
+  private long dispatch() {
+    long writes = connection.get().socketWrites();
+    long frames = connection.get().writtenFrames();
+    vertx.runOnContext(v -> {
+      Destination destination = server.stompHandler().getDestination("/topic");
+      for (int i = 0; i < MESSAGES; i++) {
+        destination.dispatch(null, new Frame(Frame.Command.SEND, Headers.create(Frame.DESTINATION, "/topic"),
+            Buffer.buffer("message-" + i)));
+      }
+    });
+    Awaitility.waitAtMost(10, TimeUnit.SECONDS).until(() -> {
+      synchronized (received) {
+        return received.size() == MESSAGES;
+      }
+    });
+    assertThat(connection.get().writtenFrames() - frames).isEqualTo(MESSAGES);
+    return connection.get().socketWrites() - writes;
+  }
+
+  @Test
+  public void testWritesAreCoalescedDuringTheTurn() {
+    startServer(64 * 1024);
+    subscribe();
+    assertThat(dispatch()).isEqualTo(1);
+
+    synchronized (received) {
+      for (int i = 0; i < MESSAGES; i++) {
+        assertThat(received.get(i).getBodyAsString()).isEqualTo("message-" + i);
+      }
+    }
+    assertThat(connection.get().socketWritesPerFrame()).isLessThan(0.1);
+  }
+
+  @Test
+  public void testWritesAreFlushedOnceTheThresholdIsReached() {
+    // The messages are a bit more than 100 bytes long.
+    startServer(1000);
+    subscribe();
+    assertThat(dispatch()).isGreaterThan(1).isLessThan(MESSAGES / 2);
+  }
+
+  @Test
+  public void testWritesAreNotCoalescedByDefault() {
+    startServer(StompServerOptions.DEFAULT_WRITE_COALESCING_THRESHOLD);
+    subscribe();
+    assertThat(dispatch()).isEqualTo(MESSAGES);
+  }
+}